@@ -0,0 +1,81 @@
+package edu.cwru.csds341.vapor.cli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting query results for the CLI, as done by {@link MainApp}'s performQuery, into a discarding Writer.
+ * The ResultSet is a proxy over pre-built strings shaped like a page of games, so only the formatting is measured
+ * along with a constant cost per proxied call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TablePrinterBenchmark {
+    private static final String[] LABELS = {"game_id", "game_name", "release_date", "price"};
+
+    @Param({"100", "10000"})
+    private int rows;
+
+    private String[][] values;
+    private ResultSetMetaData metadata;
+
+    @Setup
+    public void setUp() {
+        values = new String[rows][];
+        for (int i = 0; i < rows; i++) {
+            values[i] = new String[] {
+                    Integer.toString(i + 1),
+                    "Game number " + (i + 1) + " - " + "Remastered".substring(0, i % 11),
+                    "20" + (10 + i % 13) + "-" + (1 + i % 12) + "-" + (1 + i % 28),
+                    (i % 60) + ".99"};
+        }
+        metadata = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount": return LABELS.length;
+                        case "getColumnLabel": return LABELS[(int) args[0] - 1];
+                        case "getColumnDisplaySize": return 40;
+                        default: return null;
+                    }
+                });
+    }
+
+    private ResultSet resultSet() {
+        int[] row = {-1};
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next": return ++row[0] < rows;
+                        case "getString": return values[row[0]][(int) args[0] - 1];
+                        case "getMetaData": return metadata;
+                        default: return null;
+                    }
+                });
+    }
+
+    @Benchmark
+    public void print() throws SQLException, IOException {
+        TablePrinter.print(resultSet(), Writer.nullWriter());
+    }
+}
@@ -0,0 +1,102 @@
+package edu.cwru.csds341.vapor.common;
+
+import edu.cwru.csds341.vapor.common.Action.Parameter;
+import edu.cwru.csds341.vapor.common.Action.Parameter.PType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating and binding an Action's arguments: the {@link Requirement} checks done on user input,
+ * the String path of {@link Action#applyAll} and the typed path of {@link Arguments}.
+ * The statement is a proxy that ignores every call, so only the client's own work is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActionBenchmark {
+    /** A valid value of each type, as typed by a user */
+    private static final Map<PType, String> SAMPLES = new EnumMap<>(Map.of(
+            PType.INT, "123456",
+            PType.MONEY, "59.99",
+            PType.STRING, "Portal 2",
+            PType.DATE, "2011-4-12",
+            PType.DATETIME, "2022-11-30 12:34:56"));
+
+    /** A value of each type */
+    @State(Scope.Benchmark)
+    public static class Sample {
+        @Param
+        PType type;
+        String value;
+
+        @Setup
+        public void setUp() {
+            value = SAMPLES.get(type);
+        }
+    }
+
+    /** MAKE_COMMENT, as it has a parameter of several types */
+    private Map<Parameter, String> commentArgs;
+    private CallableStatement statement;
+
+    @Setup
+    public void setUp() {
+        commentArgs = new EnumMap<>(Parameter.class);
+        commentArgs.put(Parameter.MC_COMMENTER_ID, "12");
+        commentArgs.put(Parameter.MC_PROFILE_ID, "34");
+        commentArgs.put(Parameter.MC_DATETIME, "2022-11-30 12:34:56");
+        commentArgs.put(Parameter.MC_MESSAGE, "Nice profile!");
+        statement = (CallableStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {CallableStatement.class}, (proxy, method, args) -> null);
+    }
+
+    @Benchmark
+    public boolean typeAccepts(Sample sample) {
+        return sample.type.accepts(sample.value);
+    }
+
+    /** Every Requirement of MAKE_COMMENT's parameters, as checked where the values are entered */
+    @Benchmark
+    public boolean validateComment() {
+        boolean valid = true;
+        for (var entry : commentArgs.entrySet())
+            for (Requirement requirement : entry.getKey().requirements)
+                valid &= requirement.accepts(entry.getValue());
+        return valid;
+    }
+
+    @Benchmark
+    public void applyAllComment() throws SQLException {
+        Action.applyAll(statement, commentArgs);
+    }
+
+    @Benchmark
+    public void argumentsComment() throws SQLException {
+        Action.MAKE_COMMENT.arguments()
+                .setInt(Parameter.MC_COMMENTER_ID, 12)
+                .setInt(Parameter.MC_PROFILE_ID, 34)
+                .setDateTime(Parameter.MC_DATETIME, LocalDateTime.of(2022, 11, 30, 12, 34, 56))
+                .setString(Parameter.MC_MESSAGE, "Nice profile!")
+                .bind(statement);
+    }
+}
@@ -0,0 +1,113 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The store page's search filter, as StoreController runs it over the games it has received:
+ * indexing them once the query is refined, narrowing the previous matches as each character is typed,
+ * and showing the first page of them ranked. The linear scan it replaced is the baseline.
+ * Titles are random words, seeded so every run sees the same ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TitleSearchIndexBenchmark {
+    private static final String[] WORDS = {
+            "dark", "souls", "portal", "legend", "quest", "space", "war", "craft", "city", "racing",
+            "tactics", "hollow", "knight", "star", "dungeon", "farm", "simulator", "zero", "ultimate", "island"};
+    /** Typed one character at a time */
+    private static final String QUERY = "knight";
+    /** Games shown per page on the store page, as StoreController.PAGE_SIZE */
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    private int titles;
+
+    /** The games received, in id order */
+    private List<String> names;
+    private List<String> normalized;
+    private TitleSearchIndex index;
+    /** Matches of the first character typed, whose games are re-indexed when a page arrives */
+    private List<String> firstMatches;
+
+    @Setup
+    public void setUp() {
+        var random = new SplittableRandom(341);
+        names = new ArrayList<>(titles);
+        for (int i = 0; i < titles; i++) {
+            var name = new StringBuilder();
+            int words = 2 + random.nextInt(3);
+            for (int w = 0; w < words; w++)
+                name.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+            names.add(name.append(' ').append(i).toString());
+        }
+        index = new TitleSearchIndex(names);
+        var first = index.search(QUERY.substring(0, 1), null);
+        firstMatches = first.inOrder(0, first.count());
+        normalized = new ArrayList<>(titles);
+        for (String name : names)
+            normalized.add(TitleSearchIndex.normalize(name));
+    }
+
+    /** Indexing the games received, then the whole query at once: a query pasted after browsing */
+    @Benchmark
+    public List<String> search() {
+        return new TitleSearchIndex(names).search(QUERY, null).top(0, PAGE_SIZE);
+    }
+
+    /**
+     * Indexing the games received on the first refinement, then each prefix of the query, narrowing the previous
+     * matches and showing their first page, as the store does on each pause in typing
+     */
+    @Benchmark
+    public List<String> searchAsTyped() {
+        var typed = new TitleSearchIndex(names);
+        TitleSearchIndex.Matches matches = null;
+        List<String> shown = null;
+        for (int length = 1; length <= QUERY.length(); length++) {
+            matches = typed.search(QUERY.substring(0, length), matches);
+            shown = matches.top(0, PAGE_SIZE);
+        }
+        return shown;
+    }
+
+    /** The rest of the query after a page arrived, which re-indexes the previous matches with the new games */
+    @Benchmark
+    public List<String> refineAfterPage() {
+        var refined = new TitleSearchIndex(firstMatches);
+        return refined.search(QUERY, null).top(0, PAGE_SIZE);
+    }
+
+    /** Narrowing matches already indexed, without re-indexing, as {@link #searchAsTyped()} does after its first step */
+    @Benchmark
+    public List<String> narrowIndexed() {
+        return index.search(QUERY, index.search(QUERY.substring(0, 1), null)).top(0, PAGE_SIZE);
+    }
+
+    /** Checking every title, as a baseline */
+    @Benchmark
+    public List<String> scan() {
+        List<String> matches = new ArrayList<>();
+        for (String title : normalized)
+            if (title.contains(QUERY)) matches.add(title);
+        return matches.subList(0, Math.min(PAGE_SIZE, matches.size()));
+    }
+}
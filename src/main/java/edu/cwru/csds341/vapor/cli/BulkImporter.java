@@ -0,0 +1,459 @@
+package edu.cwru.csds341.vapor.cli;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+import edu.cwru.csds341.vapor.common.Action;
+import edu.cwru.csds341.vapor.common.Arguments;
+import edu.cwru.csds341.vapor.common.Requirement;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Imports a CSV file of new games, users, follows or game ownerships, see {@link Kind}.
+ * The header names the columns, using the {@link Action.Parameter#argName}s of the Kind's Action, in any order.
+ * <li>The file is streamed in chunks; only a few chunks are held in memory at a time.</li>
+ * <li>Chunks are validated in parallel, with the Parameters' {@link Requirement}s.</li>
+ * <li>Each chunk is written in one transaction, with JDBC batching of the Action's stored procedure,
+ *     or with SQL Server bulk copy into a named table.
+ *     If that fails, the chunk is retried row by row so that only the bad rows are skipped.</li>
+ * <li>After each chunk is committed, the number of records done is saved to a checkpoint file.
+ *     Running the same import again resumes after that record. The file is deleted once the import completes.</li>
+ */
+final class BulkImporter {
+    static final int DEFAULT_CHUNK_SIZE = 10_000;
+
+    /** What can be imported, and the Action that inserts one row of it */
+    enum Kind {
+        GAMES(Action.ADD_GAME),
+        USERS(Action.CREATE_ACCOUNT),
+        FOLLOWS(Action.FOLLOW_USER),
+        OWNERSHIPS(Action.GRANT_GAME),
+        ;
+
+        final Action action;
+
+        Kind(Action action) {
+            this.action = action;
+        }
+
+        /** Name used on the command line and in checkpoint files */
+        String displayName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /** @return  the Kind with that display name, or null */
+        static Kind of(String name) {
+            for (Kind kind : values())
+                if (kind.displayName().equalsIgnoreCase(name)) return kind;
+            return null;
+        }
+    }
+
+    /** A CSV record, before validation */
+    private static final class Record {
+        final long line;
+        final String[] fields;
+
+        Record(long line, String[] fields) {
+            this.line = line;
+            this.fields = fields;
+        }
+    }
+
+    /** A validated row. Values are ordered like the Action's parameters */
+    private static final class Row {
+        final long line;
+        final String[] values;
+
+        Row(long line, String[] values) {
+            this.line = line;
+            this.values = values;
+        }
+    }
+
+    /** A validated chunk of records */
+    private static final class Chunk {
+        final List<Row> rows;
+        /** Line and reason of each record that failed validation */
+        final List<String> errors;
+        /** Number of records in the file up to and including this chunk */
+        final long recordsThrough;
+
+        Chunk(List<Row> rows, List<String> errors, long recordsThrough) {
+            this.rows = rows;
+            this.errors = errors;
+            this.recordsThrough = recordsThrough;
+        }
+    }
+
+    private final Connection connection;
+    private final Kind kind;
+    private final Action action;
+    private final int chunkSize;
+    /** Destination of bulk copy, or null to call the stored procedure */
+    private final String bulkTable;
+    private final int threads;
+
+    private long imported = 0;
+    private long failed = 0;
+
+    /**
+     * @param connection  statements are expected to be cached by the connection, and are not closed here
+     * @param chunkSize  rows per transaction, at least 1
+     * @param bulkTable  table to bulk copy into, whose columns are named like the CSV header.
+     *                   Bulk copy skips the stored procedure. null to always use the stored procedure
+     */
+    BulkImporter(Connection connection, Kind kind, int chunkSize, String bulkTable) {
+        if (chunkSize < 1) throw new IllegalArgumentException("chunk size must be at least 1");
+        this.connection = connection;
+        this.kind = kind;
+        this.action = kind.action;
+        this.chunkSize = chunkSize;
+        this.bulkTable = bulkTable;
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Default location of the checkpoint file for a CSV file */
+    static Path defaultCheckpoint(Path csv) {
+        return csv.resolveSibling(csv.getFileName() + ".checkpoint");
+    }
+
+    /**
+     * Imports the file, resuming from the checkpoint if there is one, then prints a summary.
+     * @return  the number of rows that were invalid or failed
+     * @throws IOException  if the file cannot be read or is malformed, or the checkpoint is for another import
+     * @throws SQLException  if the transaction cannot be managed, ex. the connection was lost.
+     *                       The checkpoint then records the chunks committed so far
+     */
+    long run(Path csv, Path checkpoint) throws IOException, SQLException {
+        long start = System.nanoTime();
+        long skip = readCheckpoint(checkpoint, csv);
+        if (skip > 0) System.out.printf("Resuming after record %d%n", skip);
+
+        boolean bulk = bulkTable != null && connection.isWrapperFor(SQLServerConnection.class);
+        if (bulkTable != null && !bulk)
+            System.out.println("Bulk copy is not supported by this connection, calling the stored procedure instead");
+
+        var threadCount = new AtomicInteger();
+        ExecutorService validators = Executors.newFixedThreadPool(threads, r -> {
+            var thread = new Thread(r, "vapor-import-validator-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (var reader = new CsvReader(new InputStreamReader(Files.newInputStream(csv), StandardCharsets.UTF_8))) {
+            String[] header = reader.next();
+            if (header == null) throw new IOException(csv + " is empty, expected a header");
+            int[] columns = columns(header);
+
+            // validated in parallel, but written in file order
+            Deque<CompletableFuture<Chunk>> pending = new ArrayDeque<>();
+            List<Record> records = new ArrayList<>(chunkSize);
+            long recordCount = 0;
+            String[] fields;
+            while ((fields = reader.next()) != null) {
+                if (++recordCount <= skip) continue;
+                records.add(new Record(reader.line(), fields));
+                if (records.size() == chunkSize) {
+                    pending.add(validate(validators, records, recordCount, header.length, columns));
+                    records = new ArrayList<>(chunkSize);
+                    while (pending.size() > threads * 2)
+                        write(pending.remove().join(), bulk, csv, checkpoint);
+                }
+            }
+            if (!records.isEmpty())
+                pending.add(validate(validators, records, recordCount, header.length, columns));
+            while (!pending.isEmpty())
+                write(pending.remove().join(), bulk, csv, checkpoint);
+        } finally {
+            validators.shutdownNow();
+            connection.setAutoCommit(autoCommit);
+        }
+        Files.deleteIfExists(checkpoint);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Imported %d %s in %.2fs (%.0f/s), %d failed%n",
+                imported, kind.displayName(), seconds, imported / Math.max(seconds, 1e-9), failed);
+        return failed;
+    }
+
+    /**
+     * Finds the column of each of the Action's parameters.
+     * @throws IOException  if a parameter has no column
+     */
+    private int[] columns(String[] header) throws IOException {
+        int[] columns = new int[action.parameters.size()];
+        Set<String> missing = new LinkedHashSet<>();
+        for (int i = 0; i < columns.length; i++) {
+            String argName = action.parameters.get(i).argName;
+            columns[i] = -1;
+            for (int column = 0; column < header.length; column++)
+                if (header[column].strip().equalsIgnoreCase(argName)) columns[i] = column;
+            if (columns[i] < 0) missing.add(argName);
+        }
+        if (!missing.isEmpty())
+            throw new IOException(String.format("Header is missing the column(s) %s; %s needs %s",
+                    missing, kind.displayName(),
+                    action.parameters.stream().map(p -> p.argName).collect(Collectors.toList())));
+        return columns;
+    }
+
+    private CompletableFuture<Chunk> validate(ExecutorService validators, List<Record> records,
+                                              long recordsThrough, int fieldCount, int[] columns) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Row> rows = new ArrayList<>(records.size());
+            List<String> errors = new ArrayList<>();
+            for (Record record : records) {
+                String error = null;
+                String[] values = new String[columns.length];
+                if (record.fields.length != fieldCount) {
+                    error = String.format("expected %d fields, found %d", fieldCount, record.fields.length);
+                }
+                for (int i = 0; i < columns.length && error == null; i++) {
+                    var parameter = action.parameters.get(i);
+                    values[i] = record.fields[columns[i]].strip();
+                    for (Requirement requirement : parameter.requirements) {
+                        if (!requirement.accepts(values[i])) {
+                            error = String.format("'%s': %s", parameter.argName, requirement.getMessage());
+                            break;
+                        }
+                    }
+                }
+                if (error == null) rows.add(new Row(record.line, values));
+                else errors.add(String.format("Error on line %d: %s", record.line, error));
+            }
+            return new Chunk(rows, errors, recordsThrough);
+        }, validators);
+    }
+
+    /** Writes and commits the chunk, then moves the checkpoint past it */
+    private void write(Chunk chunk, boolean bulk, Path csv, Path checkpoint) throws SQLException, IOException {
+        for (String error : chunk.errors)
+            System.out.println(error);
+        failed += chunk.errors.size();
+        if (!chunk.rows.isEmpty()) {
+            try {
+                if (bulk) writeBulk(chunk.rows);
+                else writeBatch(chunk.rows);
+                connection.commit();
+                imported += chunk.rows.size();
+            } catch (SQLException e) {
+                connection.rollback();
+                writeRowByRow(chunk.rows);
+            }
+        }
+        writeCheckpoint(checkpoint, csv, chunk.recordsThrough);
+        System.out.printf("%d records done: %d imported, %d failed%n", chunk.recordsThrough, imported, failed);
+    }
+
+    private void writeBatch(List<Row> rows) throws SQLException {
+        CallableStatement cs = action.getCallableStatement(connection);
+        try {
+            for (Row row : rows) {
+                bind(cs, row);
+                cs.addBatch();
+            }
+            action.executeBatch(cs, rows.size());
+        } catch (SQLException e) {
+            cs.clearBatch();
+            throw e;
+        }
+    }
+
+    /** Commits each row on its own, reporting and skipping the ones that fail */
+    private void writeRowByRow(List<Row> rows) throws SQLException {
+        CallableStatement cs = action.getCallableStatement(connection);
+        for (Row row : rows) {
+            try {
+                if (action.outParameterIndex > 0) cs.setNull(action.outParameterIndex, Types.INTEGER);
+                arguments(row).executeUpdate(cs);
+                connection.commit();
+                imported++;
+            } catch (SQLException e) {
+                connection.rollback();
+                failed++;
+                System.out.printf("Error on line %d: %s%n", row.line, e.getMessage());
+            }
+        }
+    }
+
+    private void bind(CallableStatement cs, Row row) throws SQLException {
+        for (int i = 0; i < row.values.length; i++)
+            action.parameters.get(i).apply(cs, row.values[i]);
+        // the created ID is not needed, and OUT parameters cannot be batched
+        if (action.outParameterIndex > 0) cs.setNull(action.outParameterIndex, Types.INTEGER);
+    }
+
+    private Arguments arguments(Row row) {
+        Arguments args = action.arguments();
+        for (int i = 0; i < row.values.length; i++)
+            args.set(action.parameters.get(i), row.values[i]);
+        return args;
+    }
+
+    private void writeBulk(List<Row> rows) throws SQLException {
+        var options = new SQLServerBulkCopyOptions();
+        options.setBatchSize(rows.size());
+        options.setBulkCopyTimeout(0);
+        options.setCheckConstraints(true);
+        options.setFireTriggers(true);
+        try (var bulkCopy = new SQLServerBulkCopy(connection.unwrap(SQLServerConnection.class))) {
+            bulkCopy.setBulkCopyOptions(options);
+            bulkCopy.setDestinationTableName(bulkTable);
+            for (var parameter : action.parameters)
+                bulkCopy.addColumnMapping(parameter.argName, parameter.argName);
+            bulkCopy.writeToServer(new BulkRows(action.parameters, rows));
+        }
+    }
+
+    /** The rows of a chunk, in the form bulk copy reads them */
+    private static final class BulkRows implements ISQLServerBulkData {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Action.Parameter> parameters;
+        private final List<Row> rows;
+        private int position = -1;
+
+        BulkRows(List<Action.Parameter> parameters, List<Row> rows) {
+            this.parameters = parameters;
+            this.rows = rows;
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            Set<Integer> ordinals = new LinkedHashSet<>();
+            for (int i = 1; i <= parameters.size(); i++)
+                ordinals.add(i);
+            return ordinals;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return parameters.get(column - 1).argName;
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            switch (parameters.get(column - 1).type) {
+                case INT: return Types.INTEGER;
+                case MONEY: return Types.DECIMAL;
+                case DATE: return Types.DATE;
+                case DATETIME: return Types.TIMESTAMP;
+                default: return Types.NVARCHAR;
+            }
+        }
+
+        @Override
+        public int getPrecision(int column) {
+            switch (parameters.get(column - 1).type) {
+                case INT: return 10;
+                case MONEY: return 19;
+                case DATE: return 10;
+                case DATETIME: return 23;
+                default: return 4000;
+            }
+        }
+
+        @Override
+        public int getScale(int column) {
+            switch (parameters.get(column - 1).type) {
+                case MONEY: return 4;
+                case DATETIME: return 3;
+                default: return 0;
+            }
+        }
+
+        @Override
+        public Object[] getRowData() {
+            String[] values = rows.get(position).values;
+            Object[] data = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                switch (parameters.get(i).type) {
+                    case INT: data[i] = Integer.parseInt(values[i]); break;
+                    case MONEY: data[i] = new BigDecimal(values[i]); break;
+                    case DATE: data[i] = Date.valueOf(values[i]); break;
+                    case DATETIME: data[i] = Timestamp.valueOf(values[i]); break;
+                    default: data[i] = values[i];
+                }
+            }
+            return data;
+        }
+
+        @Override
+        public boolean next() {
+            return ++position < rows.size();
+        }
+    }
+
+    /**
+     * Reads the number of records already imported.
+     * @return  0 if there is no checkpoint
+     * @throws IOException  if the checkpoint cannot be read, or is for a different file or kind
+     */
+    private long readCheckpoint(Path checkpoint, Path csv) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(checkpoint, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        String file = null, kindName = null, records = null;
+        for (String line : lines) {
+            String[] split = line.split("=", 2);
+            if (split.length != 2) continue;
+            switch (split[0].strip()) {
+                case "file": file = split[1].strip(); break;
+                case "kind": kindName = split[1].strip(); break;
+                case "records": records = split[1].strip(); break;
+            }
+        }
+        if (!csv.toAbsolutePath().normalize().toString().equals(file) || !kind.displayName().equals(kindName))
+            throw new IOException(String.format("Checkpoint %s is for importing %s from %s; delete it to start over",
+                    checkpoint, kindName, file));
+        try {
+            return Long.parseLong(records);
+        } catch (NumberFormatException e) {
+            throw new IOException("Checkpoint " + checkpoint + " has an invalid record count: " + records);
+        }
+    }
+
+    /** Replaces the checkpoint atomically, so an interruption leaves either the old or the new one */
+    private void writeCheckpoint(Path checkpoint, Path csv, long records) throws IOException {
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.write(temp, Arrays.asList(
+                "file=" + csv.toAbsolutePath().normalize(),
+                "kind=" + kind.displayName(),
+                "records=" + records
+        ), StandardCharsets.UTF_8);
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
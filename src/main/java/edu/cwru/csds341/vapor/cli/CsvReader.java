@@ -0,0 +1,111 @@
+package edu.cwru.csds341.vapor.cli;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV records one at a time, so that files of any size can be streamed.
+ * <li>Fields are separated by commas. A field in double quotes may contain commas, line breaks, and "" for a quote.</li>
+ * <li>Records end with \n, \r\n or \r. Blank lines are skipped.</li>
+ * <li>A leading byte order mark is ignored.</li>
+ */
+final class CsvReader implements AutoCloseable {
+    private static final int EOF = -1;
+
+    private final Reader in;
+    private final char[] buffer = new char[1 << 16];
+    private int position = 0;
+    private int limit = 0;
+
+    /** Line of the next char to be read */
+    private long line = 1;
+    /** Line the last record returned by {@link #next()} started on */
+    private long recordLine = 0;
+    private boolean started = false;
+
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<>();
+
+    /** @param in  read directly, so it does not need to be buffered */
+    CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next record.
+     * @return  the record's fields, or null at the end of the input
+     * @throws IOException  if the input cannot be read, or ends inside a quoted field
+     */
+    String[] next() throws IOException {
+        int c = read();
+        if (!started) {
+            started = true;
+            if (c == '\uFEFF') c = read();
+        }
+        while (c == '\n' || c == '\r')
+            c = read();
+        if (c == EOF) return null;
+
+        recordLine = line;
+        fields.clear();
+        while (true) {
+            field.setLength(0);
+            if (c == '"') {
+                long quoteLine = line;
+                while (true) {
+                    c = read();
+                    if (c == EOF)
+                        throw new IOException("Quoted field starting on line " + quoteLine + " is never closed");
+                    if (c == '"' && (c = read()) != '"') break;
+                    field.append((char) c);
+                }
+            }
+            // an unquoted field, or anything between a closing quote and the next separator
+            while (c != ',' && c != '\n' && c != '\r' && c != EOF) {
+                field.append((char) c);
+                c = read();
+            }
+            fields.add(field.toString());
+            if (c != ',') break;
+            c = read();
+        }
+        if (c == '\r' && peek() == '\n') read();
+        return fields.toArray(new String[0]);
+    }
+
+    /** Line the last record returned by {@link #next()} started on, 1-based */
+    long line() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return EOF;
+        char c = buffer[position++];
+        if (c == '\n' || (c == '\r' && peek() != '\n')) line++;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) return EOF;
+        return buffer[position];
+    }
+
+    /** @return  false at the end of the input */
+    private boolean fill() throws IOException {
+        int count;
+        do {
+            count = in.read(buffer, 0, buffer.length);
+        } while (count == 0);
+        if (count < 0) return false;
+        position = 0;
+        limit = count;
+        return true;
+    }
+}
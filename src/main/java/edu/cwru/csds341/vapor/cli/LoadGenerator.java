@@ -0,0 +1,508 @@
+package edu.cwru.csds341.vapor.cli;
+
+import edu.cwru.csds341.vapor.common.Action;
+import edu.cwru.csds341.vapor.common.Action.Column;
+import edu.cwru.csds341.vapor.common.Action.Parameter;
+import edu.cwru.csds341.vapor.common.Arguments;
+import edu.cwru.csds341.vapor.common.AsyncActions.SqlFunction;
+import edu.cwru.csds341.vapor.common.Connections;
+import edu.cwru.csds341.vapor.common.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Simulates store users to measure how much load a deployment can take.
+ * <li>Each virtual user has its own connection, and repeatedly runs a {@link Flow}
+ *     picked at random by weight, modeled on how the GUI pages use the Actions.</li>
+ * <li>Closed loop (rate 0): each user starts its next flow as soon as the last one ends, after the think time.</li>
+ * <li>Open loop: flows arrive at a constant total rate on their own clock, whether or not a user is free to start them.
+ *     A flow's latency is counted from when it arrived, so a saturated server shows as queueing.
+ *     Flows that arrived before the end are still run, so the run can outlast its duration.</li>
+ * Latencies are kept per Action and per Flow, and reported as text and optionally JSON.
+ */
+final class LoadGenerator {
+    static final int DEFAULT_DURATION_SECONDS = 60;
+    static final String DEFAULT_USER_IDS = "1-100";
+    /** Games sampled at the start, to pick pages and searches from */
+    private static final int GAME_SAMPLE_SIZE = 10_000;
+    private static final int PAGE_SIZE = 50;
+    /** First page of a profile's comments, as the profile page requests it */
+    private static final int COMMENT_PAGE_SIZE = 50;
+    private static final LocalDateTime NEWEST_COMMENT = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    private static final long NO_MORE_ARRIVALS = Long.MIN_VALUE;
+
+    /** A sequence of Actions done by a user of one of the GUI pages */
+    enum Flow {
+        /** Store page: best sellers and the first page or two of games */
+        BROWSE(30),
+        /** Store page search */
+        SEARCH(15),
+        /** Game page: details, genres, friends who own it and whether it's owned */
+        GAME(30),
+        /** Purchase button: ownership check, then grant */
+        BUY(5),
+        /** Profile page: user info, comments and follows */
+        PROFILE(15),
+        /** Comment on a profile */
+        COMMENT(5),
+        ;
+
+        final int defaultWeight;
+
+        Flow(int defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+
+        String displayName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        static Map<Flow, Integer> defaultMix() {
+            Map<Flow, Integer> mix = new EnumMap<>(Flow.class);
+            for (Flow flow : values())
+                mix.put(flow, flow.defaultWeight);
+            return mix;
+        }
+
+        /**
+         * Parses a mix such as "browse=50,game=50". Flows that are not named get a weight of 0.
+         * @throws IllegalArgumentException  if a flow is unknown, a weight is not a non-negative integer or all are 0
+         */
+        static Map<Flow, Integer> parseMix(String text) {
+            Map<Flow, Integer> mix = new EnumMap<>(Flow.class);
+            for (Flow flow : values())
+                mix.put(flow, 0);
+            int total = 0;
+            for (String entry : text.split(",")) {
+                String[] parts = entry.split("=", 2);
+                Flow flow = null;
+                for (Flow candidate : values())
+                    if (candidate.displayName().equalsIgnoreCase(parts[0].strip())) flow = candidate;
+                if (flow == null || parts.length < 2)
+                    throw new IllegalArgumentException("Unknown flow '" + entry + "', expected one of "
+                            + Arrays.stream(values()).map(Flow::displayName).collect(Collectors.toList()));
+                int weight;
+                try {
+                    weight = Integer.parseInt(parts[1].strip());
+                } catch (NumberFormatException e) {
+                    weight = -1;
+                }
+                if (weight < 0) throw new IllegalArgumentException("Weight of " + flow.displayName() + " must be a non-negative integer");
+                mix.put(flow, weight);
+                total += weight;
+            }
+            if (total == 0) throw new IllegalArgumentException("The mix needs at least one positive weight");
+            return mix;
+        }
+    }
+
+    private final Path credentialsFile;
+    private final int users;
+    private final Duration duration;
+    /** Flows started per second, in total. 0 for closed loop */
+    private final double rate;
+    private final long thinkNanos;
+    /** Flows by cumulative weight */
+    private final Flow[] flows;
+    private final int[] cumulativeWeights;
+    private final int minUserId;
+    private final int maxUserId;
+
+    private final Map<Action, LatencyHistogram> actionLatencies = new EnumMap<>(Action.class);
+    private final AtomicLongArray actionErrors = new AtomicLongArray(Action.VALUES.size());
+    private final Map<Flow, LatencyHistogram> flowLatencies = new EnumMap<>(Flow.class);
+    /** {@link System#nanoTime()} at which each flow was meant to start, in open loop, then one {@link #NO_MORE_ARRIVALS} per user */
+    private final BlockingQueue<Long> arrivals = new LinkedBlockingQueue<>();
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private long elapsedNanos;
+
+    private int[] gameIds;
+    private String[] searchTerms;
+
+    /**
+     * @param userIds  range of existing user ids, as "MIN-MAX", that virtual users act as and visit
+     * @param rate  flows started per second, in total; 0 for closed loop
+     * @param think  pause between a user's flows in closed loop
+     * @throws IllegalArgumentException  if the user id range is malformed
+     */
+    LoadGenerator(Path credentialsFile, int users, Duration duration, double rate, Duration think,
+                  Map<Flow, Integer> mix, String userIds) {
+        this.credentialsFile = credentialsFile;
+        this.users = users;
+        this.duration = duration;
+        this.rate = rate;
+        this.thinkNanos = think.toNanos();
+        String[] range = userIds.split("-", 2);
+        try {
+            this.minUserId = Integer.parseInt(range[0].strip());
+            this.maxUserId = (range.length < 2) ? minUserId : Integer.parseInt(range[1].strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("User ids must be a range such as " + DEFAULT_USER_IDS);
+        }
+        if (minUserId < 0 || maxUserId < minUserId)
+            throw new IllegalArgumentException("User ids must be a range such as " + DEFAULT_USER_IDS);
+
+        List<Flow> weighted = new ArrayList<>();
+        List<Integer> cumulative = new ArrayList<>();
+        int total = 0;
+        for (var entry : mix.entrySet()) {
+            if (entry.getValue() == 0) continue;
+            total += entry.getValue();
+            weighted.add(entry.getKey());
+            cumulative.add(total);
+        }
+        this.flows = weighted.toArray(new Flow[0]);
+        this.cumulativeWeights = cumulative.stream().mapToInt(Integer::intValue).toArray();
+        for (Action action : Action.VALUES)
+            actionLatencies.put(action, new LatencyHistogram());
+        for (Flow flow : Flow.values())
+            flowLatencies.put(flow, new LatencyHistogram());
+    }
+
+    /**
+     * Opens a connection per user, samples the games to visit, then runs the users for the duration.
+     * @throws SQLException  if a connection cannot be opened, or the games cannot be sampled
+     * @throws IOException  if the credentials file cannot be read
+     */
+    void run() throws SQLException, IOException, InterruptedException {
+        List<VirtualUser> virtualUsers = new ArrayList<>(users);
+        try {
+            System.out.printf("Opening %d connections%n", users);
+            var random = new SplittableRandom();
+            for (int i = 0; i < users; i++) {
+                Connection connection = Connections.fromFile(credentialsFile);
+                if (connection == null) throw new SQLException("Load cannot be generated in debug mode, as there is no database connection");
+                virtualUsers.add(new VirtualUser(connection, random.split()));
+            }
+            sampleGames(virtualUsers.get(0));
+            System.out.printf("Running %d users for %ds, %s%n", users, duration.toSeconds(),
+                    (rate > 0) ? String.format("starting %.1f flows/s", rate) : "closed loop");
+
+            List<Thread> threads = new ArrayList<>(users);
+            startNanos = System.nanoTime();
+            endNanos = startNanos + duration.toNanos();
+            if (rate > 0) {
+                Thread thread = new Thread(this::scheduleArrivals, "vapor-load-arrivals");
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+            for (int i = 0; i < users; i++) {
+                Thread thread = new Thread(virtualUsers.get(i)::run, "vapor-load-user-" + (i + 1));
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads)
+                thread.join();
+            elapsedNanos = System.nanoTime() - startNanos;
+        } finally {
+            for (VirtualUser user : virtualUsers)
+                user.close();
+        }
+    }
+
+    /** Queues the start time of each flow at the rate until the end, independently of how fast the users run them */
+    private void scheduleArrivals() {
+        long intervalNanos = (long) (1e9 / rate);
+        for (long n = 0; ; n++) {
+            long start = startNanos + n * intervalNanos;
+            if (start >= endNanos) break;
+            for (long wait = start - System.nanoTime(); wait > 0; wait = start - System.nanoTime())
+                LockSupport.parkNanos(wait);
+            arrivals.add(start);
+        }
+        for (int i = 0; i < users; i++)
+            arrivals.add(NO_MORE_ARRIVALS);
+    }
+
+    /** Reads up to {@link #GAME_SAMPLE_SIZE} games, for their ids and words of their names */
+    private void sampleGames(VirtualUser user) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        List<String> terms = new ArrayList<>();
+        int lastId = 0;
+        while (ids.size() < GAME_SAMPLE_SIZE) {
+            var cs = user.statement(Action.LIST_GAMES_PAGE);
+            var args = Action.LIST_GAMES_PAGE.arguments()
+                    .setInt(Parameter.LGP_AFTER_ID, lastId)
+                    .setInt(Parameter.LGP_LIMIT, 1000);
+            int before = ids.size();
+            try (var result = args.executeQuery(cs)) {
+                var rows = result.rows();
+                while (rows.next()) {
+                    lastId = rows.getInt(Column.GAME_ID);
+                    ids.add(lastId);
+                    String name = rows.getString(Column.GAME_NAME);
+                    if (name != null && !name.isBlank()) terms.add(name.strip().split("\\s+")[0]);
+                }
+            }
+            if (ids.size() == before) break;
+        }
+        if (ids.isEmpty()) throw new SQLException("There are no games to visit");
+        gameIds = ids.stream().mapToInt(Integer::intValue).toArray();
+        searchTerms = terms.isEmpty() ? new String[] {"a"} : terms.toArray(new String[0]);
+    }
+
+    /** One simulated user, with its own connection and statements */
+    private final class VirtualUser {
+        private final Connection connection;
+        private final SplittableRandom random;
+        private final int userId;
+        private final Map<Action, CallableStatement> statements = new EnumMap<>(Action.class);
+
+        VirtualUser(Connection connection, SplittableRandom random) {
+            this.connection = connection;
+            this.random = random;
+            this.userId = randomUserId(random);
+        }
+
+        void run() {
+            while (true) {
+                long start;
+                if (rate > 0) {
+                    try {
+                        start = arrivals.take();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (start == NO_MORE_ARRIVALS) return;
+                } else {
+                    start = System.nanoTime();
+                    if (start >= endNanos) return;
+                }
+                Flow flow = nextFlow();
+                perform(flow);
+                flowLatencies.get(flow).record(System.nanoTime() - start);
+                if (rate == 0 && thinkNanos > 0) LockSupport.parkNanos(thinkNanos);
+            }
+        }
+
+        private Flow nextFlow() {
+            int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < flows.length; i++)
+                if (pick < cumulativeWeights[i]) return flows[i];
+            return flows[flows.length - 1];
+        }
+
+        private void perform(Flow flow) {
+            int gameId = gameIds[random.nextInt(gameIds.length)];
+            int profileId = randomUserId(random);
+            switch (flow) {
+                case BROWSE: {
+                    call(Action.LIST_N_BEST_SELLING.arguments().setInt(Parameter.VTSG_LIMIT, 10), ResultSet::next);
+                    Integer lastId = call(gamesPage(0), this::lastGameId);
+                    if (lastId != null && random.nextBoolean()) call(gamesPage(lastId), this::lastGameId);
+                    break;
+                }
+                case SEARCH:
+                    call(Action.SEARCH_GAMES.arguments()
+                            .setString(Parameter.SG_NAME, searchTerms[random.nextInt(searchTerms.length)])
+                            .setInt(Parameter.SG_AFTER_ID, 0)
+                            .setInt(Parameter.SG_LIMIT, PAGE_SIZE), this::lastGameId);
+                    break;
+                case GAME:
+                    call(Action.VIEW_GAME_DETAILS.arguments().setInt(Parameter.VGD_GAMEID, gameId), ResultSet::next);
+                    call(Action.LIST_GAME_GENRES.arguments().setInt(Parameter.LGG_GAMEID, gameId), LoadGenerator::drain);
+                    call(Action.LIST_FOLLOWED_THAT_OWN_GAME.arguments()
+                            .setInt(Parameter.VFUOG_USERID, userId)
+                            .setInt(Parameter.VFUOG_GAMEID, gameId), LoadGenerator::drain);
+                    call(isGameOwned(gameId), ResultSet::next);
+                    break;
+                case BUY: {
+                    Boolean owned = call(isGameOwned(gameId), ResultSet::next);
+                    if (Boolean.FALSE.equals(owned)) {
+                        call(Action.GRANT_GAME.arguments()
+                                .setInt(Parameter.GG_USERID, userId)
+                                .setInt(Parameter.GG_GAMEID, gameId)
+                                .setDate(Parameter.GG_DATE, LocalDate.now()), null);
+                    }
+                    break;
+                }
+                case PROFILE:
+                    call(Action.VIEW_PROFILE_HEADER.arguments()
+                            .setInt(Parameter.VPH_VIEWER_ID, userId)
+                            .setInt(Parameter.VPH_USER_ID, profileId), ResultSet::next);
+                    call(Action.LIST_PROFILE_COMMENTS_PAGE.arguments()
+                            .setInt(Parameter.GPCP_USERID, profileId)
+                            .setDateTime(Parameter.GPCP_BEFORE_DATETIME, NEWEST_COMMENT)
+                            .setInt(Parameter.GPCP_BEFORE_ID, Integer.MAX_VALUE)
+                            .setInt(Parameter.GPCP_LIMIT, COMMENT_PAGE_SIZE), LoadGenerator::drain);
+                    call(Action.LIST_FOLLOWED.arguments().setInt(Parameter.LFD_USER_ID, profileId), LoadGenerator::drain);
+                    break;
+                case COMMENT:
+                    call(Action.MAKE_COMMENT.arguments()
+                            .setInt(Parameter.MC_COMMENTER_ID, userId)
+                            .setInt(Parameter.MC_PROFILE_ID, profileId)
+                            .setDateTime(Parameter.MC_DATETIME, LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS))
+                            .setString(Parameter.MC_MESSAGE, "load test"), null);
+                    break;
+            }
+        }
+
+        private Arguments gamesPage(int afterId) {
+            return Action.LIST_GAMES_PAGE.arguments()
+                    .setInt(Parameter.LGP_AFTER_ID, afterId)
+                    .setInt(Parameter.LGP_LIMIT, PAGE_SIZE);
+        }
+
+        private Arguments isGameOwned(int gameId) {
+            return Action.IS_GAME_OWNED.arguments()
+                    .setInt(Parameter.IGO_USERID, userId)
+                    .setInt(Parameter.IGO_GAMEID, gameId);
+        }
+
+        /** @return  the id of the last game in a page, or null if it is empty */
+        private Integer lastGameId(ResultSet resultSet) throws SQLException {
+            var rows = Action.LIST_GAMES_PAGE.rows(resultSet);
+            Integer last = null;
+            while (rows.next())
+                last = rows.getInt(Column.GAME_ID);
+            return last;
+        }
+
+        /**
+         * Performs the Action, recording its latency or failure.
+         * @param reader  reads a QUERY's results; ignored for other Actions
+         * @return  what the reader returned, or null if the Action failed or is not a QUERY
+         */
+        private <T> T call(Arguments args, SqlFunction<ResultSet, T> reader) {
+            Action action = args.action;
+            long start = System.nanoTime();
+            try {
+                var cs = statement(action);
+                T result = null;
+                if (action.type == Action.AType.QUERY) {
+                    try (var query = args.executeQuery(cs)) {
+                        result = reader.apply(query.resultSet());
+                    }
+                } else {
+                    if (action.type == Action.AType.INSERT_ID)
+                        cs.registerOutParameter(action.outParameterIndex, Types.INTEGER);
+                    args.executeUpdate(cs);
+                }
+                actionLatencies.get(action).record(System.nanoTime() - start);
+                return result;
+            } catch (SQLException e) {
+                actionErrors.incrementAndGet(action.ordinal());
+                return null;
+            }
+        }
+
+        CallableStatement statement(Action action) throws SQLException {
+            var cs = statements.get(action);
+            if (cs == null) {
+                cs = action.getCallableStatement(connection);
+                statements.put(action, cs);
+            }
+            return cs;
+        }
+
+        void close() {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    private int randomUserId(SplittableRandom random) {
+        return (int) random.nextLong(minUserId, maxUserId + 1L);
+    }
+
+    /** Reads every row, as the GUI would */
+    private static Void drain(ResultSet resultSet) throws SQLException {
+        while (resultSet.next()) {
+        }
+        return null;
+    }
+
+    /** Prints throughput and latency percentiles, in milliseconds, for each Action and Flow that ran */
+    void printReport(PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%-28s %9s %7s %9s %9s %9s %9s %9s%n", "action", "count", "errors", "per sec", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (Action action : Action.VALUES) {
+            var latencies = actionLatencies.get(action);
+            long errors = actionErrors.get(action.ordinal());
+            if (latencies.count() == 0 && errors == 0) continue;
+            printRow(out, action.name(), latencies, errors, seconds);
+        }
+        out.println();
+        out.printf("%-28s %9s %7s %9s %9s %9s %9s %9s%n", "flow", "count", "", "per sec", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (Flow flow : Flow.values()) {
+            var latencies = flowLatencies.get(flow);
+            if (latencies.count() > 0) printRow(out, flow.displayName(), latencies, -1, seconds);
+        }
+    }
+
+    private static void printRow(PrintStream out, String name, LatencyHistogram latencies, long errors, double seconds) {
+        out.printf("%-28s %9d %7s %9.1f %9.2f %9.2f %9.2f %9.2f%n", name, latencies.count(),
+                (errors < 0) ? "" : Long.toString(errors), latencies.count() / seconds,
+                latencies.percentile(50) / 1e6, latencies.percentile(95) / 1e6,
+                latencies.percentile(99) / 1e6, latencies.max() / 1e6);
+    }
+
+    /** Writes the same figures as {@link #printReport(PrintStream)} as a JSON object */
+    void writeJsonReport(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(String.format(Locale.ROOT, "{\"users\":%d,\"rate\":%s,\"seconds\":%.3f,\"actions\":{",
+                    users, (rate > 0) ? Double.toString(rate) : "null", elapsedNanos / 1e9));
+            boolean first = true;
+            for (Action action : Action.VALUES) {
+                var latencies = actionLatencies.get(action);
+                long errors = actionErrors.get(action.ordinal());
+                if (latencies.count() == 0 && errors == 0) continue;
+                if (!first) out.write(',');
+                first = false;
+                writeJsonEntry(out, action.name(), latencies);
+                out.write(",\"errors\":" + errors + "}");
+            }
+            out.write("},\"flows\":{");
+            first = true;
+            for (Flow flow : Flow.values()) {
+                var latencies = flowLatencies.get(flow);
+                if (latencies.count() == 0) continue;
+                if (!first) out.write(',');
+                first = false;
+                writeJsonEntry(out, flow.displayName(), latencies);
+                out.write('}');
+            }
+            out.write("}}\n");
+        }
+    }
+
+    /** Writes the name and an unterminated object of the figures. Names are identifiers, so need no escaping */
+    private void writeJsonEntry(Writer out, String name, LatencyHistogram latencies) throws IOException {
+        out.write(String.format(Locale.ROOT,
+                "\"%s\":{\"count\":%d,\"per_second\":%.3f,\"p50_ms\":%.3f,\"p95_ms\":%.3f,\"p99_ms\":%.3f,\"max_ms\":%.3f",
+                name, latencies.count(), latencies.count() / (elapsedNanos / 1e9),
+                latencies.percentile(50) / 1e6, latencies.percentile(95) / 1e6,
+                latencies.percentile(99) / 1e6, latencies.max() / 1e6));
+    }
+}
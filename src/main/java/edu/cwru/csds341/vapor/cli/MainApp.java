@@ -1,18 +1,34 @@
 package edu.cwru.csds341.vapor.cli;
 
 import edu.cwru.csds341.vapor.common.Action;
+import edu.cwru.csds341.vapor.common.ActionMetrics;
+import edu.cwru.csds341.vapor.common.Arguments;
 import edu.cwru.csds341.vapor.common.Connections;
+import edu.cwru.csds341.vapor.common.ConnectionPool;
+import edu.cwru.csds341.vapor.common.ReferenceData;
 import edu.cwru.csds341.vapor.common.Requirement;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.AccessDeniedException;
+import java.nio.file.InvalidPathException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.sql.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class MainApp {
 
+    /** Parameters whose value is an ESRB rating id */
+    private static final Set<Action.Parameter> ESRB_PARAMETERS = EnumSet.of(
+            Action.Parameter.AG_ESRB_RATING_ID,
+            Action.Parameter.LGE_RATINGID
+    );
 
     private static void greetUser() {
         System.out.println("Welcome to the Vapor Game Store CLI");
@@ -26,6 +42,9 @@ public class MainApp {
         System.out.printf(format, "help", "print list of commands");
         System.out.printf(format, "exit", "quit the application");
         System.out.printf(format, "cancel", "while filling out fields, cancel the command");
+        System.out.printf(format, "refresh", "reload the ESRB ratings and genres");
+        System.out.printf(format, "export", "write the results of a list command to a .csv or .jsonl file (.gz to compress)");
+        System.out.printf(format, "stats", "show the calls, errors, rows and latency of each command performed");
         for (Action value : Action.VALUES) {
             System.out.printf(format, value.shortName, value.description);
         }
@@ -37,11 +56,14 @@ public class MainApp {
      * Returns the mapping between Parameters and user inputs.
      * @param scanner  where to take user input from
      * @param parameters  the parameters to query the user for
+     * @param references  used to list the choices for ESRB rating parameters
      * @return  Empty if user cancelled, or Map of parameters to the user's response
      */
-    private static Optional<Map<Action.Parameter, String>> promptUserForParameters(Scanner scanner, List<Action.Parameter> parameters) {
+    private static Optional<Map<Action.Parameter, String>> promptUserForParameters(Scanner scanner, List<Action.Parameter> parameters, ReferenceData references) {
         Map<Action.Parameter, String> userInputs = new HashMap<>(parameters.size());
         for (Action.Parameter parameter : parameters) {
+            if (ESRB_PARAMETERS.contains(parameter) && references.isLoaded())
+                System.out.println("ESRB ratings: " + references.esrbRatings());
             boolean valid = false;
             String input = null;
             while (! valid) {
@@ -74,97 +96,354 @@ public class MainApp {
 
     /**
      * Call after validating the Action and userInputs.
-     * Retrieves the callable statement, prepares it, executes,
-     * and displays results according to the type of statement
-     * @param connection  the DB connection
+     * Performs the Action with {@link #performAction}, reporting any error to the user
+     * @param connection  the DB connection. Its statements are cached, so they are not closed here
      * @param action  the Action to perform
      * @param userInputs  the parameters
      * @throws SQLException  while getting the CallableStatement, setting the parameters or executing it
      */
     private static void executeAction(Connection connection, Action action, Map<Action.Parameter, String> userInputs) throws SQLException {
-        try (CallableStatement cs = action.getCallableStatement(connection)) {
-            Action.applyAll(cs, userInputs);
-            switch (action.type) {
-                case INSERT_ID:
-                    // out param is, by our convention, the last column
-                    int colCount = cs.getMetaData().getColumnCount();
-                    cs.registerOutParameter(colCount, Types.INTEGER);
-                    cs.executeUpdate();
-                    System.out.printf("ID of new item: %d\n", cs.getInt(colCount));
-                    break;
-                case UPDATE:
-                case INSERT:
-                case DELETE:
-                    // nothing specific to report
-                    cs.executeUpdate();
-                    break;
-                case QUERY:
-                    var resultSet = cs.executeQuery();
-                    performQuery(action, resultSet);
-                    break;
-            }
+        try {
+            performAction(connection, action, userInputs);
         } catch (SQLException e) {
             System.out.println("Error occurred while performing command: " + e.getMessage());
         }
     }
 
-    private static void performQuery(Action action, ResultSet resultSet) throws SQLException {
-        System.out.printf("Results for: %s%n", action.description);
+    /**
+     * Executes the Action and displays its results according to the type of statement.
+     * @throws SQLException  while getting the CallableStatement, setting the parameters or executing it
+     */
+    static void performAction(Connection connection, Action action, Map<Action.Parameter, String> userInputs) throws SQLException {
+        CallableStatement cs = action.getCallableStatement(connection);
+        Arguments args = arguments(action, userInputs);
+        switch (action.type) {
+            case INSERT_ID:
+                cs.registerOutParameter(action.outParameterIndex, Types.INTEGER);
+                args.executeUpdate(cs);
+                System.out.printf("ID of new item: %d\n", cs.getInt(action.outParameterIndex));
+                break;
+            case UPDATE:
+            case INSERT:
+            case DELETE:
+                // nothing specific to report
+                args.executeUpdate(cs);
+                break;
+            case QUERY:
+                cs.setFetchSize(TablePrinter.FETCH_SIZE);
+                try (var result = args.executeQuery(cs)) {
+                    long rows = performQuery(action, result.resultSet());
+                    result.setRowCount(rows);
+                    ActionMetrics.global().addRows(action, rows);
+                }
+                break;
+        }
+    }
 
-        // first gather all results, keeping track of the max width for each column (include labels row!)
-        // then compute a format string
-        // then print each row
+    /** The user's inputs as the Action's arguments */
+    private static Arguments arguments(Action action, Map<Action.Parameter, String> userInputs) {
+        Arguments args = action.arguments();
+        userInputs.forEach(args::set);
+        return args;
+    }
 
-        var metadata = resultSet.getMetaData();
-        int columnCount = resultSet.getMetaData().getColumnCount();
+    /** @return  the number of rows printed */
+    private static long performQuery(Action action, ResultSet resultSet) throws SQLException {
+        System.out.printf("Results for: %s%n", action.description);
+        return TablePrinter.print(resultSet);
+    }
+
+    /**
+     * Performs a QUERY Action and writes its results to a file, see {@link ResultExporter}.
+     * @param file  its extension chooses the format
+     * @param fetchSize  rows fetched from the DB per round trip
+     * @throws SQLException  while getting the CallableStatement, setting the parameters or executing it
+     * @throws IOException  if the file cannot be written
+     */
+    static void exportQuery(Connection connection, Action action, Map<Action.Parameter, String> userInputs,
+                            Path file, int fetchSize) throws SQLException, IOException {
+        var exporter = new ResultExporter(file);
+        long start = System.nanoTime();
+        CallableStatement cs = action.getCallableStatement(connection);
+        Arguments args = arguments(action, userInputs);
+        cs.setFetchSize(fetchSize);
+        long rows;
+        try (var result = args.executeQuery(cs)) {
+            rows = exporter.export(result.resultSet(), file);
+            result.setRowCount(rows);
+        }
+        ActionMetrics.global().addRows(action, rows);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Exported %d rows to %s in %.2fs (%.0f/s)%n", rows, file, seconds, rows / Math.max(seconds, 1e-9));
+    }
 
-        List<String[]> rows = new ArrayList<>();
-        // max width for each column, updated when collecting each row
-        int[] maxWidth = new int[columnCount];
+    /** Prints the metrics of each Action performed since start-up */
+    private static void printStats(ActionMetrics metrics) {
+        System.out.printf("%-28s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "action", "calls", "errors", "rows", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        boolean any = false;
+        for (Action action : Action.VALUES) {
+            var stats = metrics.stats(action);
+            if (stats.getCalls() == 0) continue;
+            any = true;
+            System.out.printf("%-28s %9d %7d %9d %9.2f %9.2f %9.2f %9.2f %9.2f%n", action.name(),
+                    stats.getCalls(), stats.getErrors(), stats.getRows(), stats.getMeanMillis(),
+                    stats.getP50Millis(), stats.getP95Millis(), stats.getP99Millis(), stats.getMaxMillis());
+        }
+        if (!any) System.out.println("No commands performed yet");
+    }
 
-        String[] labels = new String[columnCount];
-        for (int i = 1; i <= columnCount; i++) {
-            String columnLabel = metadata.getColumnLabel(i);
-            labels[i-1] = columnLabel;
-            maxWidth[i-1] = Math.max(maxWidth[i-1], columnLabel.length());
+    /** Prompts for a list command, its parameters and a file, then exports the command's results */
+    private static void promptExport(Scanner scanner, Connection connection, ReferenceData references, int fetchSize) {
+        System.out.print("Enter a list command to export: ");
+        var line = scanner.nextLine().strip();
+        var action = Action.VALUES.stream()
+                .filter(a -> a.shortName.equalsIgnoreCase(line))
+                .findAny()
+                .orElse(null);
+        if (action == null || action.type != Action.AType.QUERY) {
+            System.out.println("Only list commands can be exported");
+            return;
         }
-        rows.add(labels);
+        var userInputs = promptUserForParameters(scanner, action.parameters, references);
+        if (userInputs.isEmpty()) return;
 
-        while (resultSet.next()) {
-            String[] row = new String[columnCount];
-            for (int i = 1; i <= columnCount; i++) {
-                String columnVal = resultSet.getString(i);
-                row[i-1] = columnVal;
-                maxWidth[i-1] = Math.max(maxWidth[i-1], columnVal.length());
+        Path file = null;
+        while (file == null) {
+            System.out.print("Enter the file to write (.csv or .jsonl, add .gz to compress): ");
+            try {
+                file = Path.of(scanner.nextLine().strip());
+            } catch (InvalidPathException e) {
+                System.out.println("Error: " + e.getMessage());
+                continue;
+            }
+            if (ResultExporter.Format.forFile(file) == null) {
+                System.out.println("Error: the file must end in .csv, .jsonl, .csv.gz or .jsonl.gz");
+                file = null;
             }
-            rows.add(row);
         }
+        try {
+            exportQuery(connection, action, userInputs.get(), file, fetchSize);
+        } catch (SQLException e) {
+            System.out.println("Error occurred while performing command: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Error occurred while writing " + file + ": " + e);
+        }
+    }
 
-        if (rows.size() == 1) {
-            System.out.println("No results");
-            return;
+    /**
+     * Reloads the lookup tables if they are stale, or always if forced.
+     * Failures are reported but not fatal, as the tables are only informative here.
+     */
+    private static void refreshReferences(ReferenceData references, Connection connection, boolean force) {
+        try {
+            if (force) references.refresh(connection);
+            else references.refreshIfStale(connection);
+        } catch (SQLException e) {
+            System.out.println("Could not load ESRB ratings and genres: " + e.getMessage());
         }
+    }
 
-        // format string for each column. computed after all rows were collected
-        StringBuilder formatStringBuilder = new StringBuilder(columnCount * 8); // simple heuristic
+    private static void printUsage() {
+        System.out.println("Usage: [credentials file] [--script FILE|-] [--batch-size N] [--commit-every N] [--fetch-size N]");
+        System.out.println("       [credentials file] --import KIND FILE [--chunk-size N] [--checkpoint FILE] [--bulk-table TABLE]");
+        System.out.println("       [credentials file] --load N [--duration SECONDS] [--rate N] [--think MILLIS] [--mix FLOW=WEIGHT,...] [--user-ids MIN-MAX] [--report FILE]");
+        System.out.println("   --script        run the commands in FILE ('-' for standard input) instead of prompting");
+        System.out.printf ("   --batch-size    most INSERT/UPDATE/DELETE commands sent together (default %d)%n", ScriptRunner.DEFAULT_BATCH_SIZE);
+        System.out.printf ("   --commit-every  commands run between commits (default %d)%n", ScriptRunner.DEFAULT_COMMIT_INTERVAL);
+        System.out.printf ("   --import        import the CSV FILE of KIND, one of %s%n",
+                Arrays.stream(BulkImporter.Kind.values()).map(BulkImporter.Kind::displayName).collect(Collectors.toList()));
+        System.out.printf ("   --chunk-size    rows imported per transaction (default %d)%n", BulkImporter.DEFAULT_CHUNK_SIZE);
+        System.out.println("   --checkpoint    where import progress is saved (default FILE.checkpoint)");
+        System.out.println("   --bulk-table    bulk copy into TABLE, whose columns are named like the CSV header, instead of calling the stored procedure");
+        System.out.printf ("   --fetch-size    rows fetched per round trip by 'export' (default %d)%n", ResultExporter.DEFAULT_FETCH_SIZE);
+        System.out.println("   --load          simulate N store users, each with its own connection, and report latencies");
+        System.out.printf ("   --duration      seconds to run the load for (default %d)%n", LoadGenerator.DEFAULT_DURATION_SECONDS);
+        System.out.println("   --rate          start N flows per second in total (open loop), instead of each user starting its next when done");
+        System.out.println("   --think         milliseconds each user pauses between flows, without --rate");
+        System.out.printf ("   --mix           weights of the flows, ex. browse=30,game=30 (default %s)%n", LoadGenerator.Flow.defaultMix()
+                .entrySet().stream().map(e -> e.getKey().displayName() + "=" + e.getValue()).collect(Collectors.joining(",")));
+        System.out.printf ("   --user-ids      range of existing user ids to act as and visit (default %s)%n", LoadGenerator.DEFAULT_USER_IDS);
+        System.out.println("   --report        also write the load report to FILE as JSON");
+    }
 
-        for (int columnWidth : maxWidth)
-            formatStringBuilder.append("%-").append(columnWidth + 1).append("s  ");
+    /** Parses a positive int option, or returns -1 after printing the problem */
+    private static int positiveOption(String name, String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) return parsed;
+        } catch (NumberFormatException ignored) {
+        }
+        System.out.println("Value of " + name + " must be a positive integer, was '" + value + "'");
+        return -1;
+    }
 
-        var formatString = formatStringBuilder.append("\n").toString();
+    /**
+     * Runs a script of commands, see {@link ScriptRunner}.
+     * @return  whether every command succeeded
+     */
+    private static boolean runScript(Connection connection, String script, int batchSize, int commitInterval, int fetchSize) throws SQLException {
+        if (connection == null) {
+            System.out.println("Scripts cannot be run in debug mode, as there is no database connection");
+            return false;
+        }
+        var runner = new ScriptRunner(connection, batchSize, commitInterval, fetchSize);
+        try (BufferedReader reader = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(script))
+        ) {
+            return runner.run(reader) == 0;
+        } catch (NoSuchFileException e) {
+            System.out.println("Script file '" + e.getFile() + "' does not exist");
+        } catch (IOException e) {
+            System.out.println("Failed while reading the script.");
+            System.out.println(e);
+        }
+        return false;
+    }
 
-        for (String[] row : rows)
-            System.out.printf(formatString, (Object[]) row);
+    /**
+     * Imports a CSV file, see {@link BulkImporter}.
+     * @return  whether every row was imported
+     */
+    private static boolean runImport(Connection connection, BulkImporter.Kind kind, Path file, Path checkpoint,
+                                     int chunkSize, String bulkTable) throws SQLException {
+        if (connection == null) {
+            System.out.println("Imports cannot be run in debug mode, as there is no database connection");
+            return false;
+        }
+        var importer = new BulkImporter(connection, kind, chunkSize, bulkTable);
+        try {
+            return importer.run(file, (checkpoint == null) ? BulkImporter.defaultCheckpoint(file) : checkpoint) == 0;
+        } catch (NoSuchFileException e) {
+            System.out.println("Import file '" + e.getFile() + "' does not exist");
+        } catch (IOException e) {
+            System.out.println("Failed while importing: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Generates load, see {@link LoadGenerator}, then prints and optionally writes the report.
+     * @param connection  only checked for debug mode, as each virtual user opens its own
+     * @return  whether the load ran to the end
+     */
+    private static boolean runLoad(Connection connection, LoadGenerator load, Path report) throws SQLException {
+        if (connection == null) {
+            System.out.println("Load cannot be generated in debug mode, as there is no database connection");
+            return false;
+        }
+        try {
+            load.run();
+        } catch (IOException e) {
+            System.out.println("Failed while trying to open credentials file.");
+            System.out.println(e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        load.printReport(System.out);
+        if (report == null) return true;
+        try {
+            load.writeJsonReport(report);
+            System.out.println("Report written to " + report);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Failed while writing the report: " + e);
+            return false;
+        }
+    }
+
+    /** Prints the problem, if any, and the usage, then exits */
+    private static void exitWithUsage(String problem) {
+        if (!problem.isEmpty()) System.out.println(problem);
+        printUsage();
+        System.exit(2);
     }
 
     public static void main(String[] args) {
-        Path credentialsFile = (args.length==0)
-                ? Connections.CREDENTIALS_DIR.resolve("cli.credentials")
-                : Path.of(args[0]);
+        Path credentialsFile = Connections.CREDENTIALS_DIR.resolve("cli.credentials");
+        String script = null;
+        int batchSize = ScriptRunner.DEFAULT_BATCH_SIZE;
+        int commitInterval = ScriptRunner.DEFAULT_COMMIT_INTERVAL;
+        BulkImporter.Kind importKind = null;
+        Path importFile = null;
+        Path checkpoint = null;
+        int chunkSize = BulkImporter.DEFAULT_CHUNK_SIZE;
+        String bulkTable = null;
+        int fetchSize = ResultExporter.DEFAULT_FETCH_SIZE;
+        int loadUsers = 0;
+        int loadDuration = LoadGenerator.DEFAULT_DURATION_SECONDS;
+        int loadRate = 0;
+        int thinkMillis = 0;
+        String mix = null;
+        String userIds = LoadGenerator.DEFAULT_USER_IDS;
+        Path report = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            int valueCount = arg.equals("--import") ? 2 : (arg.startsWith("--") ? 1 : 0);
+            if (i + valueCount >= args.length) exitWithUsage("Missing value for " + arg);
+            switch (arg) {
+                case "--script": script = args[++i]; break;
+                case "--batch-size": batchSize = positiveOption(arg, args[++i]); break;
+                case "--commit-every": commitInterval = positiveOption(arg, args[++i]); break;
+                case "--import":
+                    importKind = BulkImporter.Kind.of(args[++i]);
+                    if (importKind == null) exitWithUsage("Unknown import kind " + args[i]);
+                    importFile = Path.of(args[++i]);
+                    break;
+                case "--chunk-size": chunkSize = positiveOption(arg, args[++i]); break;
+                case "--checkpoint": checkpoint = Path.of(args[++i]); break;
+                case "--bulk-table": bulkTable = args[++i]; break;
+                case "--fetch-size": fetchSize = positiveOption(arg, args[++i]); break;
+                case "--load": loadUsers = positiveOption(arg, args[++i]); break;
+                case "--duration": loadDuration = positiveOption(arg, args[++i]); break;
+                case "--rate": loadRate = positiveOption(arg, args[++i]); break;
+                case "--think": thinkMillis = positiveOption(arg, args[++i]); break;
+                case "--mix": mix = args[++i]; break;
+                case "--user-ids": userIds = args[++i]; break;
+                case "--report": report = Path.of(args[++i]); break;
+                default:
+                    if (arg.startsWith("--")) exitWithUsage("Unknown option " + arg);
+                    credentialsFile = Path.of(arg);
+            }
+            if (batchSize < 0 || commitInterval < 0 || chunkSize < 0 || fetchSize < 0
+                    || loadUsers < 0 || loadDuration < 0 || loadRate < 0 || thinkMillis < 0) exitWithUsage("");
+        }
+        int modes = (script != null ? 1 : 0) + (importFile != null ? 1 : 0) + (loadUsers > 0 ? 1 : 0);
+        if (modes > 1) exitWithUsage("Only one of --script, --import and --load can be given");
+        LoadGenerator load = null;
+        if (loadUsers > 0) {
+            try {
+                load = new LoadGenerator(credentialsFile, loadUsers, Duration.ofSeconds(loadDuration), loadRate,
+                        Duration.ofMillis(thinkMillis),
+                        (mix == null) ? LoadGenerator.Flow.defaultMix() : LoadGenerator.Flow.parseMix(mix), userIds);
+            } catch (IllegalArgumentException e) {
+                exitWithUsage(e.getMessage());
+            }
+        }
+
+        boolean succeeded = true;
         try (Scanner scanner = new Scanner(System.in);
-             Connection connection = Connections.fromFile(credentialsFile)
+             ConnectionPool pool = Connections.pooled(credentialsFile);
+             Connection connection = pool.getConnection()
         ) {
+            if (script != null) {
+                succeeded = runScript(connection, script, batchSize, commitInterval, fetchSize);
+                return;
+            }
+            if (importFile != null) {
+                succeeded = runImport(connection, importKind, importFile, checkpoint, chunkSize, bulkTable);
+                return;
+            }
+            if (load != null) {
+                succeeded = runLoad(connection, load, report);
+                return;
+            }
             greetUser();
+            var references = new ReferenceData(Connections.cacheConfig(credentialsFile).referenceRefreshSeconds);
+            refreshReferences(references, connection, false);
 
             // Main loop
             while (true) {
@@ -176,6 +455,22 @@ public class MainApp {
                     continue;
                 }
 
+                if (line.equalsIgnoreCase("refresh")) {
+                    refreshReferences(references, connection, true);
+                    continue;
+                }
+
+                if (line.equalsIgnoreCase("export")) {
+                    refreshReferences(references, connection, false);
+                    promptExport(scanner, connection, references, fetchSize);
+                    continue;
+                }
+
+                if (line.equalsIgnoreCase("stats")) {
+                    printStats(ActionMetrics.global());
+                    continue;
+                }
+
                 if (line.equalsIgnoreCase("exit")) {
                     System.out.print("Confirm exit (yes): ");
                     var confirmation = scanner.nextLine().strip();
@@ -193,7 +488,8 @@ public class MainApp {
                     continue;
                 }
 
-                var userInputs = promptUserForParameters(scanner, action.parameters);
+                refreshReferences(references, connection, false);
+                var userInputs = promptUserForParameters(scanner, action.parameters, references);
                 if (userInputs.isEmpty()) continue;
 
                 executeAction(connection, action, userInputs.get());
@@ -201,18 +497,23 @@ public class MainApp {
                 // repeat
             }
         } catch (SQLException sqlE) {
+            succeeded = false;
             System.out.println("Database error occurred, exiting.");
             System.out.println(sqlE.getMessage());
         } catch (NoSuchFileException e) {
+            succeeded = false;
             System.out.println("Credentials file '" + e.getFile() + "' does not exist");
         } catch (AccessDeniedException e) {
+            succeeded = false;
             System.out.println("Could not obtain read permissions for " + e.getFile());
         } catch (IOException e) {
+            succeeded = false;
             System.out.println("Failed while trying to open credentials file.");
             System.out.println(e);
         } catch (Connections.DBIllegalConfigException e) {
+            succeeded = false;
             System.out.println(e.getMessage());
-        } finally {
         }
+        if (!succeeded) System.exit(1);
     }
 }
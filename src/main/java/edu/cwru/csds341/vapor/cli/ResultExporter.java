@@ -0,0 +1,246 @@
+package edu.cwru.csds341.vapor.cli;
+
+import edu.cwru.csds341.vapor.server.Json;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a ResultSet to a file as CSV or JSON Lines, one row at a time, so that results of any size can be exported.
+ * <li>The format is chosen by the file's extension, see {@link Format#forFile(Path)}. A further .gz compresses it.</li>
+ * <li>Columns are read with the getter for their SQL type, so numbers and booleans are written unquoted in JSON,
+ *     and dates in ISO-8601.</li>
+ * <li>NULL is an empty field in CSV, and null in JSON.</li>
+ */
+final class ResultExporter {
+    static final int DEFAULT_FETCH_SIZE = 10_000;
+    /** Bytes buffered before each write to the file */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    enum Format {
+        /** RFC 4180, with a header row of column labels */
+        CSV(".csv"),
+        /** One JSON object per row, keyed by column label */
+        JSON_LINES(".jsonl"),
+        ;
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /** @return  the Format for a file ending in .csv or .jsonl, optionally followed by .gz; otherwise null */
+        static Format forFile(Path file) {
+            String name = stripGzip(file.getFileName().toString().toLowerCase(Locale.ROOT));
+            for (Format format : values())
+                if (name.endsWith(format.extension)) return format;
+            return null;
+        }
+    }
+
+    /** How each column is read and written */
+    private enum ColumnKind { INT, LONG, DECIMAL, DOUBLE, BOOLEAN, DATE, TIMESTAMP, TEXT }
+
+    private final Format format;
+    private final boolean gzip;
+
+    /** @param file  used to choose the format and compression. Must have a {@link Format} */
+    ResultExporter(Path file) {
+        this.format = Format.forFile(file);
+        if (format == null) throw new IllegalArgumentException("no export format for " + file);
+        this.gzip = isGzip(file.getFileName().toString().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Writes the remaining rows of the ResultSet to the file, replacing it.
+     * @return  the number of rows written
+     * @throws SQLException  if a database access error occurs
+     * @throws IOException  if the file cannot be written
+     */
+    long export(ResultSet resultSet, Path file) throws SQLException, IOException {
+        ResultSetMetaData metadata = resultSet.getMetaData();
+        int columnCount = metadata.getColumnCount();
+        ColumnKind[] kinds = new ColumnKind[columnCount];
+        String[] labels = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            kinds[i] = kindOf(metadata.getColumnType(i + 1));
+            labels[i] = metadata.getColumnLabel(i + 1);
+        }
+
+        long rows = 0;
+        try (Writer out = open(file)) {
+            if (format == Format.CSV) {
+                for (int i = 0; i < columnCount; i++) {
+                    if (i > 0) out.write(',');
+                    writeCsvText(out, labels[i]);
+                }
+                out.write("\r\n");
+            } else {
+                // written before every value, so escaped once
+                for (int i = 0; i < columnCount; i++) {
+                    StringWriter key = new StringWriter(labels[i].length() + 4);
+                    key.write((i == 0) ? '{' : ',');
+                    Json.writeString(key, labels[i]);
+                    key.write(':');
+                    labels[i] = key.toString();
+                }
+            }
+            while (resultSet.next()) {
+                for (int i = 0; i < columnCount; i++) {
+                    if (format == Format.CSV) {
+                        if (i > 0) out.write(',');
+                    } else {
+                        out.write(labels[i]);
+                    }
+                    writeValue(out, resultSet, i + 1, kinds[i]);
+                }
+                out.write((format == Format.CSV) ? "\r\n" : "}\n");
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private Writer open(Path file) throws IOException {
+        WritableByteChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (gzip) {
+            try {
+                channel = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        var encoder = StandardCharsets.UTF_8.newEncoder();
+        return new BufferedWriter(Channels.newWriter(channel, encoder, BUFFER_SIZE), BUFFER_SIZE);
+    }
+
+    private static ColumnKind kindOf(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return ColumnKind.INT;
+            case Types.BIGINT:
+                return ColumnKind.LONG;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return ColumnKind.DECIMAL;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return ColumnKind.DOUBLE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return ColumnKind.BOOLEAN;
+            case Types.DATE:
+                return ColumnKind.DATE;
+            case Types.TIMESTAMP:
+                return ColumnKind.TIMESTAMP;
+            default:
+                return ColumnKind.TEXT;
+        }
+    }
+
+    private void writeValue(Writer out, ResultSet resultSet, int column, ColumnKind kind) throws SQLException, IOException {
+        String text;
+        boolean quoted = false;
+        switch (kind) {
+            case INT: {
+                int value = resultSet.getInt(column);
+                text = resultSet.wasNull() ? null : Integer.toString(value);
+                break;
+            }
+            case LONG: {
+                long value = resultSet.getLong(column);
+                text = resultSet.wasNull() ? null : Long.toString(value);
+                break;
+            }
+            case DECIMAL: {
+                BigDecimal value = resultSet.getBigDecimal(column);
+                text = (value == null) ? null : value.toPlainString();
+                break;
+            }
+            case DOUBLE: {
+                double value = resultSet.getDouble(column);
+                // JSON has no NaN or Infinity
+                quoted = !Double.isFinite(value);
+                text = resultSet.wasNull() ? null : Double.toString(value);
+                break;
+            }
+            case BOOLEAN: {
+                boolean value = resultSet.getBoolean(column);
+                text = resultSet.wasNull() ? null : Boolean.toString(value);
+                break;
+            }
+            case DATE: {
+                Date value = resultSet.getDate(column);
+                text = (value == null) ? null : value.toLocalDate().toString();
+                quoted = true;
+                break;
+            }
+            case TIMESTAMP: {
+                Timestamp value = resultSet.getTimestamp(column);
+                text = (value == null) ? null : value.toLocalDateTime().toString();
+                quoted = true;
+                break;
+            }
+            default:
+                text = resultSet.getString(column);
+                quoted = true;
+        }
+
+        if (format == Format.CSV) {
+            if (text != null) writeCsvText(out, text);
+        } else if (text == null) {
+            out.write("null");
+        } else if (quoted) {
+            Json.writeString(out, text);
+        } else {
+            out.write(text);
+        }
+    }
+
+    /** Writes the text, in quotes if it has a comma, quote or line break */
+    private static void writeCsvText(Writer out, String text) throws IOException {
+        boolean needsQuotes = false;
+        for (int i = 0; i < text.length() && !needsQuotes; i++) {
+            char c = text.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            out.write(text);
+            return;
+        }
+        out.write('"');
+        out.write(text.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private static boolean isGzip(String name) {
+        return name.endsWith(".gz");
+    }
+
+    private static String stripGzip(String name) {
+        return isGzip(name) ? name.substring(0, name.length() - ".gz".length()) : name;
+    }
+}
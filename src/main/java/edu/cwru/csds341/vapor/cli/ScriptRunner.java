@@ -0,0 +1,264 @@
+package edu.cwru.csds341.vapor.cli;
+
+import edu.cwru.csds341.vapor.common.Action;
+import edu.cwru.csds341.vapor.common.Requirement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Non-interactive mode of the CLI.
+ * Reads the same input the interactive mode would: a command on one line, then one line per parameter.
+ * Blank lines and lines starting with '#' are skipped where a command is expected; 'exit' ends the script.
+ * 'export' is followed by a list command, its parameters, and the file to write its results to.
+ * <li>Consecutive INSERT, UPDATE and DELETE commands of the same Action are sent together with JDBC batching.</li>
+ * <li>Changes are committed every {@code commitInterval} commands, and at the end.</li>
+ * <li>Invalid or failed commands are reported with their line number, and the script carries on.</li>
+ */
+final class ScriptRunner {
+    static final int DEFAULT_BATCH_SIZE = 500;
+    static final int DEFAULT_COMMIT_INTERVAL = 5000;
+
+    private final Connection connection;
+    private final int batchSize;
+    private final int commitInterval;
+    private final int fetchSize;
+
+    private int succeeded = 0;
+    private int failed = 0;
+    /** Lines of the script read so far */
+    private int lineNumber = 0;
+    /** Commands executed since the last commit */
+    private int uncommitted = 0;
+
+    /** Action of the batch being built, or null if there is none */
+    private Action batchAction = null;
+    private CallableStatement batchStatement = null;
+    /** Script line of each command in the batch */
+    private final List<Integer> batchLines = new ArrayList<>();
+
+    /**
+     * @param connection  statements are expected to be cached by the connection, and are not closed here
+     * @param batchSize  most commands sent in one batch, at least 1
+     * @param commitInterval  commands executed between commits, at least 1
+     * @param fetchSize  rows fetched per round trip by 'export'
+     */
+    ScriptRunner(Connection connection, int batchSize, int commitInterval, int fetchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batch size must be at least 1");
+        if (commitInterval < 1) throw new IllegalArgumentException("commit interval must be at least 1");
+        this.connection = connection;
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Runs every command in the script, then prints a summary.
+     * @return  the number of commands that were invalid or failed
+     * @throws IOException  if the script cannot be read
+     * @throws SQLException  if the transaction cannot be managed, ex. the connection was lost
+     */
+    int run(BufferedReader script) throws IOException, SQLException {
+        long start = System.nanoTime();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            readCommands(script);
+            flushBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int total = succeeded + failed;
+        System.out.printf("Ran %d commands in %.2fs (%.0f/s): %d succeeded, %d failed%n",
+                total, seconds, total / Math.max(seconds, 1e-9), succeeded, failed);
+        return failed;
+    }
+
+    private void readCommands(BufferedReader script) throws IOException, SQLException {
+        String line;
+        while ((line = nextLine(script)) != null) {
+            String command = line.strip();
+            if (command.isEmpty() || command.startsWith("#") || command.equalsIgnoreCase("help")) continue;
+            if (command.equalsIgnoreCase("exit")) return;
+
+            int commandLine = lineNumber;
+            boolean export = command.equalsIgnoreCase("export");
+            if (export) {
+                // followed by the list command, its parameters, then the file
+                line = nextLine(script);
+                if (line == null) {
+                    reportError(commandLine, "missing the command to export");
+                    return;
+                }
+                command = line.strip();
+            }
+            var action = findAction(command);
+            if (action == null) {
+                reportError(lineNumber, "invalid action '" + command + "'");
+                continue;
+            }
+
+            Map<Action.Parameter, String> args = new HashMap<>(action.parameters.size());
+            String error = null;
+            if (export && action.type != Action.AType.QUERY)
+                error = String.format("line %d: only list commands can be exported", lineNumber);
+            for (Action.Parameter parameter : action.parameters) {
+                String input = nextLine(script);
+                if (input == null) {
+                    reportError(commandLine, "missing value for '" + parameter.displayName + "'");
+                    return;
+                }
+                input = input.strip();
+                if (error == null) {
+                    // keep reading this command's lines after an error, so the next command is found
+                    for (Requirement requirement : parameter.requirements) {
+                        if (!requirement.accepts(input)) {
+                            error = String.format("line %d, '%s': %s", lineNumber, parameter.displayName, requirement.getMessage());
+                            break;
+                        }
+                    }
+                }
+                args.put(parameter, input);
+            }
+
+            Path file = null;
+            if (export) {
+                String input = nextLine(script);
+                if (input == null) {
+                    reportError(commandLine, "missing the file to export to");
+                    return;
+                }
+                try {
+                    file = Path.of(input.strip());
+                    if (error == null && ResultExporter.Format.forFile(file) == null)
+                        error = String.format("line %d: the file must end in .csv, .jsonl, .csv.gz or .jsonl.gz", lineNumber);
+                } catch (InvalidPathException e) {
+                    if (error == null) error = String.format("line %d: %s", lineNumber, e.getMessage());
+                }
+            }
+
+            if (error != null) {
+                reportError(commandLine, error);
+                continue;
+            }
+            if (export) exportQuery(commandLine, action, args, file);
+            else execute(commandLine, action, args);
+        }
+    }
+
+    /** Reads a line of the script, counting it */
+    private String nextLine(BufferedReader script) throws IOException {
+        String line = script.readLine();
+        if (line != null) lineNumber++;
+        return line;
+    }
+
+    private static Action findAction(String shortName) {
+        return Action.VALUES.stream()
+                .filter(a -> a.shortName.equalsIgnoreCase(shortName))
+                .findAny()
+                .orElse(null);
+    }
+
+    private void exportQuery(int line, Action action, Map<Action.Parameter, String> args, Path file) throws SQLException {
+        flushBatch();
+        try {
+            MainApp.exportQuery(connection, action, args, file, fetchSize);
+            succeeded++;
+        } catch (SQLException | IOException e) {
+            reportError(line, e.getMessage());
+        }
+        executed(1);
+    }
+
+    private void execute(int line, Action action, Map<Action.Parameter, String> args) throws SQLException {
+        switch (action.type) {
+            case INSERT:
+            case UPDATE:
+            case DELETE:
+                if (action != batchAction) flushBatch();
+                try {
+                    if (batchStatement == null) {
+                        batchStatement = action.getCallableStatement(connection);
+                        batchAction = action;
+                    }
+                    Action.applyAll(batchStatement, args);
+                    batchStatement.addBatch();
+                    batchLines.add(line);
+                } catch (SQLException e) {
+                    reportError(line, e.getMessage());
+                }
+                if (batchLines.size() >= batchSize) flushBatch();
+                break;
+            default:
+                // needs its own results, so it can't be batched
+                flushBatch();
+                try {
+                    MainApp.performAction(connection, action, args);
+                    succeeded++;
+                } catch (SQLException e) {
+                    reportError(line, e.getMessage());
+                }
+                executed(1);
+        }
+    }
+
+    /** Sends the pending batch, if any, and reports each command that failed */
+    private void flushBatch() throws SQLException {
+        if (batchLines.isEmpty()) {
+            batchAction = null;
+            batchStatement = null;
+            return;
+        }
+        try {
+            recordBatch(batchAction.executeBatch(batchStatement, batchLines.size()), null);
+        } catch (BatchUpdateException e) {
+            recordBatch(e.getUpdateCounts(), e);
+        } catch (SQLException e) {
+            for (int line : batchLines)
+                reportError(line, e.getMessage());
+        } finally {
+            executed(batchLines.size());
+            batchLines.clear();
+            batchAction = null;
+            batchStatement = null;
+        }
+    }
+
+    /** @param counts  per-command results; drivers that stop at the first failure return fewer than were sent */
+    private void recordBatch(int[] counts, BatchUpdateException error) {
+        String message = (error == null) ? "failed" : error.getMessage();
+        for (int i = 0; i < batchLines.size(); i++) {
+            if (i >= counts.length) reportError(batchLines.get(i), "not executed, an earlier command in its batch failed: " + message);
+            else if (counts[i] == Statement.EXECUTE_FAILED) reportError(batchLines.get(i), message);
+            else succeeded++;
+        }
+    }
+
+    /** Counts executed commands, committing once enough have built up */
+    private void executed(int count) throws SQLException {
+        uncommitted += count;
+        if (uncommitted >= commitInterval) {
+            connection.commit();
+            uncommitted = 0;
+        }
+    }
+
+    private void reportError(int line, String message) {
+        failed++;
+        System.out.printf("Error on line %d: %s%n", line, message);
+    }
+}
@@ -0,0 +1,119 @@
+package edu.cwru.csds341.vapor.cli;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints a ResultSet as a table of left-aligned, padded columns, without holding more than a few rows in memory.
+ * <li>Column widths come from the labels and the first {@link #SAMPLE_ROWS} rows,
+ *     capped at the column's display size from the metadata.</li>
+ * <li>Later values that are wider than their column are printed in full, pushing the rest of the row right.</li>
+ * <li>NULL values are printed as {@value #NULL}.</li>
+ */
+final class TablePrinter {
+    /** Rows read ahead to size the columns */
+    static final int SAMPLE_ROWS = 100;
+    /** Rows fetched from the DB per round trip */
+    static final int FETCH_SIZE = 1000;
+    private static final String NULL = "NULL";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final char[] SPACES = " ".repeat(64).toCharArray();
+
+    private TablePrinter() {
+    }
+
+    /**
+     * Prints the remaining rows of the ResultSet to standard output, with a row of labels first.
+     * Prints "No results" instead if there are none.
+     * @return  the number of rows printed
+     * @throws SQLException  if a database access error occurs
+     */
+    static long print(ResultSet resultSet) throws SQLException {
+        // not closed, as that would close standard output
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()), BUFFER_SIZE);
+        try {
+            long rows = print(resultSet, out);
+            out.flush();
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Prints the remaining rows of the ResultSet, with a row of labels first.
+     * Prints "No results" instead if there are none.
+     * @return  the number of rows printed
+     * @throws SQLException  if a database access error occurs
+     * @throws IOException  if the output cannot be written
+     */
+    static long print(ResultSet resultSet, Writer out) throws SQLException, IOException {
+        ResultSetMetaData metadata = resultSet.getMetaData();
+        int columnCount = metadata.getColumnCount();
+
+        String[] labels = new String[columnCount];
+        int[] widths = new int[columnCount];
+        // no value can be wider than its display size. 0 if unknown
+        int[] displaySizes = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = metadata.getColumnLabel(i + 1);
+            widths[i] = labels[i].length();
+            displaySizes[i] = Math.max(metadata.getColumnDisplaySize(i + 1), 0);
+        }
+
+        List<String[]> sample = new ArrayList<>();
+        while (sample.size() < SAMPLE_ROWS && resultSet.next()) {
+            String[] row = readRow(resultSet, new String[columnCount]);
+            sample.add(row);
+            for (int i = 0; i < columnCount; i++) {
+                int width = (displaySizes[i] > 0) ? Math.min(row[i].length(), displaySizes[i]) : row[i].length();
+                widths[i] = Math.max(widths[i], width);
+            }
+        }
+        if (sample.isEmpty()) {
+            out.write("No results\n");
+            return 0;
+        }
+
+        writeRow(out, labels, widths);
+        for (String[] row : sample)
+            writeRow(out, row, widths);
+        // past the sample, one row array is reused
+        String[] row = new String[columnCount];
+        long rows = sample.size();
+        for (; resultSet.next(); rows++)
+            writeRow(out, readRow(resultSet, row), widths);
+        return rows;
+    }
+
+    /** Reads the current row into the array, and returns it */
+    private static String[] readRow(ResultSet resultSet, String[] row) throws SQLException {
+        for (int i = 0; i < row.length; i++)
+            row[i] = valueOf(resultSet.getString(i + 1));
+        return row;
+    }
+
+    private static String valueOf(String columnVal) {
+        return (columnVal == null) ? NULL : columnVal;
+    }
+
+    /** Each value is padded to one more than its column's width, then followed by two spaces */
+    private static void writeRow(Writer out, String[] row, int[] widths) throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            out.write(row[i]);
+            for (int pad = widths[i] + 1 - row[i].length(); pad > 0; pad -= SPACES.length)
+                out.write(SPACES, 0, Math.min(pad, SPACES.length));
+            out.write("  ");
+        }
+        out.write('\n');
+    }
+}
@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+import static edu.cwru.csds341.vapor.common.Action.Column.*;
 import static edu.cwru.csds341.vapor.common.Action.Parameter.*;
 
 /**
@@ -17,7 +18,7 @@ import static edu.cwru.csds341.vapor.common.Action.Parameter.*;
  * Designed to facilitate automating the menu creation.
  * Prefix of 'VIEW' indicates a single value will be returned,
  * Prefix of 'LIST' indicates many values may be returned.
- * See stored_proc.sql for order of returned fields
+ * QUERY Actions declare the {@link Column}s they return, in order; read them with {@link #rows(ResultSet)}.
  */
 public enum Action {
 
@@ -45,6 +46,7 @@ public enum Action {
         AType.QUERY,
         "get account information for user", "gu",
         "[GetUserInfo](?)",
+        returns(USERNAME, JOIN_DATE),
         VU_USER_ID
     ),
     MAKE_COMMENT(
@@ -60,12 +62,14 @@ public enum Action {
         AType.QUERY,
         "list users who follow this user", "lfr",
         "[GetFollowerList](?)",
+        returns(FOLLOWER_ID, USERNAME),
         LFR_USER_ID
     ),
     LIST_FOLLOWED(
         AType.QUERY,
         "list users who follow this user", "lfd",
         "[GetFollowedList](?)",
+        returns(FOLLOWED_ID, USERNAME),
         LFD_USER_ID
     ),
     FOLLOW_USER(
@@ -125,42 +129,59 @@ public enum Action {
         AType.QUERY,
         "list comments on a user's profile, newest to oldest", "gpc",
         "[GetProfileComments](?)",
+        returns(MESSAGE, USERNAME, COMMENT_DATETIME),
         GPC_USERID
     ),
+    LIST_PROFILE_COMMENTS_PAGE(
+        AType.QUERY,
+        "list the next page of comments on a user's profile, newest to oldest", "gpcp",
+        "[GetProfileCommentsPage](?,?,?,?)", // as GetProfileComments, limited to the comments before (datetime, comment_id), descending
+        returns(COMMENT_ID, MESSAGE, USERNAME, COMMENT_DATETIME),
+        GPCP_USERID,
+        GPCP_BEFORE_DATETIME,
+        GPCP_BEFORE_ID,
+        GPCP_LIMIT
+    ),
     LIST_GAMES_OWNED(
         AType.QUERY,
         "view games owned by a user", "vgu",
         "[GetOwnedGamesForUser](?)",
+        returns(GAME_ID, GAME_NAME),
         VGU_USERID
     ),
     LIST_GAMES_WITH_ESRB_RATING(
         AType.QUERY,
         "list games with a specific ESRB rating", "lge",
         "[GetGamesWithESRB](?)",
+        returns(GAME_ID, GAME_NAME),
         LGE_RATINGID
     ),
     LIST_GAMES_HIGHEST_RATING(
         AType.QUERY,
         "list games from high to low review average", "lgr",
-        "[GamesOrderedByReview]()"
+        "[GamesOrderedByReview]()",
+        returns(GAME_ID, GAME_NAME, REVIEW_AVG)
         //would not take in any parameters
     ),
     VIEW_GAME_DETAILS(
         AType.QUERY,
         "view game details", "vgd",
         "[GetGameDetails](?)",
+        returns(GAME_ID, GAME_NAME, REVIEW_AVG, ESRB_RATING_ID, RELEASE_DATE, PRICE),
         VGD_GAMEID
     ),
     LIST_GAME_GENRES(
         AType.QUERY,
         "list the genres a game belongs to", "lgg",
         "[GetGameGenres](?)",
+        returns(NAME),
         LGG_GAMEID
     ),
     LIST_FOLLOWED_THAT_OWN_GAME(
         AType.QUERY,
         "list users followed by a user and that own a game", "vfuog",
         "[GetFollowedUsersThatOwnGame](?,?)",
+        returns(USERNAME),
         VFUOG_USERID,
         VFUOG_GAMEID
     ),
@@ -168,13 +189,87 @@ public enum Action {
         AType.QUERY,
         "view N top selling games", "vtsg",
         "[GetBestSellingPastSevenDays](?)",
+        returns(GAME_ID, GAME_NAME),
         VTSG_LIMIT
     ),
     LIST_ESRB_RATINGS(
         AType.QUERY,
         "List all the ESRB ratings", "lesrb",
-        "[GetAllESRBRatingDetails]()"
+        "[GetAllESRBRatingDetails]()",
+        returns(RATING_ID, NAME)
+        // no params
+    ),
+    LIST_GAMES_PAGE(
+        AType.QUERY,
+        "list the next page of games, by game id", "lgp",
+        "[GetGamesPage](?,?)", // (game_id, game_name) of up to limit games with game_id > after id, ascending
+        returns(GAME_ID, GAME_NAME),
+        LGP_AFTER_ID,
+        LGP_LIMIT
+    ),
+    SEARCH_GAMES(
+        AType.QUERY,
+        "list the next page of games whose name contains a string", "sg",
+        "[SearchGames](?,?,?)", // as GetGamesPage, restricted to names containing the string (case-insensitive)
+        returns(GAME_ID, GAME_NAME),
+        SG_NAME,
+        SG_AFTER_ID,
+        SG_LIMIT
+    ),
+    IS_GAME_OWNED(
+        AType.QUERY,
+        "check whether a user owns a game", "igo",
+        "[IsGameOwned](?,?)", // one row if owned, no rows otherwise
+        returns(),
+        IGO_USERID,
+        IGO_GAMEID
+    ),
+    LIST_GENRES(
+        AType.QUERY,
+        "list all the genres", "lgen",
+        "[GetAllGenres]()", // (genre_id, name)
+        returns(GENRE_ID, NAME)
+        // no params
+    ),
+    LIST_SALES_PAST_SEVEN_DAYS(
+        AType.QUERY,
+        "list the sales of each game on each of the past seven days", "lsales",
+        "[GetSalesPastSevenDays]()", // (game_id, game_name, sale_date, sales) of each game granted on each day, counted as GetBestSellingPastSevenDays does
+        returns(GAME_ID, GAME_NAME, SALE_DATE, SALES)
         // no params
+    ),
+    LIST_USERS_PAGE(
+        AType.QUERY,
+        "list the next page of users, by user id", "lup",
+        "[GetUsersPage](?,?)", // (user_id, username) of up to limit users with user_id > after id, ascending
+        returns(USER_ID, USERNAME),
+        LUP_AFTER_ID,
+        LUP_LIMIT
+    ),
+    LIST_FOLLOWS_PAGE(
+        AType.QUERY,
+        "list the next page of follows, by follower then followed id", "lfp",
+        "[GetFollowsPage](?,?,?)", // (follower_id, followed_id) of up to limit follows after the given pair, ascending
+        returns(FOLLOWER_ID, FOLLOWED_ID),
+        LFP_AFTER_FOLLOWER_ID,
+        LFP_AFTER_FOLLOWED_ID,
+        LFP_LIMIT
+    ),
+    IS_FOLLOWING(
+        AType.QUERY,
+        "check whether a user follows another", "if",
+        "[IsFollowing](?,?)", // one row if following, no rows otherwise
+        returns(),
+        IF_FOLLOWER_ID,
+        IF_FOLLOWED_ID
+    ),
+    VIEW_PROFILE_HEADER(
+        AType.QUERY,
+        "get a user's profile header, as seen by another user", "vph",
+        "[GetProfileHeader](?,?)", // one row, none if the user doesn't exist. is_following is 1 if the viewer follows the user, else 0
+        returns(USERNAME, JOIN_DATE, FOLLOWING, FOLLOWER_COUNT, FOLLOWED_COUNT),
+        VPH_VIEWER_ID,
+        VPH_USER_ID
     )
     
     ;
@@ -192,6 +287,15 @@ public enum Action {
     /** The parameters that must be provided to this Action's {@link CallableStatement} */
     public final List<Parameter> parameters;
 
+    /** The columns returned by a QUERY Action, in order. Empty for other types */
+    public final List<Column> columns;
+
+    /**
+     * 1-based position of the OUT parameter receiving the created ID, if this is an {@link AType#INSERT_ID} Action.
+     * By our convention it follows the input parameters. 0 for other types.
+     */
+    public final int outParameterIndex;
+
     /** Correlates to SQL statements */
     public enum AType {
         /** Update existing entry */
@@ -206,25 +310,92 @@ public enum Action {
         QUERY
     }
 
-    Action(AType type, String description, String shortname, String storedProcedureString, List<Parameter> parameters) {
+    Action(AType type, String description, String shortname, String storedProcedureString, List<Column> columns, List<Parameter> parameters) {
         this.type = type;
         this.description = description;
         this.shortName = shortname;
         this.storedProcedureString = String.format("{call [dbo].%s}", storedProcedureString);
+        this.columns = columns;
         this.parameters = parameters;
+        for (int i = 0; i < parameters.size(); i++) {
+            var parameter = parameters.get(i);
+            if (parameter.index != 0)
+                throw new IllegalStateException(parameter + " is used by more than one Action");
+            parameter.index = i + 1;
+        }
+        this.outParameterIndex = (type == AType.INSERT_ID) ? parameters.size() + 1 : 0;
+    }
+    Action(AType type, String description, String shortname, String storedProcedureString, List<Column> columns, Parameter... parameters) {
+        this(type, description, shortname, storedProcedureString, columns, List.of(parameters));
     }
     Action(AType type, String description, String shortname, String storedProcedureString, Parameter... parameters) {
-        this(type, description, shortname, storedProcedureString, List.of(parameters));
+        this(type, description, shortname, storedProcedureString, List.of(), List.of(parameters));
+    }
+
+    /** The columns a QUERY Action returns, in order */
+    private static List<Column> returns(Column... columns) {
+        return List.of(columns);
     }
 
     /** Read-only list of all Actions. Prefer this to Enum::values because that creates a copy everytime */
     public static final List<Action> VALUES = List.of(Action.values());
 
-    /** Use the given connection to prepare a CallableStatement of the storedProcedure associated with this Action */
+    /**
+     * Use the given connection to prepare a CallableStatement of the storedProcedure associated with this Action.
+     * If the connection provides a {@link StatementCache} (as pooled connections do),
+     * the cached statement is returned instead, and should not be closed by the caller.
+     */
     public CallableStatement getCallableStatement(Connection connection) throws SQLException {
+        if (connection.isWrapperFor(StatementCache.class))
+            return connection.unwrap(StatementCache.class).get(this);
         return connection.prepareCall(storedProcedureString);
     }
 
+    /**
+     * Reads this QUERY Action's results by {@link Column}.
+     * The columns are located once, here, rather than on each row.
+     * @param resultSet  from executing this Action's statement
+     * @throws SQLException  if one of the {@link #columns} is missing from the result
+     */
+    public ResultRows rows(ResultSet resultSet) throws SQLException {
+        return new ResultRows(this, resultSet);
+    }
+
+    /**
+     * Creates an empty set of arguments for calling this Action, to be filled with typed values.
+     * Preferred over {@link #applyAll(CallableStatement, Map)} when the values aren't already Strings.
+     */
+    public Arguments arguments() {
+        return new Arguments(this);
+    }
+
+    /**
+     * Executes the batch of calls added to a statement of this Action,
+     * timed in {@link ActionMetrics#global()} and logged to {@link SlowQueryLog#global()} if slow,
+     * then tells the {@link Updates} listeners.
+     * Single calls are executed through {@link Arguments#executeQuery} and {@link Arguments#executeUpdate}.
+     * @param count  calls added to the batch
+     * @return  the update count of each call, see {@link CallableStatement#executeBatch()}
+     * @throws SQLException  if a database access error occurs, or a call failed ({@link java.sql.BatchUpdateException})
+     */
+    public int[] executeBatch(CallableStatement cs, int count) throws SQLException {
+        long start = System.nanoTime();
+        int[] counts = ActionMetrics.global().executeBatch(this, cs, count);
+        SlowQueryLog.global().logBatch(this, count, start, updated(counts), cs);
+        Updates.executedBatch(this);
+        return counts;
+    }
+
+    /** @return  the total of a batch's update counts, -1 if the driver didn't report them */
+    private static long updated(int[] counts) {
+        long total = 0;
+        for (int count : counts) {
+            if (count < 0) return -1;
+            total += count;
+        }
+        return total;
+    }
+
     /**
      * Set parameters from the map. Assumes map has all necessary fields and that they are all valid.
      * @param cs  the statement to set parameters on
@@ -235,15 +406,54 @@ public enum Action {
      *                      or this method is passed a closed CallableStatement
      */
     public static void applyAll(CallableStatement cs, Map<Parameter, String> args) throws SQLException {
-        for (var entry : args.entrySet()) {
-            for (var req : entry.getKey().requirements)
-                if (!req.accepts(entry.getValue()))
-                    throw new IllegalArgumentException("Internally failed to validate arguments: " + req.getMessage());
+        for (var entry : args.entrySet())
             entry.getKey().apply(cs, entry.getValue());
-        }
     }
 
 
+    /**
+     * A column returned by QUERY Actions.
+     * Columns with the same meaning share a constant, ex. {@link #GAME_ID} is returned by every list of games.
+     */
+    public enum Column {
+        USERNAME(PType.STRING, "username"),
+        USER_ID(PType.INT, "user_id"),
+        JOIN_DATE(PType.DATE, "join_date"),
+        FOLLOWER_ID(PType.INT, "follower_id"),
+        FOLLOWED_ID(PType.INT, "followed_id"),
+        MESSAGE(PType.STRING, "message"),
+        COMMENT_DATETIME(PType.DATETIME, "datetime"),
+        COMMENT_ID(PType.INT, "comment_id"),
+        GAME_ID(PType.INT, "game_id"),
+        GAME_NAME(PType.STRING, "game_name"),
+        REVIEW_AVG(PType.INT, "review_avg"),
+        ESRB_RATING_ID(PType.INT, "ESRB_rating_id"),
+        RELEASE_DATE(PType.DATE, "release_date"),
+        PRICE(PType.MONEY, "price"),
+        RATING_ID(PType.INT, "rating_id"),
+        GENRE_ID(PType.INT, "genre_id"),
+        /** Name of a genre or ESRB rating */
+        NAME(PType.STRING, "name"),
+        SALE_DATE(PType.DATE, "sale_date"),
+        /** Number of times a game was granted */
+        SALES(PType.INT, "sales"),
+        /** 1 if a user follows another, else 0 */
+        FOLLOWING(PType.INT, "is_following"),
+        FOLLOWER_COUNT(PType.INT, "follower_count"),
+        FOLLOWED_COUNT(PType.INT, "followed_count"),
+        ;
+
+        /** The SQL type of the values */
+        public final PType type;
+        /** The column's label in the result, if the procedure names it */
+        public final String label;
+
+        Column(PType type, String label) {
+            this.type = type;
+            this.label = label;
+        }
+    }
+
     /**
      * An argument the user must provide to the Action.
      * Placed in an enum so that the GUI can directly refer to specific Parameters
@@ -280,6 +490,10 @@ public enum Action {
         GG_GAMEID(PType.INT, "game_id", "game id"),
         GG_DATE(PType.DATE, "date", "date aquired"),
         GPC_USERID(PType.INT, "user_id", "user id"),
+        GPCP_USERID(PType.INT, "user_id", "user id"),
+        GPCP_BEFORE_DATETIME(PType.DATETIME, "before_datetime", "list comments before datetime"),
+        GPCP_BEFORE_ID(PType.INT, "before_id", "and before comment id"),
+        GPCP_LIMIT(PType.INT, "limit", "page size"),
         VGU_USERID(PType.INT, "user_id", "user id"),
         LGE_RATINGID(PType.INT, "ESRB_id", "ESRB rating id"),
         VGD_GAMEID(PType.INT, "game_id", "game id"),
@@ -287,6 +501,22 @@ public enum Action {
         VFUOG_USERID(PType.INT, "user_id", "user id"),
         VFUOG_GAMEID(PType.INT, "game_id", "game id"),
         VTSG_LIMIT(PType.INT, "limit", "limit"),
+        LGP_AFTER_ID(PType.INT, "after_id", "list games after id (0 for first page)"),
+        LGP_LIMIT(PType.INT, "limit", "page size"),
+        SG_NAME(PType.STRING, "name", "part of game name", new Requirement.LengthReq(1,35)),
+        SG_AFTER_ID(PType.INT, "after_id", "list games after id (0 for first page)"),
+        SG_LIMIT(PType.INT, "limit", "page size"),
+        IGO_USERID(PType.INT, "user_id", "user id"),
+        IGO_GAMEID(PType.INT, "game_id", "game id"),
+        LUP_AFTER_ID(PType.INT, "after_id", "list users after id (0 for first page)"),
+        LUP_LIMIT(PType.INT, "limit", "page size"),
+        LFP_AFTER_FOLLOWER_ID(PType.INT, "after_follower_id", "list follows after follower id (0 for first page)"),
+        LFP_AFTER_FOLLOWED_ID(PType.INT, "after_followed_id", "and after followed id (0 for first page)"),
+        LFP_LIMIT(PType.INT, "limit", "page size"),
+        IF_FOLLOWER_ID(PType.INT, "follower_id", "userA (follower) id"),
+        IF_FOLLOWED_ID(PType.INT, "followed_id", "userB (followed) id"),
+        VPH_VIEWER_ID(PType.INT, "viewer_id", "viewing user id"),
+        VPH_USER_ID(PType.INT, "user_id", "profile user id"),
         ;
         /** What SQL type this Parameter maps to */
         public final PType type;
@@ -294,6 +524,12 @@ public enum Action {
         /** The name used in the SQL stored Procedure */
         public final String argName;
 
+        /**
+         * 1-based position in the stored procedure's argument list, used for binding.
+         * Assigned once, by the constructor of the Action whose parameter list contains this.
+         */
+        private int index;
+
         /** The name shown to the user */
         public final String displayName;
 
@@ -304,20 +540,20 @@ public enum Action {
         public enum PType implements Requirement {
             INT(Pattern.compile("\\d{1,9}"),"(#){1,9}") {
                 @Override
-                void apply(CallableStatement statement, String argName, String val) throws SQLException {
-                    statement.setInt(argName, Integer.parseInt(val));
+                void apply(CallableStatement statement, int index, String val) throws SQLException {
+                    statement.setInt(index, Integer.parseInt(val));
                 }
             },
             MONEY(Pattern.compile("\\d{0,19}(.\\d{0,4})?"), "(#){0,19}(.(#){0,4})?") {
                 @Override
-                void apply(CallableStatement statement, String argName, String val) throws SQLException {
-                    statement.setBigDecimal(argName, new BigDecimal(val));
+                void apply(CallableStatement statement, int index, String val) throws SQLException {
+                    statement.setBigDecimal(index, new BigDecimal(val));
                 }
             },
             STRING(Pattern.compile(".*"), "{any}") {
                 @Override
-                void apply(CallableStatement statement, String argName, String val) throws SQLException {
-                    statement.setString(argName, val);
+                void apply(CallableStatement statement, int index, String val) throws SQLException {
+                    statement.setString(index, val);
                 }
             },
             DATE(
@@ -325,16 +561,16 @@ public enum Action {
                     "YYYY-MM-DD"
             ) {
                 @Override
-                void apply(CallableStatement statement, String argName, String val) throws SQLException {
-                    statement.setDate(argName, Date.valueOf(val));
+                void apply(CallableStatement statement, int index, String val) throws SQLException {
+                    statement.setDate(index, Date.valueOf(val));
                 }
             },
             DATETIME(
                     Pattern.compile("\\d\\d\\d\\d-(?:[0-9]|1[012])-(?:0?[1-9]|1[012]) ([01][0-9]|2[0-3]):[0-5][0-9]:[0-5][0-9]"),
                     "YYYY-MM-DD hh:mm:ss") {
                 @Override
-                void apply(CallableStatement statement, String argName, String val) throws SQLException {
-                    statement.setTimestamp(argName, Timestamp.valueOf(val));
+                void apply(CallableStatement statement, int index, String val) throws SQLException {
+                    statement.setTimestamp(index, Timestamp.valueOf(val));
                 }
             }
             ;
@@ -353,13 +589,13 @@ public enum Action {
              * Set a parameter on a statement, interpreting the value according to this type.
              * External code should use {@link Parameter#apply(CallableStatement, String)}
              * @param statement  the statement to set a parameter for
-             * @param argName  the name of the parameter to set
+             * @param index  the 1-based position of the parameter to set
              * @param val  the value to enter. Assumed to have been validated
-             * @throws SQLException  if parameterName does not correspond to a named parameter;
+             * @throws SQLException  if index does not correspond to a parameter;
              *                      if a database access error occurs
              *                      or this method is called on a closed CallableStatement
              */
-            abstract void apply(CallableStatement statement, String argName, String val) throws SQLException;
+            abstract void apply(CallableStatement statement, int index, String val) throws SQLException;
 
             @Override
             public boolean accepts(String str) {
@@ -389,12 +625,17 @@ public enum Action {
          * Use the given string as the value for this parameter of the given statement
          * @param statement  the statement to set parameters for
          * @param val  the value to use. Assumed to be a valid value for this Parameter
-         * @throws SQLException  if parameterName does not correspond to a named parameter;
+         * @throws SQLException  if the statement has no parameter at this Parameter's index;
          *                      if a database access error occurs
          *                      or this method is called on a closed CallableStatement
          */
         public void apply(CallableStatement statement, String val) throws SQLException {
-            type.apply(statement, argName, val);
+            type.apply(statement, index, val);
+        }
+
+        /** 1-based position of this Parameter in its Action's stored procedure */
+        public int index() {
+            return index;
         }
     }
 
@@ -0,0 +1,196 @@
+package edu.cwru.csds341.vapor.common;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.CallableStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the executions, errors and rows of each {@link Action}, and keeps a {@link LatencyHistogram} of how long they took.
+ * Recording is lock-free, so it can be done on every execution.
+ * <li>Actions are executed through {@link Arguments#executeQuery}, {@link Arguments#executeUpdate}
+ *     and {@link Action#executeBatch}, which record them here.</li>
+ * <li>Rows are counted by {@link ResultRows} as they are read, or added with {@link #addRows(Action, long)}
+ *     by readers that don't use it.</li>
+ * <li>A QUERY's latency covers executing it, not reading its rows.</li>
+ * The {@link #global()} instance is exposed over JMX, with one {@link ActionStatsMXBean} per Action.
+ */
+public final class ActionMetrics {
+    static final String OBJECT_NAME_PREFIX = "edu.cwru.csds341.vapor:type=Action,name=";
+
+    private static volatile ActionMetrics global;
+
+    /** Indexed by {@link Action#ordinal()} */
+    private final Stats[] stats = new Stats[Action.VALUES.size()];
+
+    ActionMetrics() {
+        for (Action action : Action.VALUES)
+            stats[action.ordinal()] = new Stats();
+    }
+
+    /** The metrics of every Action executed by this process. Registered with the platform MBean server on first use */
+    public static ActionMetrics global() {
+        ActionMetrics metrics = global;
+        if (metrics != null) return metrics;
+        synchronized (ActionMetrics.class) {
+            if (global == null) {
+                metrics = new ActionMetrics();
+                metrics.register(ManagementFactory.getPlatformMBeanServer());
+                global = metrics;
+            }
+            return global;
+        }
+    }
+
+    private void register(MBeanServer server) {
+        for (Action action : Action.VALUES) {
+            try {
+                var name = new ObjectName(OBJECT_NAME_PREFIX + action.name());
+                if (!server.isRegistered(name)) server.registerMBean(stats[action.ordinal()], name);
+            } catch (JMException e) {
+                // the metrics are still recorded, and shown by the CLI
+                System.err.println("Could not register the metrics of " + action + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Records one execution of the Action.
+     * @param startNanos  {@link System#nanoTime()} before it was executed
+     * @param failed  whether it threw an SQLException. Failures are counted but their latency is not
+     */
+    public void record(Action action, long startNanos, boolean failed) {
+        record(action, startNanos, 1, failed);
+    }
+
+    /**
+     * Records a batch of executions of the Action, each taking an equal share of the time.
+     * @param count  executions in the batch
+     */
+    public void record(Action action, long startNanos, int count, boolean failed) {
+        if (count <= 0) return;
+        Stats stats = this.stats[action.ordinal()];
+        stats.calls.add(count);
+        if (failed) stats.errors.add(count);
+        else stats.latencies.record((System.nanoTime() - startNanos) / count, count);
+    }
+
+    /** Executes a statement of the Action, see {@link CallableStatement#executeQuery()} */
+    ResultSet executeQuery(Action action, CallableStatement cs) throws SQLException {
+        long start = System.nanoTime();
+        ResultSet resultSet;
+        try {
+            resultSet = cs.executeQuery();
+        } catch (SQLException e) {
+            record(action, start, true);
+            throw e;
+        }
+        record(action, start, false);
+        return resultSet;
+    }
+
+    /** Executes a statement of the Action, see {@link CallableStatement#executeUpdate()} */
+    int executeUpdate(Action action, CallableStatement cs) throws SQLException {
+        long start = System.nanoTime();
+        int updated;
+        try {
+            updated = cs.executeUpdate();
+        } catch (SQLException e) {
+            record(action, start, true);
+            throw e;
+        }
+        record(action, start, false);
+        return updated;
+    }
+
+    /**
+     * Executes a statement's batch of the Action, see {@link CallableStatement#executeBatch()}
+     * @param count  executions added to the batch
+     */
+    int[] executeBatch(Action action, CallableStatement cs, int count) throws SQLException {
+        long start = System.nanoTime();
+        int[] counts;
+        try {
+            counts = cs.executeBatch();
+        } catch (SQLException e) {
+            record(action, start, count, true);
+            throw e;
+        }
+        record(action, start, count, false);
+        return counts;
+    }
+
+    /** Counts rows read from the Action's results */
+    public void addRows(Action action, long rows) {
+        stats[action.ordinal()].rows.add(rows);
+    }
+
+    public ActionStatsMXBean stats(Action action) {
+        return stats[action.ordinal()];
+    }
+
+    /** Starts counting again from 0, for every Action */
+    public void reset() {
+        for (Stats stats : this.stats)
+            stats.reset();
+    }
+
+    private static final class Stats implements ActionStatsMXBean {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LatencyHistogram latencies = new LatencyHistogram();
+
+        @Override
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getRows() {
+            return rows.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return latencies.mean() / 1e6;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return latencies.percentile(50) / 1e6;
+        }
+
+        @Override
+        public double getP95Millis() {
+            return latencies.percentile(95) / 1e6;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return latencies.percentile(99) / 1e6;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return latencies.max() / 1e6;
+        }
+
+        @Override
+        public void reset() {
+            calls.reset();
+            errors.reset();
+            rows.reset();
+            latencies.reset();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package edu.cwru.csds341.vapor.common;
+
+/**
+ * Statistics of one {@link Action}'s executions since start-up or the last reset, see {@link ActionMetrics}.
+ * Registered as {@value ActionMetrics#OBJECT_NAME_PREFIX}{action name} in the platform MBean server.
+ */
+public interface ActionStatsMXBean {
+    /** Executions, including failed ones */
+    long getCalls();
+
+    /** Executions that threw an SQLException */
+    long getErrors();
+
+    /** Rows read from the results of a QUERY Action */
+    long getRows();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    /** Starts counting again from 0 */
+    void reset();
+}
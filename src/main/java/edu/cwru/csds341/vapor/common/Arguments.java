@@ -0,0 +1,178 @@
+package edu.cwru.csds341.vapor.common;
+
+import edu.cwru.csds341.vapor.common.Action.Parameter;
+import edu.cwru.csds341.vapor.common.Action.Parameter.PType;
+
+import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * The arguments for one call of an {@link Action}, set with typed setters and bound to its statement as they are,
+ * without the String round trip of {@link Action#applyAll(CallableStatement, java.util.Map)}.
+ * <li>Values are not checked against the Parameters' {@link Requirement}s;
+ *     user input should be validated once, where it is entered.</li>
+ * <li>Every Parameter of the Action must be set before binding. Setting one again replaces its value.</li>
+ * <li>Not thread-safe. Once passed to {@link AsyncActions}, should not be changed.</li>
+ * Obtain instances through {@link Action#arguments()}.
+ */
+public final class Arguments {
+    /** The Action these are arguments for */
+    public final Action action;
+    /** Values of INT Parameters, indexed by position */
+    private final int[] ints;
+    /** Values of the other Parameters, indexed by position */
+    private final Object[] objects;
+    /** Bit i is set once the Parameter at position i has a value */
+    private long assigned = 0;
+
+    Arguments(Action action) {
+        if (action.parameters.size() > Long.SIZE)
+            throw new IllegalArgumentException(action + " has more than " + Long.SIZE + " parameters");
+        this.action = action;
+        this.ints = new int[action.parameters.size()];
+        this.objects = new Object[action.parameters.size()];
+    }
+
+    public Arguments setInt(Parameter parameter, int value) {
+        int i = position(parameter, PType.INT);
+        ints[i] = value;
+        assigned |= 1L << i;
+        return this;
+    }
+
+    public Arguments setMoney(Parameter parameter, BigDecimal value) {
+        return setObject(parameter, PType.MONEY, value);
+    }
+
+    public Arguments setString(Parameter parameter, String value) {
+        return setObject(parameter, PType.STRING, value);
+    }
+
+    public Arguments setDate(Parameter parameter, LocalDate value) {
+        return setObject(parameter, PType.DATE, value);
+    }
+
+    /** Fractions of a second are kept, and rounded by the server to the column's precision */
+    public Arguments setDateTime(Parameter parameter, LocalDateTime value) {
+        return setObject(parameter, PType.DATETIME, value);
+    }
+
+    /**
+     * Sets the value of a Parameter from the user's text, parsing it once according to the Parameter's type.
+     * @param value  assumed to have been validated w.r.t. the Parameter
+     */
+    public Arguments set(Parameter parameter, String value) {
+        switch (parameter.type) {
+            case INT: return setInt(parameter, Integer.parseInt(value));
+            case MONEY: return setMoney(parameter, new BigDecimal(value));
+            case DATE: return setDate(parameter, Date.valueOf(value).toLocalDate());
+            case DATETIME: return setDateTime(parameter, Timestamp.valueOf(value).toLocalDateTime());
+            default: return setString(parameter, value);
+        }
+    }
+
+    /**
+     * Sets every Parameter on the Action's statement.
+     * @param cs  a statement of this Action, see {@link Action#getCallableStatement(java.sql.Connection)}
+     * @throws IllegalStateException  if a Parameter has not been set
+     * @throws SQLException  if a database access error occurs
+     *                      or this method is passed a closed CallableStatement
+     */
+    public void bind(CallableStatement cs) throws SQLException {
+        // checked before binding any, so a statement is never left half-bound
+        for (int i = 0; i < ints.length; i++)
+            if ((assigned & (1L << i)) == 0)
+                throw new IllegalStateException(action.parameters.get(i) + " of " + action + " has not been set");
+        for (int i = 0; i < ints.length; i++) {
+            Parameter parameter = action.parameters.get(i);
+            int index = i + 1;
+            switch (parameter.type) {
+                case INT: cs.setInt(index, ints[i]); break;
+                case MONEY: cs.setBigDecimal(index, (BigDecimal) objects[i]); break;
+                case DATE: cs.setDate(index, Date.valueOf((LocalDate) objects[i])); break;
+                case DATETIME: cs.setTimestamp(index, Timestamp.valueOf((LocalDateTime) objects[i])); break;
+                default: cs.setString(index, (String) objects[i]);
+            }
+        }
+    }
+
+    /**
+     * Binds the arguments to a statement of this QUERY and executes it, timed in {@link ActionMetrics#global()}.
+     * The call is logged to {@link SlowQueryLog#global()} when the result is closed.
+     * @param cs  a statement of this Action, see {@link Action#getCallableStatement(java.sql.Connection)}
+     * @return  the result, to be closed by the caller
+     * @throws SQLException  if a database access error occurs
+     */
+    public QueryResult executeQuery(CallableStatement cs) throws SQLException {
+        long start = System.nanoTime();
+        bind(cs);
+        return new QueryResult(this, cs, start, ActionMetrics.global().executeQuery(action, cs));
+    }
+
+    /**
+     * Binds the arguments to a statement of this INSERT, UPDATE or DELETE and executes it,
+     * timed in {@link ActionMetrics#global()} and logged to {@link SlowQueryLog#global()} if slow.
+     * The {@link Updates} listeners are then told of it.
+     * An INSERT_ID's OUT parameter must be registered beforehand.
+     * @param cs  a statement of this Action, see {@link Action#getCallableStatement(java.sql.Connection)}
+     * @return  the update count
+     * @throws SQLException  if a database access error occurs
+     */
+    public int executeUpdate(CallableStatement cs) throws SQLException {
+        long start = System.nanoTime();
+        bind(cs);
+        int updated = ActionMetrics.global().executeUpdate(action, cs);
+        SlowQueryLog.global().log(this, start, updated, cs);
+        Updates.executed(this, updated, cs);
+        return updated;
+    }
+
+    /** @return  the value of the Parameter at the 0-based position, or null if it has not been set */
+    Object value(int position) {
+        if ((assigned & (1L << position)) == 0) return null;
+        return (action.parameters.get(position).type == PType.INT) ? (Object) ints[position] : objects[position];
+    }
+
+    int getInt(Parameter parameter) {
+        return ints[assigned(parameter, PType.INT)];
+    }
+
+    String getString(Parameter parameter) {
+        return (String) objects[assigned(parameter, PType.STRING)];
+    }
+
+    LocalDate getDate(Parameter parameter) {
+        return (LocalDate) objects[assigned(parameter, PType.DATE)];
+    }
+
+    /** @return  the 0-based position of a Parameter that has been set */
+    private int assigned(Parameter parameter, PType type) {
+        int i = position(parameter, type);
+        if ((assigned & (1L << i)) == 0)
+            throw new IllegalStateException(parameter + " of " + action + " has not been set");
+        return i;
+    }
+
+    private Arguments setObject(Parameter parameter, PType type, Object value) {
+        int i = position(parameter, type);
+        objects[i] = Objects.requireNonNull(value, parameter.toString());
+        assigned |= 1L << i;
+        return this;
+    }
+
+    /** @return  the 0-based position of the Parameter in the Action's list */
+    private int position(Parameter parameter, PType type) {
+        int i = parameter.index() - 1;
+        if (i < 0 || i >= ints.length || action.parameters.get(i) != parameter)
+            throw new IllegalArgumentException(parameter + " is not a parameter of " + action);
+        if (parameter.type != type)
+            throw new IllegalArgumentException(parameter + " is " + parameter.type + ", not " + type);
+        return i;
+    }
+}
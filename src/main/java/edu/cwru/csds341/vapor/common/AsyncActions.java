@@ -0,0 +1,210 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs {@link Action}s on a fixed number of worker threads, each using a connection borrowed from a {@link ConnectionPool}.
+ * Results are delivered through {@link CompletableFuture}s that are completed on the result executor
+ * (ex. {@code Platform::runLater} for the GUI), so dependent stages added before completion run there too.
+ * ResultSets are only valid on the worker thread, so queries take a reader that converts the rows into plain objects.
+ * <p>
+ * Independent work submitted back to back runs concurrently, each on its own connection,
+ * so a page can fan out its queries and render each result as it arrives.
+ */
+public final class AsyncActions implements AutoCloseable {
+
+    /** Like {@link java.util.function.Function}, but may throw an SQLException */
+    @FunctionalInterface
+    public interface SqlFunction<T, R> {
+        R apply(T t) throws SQLException;
+    }
+
+    /** Rows of a reader's result when they can't be counted */
+    private static final ToLongFunction<Object> UNKNOWN_ROWS = value -> -1;
+
+    private final ConnectionPool pool;
+    private final Executor resultExecutor;
+    private final ExecutorService workers;
+
+    /**
+     * @param pool  where connections are borrowed from
+     * @param threads  number of worker threads. Should not exceed the pool's maximum size
+     * @param resultExecutor  where futures are completed
+     */
+    public AsyncActions(ConnectionPool pool, int threads, Executor resultExecutor) {
+        this.pool = pool;
+        this.resultExecutor = resultExecutor;
+        var count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "vapor-db-worker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Runs the work on a worker thread with a pooled connection.
+     * Cancelling the returned future before the work starts skips it, and interrupts it if already running.
+     */
+    public <T> CompletableFuture<T> run(SqlFunction<Connection, T> work) {
+        return run(work, null);
+    }
+
+    /**
+     * Like {@link #run(SqlFunction)}, but the future fails with a {@link TimeoutException}
+     * if the work hasn't finished within the timeout, counted from submission. The work is then interrupted.
+     * @param timeout  null for no timeout
+     */
+    public <T> CompletableFuture<T> run(SqlFunction<Connection, T> work, Duration timeout) {
+        var result = new CompletableFuture<T>();
+        Future<?> task = workers.submit(() -> {
+            if (result.isDone()) return; // cancelled while queued
+            try (Connection connection = pool.getConnection()) {
+                T value = work.apply(connection);
+                resultExecutor.execute(() -> result.complete(value));
+            } catch (Exception e) {
+                resultExecutor.execute(() -> result.completeExceptionally(e));
+            }
+        });
+        result.whenComplete((value, e) -> {
+            if (e != null) task.cancel(true); // cancelled or timed out
+        });
+        if (timeout != null) {
+            CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS, resultExecutor)
+                    .execute(() -> result.completeExceptionally(new TimeoutException("Timed out after " + timeout)));
+        }
+        return result;
+    }
+
+    /** Executes a QUERY Action with the arguments and converts its results with the reader, on a worker thread */
+    public <T> CompletableFuture<T> query(Arguments args, SqlFunction<ResultSet, T> reader) {
+        return run(querying(args, reader, UNKNOWN_ROWS, null));
+    }
+
+    /** Like {@link #query(Arguments, SqlFunction)}, with a timeout as in {@link #run(SqlFunction, Duration)} */
+    public <T> CompletableFuture<T> query(Arguments args, SqlFunction<ResultSet, T> reader, Duration timeout) {
+        return run(querying(args, reader, UNKNOWN_ROWS, timeout), timeout);
+    }
+
+    /** Executes a QUERY Action and maps each row of its results, on a worker thread. See {@link Action#rows(ResultSet)} */
+    public <T> CompletableFuture<List<T>> list(Arguments args, ResultRows.Mapper<T> mapper, Duration timeout) {
+        return run(querying(args, resultSet -> args.action.rows(resultSet).toList(mapper), List::size, timeout), timeout);
+    }
+
+    /** Executes an INSERT, UPDATE or DELETE Action with the arguments. The future holds the update count */
+    public CompletableFuture<Integer> update(Arguments args) {
+        return run(updating(args));
+    }
+
+    /** Creates a session whose pending work can be cancelled all at once */
+    public Session newSession() {
+        return new Session();
+    }
+
+    /** Stops the worker threads. Queued work is dropped */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * @param rows  counts the rows in what the reader returned, for the {@link SlowQueryLog}
+     * @param timeout  also applied as the statement's query timeout, so the server stops working on it. null for none
+     */
+    private static <T> SqlFunction<Connection, T> querying(Arguments args, SqlFunction<ResultSet, T> reader,
+                                                           ToLongFunction<? super T> rows, Duration timeout) {
+        return connection -> {
+            var cs = args.action.getCallableStatement(connection);
+            cs.setQueryTimeout(timeout == null ? 0 : (int) Math.max(1, timeout.toSeconds()));
+            try (var result = args.executeQuery(cs)) {
+                T value = reader.apply(result.resultSet());
+                result.setRowCount(rows.applyAsLong(value));
+                return value;
+            }
+        };
+    }
+
+    private static SqlFunction<Connection, Integer> updating(Arguments args) {
+        return connection -> {
+            var cs = args.action.getCallableStatement(connection);
+            cs.setQueryTimeout(0);
+            return args.executeUpdate(cs);
+        };
+    }
+
+    /**
+     * Tracks the work submitted through it, so that it can all be cancelled when its results are no longer wanted,
+     * ex. when the user navigates away from a page.
+     */
+    public final class Session {
+        /** In order of submission */
+        private final ConcurrentLinkedDeque<CompletableFuture<?>> pending = new ConcurrentLinkedDeque<>();
+        private volatile boolean cancelled = false;
+
+        private Session() {}
+
+        /** See {@link AsyncActions#run(SqlFunction)} */
+        public <T> CompletableFuture<T> run(SqlFunction<Connection, T> work) {
+            return run(work, null);
+        }
+
+        /** See {@link AsyncActions#run(SqlFunction, Duration)} */
+        public <T> CompletableFuture<T> run(SqlFunction<Connection, T> work, Duration timeout) {
+            if (cancelled) {
+                // checked before submitting, as a free worker could otherwise start the work right away
+                var future = new CompletableFuture<T>();
+                future.cancel(true);
+                return future;
+            }
+            var future = AsyncActions.this.run(work, timeout);
+            pending.addLast(future);
+            future.whenComplete((value, e) -> pending.remove(future));
+            if (cancelled) future.cancel(true); // cancel() ran while this was being submitted
+            return future;
+        }
+
+        /** See {@link AsyncActions#query(Arguments, SqlFunction)} */
+        public <T> CompletableFuture<T> query(Arguments args, SqlFunction<ResultSet, T> reader) {
+            return run(querying(args, reader, UNKNOWN_ROWS, null));
+        }
+
+        /** See {@link AsyncActions#query(Arguments, SqlFunction, Duration)} */
+        public <T> CompletableFuture<T> query(Arguments args, SqlFunction<ResultSet, T> reader, Duration timeout) {
+            return run(querying(args, reader, UNKNOWN_ROWS, timeout), timeout);
+        }
+
+        /** See {@link AsyncActions#list(Arguments, ResultRows.Mapper, Duration)} */
+        public <T> CompletableFuture<List<T>> list(Arguments args, ResultRows.Mapper<T> mapper, Duration timeout) {
+            return run(querying(args, resultSet -> args.action.rows(resultSet).toList(mapper), List::size, timeout), timeout);
+        }
+
+        /** See {@link AsyncActions#update(Arguments)} */
+        public CompletableFuture<Integer> update(Arguments args) {
+            return run(updating(args));
+        }
+
+        /** Cancels all pending work, and any work submitted afterwards */
+        public void cancel() {
+            cancelled = true;
+            // newest first: interrupting running work frees its worker,
+            // which must not find work submitted after it still uncancelled in the queue
+            for (var it = pending.descendingIterator(); it.hasNext(); )
+                it.next().cancel(true);
+            pending.clear();
+        }
+    }
+}
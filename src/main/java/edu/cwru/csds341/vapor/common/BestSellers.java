@@ -0,0 +1,343 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The games sold the most over the last {@value #DAYS} days, as listed by {@link Action#LIST_N_BEST_SELLING},
+ * kept in memory so that showing them costs no DB call.
+ * <li>Sales are counted in a ring of daily buckets, each an array indexed by game id, plus a total per game.
+ *     Buckets are daily as ownership is granted with a date, not a time.</li>
+ * <li>Games with sales are kept in a heap ordered by total, so {@link #top(int)} only looks at the first few.
+ *     Its result is reused until the counts change.</li>
+ * <li>As an {@link Updates.Listener}, counts each {@link Action#GRANT_GAME} made by this process as soon as it is made.
+ *     {@link #refreshIfStale(Connection)} reconciles the counts with the DB, which also has other clients' sales,
+ *     once the refresh interval has passed, with {@link Action#LIST_SALES_PAST_SEVEN_DAYS}.
+ *     Deletions, batches and sales of games not named yet make the counts stale at once.</li>
+ * <li>Days and the refresh interval are both measured with the same {@link Clock}.</li>
+ * One instance is shared by every page of the GUI, see {@link CacheConfig}.
+ */
+public final class BestSellers implements Updates.Listener {
+    /** Days counted, including today */
+    public static final int DAYS = 7;
+    /** Marks a bucket that counts no day */
+    private static final long NO_DAY = Long.MIN_VALUE;
+
+    /** A game and its sales over the last {@link #DAYS} days */
+    public static final class Seller {
+        public final int gameId;
+        /** null if only known from a sale recorded without one */
+        public final String name;
+        public final int sales;
+
+        Seller(int gameId, String name, int sales) {
+            this.gameId = gameId;
+            this.name = name;
+            this.sales = sales;
+        }
+    }
+
+    /** {@link Duration#ZERO} to only refresh on demand */
+    private final Duration refreshInterval;
+    private final Clock clock;
+
+    /** Epoch day counted by each bucket, or {@link #NO_DAY}. Day d is counted by bucket d mod {@link #DAYS} */
+    private final long[] bucketDays = new long[DAYS];
+    /** Sales on each bucket's day, indexed by game id. null until used */
+    private final int[][] buckets = new int[DAYS][];
+    /** Sales over all the buckets, indexed by game id */
+    private int[] totals = new int[0];
+    /** Indexed by game id */
+    private String[] names = new String[0];
+    /** Ids of the games with sales, as a binary heap: each game sold more than its children, or as much with a lower id */
+    private int[] heap = new int[16];
+    private int heapSize = 0;
+    /** 1 + position of each game id in {@link #heap}, 0 if absent */
+    private int[] heapPositions = new int[0];
+    /** Epoch day of the last call, so buckets are only expired once a day */
+    private long today = NO_DAY;
+    /** Whether the counts were reconciled with the DB at least once */
+    private boolean loaded = false;
+    /** When the counts were last reconciled, if {@link #loaded} */
+    private Instant refreshedAt = Instant.MIN;
+    /** Set when the counts are known to differ from the DB's, until the next reconciliation */
+    private boolean invalidated = false;
+    /** Result of the last {@link #top(int)}, until the counts change. null if there is none */
+    private List<Seller> top = null;
+
+    /** @param refreshIntervalSeconds  age at which the counts are reconciled with the DB. 0 to only refresh on demand */
+    public BestSellers(int refreshIntervalSeconds) {
+        this(refreshIntervalSeconds, Clock.systemDefaultZone());
+    }
+
+    BestSellers(int refreshIntervalSeconds, Clock clock) {
+        this.refreshInterval = Duration.ofSeconds(refreshIntervalSeconds);
+        this.clock = clock;
+        Arrays.fill(bucketDays, NO_DAY);
+    }
+
+    /** Whether the counts were reconciled with the DB at least once */
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Whether the counts have never been reconciled with the DB, not within the refresh interval, or were invalidated since */
+    public synchronized boolean isStale() {
+        if (!loaded || invalidated) return true;
+        return !refreshInterval.isZero() && clock.instant().isAfter(refreshedAt.plus(refreshInterval));
+    }
+
+    /** Makes the counts stale, so the next {@link #refreshIfStale(Connection)} reconciles them */
+    public synchronized void invalidate() {
+        invalidated = true;
+    }
+
+    /**
+     * Reconciles the counts with the DB if {@link #isStale()}.
+     * @param connection  used for the query. Nothing is done if null (debug connections)
+     * @return  whether the counts were reconciled
+     * @throws SQLException  if a database access error occurs
+     */
+    public boolean refreshIfStale(Connection connection) throws SQLException {
+        if (!isStale()) return false;
+        refresh(connection);
+        return true;
+    }
+
+    /**
+     * Replaces the counts with the DB's. Readers keep seeing the old counts until the new ones are read.
+     * @param connection  used for the query. Nothing is done if null (debug connections)
+     * @throws SQLException  if a database access error occurs
+     */
+    public void refresh(Connection connection) throws SQLException {
+        if (connection == null) return;
+        Action action = Action.LIST_SALES_PAST_SEVEN_DAYS;
+        var cs = action.getCallableStatement(connection);
+        List<Sales> sales = new ArrayList<>();
+        try (var result = action.arguments().executeQuery(cs)) {
+            var rows = result.rows();
+            while (rows.next())
+                sales.add(new Sales(rows.getInt(Action.Column.GAME_ID), rows.getString(Action.Column.GAME_NAME),
+                        rows.getDate(Action.Column.SALE_DATE), rows.getInt(Action.Column.SALES)));
+        }
+        replace(sales);
+    }
+
+    /** A LIST_SALES_PAST_SEVEN_DAYS row */
+    private static final class Sales {
+        final int gameId;
+        final String name;
+        final LocalDate date;
+        final int count;
+
+        Sales(int gameId, String name, LocalDate date, int count) {
+            this.gameId = gameId;
+            this.name = name;
+            this.date = date;
+            this.count = count;
+        }
+    }
+
+    @Override
+    public void updated(Arguments args, int count, int createdId) {
+        switch (args.action) {
+            case GRANT_GAME:
+                if (count == 0) return;
+                int gameId = args.getInt(Action.Parameter.GG_GAMEID);
+                recordSale(gameId, null, args.getDate(Action.Parameter.GG_DATE));
+                if (name(gameId) == null) invalidate();
+                return;
+            case DELETE_GAME:
+            case DELETE_USER:
+                if (count != 0) invalidate();
+                return;
+            default:
+        }
+    }
+
+    @Override
+    public void updatedBatch(Action action) {
+        if (action == Action.GRANT_GAME || action == Action.DELETE_GAME || action == Action.DELETE_USER) invalidate();
+    }
+
+    /** @return  the game's name, or null if no sale of it was counted with one */
+    private synchronized String name(int gameId) {
+        return (gameId < names.length) ? names[gameId] : null;
+    }
+
+    /**
+     * Counts a sale, once the DB has accepted it. Sales made through {@link Arguments#executeUpdate} are counted
+     * by {@link #updated}.
+     * @param name  of the game, or null if unknown
+     * @param date  the ownership's date. Ignored if outside the last {@link #DAYS} days
+     */
+    public synchronized void recordSale(int gameId, String name, LocalDate date) {
+        advance();
+        if (!add(gameId, name, date.toEpochDay(), 1)) return;
+        fix(gameId);
+        top = null;
+    }
+
+    /**
+     * The games sold the most, most first; games sold as much are ordered by id.
+     * @param limit  most games to return
+     * @return  an unmodifiable list, shared with other callers
+     */
+    public synchronized List<Seller> top(int limit) {
+        advance();
+        if (top == null || (top.size() < limit && top.size() < heapSize)) top = computeTop(limit);
+        return (top.size() <= limit) ? top : top.subList(0, limit);
+    }
+
+    /** Visits the heap best first: the next best game is always the child of one already taken */
+    private List<Seller> computeTop(int limit) {
+        List<Seller> sellers = new ArrayList<>(Math.min(limit, heapSize));
+        var candidates = new PriorityQueue<Integer>((a, b) -> sellsBefore(heap[a], heap[b]) ? -1 : 1);
+        if (heapSize > 0) candidates.add(0);
+        while (sellers.size() < limit && !candidates.isEmpty()) {
+            int position = candidates.poll();
+            int gameId = heap[position];
+            sellers.add(new Seller(gameId, names[gameId], totals[gameId]));
+            for (int child = 2 * position + 1; child <= 2 * position + 2 && child < heapSize; child++)
+                candidates.add(child);
+        }
+        return List.copyOf(sellers);
+    }
+
+    /** Replaces every count with the given sales, and rebuilds the heap */
+    private synchronized void replace(List<Sales> sales) {
+        today = LocalDate.now(clock).toEpochDay();
+        Arrays.fill(bucketDays, NO_DAY);
+        for (int[] bucket : buckets)
+            if (bucket != null) Arrays.fill(bucket, 0);
+        Arrays.fill(totals, 0);
+        Arrays.fill(heapPositions, 0);
+        for (Sales sale : sales)
+            add(sale.gameId, sale.name, sale.date.toEpochDay(), sale.count);
+        heapSize = 0;
+        for (int gameId = 0; gameId < totals.length; gameId++) {
+            if (totals[gameId] <= 0) continue;
+            if (heapSize == heap.length) heap = Arrays.copyOf(heap, heap.length * 2);
+            place(gameId, heapSize++);
+        }
+        for (int position = heapSize / 2 - 1; position >= 0; position--)
+            siftDown(position);
+        loaded = true;
+        refreshedAt = clock.instant();
+        invalidated = false;
+        top = null;
+    }
+
+    /**
+     * Adds to the counts of a day, without fixing the heap.
+     * @return  false if the day is outside the last {@link #DAYS} days
+     */
+    private boolean add(int gameId, String name, long day, int count) {
+        if (day > today || day <= today - DAYS || gameId < 0) return false;
+        ensureCapacity(gameId);
+        int bucket = (int) Math.floorMod(day, DAYS);
+        if (buckets[bucket] == null) buckets[bucket] = new int[totals.length];
+        bucketDays[bucket] = day;
+        buckets[bucket][gameId] += count;
+        totals[gameId] += count;
+        if (name != null) names[gameId] = name;
+        return true;
+    }
+
+    /** Empties the buckets of days that left the window since the last call */
+    private void advance() {
+        long now = LocalDate.now(clock).toEpochDay();
+        if (now == today) return;
+        today = now;
+        for (int b = 0; b < DAYS; b++) {
+            if (bucketDays[b] == NO_DAY || bucketDays[b] > today - DAYS) continue;
+            int[] bucket = buckets[b];
+            for (int gameId = 0; gameId < bucket.length; gameId++) {
+                if (bucket[gameId] == 0) continue;
+                totals[gameId] -= bucket[gameId];
+                bucket[gameId] = 0;
+                fix(gameId);
+            }
+            bucketDays[b] = NO_DAY;
+        }
+        top = null;
+    }
+
+    private void ensureCapacity(int gameId) {
+        if (gameId < totals.length) return;
+        int capacity = Math.max(gameId + 1, totals.length * 2);
+        totals = Arrays.copyOf(totals, capacity);
+        names = Arrays.copyOf(names, capacity);
+        heapPositions = Arrays.copyOf(heapPositions, capacity);
+        for (int b = 0; b < DAYS; b++)
+            if (buckets[b] != null) buckets[b] = Arrays.copyOf(buckets[b], capacity);
+    }
+
+    /** Moves the game to its place in the heap after its total changed, adding or removing it as needed */
+    private void fix(int gameId) {
+        int position = heapPositions[gameId] - 1;
+        if (totals[gameId] <= 0) {
+            if (position >= 0) removeAt(position);
+            return;
+        }
+        if (position < 0) {
+            if (heapSize == heap.length) heap = Arrays.copyOf(heap, heap.length * 2);
+            place(gameId, heapSize++);
+            siftUp(heapSize - 1);
+            return;
+        }
+        siftUp(position);
+        siftDown(heapPositions[gameId] - 1);
+    }
+
+    private void removeAt(int position) {
+        heapPositions[heap[position]] = 0;
+        int last = heap[--heapSize];
+        if (position == heapSize) return;
+        place(last, position);
+        siftUp(position);
+        siftDown(heapPositions[last] - 1);
+    }
+
+    private void siftUp(int position) {
+        int gameId = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!sellsBefore(gameId, heap[parent])) break;
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(gameId, position);
+    }
+
+    private void siftDown(int position) {
+        int gameId = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && sellsBefore(heap[child + 1], heap[child])) child++;
+            if (!sellsBefore(heap[child], gameId)) break;
+            place(heap[child], position);
+            position = child;
+        }
+        place(gameId, position);
+    }
+
+    private void place(int gameId, int position) {
+        heap[position] = gameId;
+        heapPositions[gameId] = position + 1;
+    }
+
+    /** Whether game a is listed before game b */
+    private boolean sellsBefore(int a, int b) {
+        return totals[a] > totals[b] || (totals[a] == totals[b] && a < b);
+    }
+}
@@ -0,0 +1,26 @@
+package edu.cwru.csds341.vapor.common;
+
+/**
+ * How often the in-memory copies of a database are refreshed: {@link ReferenceData}, {@link BestSellers} and {@link SocialGraph}.
+ * Read from a credentials file by {@link Connections#cacheConfig(java.nio.file.Path)}.
+ * The caches themselves are made by whoever uses them, once per process, and passed where needed.
+ */
+public final class CacheConfig {
+    /** Seconds before {@link ReferenceData} is reloaded, 0 for never */
+    public final int referenceRefreshSeconds;
+    /** Seconds before {@link BestSellers} is reconciled with the database, 0 for never */
+    public final int bestSellersRefreshSeconds;
+    /** Seconds before {@link SocialGraph} is reloaded, 0 for never */
+    public final int socialGraphRefreshSeconds;
+
+    /** The defaults */
+    public CacheConfig() {
+        this(3600, 300, 600);
+    }
+
+    public CacheConfig(int referenceRefreshSeconds, int bestSellersRefreshSeconds, int socialGraphRefreshSeconds) {
+        this.referenceRefreshSeconds = referenceRefreshSeconds;
+        this.bestSellersRefreshSeconds = bestSellersRefreshSeconds;
+        this.socialGraphRefreshSeconds = socialGraphRefreshSeconds;
+    }
+}
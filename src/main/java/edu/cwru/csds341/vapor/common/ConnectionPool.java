@@ -0,0 +1,349 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a set of open {@link Connection}s to a single database so that callers don't pay for a login on every use.
+ * <li>Connections handed out by {@link #getConnection()} return to the pool when closed.</li>
+ * <li>Idle connections beyond the minimum size are closed once they exceed the idle timeout.</li>
+ * <li>Connections that sat idle for a while are validated before being handed out again.</li>
+ * <li>Each physical connection keeps a {@link StatementCache}, reachable through {@link Connection#unwrap(Class)}.</li>
+ * Obtain instances through {@link Connections#pooled(java.nio.file.Path)}.
+ */
+public final class ConnectionPool implements AutoCloseable {
+    /** Idle connections unused for longer than this are validated before being borrowed */
+    private static final long VALIDATE_AFTER_IDLE_NANOS = TimeUnit.SECONDS.toNanos(5);
+    /** Seconds to wait on {@link Connection#isValid(int)} */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    /** Opens a physical connection to the database */
+    @FunctionalInterface
+    interface Opener {
+        Connection open() throws SQLException;
+    }
+
+    /** Sizes and timeouts of a pool. Each field starts at its default, see {@link Connections} for the matching entries */
+    static final class Config {
+        /** Connections to keep open while idle */
+        int minSize = 1;
+        /** Most connections open at once */
+        int maxSize = 8;
+        /** How long an idle connection above minSize is kept open */
+        int idleTimeoutSeconds = 300;
+        /** How long {@link #getConnection()} waits when all connections are in use */
+        int borrowTimeoutSeconds = 30;
+        /** Capacity of each connection's {@link StatementCache} */
+        int statementCacheSize = StatementCache.DEFAULT_CAPACITY;
+    }
+
+    /** null if this pool was made from a debug config, in which case only null connections are handed out */
+    private final Opener opener;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutNanos;
+    private final long borrowTimeoutNanos;
+
+    /** One permit per connection that may still be borrowed */
+    private final Semaphore permits;
+    /** Most recently returned connection is first. Guarded by itself */
+    private final Deque<Idle> idle = new ArrayDeque<>();
+    /** Open physical connections, idle or borrowed. Guarded by {@link #idle} */
+    private int openCount = 0;
+    /** The statement cache of each open physical connection. Guarded by {@link #idle} */
+    private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<>();
+    private final int statementCacheSize;
+    private volatile boolean closed = false;
+
+    private final ScheduledExecutorService maintenance;
+
+    /** A returned connection and when it was returned */
+    private static final class Idle {
+        final Connection connection;
+        final long returnedAt;
+
+        Idle(Connection connection, long returnedAt) {
+            this.connection = connection;
+            this.returnedAt = returnedAt;
+        }
+    }
+
+    /**
+     * @param opener  opens the pooled connections, ex. with a JDBC url. null to hand out null connections
+     * @param config  copied, so later changes to it have no effect
+     */
+    ConnectionPool(Opener opener, Config config) {
+        this.opener = opener;
+        this.statementCacheSize = config.statementCacheSize;
+        this.minSize = config.minSize;
+        this.maxSize = config.maxSize;
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(config.idleTimeoutSeconds);
+        this.borrowTimeoutNanos = TimeUnit.SECONDS.toNanos(config.borrowTimeoutSeconds);
+        this.permits = new Semaphore(maxSize, true);
+        if (opener == null) {
+            this.maintenance = null;
+            return;
+        }
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vapor-connection-pool");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, config.idleTimeoutSeconds / 2);
+        // runs immediately, so the minimum number of connections is opened in the background
+        maintenance.scheduleWithFixedDelay(this::maintain, 0, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none are idle.
+     * Closing the returned connection gives it back to the pool.
+     * @return  an open connection, or null if this pool was made from a debug config
+     * @throws SQLTimeoutException  if no connection became available within the borrow timeout
+     * @throws SQLException  if the pool is closed or a database access error occurs
+     */
+    public Connection getConnection() throws SQLException {
+        if (opener == null) return null;
+        if (closed) throw new SQLException("Connection pool is closed");
+        try {
+            if (!permits.tryAcquire(borrowTimeoutNanos, TimeUnit.NANOSECONDS))
+                throw new SQLTimeoutException("Timed out waiting for a pooled connection");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+        try {
+            Connection physical = takeIdle();
+            if (physical == null) physical = open();
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Most connections this pool will have open at once */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /** Number of connections currently open, idle or borrowed */
+    public int size() {
+        synchronized (idle) {
+            return openCount;
+        }
+    }
+
+    /** Number of connections sitting unused in the pool */
+    public int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    /** Closes all idle connections. Borrowed connections are closed when they are returned. */
+    @Override
+    public void close() {
+        closed = true;
+        if (maintenance != null) maintenance.shutdownNow();
+        Deque<Idle> toClose;
+        synchronized (idle) {
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+        }
+        toClose.forEach(i -> discard(i.connection));
+    }
+
+    /** Pops idle connections until a usable one is found. Returns null if none are left. */
+    private Connection takeIdle() {
+        while (true) {
+            Idle candidate;
+            synchronized (idle) {
+                candidate = idle.pollFirst();
+            }
+            if (candidate == null) return null;
+            if (System.nanoTime() - candidate.returnedAt < VALIDATE_AFTER_IDLE_NANOS
+                    || isUsable(candidate.connection))
+                return candidate.connection;
+            discard(candidate.connection);
+        }
+    }
+
+    private Connection open() throws SQLException {
+        synchronized (idle) {
+            openCount++;
+        }
+        try {
+            Connection physical = opener.open();
+            synchronized (idle) {
+                statementCaches.put(physical, new StatementCache(physical, statementCacheSize));
+            }
+            return physical;
+        } catch (SQLException | RuntimeException e) {
+            synchronized (idle) {
+                openCount--;
+            }
+            throw e;
+        }
+    }
+
+    /** Called when a borrowed connection is closed by the borrower */
+    private void giveBack(Connection physical) {
+        try {
+            if (closed || physical.isClosed()) {
+                discard(physical);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            synchronized (idle) {
+                idle.addFirst(new Idle(physical, System.nanoTime()));
+            }
+        } catch (SQLException e) {
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes idle connections that timed out, then tops the pool back up to the minimum size.
+     * Each connection is opened under a permit, like a borrower's, so the pool never exceeds its maximum size.
+     */
+    private void maintain() {
+        long now = System.nanoTime();
+        Deque<Connection> expired = new ArrayDeque<>();
+        int missing;
+        synchronized (idle) {
+            var it = idle.descendingIterator(); // oldest first
+            while (it.hasNext() && openCount - expired.size() > minSize) {
+                var candidate = it.next();
+                if (now - candidate.returnedAt < idleTimeoutNanos) break;
+                it.remove();
+                expired.add(candidate.connection);
+            }
+            missing = minSize - (openCount - expired.size());
+        }
+        expired.forEach(this::discard);
+        for (int i = 0; i < missing && !closed; i++) {
+            // when every permit is taken, the borrowers open what they need
+            if (!permits.tryAcquire()) return;
+            try {
+                Connection physical = open();
+                synchronized (idle) {
+                    // close() may have emptied the pool while this was opening
+                    if (closed) {
+                        discard(physical);
+                        return;
+                    }
+                    idle.addLast(new Idle(physical, System.nanoTime()));
+                }
+            } catch (SQLException e) {
+                return; // try again next round
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private static boolean isUsable(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /** Closes the physical connection and its cached statements, and stops counting it */
+    private void discard(Connection physical) {
+        StatementCache cache;
+        synchronized (idle) {
+            openCount--;
+            cache = statementCaches.remove(physical);
+        }
+        if (cache != null) cache.close();
+        try {
+            physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /** Wraps the physical connection so that close() returns it to the pool instead */
+    private Connection wrap(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new Handler(physical));
+    }
+
+    /** Closes statements opened through the wrapper when it is returned, as closing a real connection would */
+    private final class Handler implements InvocationHandler {
+        private final Connection physical;
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean returned = false;
+
+        Handler(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        for (var statement : statements) {
+                            try {
+                                statement.close();
+                            } catch (SQLException ignored) {
+                            }
+                        }
+                        statements.clear();
+                        giveBack(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + physical;
+            }
+            if (returned) throw new SQLException("Connection has been returned to the pool");
+            if (args != null && args[0] == StatementCache.class) {
+                if (method.getName().equals("isWrapperFor")) return true;
+                if (method.getName().equals("unwrap")) {
+                    synchronized (idle) {
+                        return statementCaches.get(physical);
+                    }
+                }
+            }
+            try {
+                Object result = method.invoke(physical, args);
+                if (result instanceof Statement) statements.add((Statement) result);
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
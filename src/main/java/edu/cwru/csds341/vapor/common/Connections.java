@@ -25,15 +25,63 @@ public final class Connections {
             /** Default "10" */
             TIMEOUT = "timeout",
             /** see {@link #DEBUG_OFF}, {@link #DEBUG_IGNORE}. Default {@link #DEBUG_OFF} */
-            DEBUG = "debug";
+            DEBUG = "debug",
+            /** Connections a {@link ConnectionPool} keeps open while idle. Default "1" */
+            POOL_MIN_SIZE = "pool_min_size",
+            /** Most connections a {@link ConnectionPool} will have open at once. Default "8" */
+            POOL_MAX_SIZE = "pool_max_size",
+            /** Seconds an idle pooled connection is kept before being closed. Default "300" */
+            POOL_IDLE_TIMEOUT = "pool_idle_timeout",
+            /** Seconds to wait for a free pooled connection before giving up. Default "30" */
+            POOL_BORROW_TIMEOUT = "pool_borrow_timeout",
+            /** Prepared statements each pooled connection keeps, see {@link StatementCache}. Default "16" */
+            STATEMENT_CACHE_SIZE = "statement_cache_size",
+            /** Seconds before {@link ReferenceData} is reloaded, 0 for never. Default "3600" */
+            REFERENCE_REFRESH_INTERVAL = "reference_refresh_interval",
+            /** Seconds before {@link BestSellers} is reconciled with the database, 0 for never. Default "300" */
+            BEST_SELLERS_REFRESH_INTERVAL = "best_sellers_refresh_interval",
+            /** Seconds before {@link SocialGraph} is reloaded, 0 for never. Default "600" */
+            SOCIAL_GRAPH_REFRESH_INTERVAL = "social_graph_refresh_interval",
+            /** Milliseconds an Action call must take to be written to the {@link SlowQueryLog}, 0 for none. Default "0" */
+            SLOW_QUERY_THRESHOLD = "slow_query_threshold",
+            /** File of the {@link SlowQueryLog}. Default "slow-queries.log" */
+            SLOW_QUERY_FILE = "slow_query_file",
+            /** Kilobytes the {@link SlowQueryLog}'s file reaches before being rolled. Default "10240" */
+            SLOW_QUERY_FILE_SIZE = "slow_query_file_size",
+            /** "1" to leave argument values out of the {@link SlowQueryLog}. Default "0" */
+            SLOW_QUERY_REDACT = "slow_query_redact",
+            /** see {@link #BACKEND_SQLSERVER}, {@link #BACKEND_MEMORY}. Default {@link #BACKEND_SQLSERVER} */
+            BACKEND = "backend",
+            /** Users the {@link MemoryDatabase} starts with. Default "100" */
+            MEMORY_USERS = "memory_users",
+            /** Games the {@link MemoryDatabase} starts with. Default "1000" */
+            MEMORY_GAMES = "memory_games";
 
     /**  */
     private static final String
             DEBUG_OFF = "0",
             DEBUG_IGNORE = "1";
-    private static final Set<String> LEGAL_CONFIG_FIELDS = Set.of(ADDRESS, DB, USERNAME, PASSWORD, TIMEOUT, DEBUG);
+    /** The SQL Server at {@link #ADDRESS} */
+    private static final String BACKEND_SQLSERVER = "sqlserver";
+    /** A {@link MemoryDatabase} in this process, shared by every connection made from the same file */
+    private static final String BACKEND_MEMORY = "memory";
+    /** Seed of the {@link MemoryDatabase}'s contents, so every run starts with the same ones */
+    private static final long MEMORY_SEED = 341;
+    private static final Set<String> LEGAL_CONFIG_FIELDS = Set.of(
+            ADDRESS, DB, USERNAME, PASSWORD, TIMEOUT, DEBUG,
+            POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_IDLE_TIMEOUT, POOL_BORROW_TIMEOUT, STATEMENT_CACHE_SIZE,
+            REFERENCE_REFRESH_INTERVAL, BEST_SELLERS_REFRESH_INTERVAL, SOCIAL_GRAPH_REFRESH_INTERVAL,
+            SLOW_QUERY_THRESHOLD, SLOW_QUERY_FILE, SLOW_QUERY_FILE_SIZE, SLOW_QUERY_REDACT,
+            BACKEND, MEMORY_USERS, MEMORY_GAMES
+    );
+    /** Required by the {@link #BACKEND_SQLSERVER} backend */
     private static final Set<String> REQUIRED_CONFIG_FIELDS = Set.of(ADDRESS, DB, USERNAME, PASSWORD);
 
+    /** Pools created by {@link #pooled(Path)}, one per credentials file */
+    private static final Map<Path, ConnectionPool> POOLS = new HashMap<>();
+    /** Databases of the {@link #BACKEND_MEMORY} backend, one per credentials file */
+    private static final Map<Path, MemoryDatabase> MEMORY_DATABASES = new HashMap<>();
+
     /** 
      * Returns a Connection based on the contents of the given file.
      * The file should consist solely of lines of the form 'key=value'.
@@ -43,8 +91,70 @@ public final class Connections {
      * @throws java.sql.SQLTimeoutException  if the time limit for connecting expires
      */
     public static Connection fromFile(Path file) throws IOException, SQLException {
+        var args = readConfig(file);
+        if (args == null) return null;
+        configureSlowQueryLog(file, args);
+        return opener(file, args).open();
+    }
+
+    /**
+     * Returns the {@link ConnectionPool} for the given file, creating it on first use.
+     * The file is only read once; later calls with the same path share the same pool.
+     * If the file sets debug to {@link #DEBUG_IGNORE}, the pool hands out null connections.
+     * @throws IOException  if the file cannot be opened or read from.
+     * @throws DBIllegalConfigException  if the config file contains an illegal entry
+     */
+    public static synchronized ConnectionPool pooled(Path file) throws IOException {
+        var key = file.toAbsolutePath().normalize();
+        var pool = POOLS.get(key);
+        if (pool == null) {
+            var args = readConfig(file);
+            var config = new ConnectionPool.Config();
+            if (args == null) {
+                config.minSize = config.maxSize = 0;
+                pool = new ConnectionPool(null, config);
+            } else {
+                config.minSize = intField(file, args, POOL_MIN_SIZE, config.minSize);
+                config.maxSize = intField(file, args, POOL_MAX_SIZE, config.maxSize);
+                if (config.maxSize < 1) throw new DBIllegalConfigException(file, POOL_MAX_SIZE + " must be at least 1");
+                if (config.minSize > config.maxSize) throw new DBIllegalConfigException(file, POOL_MIN_SIZE + " exceeds " + POOL_MAX_SIZE);
+                config.statementCacheSize = intField(file, args, STATEMENT_CACHE_SIZE, config.statementCacheSize);
+                if (config.statementCacheSize < 1) throw new DBIllegalConfigException(file, STATEMENT_CACHE_SIZE + " must be at least 1");
+                config.idleTimeoutSeconds = intField(file, args, POOL_IDLE_TIMEOUT, config.idleTimeoutSeconds);
+                config.borrowTimeoutSeconds = intField(file, args, POOL_BORROW_TIMEOUT, config.borrowTimeoutSeconds);
+                pool = new ConnectionPool(opener(file, args), config);
+                configureSlowQueryLog(file, args);
+            }
+            POOLS.put(key, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Reads the refresh intervals of the in-memory caches from the given file.
+     * If the file sets debug to {@link #DEBUG_IGNORE}, the defaults are returned.
+     * @throws IOException  if the file cannot be opened or read from.
+     * @throws DBIllegalConfigException  if the config file contains an illegal entry
+     */
+    public static CacheConfig cacheConfig(Path file) throws IOException {
+        var args = readConfig(file);
+        var defaults = new CacheConfig();
+        if (args == null) return defaults;
+        return new CacheConfig(
+                intField(file, args, REFERENCE_REFRESH_INTERVAL, defaults.referenceRefreshSeconds),
+                intField(file, args, BEST_SELLERS_REFRESH_INTERVAL, defaults.bestSellersRefreshSeconds),
+                intField(file, args, SOCIAL_GRAPH_REFRESH_INTERVAL, defaults.socialGraphRefreshSeconds));
+    }
+
+    /**
+     * Parses and validates the given config file.
+     * @return  the entries of the file, or null if debug is set to {@link #DEBUG_IGNORE}
+     * @throws IOException  if the file cannot be opened or read from.
+     * @throws DBIllegalConfigException  if the config file contains an illegal entry
+     */
+    private static Map<String, String> readConfig(Path file) throws IOException {
         var lines = Files.readAllLines(file);
-        Map<String, String> args = new HashMap<>(REQUIRED_CONFIG_FIELDS.size());
+        Map<String, String> args = new HashMap<>(LEGAL_CONFIG_FIELDS.size());
         for (var line : lines) {
             if (line.isBlank() || line.startsWith("#")) continue;
             var tokens = line.split("=", 2);
@@ -56,11 +166,49 @@ public final class Connections {
             if (key.equals(DEBUG) && val.equals(DEBUG_IGNORE)) return null;
             args.put(key, val);
         }
-        for (var key : REQUIRED_CONFIG_FIELDS)
-            if (! args.containsKey(key)) throw new DBIllegalConfigException(file, "is missing an entry for: " + key);
+        var backend = args.getOrDefault(BACKEND, BACKEND_SQLSERVER);
+        if (backend.equals(BACKEND_SQLSERVER)) {
+            for (var key : REQUIRED_CONFIG_FIELDS)
+                if (! args.containsKey(key)) throw new DBIllegalConfigException(file, "is missing an entry for: " + key);
+        } else if (!backend.equals(BACKEND_MEMORY)) {
+            throw new DBIllegalConfigException(file, BACKEND + " must be " + BACKEND_SQLSERVER + " or " + BACKEND_MEMORY);
+        }
+        intField(file, args, MEMORY_USERS, 100);
+        intField(file, args, MEMORY_GAMES, 1000);
+        intField(file, args, TIMEOUT, 10);
+        if (intField(file, args, SLOW_QUERY_FILE_SIZE, 1) < 1)
+            throw new DBIllegalConfigException(file, SLOW_QUERY_FILE_SIZE + " must be at least 1");
+        var redact = args.getOrDefault(SLOW_QUERY_REDACT, "0");
+        if (!redact.equals("0") && !redact.equals("1"))
+            throw new DBIllegalConfigException(file, SLOW_QUERY_REDACT + " must be 0 or 1");
+        return args;
+    }
+
+    /** Starts the {@link SlowQueryLog} if the file sets a threshold. Assumes the file has been validated */
+    private static void configureSlowQueryLog(Path file, Map<String, String> args) {
+        int threshold = intField(file, args, SLOW_QUERY_THRESHOLD, 0);
+        if (threshold == 0) return;
+        SlowQueryLog.configure(
+                Path.of(args.getOrDefault(SLOW_QUERY_FILE, "slow-queries.log")),
+                threshold,
+                args.getOrDefault(SLOW_QUERY_REDACT, "0").equals("1"),
+                intField(file, args, SLOW_QUERY_FILE_SIZE, 10240) * 1024L);
+    }
 
-        // all required fields present by this point
-        String connectionUrl = String.format(
+    /** Opens connections to the file's backend. Assumes the file has been validated */
+    private static synchronized ConnectionPool.Opener opener(Path file, Map<String, String> args) {
+        if (!args.getOrDefault(BACKEND, BACKEND_SQLSERVER).equals(BACKEND_MEMORY)) {
+            var url = connectionUrl(args);
+            return () -> DriverManager.getConnection(url);
+        }
+        var database = MEMORY_DATABASES.computeIfAbsent(file.toAbsolutePath().normalize(), key -> MemoryDatabase.seeded(
+                intField(file, args, MEMORY_USERS, 100), intField(file, args, MEMORY_GAMES, 1000), MEMORY_SEED));
+        return database::connect;
+    }
+
+    /** Assumes all required fields are present */
+    private static String connectionUrl(Map<String, String> args) {
+        return String.format(
             "jdbc:sqlserver://%s;"
                 + "database=%s;"
                 + "user=%s;"
@@ -74,8 +222,19 @@ public final class Connections {
                 args.get(PASSWORD),
                 args.getOrDefault(TIMEOUT, "10")
         );
+    }
 
-        return DriverManager.getConnection(connectionUrl);
+    /** Reads an optional non-negative integer entry, or returns the default if absent */
+    private static int intField(Path file, Map<String, String> args, String key, int defaultValue) {
+        var val = args.get(key);
+        if (val == null) return defaultValue;
+        try {
+            int parsed = Integer.parseInt(val.strip());
+            if (parsed < 0) throw new DBIllegalConfigException(file, "has a negative value for: " + key);
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new DBIllegalConfigException(file, "has a non-integer value for: " + key);
+        }
     }
 
     /** Issue with the DB credentials file */
@@ -0,0 +1,110 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.util.Arrays;
+
+/**
+ * Set of ints stored in an open-addressing table, without boxing.
+ * Meant for DB ids, so {@link #EMPTY} ({@link Integer#MIN_VALUE}) cannot be stored.
+ * Not thread-safe.
+ */
+public final class IntHashSet {
+    private static final int EMPTY = Integer.MIN_VALUE;
+    /** Table is grown once it is this full */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] table;
+    private int size = 0;
+    /** table.length - 1. The length is always a power of 2 */
+    private int mask;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    /** @param expectedSize  number of values that can be added before the table is grown */
+    public IntHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) * 2 - 1);
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+    }
+
+    /** @return  true if the value was not already present */
+    public boolean add(int value) {
+        checkValue(value);
+        int slot = find(value);
+        if (table[slot] == value) return false;
+        table[slot] = value;
+        if (++size > table.length * LOAD_FACTOR) rehash(table.length * 2);
+        return true;
+    }
+
+    public boolean contains(int value) {
+        return value != EMPTY && table[find(value)] == value;
+    }
+
+    /** @return  true if the value was present */
+    public boolean remove(int value) {
+        if (value == EMPTY) return false;
+        int slot = find(value);
+        if (table[slot] != value) return false;
+        table[slot] = EMPTY;
+        size--;
+        // re-insert the rest of the cluster so that lookups past the freed slot still find their values
+        for (int i = (slot + 1) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            int moved = table[i];
+            table[i] = EMPTY;
+            table[find(moved)] = moved;
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    /** The values, in no particular order */
+    public int[] toArray() {
+        int[] values = new int[size];
+        int i = 0;
+        for (int value : table)
+            if (value != EMPTY) values[i++] = value;
+        return values;
+    }
+
+    /** Slot holding the value, or the empty slot where it would go */
+    private int find(int value) {
+        int i = mix(value) & mask;
+        while (table[i] != EMPTY && table[i] != value)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+        for (int value : old)
+            if (value != EMPTY) table[find(value)] = value;
+    }
+
+    /** Spreads sequential ids across the table */
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static void checkValue(int value) {
+        if (value == EMPTY) throw new IllegalArgumentException("Integer.MIN_VALUE cannot be stored");
+    }
+}
@@ -0,0 +1,660 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-process stand-in for the database, implementing what each {@link Action}'s stored procedure does.
+ * Reached through JDBC {@link Connection}s from {@link #connect()}, so it runs every caller unchanged,
+ * ex. to run the GUI, load tests or benchmarks without a server. Selected by the credentials file, see {@link Connections}.
+ * <li>Users and games are stored in arrays indexed by id; follows and ownership in {@link IntHashSet}s.</li>
+ * <li>Thread-safe: QUERY Actions share a read lock, the others take the write lock, so each call is atomic.</li>
+ * <li>Changes made with auto-commit off are undone by a rollback, but are visible to other connections before the commit.</li>
+ * <li>Constraints are checked as the DB would: missing referenced rows and duplicates throw
+ *     {@link SQLIntegrityConstraintViolationException}, strings longer than their column {@link SQLDataException}.</li>
+ */
+public final class MemoryDatabase {
+    private static final String[] ESRB_RATINGS = {"E", "E10+", "T", "M", "AO", "RP"};
+    private static final String[] GENRES = {
+            "Action", "Adventure", "Casual", "Indie", "Puzzle", "Racing", "RPG", "Simulation", "Sports", "Strategy"};
+    /** Words that seeded game names are made of */
+    private static final String[] WORDS = {
+            "dark", "souls", "portal", "legend", "quest", "space", "war", "craft", "city", "racing",
+            "tactics", "hollow", "knight", "star", "dungeon", "farm", "simulator", "zero", "ultimate", "island"};
+    /** Days counted by {@link Action#LIST_N_BEST_SELLING}, including today */
+    static final int BEST_SELLING_DAYS = 7;
+    private static final int USERNAME_LENGTH = 25, GAME_NAME_LENGTH = 35, MESSAGE_LENGTH = 100;
+
+    private static final class User {
+        final int id;
+        String name;
+        final LocalDate joinDate;
+        final IntHashSet followed = new IntHashSet();
+        final IntHashSet followers = new IntHashSet();
+        final IntHashSet owned = new IntHashSet();
+        /** Comments on this user's profile, in the order they were made */
+        final List<Comment> comments = new ArrayList<>();
+
+        User(int id, String name, LocalDate joinDate) {
+            this.id = id;
+            this.name = name;
+            this.joinDate = joinDate;
+        }
+    }
+
+    private static final class Game {
+        final int id;
+        final String name;
+        int reviewAvg;
+        final int esrbRatingId;
+        final LocalDate releaseDate;
+        BigDecimal price;
+        final int[] genreIds;
+        final IntHashSet owners = new IntHashSet();
+
+        Game(int id, String name, int reviewAvg, int esrbRatingId, LocalDate releaseDate, BigDecimal price, int[] genreIds) {
+            this.id = id;
+            this.name = name;
+            this.reviewAvg = reviewAvg;
+            this.esrbRatingId = esrbRatingId;
+            this.releaseDate = releaseDate;
+            this.price = price;
+            this.genreIds = genreIds;
+        }
+    }
+
+    private static final class Comment {
+        final int id;
+        final int commenterId;
+        final LocalDateTime datetime;
+        final String message;
+
+        Comment(int id, int commenterId, LocalDateTime datetime, String message) {
+            this.id = id;
+            this.commenterId = commenterId;
+            this.datetime = datetime;
+            this.message = message;
+        }
+    }
+
+    /** Rows of a QUERY, or the update count and created ID of the other Actions */
+    static final class Result {
+        final List<Object[]> rows;
+        final int updated;
+        final int createdId;
+
+        private Result(List<Object[]> rows, int updated, int createdId) {
+            this.rows = rows;
+            this.updated = updated;
+            this.createdId = createdId;
+        }
+
+        static Result rows(List<Object[]> rows) {
+            return new Result(rows, -1, 0);
+        }
+
+        static Result updated(int updated) {
+            return new Result(null, updated, 0);
+        }
+
+        static Result created(int id) {
+            return new Result(null, 1, id);
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Indexed by id; null where deleted. Guarded by {@link #lock} */
+    private User[] users = new User[64];
+    private int lastUserId = 0;
+    /** Indexed by id; null where deleted. Guarded by {@link #lock} */
+    private Game[] games = new Game[64];
+    private int lastGameId = 0;
+    /** Like an identity column, not reused after a rollback. Guarded by {@link #lock} */
+    private int lastCommentId = 0;
+    /** Number of grants of each game made on each day, indexed by game id. Guarded by {@link #lock} */
+    private final NavigableMap<LocalDate, int[]> grantsByDay = new TreeMap<>();
+    /** Date of each ownership, keyed by {@link #ownershipKey}. Guarded by {@link #lock} */
+    private final Map<Long, LocalDate> grantDates = new HashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /** An empty database, with only the ESRB ratings and genres */
+    public MemoryDatabase() {
+    }
+
+    /**
+     * A database filled with random users and games, the same ones for the same arguments.
+     * Users follow and comment on each other, and own games granted over the last few weeks.
+     */
+    public static MemoryDatabase seeded(int userCount, int gameCount, long seed) {
+        var db = new MemoryDatabase();
+        var random = new SplittableRandom(seed);
+        LocalDate today = LocalDate.now();
+        for (int id = 1; id <= userCount; id++)
+            db.insertUser("user" + id, LocalDate.of(2015, 1, 1).plusDays(random.nextInt(3000)));
+        for (int id = 1; id <= gameCount; id++) {
+            var name = new StringBuilder();
+            int words = 1 + random.nextInt(3);
+            for (int w = 0; w < words; w++)
+                name.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+            name.append(' ').append(id);
+            int[] genreIds = random.ints(1 + random.nextInt(3), 1, GENRES.length + 1).distinct().toArray();
+            db.insertGame(name.substring(0, Math.min(name.length(), GAME_NAME_LENGTH)), random.nextInt(101),
+                    1 + random.nextInt(ESRB_RATINGS.length), LocalDate.of(2000, 1, 1).plusDays(random.nextInt(8000)),
+                    BigDecimal.valueOf(random.nextInt(6000), 2), genreIds);
+        }
+        for (int id = 1; id <= userCount; id++) {
+            User user = db.users[id];
+            for (int i = 0; i < 10 && userCount > 1; i++) {
+                int followed = 1 + random.nextInt(userCount);
+                if (followed != id && user.followed.add(followed)) db.users[followed].followers.add(id);
+            }
+            for (int i = 0; i < 20 && gameCount > 0; i++) {
+                int gameId = 1 + random.nextInt(gameCount);
+                if (!user.owned.contains(gameId)) db.grant(user, db.games[gameId], today.minusDays(random.nextInt(60)), null);
+            }
+            for (int i = 0; i < 3; i++) {
+                User profile = db.users[1 + random.nextInt(userCount)];
+                profile.comments.add(new Comment(++db.lastCommentId, id, today.minusDays(random.nextInt(60)).atTime(12, 0), "Hello from user" + id));
+            }
+        }
+        for (int id = 1; id <= userCount; id++)
+            db.users[id].comments.sort(Comparator.comparing(c -> c.datetime));
+        return db;
+    }
+
+    /** Opens a new connection to this database. Each is used by one thread at a time, as JDBC connections are */
+    public Connection connect() {
+        return MemoryJdbc.connect(this, connections.incrementAndGet());
+    }
+
+    /**
+     * Performs the Action.
+     * @param args  the value of each Parameter, by position: Integer, BigDecimal, String, LocalDate or LocalDateTime
+     * @param undo  where to add what reverts the Action's changes, or null if they are committed right away
+     */
+    Result call(Action action, Object[] args, List<Runnable> undo) throws SQLException {
+        Lock held = (action.type == Action.AType.QUERY) ? lock.readLock() : lock.writeLock();
+        held.lock();
+        try {
+            return perform(action, args, undo);
+        } finally {
+            held.unlock();
+        }
+    }
+
+    /** Reverts changes in the reverse of the order they were made */
+    void rollback(List<Runnable> undo) {
+        lock.writeLock().lock();
+        try {
+            for (int i = undo.size() - 1; i >= 0; i--)
+                undo.get(i).run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Result perform(Action action, Object[] args, List<Runnable> undo) throws SQLException {
+        switch (action) {
+            case CREATE_ACCOUNT: {
+                String name = checkLength(string(args, 0), USERNAME_LENGTH, "username");
+                User user = insertUser(name, date(args, 1));
+                if (undo != null) undo.add(() -> users[user.id] = null);
+                return Result.created(user.id);
+            }
+            case UPDATE_USERNAME: {
+                User user = user(integer(args, 0));
+                if (user == null) return Result.updated(0);
+                String old = user.name;
+                user.name = checkLength(string(args, 1), USERNAME_LENGTH, "username");
+                if (undo != null) undo.add(() -> user.name = old);
+                return Result.updated(1);
+            }
+            case DELETE_USER:
+                return Result.updated(deleteUser(integer(args, 0), undo) ? 1 : 0);
+            case VIEW_USER_INFO: {
+                User user = user(integer(args, 0));
+                return Result.rows((user == null) ? List.of() : List.<Object[]>of(new Object[] {user.name, user.joinDate}));
+            }
+            case MAKE_COMMENT: {
+                User commenter = existingUser(integer(args, 0));
+                User profile = existingUser(integer(args, 1));
+                var comment = new Comment(++lastCommentId, commenter.id, dateTime(args, 2), checkLength(string(args, 3), MESSAGE_LENGTH, "message"));
+                profile.comments.add(comment);
+                if (undo != null) undo.add(() -> profile.comments.remove(comment));
+                return Result.updated(1);
+            }
+            case LIST_FOLLOWERS:
+                return Result.rows(usersWithNames(user(integer(args, 0)), false));
+            case LIST_FOLLOWED:
+                return Result.rows(usersWithNames(user(integer(args, 0)), true));
+            case FOLLOW_USER: {
+                User follower = existingUser(integer(args, 0));
+                User followed = existingUser(integer(args, 1));
+                if (follower.followed.contains(followed.id))
+                    throw duplicate("follow of " + followed.id + " by " + follower.id);
+                follow(follower, followed, true);
+                if (undo != null) undo.add(() -> follow(follower, followed, false));
+                return Result.updated(1);
+            }
+            case UNFOLLOW_USER: {
+                User follower = user(integer(args, 0));
+                User followed = user(integer(args, 1));
+                if (follower == null || followed == null || !follower.followed.contains(followed.id)) return Result.updated(0);
+                follow(follower, followed, false);
+                if (undo != null) undo.add(() -> refollow(follower, followed));
+                return Result.updated(1);
+            }
+            case ADD_GAME: {
+                int ratingId = integer(args, 2);
+                if (ratingId < 1 || ratingId > ESRB_RATINGS.length) throw missing("ESRB rating", ratingId);
+                Game game = insertGame(checkLength(string(args, 0), GAME_NAME_LENGTH, "game_name"), integer(args, 1),
+                        ratingId, date(args, 3), money(args, 4), new int[0]);
+                if (undo != null) undo.add(() -> games[game.id] = null);
+                return Result.created(game.id);
+            }
+            case UPDATE_GAME_REVIEW_AVG: {
+                Game game = game(integer(args, 0));
+                if (game == null) return Result.updated(0);
+                int old = game.reviewAvg;
+                game.reviewAvg = integer(args, 1);
+                if (undo != null) undo.add(() -> game.reviewAvg = old);
+                return Result.updated(1);
+            }
+            case UPDATE_GAME_PRICE: {
+                Game game = game(integer(args, 0));
+                if (game == null) return Result.updated(0);
+                BigDecimal old = game.price;
+                game.price = money(args, 1);
+                if (undo != null) undo.add(() -> game.price = old);
+                return Result.updated(1);
+            }
+            case DELETE_GAME:
+                return Result.updated(deleteGame(integer(args, 0), undo) ? 1 : 0);
+            case GRANT_GAME: {
+                User user = existingUser(integer(args, 0));
+                Game game = game(integer(args, 1));
+                if (game == null) throw missing("game", integer(args, 1));
+                if (user.owned.contains(game.id)) throw duplicate("ownership of " + game.id + " by " + user.id);
+                grant(user, game, date(args, 2), undo);
+                return Result.updated(1);
+            }
+            case LIST_PROFILE_COMMENTS: {
+                User profile = user(integer(args, 0));
+                List<Object[]> rows = new ArrayList<>();
+                if (profile != null) {
+                    for (Comment comment : profile.comments) {
+                        User commenter = user(comment.commenterId);
+                        rows.add(new Object[] {comment.message, commenter.name, comment.datetime});
+                    }
+                    // newest first; stable, so comments made at the same time are listed newest first too
+                    Collections.reverse(rows);
+                    rows.sort(Comparator.comparing((Object[] row) -> (LocalDateTime) row[2]).reversed());
+                }
+                return Result.rows(rows);
+            }
+            case LIST_PROFILE_COMMENTS_PAGE:
+                return Result.rows(commentsPage(user(integer(args, 0)), dateTime(args, 1), integer(args, 2), integer(args, 3)));
+            case LIST_GAMES_OWNED: {
+                User user = user(integer(args, 0));
+                List<Object[]> rows = new ArrayList<>();
+                if (user != null) {
+                    int[] ids = user.owned.toArray();
+                    Arrays.sort(ids);
+                    for (int id : ids)
+                        rows.add(new Object[] {id, games[id].name});
+                }
+                return Result.rows(rows);
+            }
+            case LIST_GAMES_WITH_ESRB_RATING: {
+                int ratingId = integer(args, 0);
+                List<Object[]> rows = new ArrayList<>();
+                for (int id = 1; id <= lastGameId; id++)
+                    if (games[id] != null && games[id].esrbRatingId == ratingId) rows.add(new Object[] {id, games[id].name});
+                return Result.rows(rows);
+            }
+            case LIST_GAMES_HIGHEST_RATING: {
+                List<Object[]> rows = new ArrayList<>();
+                for (int id = 1; id <= lastGameId; id++)
+                    if (games[id] != null) rows.add(new Object[] {id, games[id].name, games[id].reviewAvg});
+                rows.sort(Comparator.comparing((Object[] row) -> (Integer) row[2]).reversed());
+                return Result.rows(rows);
+            }
+            case VIEW_GAME_DETAILS: {
+                Game game = game(integer(args, 0));
+                return Result.rows((game == null) ? List.of() : List.<Object[]>of(new Object[] {
+                        game.id, game.name, game.reviewAvg, game.esrbRatingId, game.releaseDate, game.price}));
+            }
+            case LIST_GAME_GENRES: {
+                Game game = game(integer(args, 0));
+                List<Object[]> rows = new ArrayList<>();
+                if (game != null)
+                    for (int genreId : game.genreIds)
+                        rows.add(new Object[] {GENRES[genreId - 1]});
+                return Result.rows(rows);
+            }
+            case LIST_FOLLOWED_THAT_OWN_GAME: {
+                User user = user(integer(args, 0));
+                int gameId = integer(args, 1);
+                List<Object[]> rows = new ArrayList<>();
+                if (user != null) {
+                    int[] ids = user.followed.toArray();
+                    Arrays.sort(ids);
+                    for (int id : ids)
+                        if (users[id].owned.contains(gameId)) rows.add(new Object[] {users[id].name});
+                }
+                return Result.rows(rows);
+            }
+            case LIST_N_BEST_SELLING:
+                return Result.rows(bestSelling(integer(args, 0)));
+            case LIST_ESRB_RATINGS:
+                return Result.rows(lookupTable(ESRB_RATINGS));
+            case LIST_GAMES_PAGE:
+                return Result.rows(gamesPage(null, integer(args, 0), integer(args, 1)));
+            case SEARCH_GAMES:
+                return Result.rows(gamesPage(string(args, 0).toLowerCase(Locale.ROOT), integer(args, 1), integer(args, 2)));
+            case IS_GAME_OWNED: {
+                User user = user(integer(args, 0));
+                boolean owned = user != null && user.owned.contains(integer(args, 1));
+                return Result.rows(owned ? List.<Object[]>of(new Object[] {1}) : List.of());
+            }
+            case LIST_GENRES:
+                return Result.rows(lookupTable(GENRES));
+            case IS_FOLLOWING: {
+                User follower = user(integer(args, 0));
+                boolean following = follower != null && follower.followed.contains(integer(args, 1));
+                return Result.rows(following ? List.<Object[]>of(new Object[] {1}) : List.of());
+            }
+            case VIEW_PROFILE_HEADER: {
+                User viewer = user(integer(args, 0));
+                User user = user(integer(args, 1));
+                if (user == null) return Result.rows(List.of());
+                int following = (viewer != null && viewer.followed.contains(user.id)) ? 1 : 0;
+                return Result.rows(List.<Object[]>of(new Object[] {
+                        user.name, user.joinDate, following, user.followers.size(), user.followed.size()}));
+            }
+            case LIST_SALES_PAST_SEVEN_DAYS:
+                return Result.rows(recentSales());
+            case LIST_USERS_PAGE:
+                return Result.rows(usersPage(integer(args, 0), integer(args, 1)));
+            case LIST_FOLLOWS_PAGE:
+                return Result.rows(followsPage(integer(args, 0), integer(args, 1), integer(args, 2)));
+            default:
+                throw new SQLException("Could not find stored procedure for " + action);
+        }
+    }
+
+    private User insertUser(String name, LocalDate joinDate) {
+        int id = ++lastUserId;
+        if (id >= users.length) users = Arrays.copyOf(users, users.length * 2);
+        return users[id] = new User(id, name, joinDate);
+    }
+
+    private Game insertGame(String name, int reviewAvg, int esrbRatingId, LocalDate releaseDate, BigDecimal price, int[] genreIds) {
+        int id = ++lastGameId;
+        if (id >= games.length) games = Arrays.copyOf(games, games.length * 2);
+        return games[id] = new Game(id, name, reviewAvg, esrbRatingId, releaseDate, price, genreIds);
+    }
+
+    /** Also removes the user's follows, ownership and comments, as the DB's cascading deletes do */
+    private boolean deleteUser(int id, List<Runnable> undo) {
+        User user = user(id);
+        if (user == null) return false;
+        // the other users are captured now: by the rollback, they may have been deleted
+        for (int followedId : user.followed.toArray()) {
+            User followed = users[followedId];
+            follow(user, followed, false);
+            if (undo != null) undo.add(() -> refollow(user, followed));
+        }
+        for (int followerId : user.followers.toArray()) {
+            User follower = users[followerId];
+            follow(follower, user, false);
+            if (undo != null) undo.add(() -> refollow(follower, user));
+        }
+        for (int gameId : user.owned.toArray())
+            revoke(user, games[gameId], undo);
+        for (int other = 1; other <= lastUserId; other++) {
+            if (users[other] == null || other == id) continue;
+            List<Comment> comments = users[other].comments;
+            for (int i = comments.size() - 1; i >= 0; i--) {
+                if (comments.get(i).commenterId != id) continue;
+                Comment comment = comments.remove(i);
+                int position = i;
+                if (undo != null) undo.add(() -> comments.add(position, comment));
+            }
+        }
+        users[id] = null;
+        if (undo != null) undo.add(() -> users[id] = user);
+        return true;
+    }
+
+    /** Also removes the game's ownership, as the DB's cascading deletes do */
+    private boolean deleteGame(int id, List<Runnable> undo) {
+        Game game = game(id);
+        if (game == null) return false;
+        for (int userId : game.owners.toArray())
+            revoke(users[userId], game, undo);
+        games[id] = null;
+        if (undo != null) undo.add(() -> games[id] = game);
+        return true;
+    }
+
+    private void follow(User follower, User followed, boolean follow) {
+        if (follow) {
+            follower.followed.add(followed.id);
+            followed.followers.add(follower.id);
+        } else {
+            follower.followed.remove(followed.id);
+            followed.followers.remove(follower.id);
+        }
+    }
+
+    /** Restores a follow on rollback, unless either user was deleted since */
+    private void refollow(User follower, User followed) {
+        if (isLive(follower) && isLive(followed)) follow(follower, followed, true);
+    }
+
+    private void grant(User user, Game game, LocalDate date, List<Runnable> undo) {
+        user.owned.add(game.id);
+        game.owners.add(user.id);
+        grantDates.put(ownershipKey(user.id, game.id), date);
+        countGrant(date, game.id, 1);
+        if (undo != null) undo.add(() -> revoke(user, game, null));
+    }
+
+    /** Does nothing if the user does not own the game, ex. when undoing a grant that another connection revoked */
+    private void revoke(User user, Game game, List<Runnable> undo) {
+        LocalDate date = grantDates.remove(ownershipKey(user.id, game.id));
+        if (date == null) return;
+        user.owned.remove(game.id);
+        game.owners.remove(user.id);
+        countGrant(date, game.id, -1);
+        if (undo != null) undo.add(() -> regrant(user, game, date));
+    }
+
+    /** Restores an ownership on rollback, unless the user or game was deleted or the game granted again since */
+    private void regrant(User user, Game game, LocalDate date) {
+        if (isLive(user) && isLive(game) && !user.owned.contains(game.id)) grant(user, game, date, null);
+    }
+
+    private void countGrant(LocalDate date, int gameId, int delta) {
+        int[] counts = grantsByDay.get(date);
+        if (counts == null || counts.length <= gameId)
+            grantsByDay.put(date, counts = Arrays.copyOf((counts == null) ? new int[0] : counts, Math.max(gameId + 1, games.length)));
+        counts[gameId] += delta;
+    }
+
+    private static long ownershipKey(int userId, int gameId) {
+        return ((long) userId << 32) | gameId;
+    }
+
+    /** (game_id, game_name) of the games granted the most over the last {@link #BEST_SELLING_DAYS} days */
+    private List<Object[]> bestSelling(int limit) {
+        LocalDate today = LocalDate.now();
+        int[] totals = new int[lastGameId + 1];
+        for (int[] counts : grantsByDay.subMap(today.minusDays(BEST_SELLING_DAYS - 1), true, today, true).values())
+            for (int id = 1; id < Math.min(counts.length, totals.length); id++)
+                totals[id] += counts[id];
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id < totals.length; id++)
+            if (totals[id] > 0 && games[id] != null) ids.add(id);
+        ids.sort(Comparator.comparing((Integer id) -> totals[id]).reversed());
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, ids.size()); i++)
+            rows.add(new Object[] {ids.get(i), games[ids.get(i)].name});
+        return rows;
+    }
+
+    /** (game_id, game_name, sale_date, sales) of each game granted on each of the last {@link #BEST_SELLING_DAYS} days */
+    private List<Object[]> recentSales() {
+        LocalDate today = LocalDate.now();
+        List<Object[]> rows = new ArrayList<>();
+        for (var day : grantsByDay.subMap(today.minusDays(BEST_SELLING_DAYS - 1), true, today, true).entrySet()) {
+            int[] counts = day.getValue();
+            for (int id = 1; id < Math.min(counts.length, lastGameId + 1); id++)
+                if (counts[id] > 0 && games[id] != null) rows.add(new Object[] {id, games[id].name, day.getKey(), counts[id]});
+        }
+        return rows;
+    }
+
+    /** @param search  lower case part of the names to list, or null for every game */
+    private List<Object[]> gamesPage(String search, int afterId, int limit) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int id = Math.max(afterId + 1, 1); id <= lastGameId && rows.size() < limit; id++) {
+            Game game = games[id];
+            if (game != null && (search == null || game.name.toLowerCase(Locale.ROOT).contains(search)))
+                rows.add(new Object[] {id, game.name});
+        }
+        return rows;
+    }
+
+    /** (comment_id, message, username, datetime) of the comments before (datetime, id), newest first */
+    private List<Object[]> commentsPage(User profile, LocalDateTime beforeDateTime, int beforeId, int limit) {
+        List<Object[]> rows = new ArrayList<>();
+        if (profile == null) return rows;
+        Comparator<Comment> newestFirst = Comparator.comparing((Comment comment) -> comment.datetime)
+                .thenComparingInt(comment -> comment.id).reversed();
+        var before = new Comment(beforeId, 0, beforeDateTime, null);
+        List<Comment> older = new ArrayList<>();
+        for (Comment comment : profile.comments)
+            if (newestFirst.compare(comment, before) > 0) older.add(comment);
+        older.sort(newestFirst);
+        for (Comment comment : older.subList(0, Math.min(limit, older.size())))
+            rows.add(new Object[] {comment.id, comment.message, user(comment.commenterId).name, comment.datetime});
+        return rows;
+    }
+
+    private List<Object[]> usersPage(int afterId, int limit) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int id = Math.max(afterId + 1, 1); id <= lastUserId && rows.size() < limit; id++)
+            if (users[id] != null) rows.add(new Object[] {id, users[id].name});
+        return rows;
+    }
+
+    /** (follower_id, followed_id) of the follows after (afterFollowerId, afterFollowedId), in that order */
+    private List<Object[]> followsPage(int afterFollowerId, int afterFollowedId, int limit) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int id = Math.max(afterFollowerId, 1); id <= lastUserId && rows.size() < limit; id++) {
+            if (users[id] == null) continue;
+            int[] followed = users[id].followed.toArray();
+            Arrays.sort(followed);
+            for (int i = 0; i < followed.length && rows.size() < limit; i++)
+                if (id > afterFollowerId || followed[i] > afterFollowedId) rows.add(new Object[] {id, followed[i]});
+        }
+        return rows;
+    }
+
+    /** (id, username) of those the user follows, or of its followers */
+    private List<Object[]> usersWithNames(User user, boolean followed) {
+        List<Object[]> rows = new ArrayList<>();
+        if (user == null) return rows;
+        int[] ids = (followed ? user.followed : user.followers).toArray();
+        Arrays.sort(ids);
+        for (int id : ids)
+            rows.add(new Object[] {id, users[id].name});
+        return rows;
+    }
+
+    private static List<Object[]> lookupTable(String[] names) {
+        List<Object[]> rows = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++)
+            rows.add(new Object[] {i + 1, names[i]});
+        return rows;
+    }
+
+    private User user(int id) {
+        return (id > 0 && id <= lastUserId) ? users[id] : null;
+    }
+
+    private Game game(int id) {
+        return (id > 0 && id <= lastGameId) ? games[id] : null;
+    }
+
+    /** Whether the user has not been deleted, or was restored by a rollback */
+    private boolean isLive(User user) {
+        return users[user.id] == user;
+    }
+
+    private boolean isLive(Game game) {
+        return games[game.id] == game;
+    }
+
+    private User existingUser(int id) throws SQLException {
+        User user = user(id);
+        if (user == null) throw missing("user", id);
+        return user;
+    }
+
+    private static SQLException missing(String what, int id) {
+        return new SQLIntegrityConstraintViolationException("No " + what + " with id " + id, "23000", 547);
+    }
+
+    private static SQLException duplicate(String what) {
+        return new SQLIntegrityConstraintViolationException("Duplicate " + what, "23000", 2627);
+    }
+
+    private static String checkLength(String value, int length, String column) throws SQLException {
+        if (value.length() > length)
+            throw new SQLDataException(String.format("%s is longer than %d characters", column, length), "22001", 8152);
+        return value;
+    }
+
+    private static int integer(Object[] args, int position) {
+        return (Integer) args[position];
+    }
+
+    private static String string(Object[] args, int position) {
+        return (String) args[position];
+    }
+
+    private static BigDecimal money(Object[] args, int position) {
+        return (BigDecimal) args[position];
+    }
+
+    private static LocalDate date(Object[] args, int position) {
+        return (LocalDate) args[position];
+    }
+
+    private static LocalDateTime dateTime(Object[] args, int position) {
+        return (LocalDateTime) args[position];
+    }
+}
@@ -0,0 +1,411 @@
+package edu.cwru.csds341.vapor.common;
+
+import edu.cwru.csds341.vapor.common.Action.Column;
+import edu.cwru.csds341.vapor.common.Action.Parameter.PType;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JDBC objects through which a {@link MemoryDatabase} is used: connections that prepare the statements of Actions,
+ * statements that call the database, and ResultSets over the rows it returned.
+ * They are {@link Proxy}s implementing the subset of JDBC the application uses; other methods throw
+ * {@link SQLFeatureNotSupportedException}. Like a driver's objects, each is used by one thread at a time.
+ */
+final class MemoryJdbc {
+    /** Instances of this class are useless */
+    private MemoryJdbc() {}
+
+    /** Each Action, by {@link Action#storedProcedureString} */
+    private static final Map<String, Action> ACTIONS = new HashMap<>();
+    static {
+        for (Action action : Action.VALUES)
+            ACTIONS.put(action.storedProcedureString, action);
+    }
+
+    /**
+     * Columns of the rows of Actions that declare none, ex. {@link Action#IS_GAME_OWNED} and {@link Action#IS_FOLLOWING},
+     * whose callers only check whether there is a row, so don't need a label
+     */
+    private static final String[] UNDECLARED_LABELS = {""};
+    private static final int[] UNDECLARED_TYPES = {Types.INTEGER};
+
+    static Connection connect(MemoryDatabase database, int number) {
+        return proxy(Connection.class, new ConnectionHandler(database, number));
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    /** Handles the methods every proxy has, or returns null */
+    private static Object objectMethod(Object proxy, Method method, Object[] args, String name) {
+        switch (method.getName()) {
+            case "equals": return proxy == args[0];
+            case "hashCode": return System.identityHashCode(proxy);
+            case "toString": return name;
+            case "isWrapperFor": return false;
+            default: return null;
+        }
+    }
+
+    private static SQLException unsupported(Method method) {
+        return new SQLFeatureNotSupportedException(method.getName() + " is not supported by the in-memory database");
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final MemoryDatabase database;
+        private final String name;
+        private boolean autoCommit = true;
+        private boolean closed = false;
+        /** Reverts what was done since the last commit, while auto-commit is off */
+        private final List<Runnable> undo = new ArrayList<>();
+
+        ConnectionHandler(MemoryDatabase database, int number) {
+            this.database = database;
+            this.name = "MemoryConnection-" + number;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object common = objectMethod(proxy, method, args, name);
+            if (common != null) return common;
+            switch (method.getName()) {
+                case "isClosed": return closed;
+                case "isValid": return !closed;
+                case "close":
+                    if (!closed) rollback();
+                    closed = true;
+                    return null;
+            }
+            if (closed) throw new SQLException("Connection is closed");
+            switch (method.getName()) {
+                case "prepareCall": {
+                    Action action = ACTIONS.get((String) args[0]);
+                    if (action == null) throw new SQLException("Could not find stored procedure " + args[0]);
+                    return proxy(CallableStatement.class, new StatementHandler(this, (Connection) proxy, action));
+                }
+                case "getAutoCommit": return autoCommit;
+                case "setAutoCommit":
+                    // as in JDBC, turning it back on commits
+                    if ((Boolean) args[0] && !autoCommit) undo.clear();
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "commit":
+                    undo.clear();
+                    return null;
+                case "rollback":
+                    if (args != null) throw unsupported(method);
+                    rollback();
+                    return null;
+                case "clearWarnings": return null;
+                case "getWarnings": return null;
+                default: throw unsupported(method);
+            }
+        }
+
+        MemoryDatabase.Result call(Action action, Object[] values) throws SQLException {
+            return database.call(action, values, autoCommit ? null : undo);
+        }
+
+        private void rollback() {
+            if (undo.isEmpty()) return;
+            database.rollback(undo);
+            undo.clear();
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final ConnectionHandler connection;
+        private final Connection connectionProxy;
+        private final Action action;
+        private final Object[] values;
+        private final List<Object[]> batch = new ArrayList<>();
+        private int createdId = 0;
+        private int fetchSize = 0;
+        private int queryTimeout = 0;
+        private boolean closed = false;
+
+        StatementHandler(ConnectionHandler connection, Connection connectionProxy, Action action) {
+            this.connection = connection;
+            this.connectionProxy = connectionProxy;
+            this.action = action;
+            this.values = new Object[action.parameters.size()];
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object common = objectMethod(proxy, method, args, "MemoryStatement[" + action + "]");
+            if (common != null) return common;
+            switch (method.getName()) {
+                case "isClosed": return closed;
+                case "close":
+                    closed = true;
+                    return null;
+            }
+            if (closed) throw new SQLException("Statement is closed");
+            switch (method.getName()) {
+                case "setInt":
+                case "setString":
+                case "setBigDecimal":
+                    set(args, args[1]);
+                    return null;
+                case "setDate":
+                    set(args, (args[1] == null) ? null : ((Date) args[1]).toLocalDate());
+                    return null;
+                case "setTimestamp":
+                    set(args, (args[1] == null) ? null : ((Timestamp) args[1]).toLocalDateTime());
+                    return null;
+                case "setNull":
+                    set(args, null);
+                    return null;
+                case "registerOutParameter":
+                    if (args[0] instanceof Integer && (Integer) args[0] != action.outParameterIndex)
+                        throw new SQLException(args[0] + " is not an OUT parameter of " + action);
+                    return null;
+                case "clearParameters":
+                    Arrays.fill(values, null);
+                    return null;
+                case "executeQuery": {
+                    if (action.type != Action.AType.QUERY) throw new SQLException(action + " does not return rows");
+                    return resultSet(connection.call(action, checkedValues()).rows);
+                }
+                case "executeUpdate": {
+                    if (action.type == Action.AType.QUERY) throw new SQLException(action + " returns rows");
+                    var result = connection.call(action, checkedValues());
+                    createdId = result.createdId;
+                    return result.updated;
+                }
+                case "getInt":
+                    if (args[0] instanceof Integer && (Integer) args[0] == action.outParameterIndex && action.outParameterIndex > 0)
+                        return createdId;
+                    throw unsupported(method);
+                case "addBatch":
+                    if (args != null) throw unsupported(method);
+                    batch.add(checkedValues().clone());
+                    return null;
+                case "clearBatch":
+                    batch.clear();
+                    return null;
+                case "executeBatch":
+                    return executeBatch();
+                case "setFetchSize":
+                    fetchSize = (Integer) args[0];
+                    return null;
+                case "getFetchSize": return fetchSize;
+                case "setQueryTimeout":
+                    queryTimeout = (Integer) args[0];
+                    return null;
+                case "getQueryTimeout": return queryTimeout;
+                case "getConnection": return connectionProxy;
+                case "clearWarnings": return null;
+                case "getWarnings": return null;
+                default: throw unsupported(method);
+            }
+        }
+
+        /** Sets a parameter by its 1-based index. The OUT parameter of an INSERT_ID Action takes no value */
+        private void set(Object[] args, Object value) throws SQLException {
+            if (!(args[0] instanceof Integer)) throw new SQLFeatureNotSupportedException("Parameters can only be set by index");
+            int index = (Integer) args[0];
+            if (index == action.outParameterIndex && index > 0) return;
+            if (index < 1 || index > values.length)
+                throw new SQLException(String.format("%s has %d parameters, not %d", action, values.length, index));
+            values[index - 1] = value;
+        }
+
+        private Object[] checkedValues() throws SQLException {
+            for (int i = 0; i < values.length; i++)
+                if (values[i] == null)
+                    throw new SQLException(action + " expects " + action.parameters.get(i).argName + ", which was not supplied");
+            return values;
+        }
+
+        /** Stops at the first failure, as the SQL Server driver does */
+        private int[] executeBatch() throws SQLException {
+            if (action.type == Action.AType.QUERY) throw new SQLException(action + " returns rows, so it can't be batched");
+            int[] counts = new int[batch.size()];
+            try {
+                for (int i = 0; i < counts.length; i++) {
+                    try {
+                        counts[i] = connection.call(action, batch.get(i)).updated;
+                    } catch (SQLException e) {
+                        throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), Arrays.copyOf(counts, i), e);
+                    }
+                }
+                return counts;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        private ResultSet resultSet(List<Object[]> rows) {
+            if (action.columns.isEmpty()) return proxy(ResultSet.class, new ResultSetHandler(UNDECLARED_LABELS, UNDECLARED_TYPES, rows));
+            String[] labels = new String[action.columns.size()];
+            int[] types = new int[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                Column column = action.columns.get(i);
+                labels[i] = column.label;
+                types[i] = sqlType(column.type);
+            }
+            return proxy(ResultSet.class, new ResultSetHandler(labels, types, rows));
+        }
+    }
+
+    private static int sqlType(PType type) {
+        switch (type) {
+            case INT: return Types.INTEGER;
+            case MONEY: return Types.DECIMAL;
+            case DATE: return Types.DATE;
+            case DATETIME: return Types.TIMESTAMP;
+            default: return Types.NVARCHAR;
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final String[] labels;
+        private final int[] types;
+        private final List<Object[]> rows;
+        /** 0 before the first row */
+        private int row = 0;
+        private boolean wasNull = false;
+        private boolean closed = false;
+
+        ResultSetHandler(String[] labels, int[] types, List<Object[]> rows) {
+            this.labels = labels;
+            this.types = types;
+            this.rows = rows;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object common = objectMethod(proxy, method, args, "MemoryResultSet");
+            if (common != null) return common;
+            switch (method.getName()) {
+                case "isClosed": return closed;
+                case "close":
+                    closed = true;
+                    return null;
+            }
+            if (closed) throw new SQLException("ResultSet is closed");
+            switch (method.getName()) {
+                case "next":
+                    if (row <= rows.size()) row++;
+                    return row <= rows.size();
+                case "getRow": return (row <= rows.size()) ? row : 0;
+                case "wasNull": return wasNull;
+                case "findColumn": return column(args[0]);
+                case "getMetaData": return proxy(ResultSetMetaData.class, this::metadata);
+                case "setFetchSize":
+                case "clearWarnings":
+                    return null;
+                case "getFetchSize": return 0;
+                case "getWarnings": return null;
+                case "getObject":
+                    if (args.length > 1) throw unsupported(method);
+                    return value(args[0]);
+                case "getInt": {
+                    Object value = value(args[0]);
+                    return (value == null) ? 0 : ((Number) value).intValue();
+                }
+                case "getLong": {
+                    Object value = value(args[0]);
+                    return (value == null) ? 0L : ((Number) value).longValue();
+                }
+                case "getDouble": {
+                    Object value = value(args[0]);
+                    return (value == null) ? 0.0 : ((Number) value).doubleValue();
+                }
+                case "getBoolean": {
+                    Object value = value(args[0]);
+                    return value != null && ((Number) value).intValue() != 0;
+                }
+                case "getBigDecimal": {
+                    Object value = value(args[0]);
+                    return (value == null || value instanceof BigDecimal) ? value : new BigDecimal(value.toString());
+                }
+                case "getString": {
+                    Object value = value(args[0]);
+                    if (value == null) return null;
+                    if (value instanceof LocalDateTime) return Timestamp.valueOf((LocalDateTime) value).toString();
+                    if (value instanceof BigDecimal) return ((BigDecimal) value).toPlainString();
+                    return value.toString();
+                }
+                case "getDate": {
+                    Object value = value(args[0]);
+                    if (value instanceof LocalDateTime) return Date.valueOf(((LocalDateTime) value).toLocalDate());
+                    return (value == null) ? null : Date.valueOf((LocalDate) value);
+                }
+                case "getTimestamp": {
+                    Object value = value(args[0]);
+                    if (value instanceof LocalDate) return Timestamp.valueOf(((LocalDate) value).atStartOfDay());
+                    return (value == null) ? null : Timestamp.valueOf((LocalDateTime) value);
+                }
+                default: throw unsupported(method);
+            }
+        }
+
+        private Object metadata(Object proxy, Method method, Object[] args) throws SQLException {
+            Object common = objectMethod(proxy, method, args, "MemoryResultSetMetaData");
+            if (common != null) return common;
+            switch (method.getName()) {
+                case "getColumnCount": return labels.length;
+                case "getColumnLabel":
+                case "getColumnName":
+                    return labels[index(args[0])];
+                case "getColumnType": return types[index(args[0])];
+                case "getColumnDisplaySize":
+                    switch (types[index(args[0])]) {
+                        case Types.INTEGER: return 11;
+                        case Types.DECIMAL: return 21;
+                        case Types.DATE: return 10;
+                        case Types.TIMESTAMP: return 23;
+                        default: return 100;
+                    }
+                default: throw unsupported(method);
+            }
+        }
+
+        /** @return  the 0-based index of a 1-based column index */
+        private int index(Object column) throws SQLException {
+            int index = (Integer) column;
+            if (index < 1 || index > labels.length)
+                throw new SQLException(String.format("The result has %d columns, not %d", labels.length, index));
+            return index - 1;
+        }
+
+        /** @return  the 1-based index of a column given by index or label */
+        private int column(Object column) throws SQLException {
+            if (column instanceof Integer) return index(column) + 1;
+            for (int i = 0; i < labels.length; i++)
+                if (labels[i].equalsIgnoreCase((String) column)) return i + 1;
+            throw new SQLException("The result has no column " + column);
+        }
+
+        private Object value(Object column) throws SQLException {
+            if (row < 1 || row > rows.size()) throw new SQLException("The result set has no current row");
+            Object value = rows.get(row - 1)[column(column) - 1];
+            wasNull = value == null;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The ids of the games a user owns, loaded once with {@link Action#LIST_GAMES_OWNED}
+ * and then kept up to date by calling {@link #add(int)} after each {@link Action#GRANT_GAME} for the user.
+ * Answers ownership without a DB call once loaded. Thread-safe.
+ */
+public final class OwnedGames {
+    public final int userId;
+    private final IntHashSet games = new IntHashSet();
+    private boolean loaded = false;
+
+    public OwnedGames(int userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * Loads the user's games from the DB into the set.
+     * @throws SQLException  if a database access error occurs
+     */
+    public void load(Connection connection) throws SQLException {
+        var cs = Action.LIST_GAMES_OWNED.getCallableStatement(connection);
+        var args = Action.LIST_GAMES_OWNED.arguments().setInt(Action.Parameter.VGU_USERID, userId);
+        IntHashSet fresh = new IntHashSet();
+        try (var result = args.executeQuery(cs)) {
+            var rows = result.rows();
+            while (rows.next())
+                fresh.add(rows.getInt(Action.Column.GAME_ID));
+        }
+        synchronized (this) {
+            // merged rather than replaced, as grants recorded while loading may not be in the result
+            for (int gameId : fresh.toArray())
+                games.add(gameId);
+            loaded = true;
+        }
+    }
+
+    /** Whether {@link #load(Connection)} has completed, so that {@link #contains(int)} is authoritative */
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Whether the user owns the game. Only meaningful once {@link #isLoaded()} */
+    public synchronized boolean contains(int gameId) {
+        return games.contains(gameId);
+    }
+
+    /** Records that the game was granted to the user */
+    public synchronized void add(int gameId) {
+        games.add(gameId);
+    }
+
+    /** Number of games known to be owned */
+    public synchronized int size() {
+        return games.size();
+    }
+}
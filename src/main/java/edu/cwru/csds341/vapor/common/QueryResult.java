@@ -0,0 +1,54 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.sql.CallableStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The result of a QUERY Action executed with {@link Arguments#executeQuery}, read through {@link #rows()}
+ * or, by readers that need the columns as they are, {@link #resultSet()}.
+ * Closing it closes the ResultSet and logs the call to {@link SlowQueryLog#global()} if it was slow,
+ * with the rows read through {@link #rows()} or given to {@link #setRowCount(long)}.
+ */
+public final class QueryResult implements AutoCloseable {
+    private final Arguments args;
+    private final CallableStatement cs;
+    private final long startNanos;
+    private final ResultSet resultSet;
+    /** Created on first use */
+    private ResultRows rows;
+    /** Rows read from {@link #resultSet()} as reported by the reader, -1 if not */
+    private long rowCount = -1;
+
+    QueryResult(Arguments args, CallableStatement cs, long startNanos, ResultSet resultSet) {
+        this.args = args;
+        this.cs = cs;
+        this.startNanos = startNanos;
+        this.resultSet = resultSet;
+    }
+
+    /** The rows by {@link Action.Column}. See {@link Action#rows(ResultSet)} */
+    public ResultRows rows() throws SQLException {
+        if (rows == null) rows = args.action.rows(resultSet);
+        return rows;
+    }
+
+    public ResultSet resultSet() {
+        return resultSet;
+    }
+
+    /** Reports the rows read from {@link #resultSet()}, for the slow query log. -1 if unknown */
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            resultSet.close();
+        } finally {
+            long read = (rowCount >= 0 || rows == null) ? rowCount : rows.read();
+            SlowQueryLog.global().log(args, startNanos, read, cs);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small, rarely changing lookup tables (ESRB ratings, genres), kept in memory so that showing them costs no DB call.
+ * Each table is stored as an array indexed by id.
+ * <li>Readers never block; they see the tables as of the last refresh.</li>
+ * <li>{@link #refreshIfStale(Connection)} reloads the tables once the refresh interval has passed,
+ *     {@link #refresh(Connection)} reloads them immediately.</li>
+ * Its refresh interval comes from a {@link CacheConfig}.
+ */
+public final class ReferenceData {
+    /** Ids above this are assumed to be a mistake rather than a small lookup table */
+    private static final int MAX_ID = 1 << 16;
+
+    /** An immutable copy of the tables */
+    private static final class Snapshot {
+        /** Indexed by rating_id. null where there is no rating */
+        final String[] esrbRatings;
+        /** Indexed by genre_id. null where there is no genre */
+        final String[] genres;
+        /** {@link System#nanoTime()} of the refresh that produced this */
+        final long loadedAt;
+
+        Snapshot(String[] esrbRatings, String[] genres, long loadedAt) {
+            this.esrbRatings = esrbRatings;
+            this.genres = genres;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final long refreshIntervalNanos;
+    /** null until the first refresh */
+    private volatile Snapshot snapshot = null;
+
+    /** @param refreshIntervalSeconds  age at which the tables are considered stale. 0 to only refresh on demand */
+    public ReferenceData(int refreshIntervalSeconds) {
+        this.refreshIntervalNanos = TimeUnit.SECONDS.toNanos(refreshIntervalSeconds);
+    }
+
+    /** Whether the tables have been loaded at least once */
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /** Whether the tables have never been loaded, or are older than the refresh interval */
+    public boolean isStale() {
+        var current = snapshot;
+        return current == null
+                || (refreshIntervalNanos > 0 && System.nanoTime() - current.loadedAt > refreshIntervalNanos);
+    }
+
+    /**
+     * Reloads the tables if {@link #isStale()}.
+     * @param connection  used for the reload. Nothing is done if null (debug connections)
+     * @return  whether the tables were reloaded
+     * @throws SQLException  if a database access error occurs
+     */
+    public boolean refreshIfStale(Connection connection) throws SQLException {
+        if (connection == null || !isStale()) return false;
+        refresh(connection);
+        return true;
+    }
+
+    /**
+     * Reloads the tables. Readers keep seeing the old tables until both are loaded.
+     * @param connection  used for the reload. Nothing is done if null (debug connections)
+     * @throws SQLException  if a database access error occurs
+     */
+    public void refresh(Connection connection) throws SQLException {
+        if (connection == null) return;
+        String[] esrbRatings = load(connection, Action.LIST_ESRB_RATINGS, Action.Column.RATING_ID);
+        String[] genres = load(connection, Action.LIST_GENRES, Action.Column.GENRE_ID);
+        snapshot = new Snapshot(esrbRatings, genres, System.nanoTime());
+    }
+
+    /** Name of the ESRB rating, or null if unknown */
+    public String esrbRatingName(int ratingId) {
+        var current = snapshot;
+        return (current == null) ? null : lookup(current.esrbRatings, ratingId);
+    }
+
+    /** Name of the genre, or null if unknown */
+    public String genreName(int genreId) {
+        var current = snapshot;
+        return (current == null) ? null : lookup(current.genres, genreId);
+    }
+
+    /** All ESRB ratings, id to name, ascending by id */
+    public Map<Integer, String> esrbRatings() {
+        var current = snapshot;
+        return (current == null) ? Map.of() : asMap(current.esrbRatings);
+    }
+
+    /** All genres, id to name, ascending by id */
+    public Map<Integer, String> genres() {
+        var current = snapshot;
+        return (current == null) ? Map.of() : asMap(current.genres);
+    }
+
+    private static String lookup(String[] table, int id) {
+        return (0 <= id && id < table.length) ? table[id] : null;
+    }
+
+    private static Map<Integer, String> asMap(String[] table) {
+        Map<Integer, String> map = new TreeMap<>();
+        for (int id = 0; id < table.length; id++)
+            if (table[id] != null) map.put(id, table[id]);
+        return map;
+    }
+
+    /** Reads a parameterless QUERY Action's (id, {@link Action.Column#NAME}) rows into an array indexed by id */
+    private static String[] load(Connection connection, Action action, Action.Column idColumn) throws SQLException {
+        var cs = action.getCallableStatement(connection);
+        String[] table = new String[16];
+        try (var result = action.arguments().executeQuery(cs)) {
+            var rows = result.rows();
+            while (rows.next()) {
+                int id = rows.getInt(idColumn);
+                if (id < 0 || id > MAX_ID)
+                    throw new SQLException(String.format("%s returned an out of range %s: %d", action, idColumn.label, id));
+                if (id >= table.length) table = Arrays.copyOf(table, Math.max(id + 1, table.length * 2));
+                table[id] = rows.getString(Action.Column.NAME);
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,135 @@
+package edu.cwru.csds341.vapor.common;
+
+import edu.cwru.csds341.vapor.common.Action.Column;
+import edu.cwru.csds341.vapor.common.Action.Parameter.PType;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the rows of a QUERY Action's ResultSet by {@link Column}, with typed getters.
+ * The position of each of the Action's {@link Action#columns} is found once, when this is created:
+ * by its label if the result has one, otherwise by its position in the declared list.
+ * The rows read are counted in {@link ActionMetrics#global()} once the result is exhausted.
+ * Obtain instances through {@link Action#rows(ResultSet)}.
+ */
+public final class ResultRows {
+    /** Converts the current row into an object */
+    @FunctionalInterface
+    public interface Mapper<T> {
+        T map(ResultRows row) throws SQLException;
+    }
+
+    private final Action action;
+    private final ResultSet resultSet;
+    /** 1-based position of each Column in the result, indexed by ordinal. 0 if the Action does not declare it */
+    private final int[] positions = new int[COLUMN_COUNT];
+    private static final int COLUMN_COUNT = Column.values().length;
+    /** Rows read and not yet added to the Action's metrics */
+    private int rows;
+    /** Rows read in all */
+    private long read;
+
+    ResultRows(Action action, ResultSet resultSet) throws SQLException {
+        this.action = action;
+        this.resultSet = resultSet;
+        ResultSetMetaData metadata = resultSet.getMetaData();
+        int columnCount = metadata.getColumnCount();
+        String[] labels = new String[columnCount];
+        for (int i = 0; i < columnCount; i++)
+            labels[i] = metadata.getColumnLabel(i + 1);
+
+        for (int i = 0; i < action.columns.size(); i++) {
+            Column column = action.columns.get(i);
+            int position = 0;
+            for (int j = 0; j < columnCount && position == 0; j++)
+                if (column.label.equalsIgnoreCase(labels[j])) position = j + 1;
+            if (position == 0 && i < columnCount) position = i + 1;
+            if (position == 0)
+                throw new SQLException(String.format("%s returned %d columns, none of them %s", action, columnCount, column));
+            positions[column.ordinal()] = position;
+        }
+    }
+
+    /** Moves to the next row. See {@link ResultSet#next()} */
+    public boolean next() throws SQLException {
+        if (resultSet.next()) {
+            rows++;
+            read++;
+            return true;
+        }
+        countRows();
+        return false;
+    }
+
+    /** Maps each remaining row */
+    public <T> List<T> toList(Mapper<T> mapper) throws SQLException {
+        List<T> list = new ArrayList<>();
+        while (next())
+            list.add(mapper.map(this));
+        return list;
+    }
+
+    /** Maps the next row, or returns null if there is none */
+    public <T> T first(Mapper<T> mapper) throws SQLException {
+        T first = next() ? mapper.map(this) : null;
+        countRows();
+        return first;
+    }
+
+    /** The value of an INT column, or 0 if it is NULL */
+    public int getInt(Column column) throws SQLException {
+        return resultSet.getInt(position(column, PType.INT));
+    }
+
+    public BigDecimal getMoney(Column column) throws SQLException {
+        return resultSet.getBigDecimal(position(column, PType.MONEY));
+    }
+
+    public String getString(Column column) throws SQLException {
+        return resultSet.getString(position(column, PType.STRING));
+    }
+
+    public LocalDate getDate(Column column) throws SQLException {
+        Date date = resultSet.getDate(position(column, PType.DATE));
+        return (date == null) ? null : date.toLocalDate();
+    }
+
+    public LocalDateTime getDateTime(Column column) throws SQLException {
+        Timestamp timestamp = resultSet.getTimestamp(position(column, PType.DATETIME));
+        return (timestamp == null) ? null : timestamp.toLocalDateTime();
+    }
+
+    /** Whether the last column read was NULL */
+    public boolean wasNull() throws SQLException {
+        return resultSet.wasNull();
+    }
+
+    /** Rows moved to by {@link #next()} so far */
+    long read() {
+        return read;
+    }
+
+    private void countRows() {
+        if (rows == 0) return;
+        ActionMetrics.global().addRows(action, rows);
+        rows = 0;
+    }
+
+    private int position(Column column, PType type) {
+        int position = positions[column.ordinal()];
+        if (position == 0)
+            throw new IllegalArgumentException(action + " does not return " + column);
+        if (column.type != type)
+            throw new IllegalArgumentException(column + " is " + column.type + ", not " + type);
+        return position;
+    }
+}
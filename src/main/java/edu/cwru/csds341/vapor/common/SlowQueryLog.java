@@ -0,0 +1,269 @@
+package edu.cwru.csds341.vapor.common;
+
+import edu.cwru.csds341.vapor.common.Action.Parameter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs the {@link Action} calls that took longer than a threshold to a local file, one line each:
+ * when it ended, the Action, how long it took, the rows it returned or updated, the connection and its arguments.
+ * <li>Configured by the slow_query_* entries of the credentials file, see {@link Connections}.
+ *     Until then, or if the threshold is 0, {@link #global()} logs nothing.</li>
+ * <li>Calls are logged where they are executed: by {@link Arguments#executeUpdate} and {@link Action#executeBatch},
+ *     and by the {@link QueryResult} of {@link Arguments#executeQuery} once closed, so a QUERY's time includes reading its rows.
+ *     Calls under the threshold only cost a comparison.</li>
+ * <li>Lines are queued and written by a background thread, so callers never wait on the file.
+ *     If the queue is full, lines are dropped and their number is logged instead.</li>
+ * <li>The file is rolled once it exceeds its size: file becomes file.1, file.1 becomes file.2, ...,
+ *     and the oldest of the {@value #ROLLED_FILES} is deleted.</li>
+ */
+public final class SlowQueryLog {
+    /** Rolled files kept besides the current one */
+    public static final int ROLLED_FILES = 5;
+    private static final int QUEUE_CAPACITY = 4096;
+    /** Seconds to write what is still queued when the JVM exits */
+    private static final int SHUTDOWN_SECONDS = 2;
+    /** Queued to stop the writer, compared by identity */
+    private static final String STOP = new String("stop");
+
+    private static final SlowQueryLog DISABLED = new SlowQueryLog(null, Long.MAX_VALUE, false, 0);
+    private static volatile SlowQueryLog global = DISABLED;
+
+    private final Path file;
+    private final long thresholdNanos;
+    private final boolean redact;
+    private final long maxBytes;
+    private final BlockingQueue<String> queue;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Only used by the writer thread */
+    private Writer out;
+    private long bytes;
+
+    private SlowQueryLog(Path file, long thresholdNanos, boolean redact, long maxBytes) {
+        this(file, thresholdNanos, redact, maxBytes, QUEUE_CAPACITY);
+    }
+
+    /** A log without a writer thread, whose lines are written by {@link #writeQueued()}. For tests */
+    SlowQueryLog(Path file, long thresholdNanos, boolean redact, long maxBytes, int queueCapacity) {
+        this.file = file;
+        this.thresholdNanos = thresholdNanos;
+        this.redact = redact;
+        this.maxBytes = maxBytes;
+        this.queue = (file == null) ? null : new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /** The log of this process. Logs nothing until configured */
+    public static SlowQueryLog global() {
+        return global;
+    }
+
+    /**
+     * Starts logging calls slower than the threshold, unless already logging.
+     * Only the first configuration takes effect, as there is one log per process.
+     * @param thresholdMillis  0 to not log
+     * @param redact  whether to leave out the arguments' values, keeping their names
+     * @param maxBytes  size at which the file is rolled
+     */
+    static synchronized void configure(Path file, int thresholdMillis, boolean redact, long maxBytes) {
+        if (global != DISABLED || thresholdMillis == 0) return;
+        var log = new SlowQueryLog(file, TimeUnit.MILLISECONDS.toNanos(thresholdMillis), redact, maxBytes);
+        Thread writer = new Thread(log::write, "vapor-slow-query-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> log.stop(writer)));
+        global = log;
+    }
+
+    /**
+     * Logs the call of the Action if it was slow.
+     * @param startNanos  {@link System#nanoTime()} before it was executed
+     * @param rows  rows read or updated, -1 if unknown
+     * @param cs  the statement it was executed with, whose connection is logged
+     */
+    void log(Arguments args, long startNanos, long rows, CallableStatement cs) {
+        long elapsed = System.nanoTime() - startNanos;
+        if (elapsed < thresholdNanos) return;
+        var line = start(args.action, elapsed, rows, cs);
+        for (int i = 0; i < args.action.parameters.size(); i++)
+            appendArgument(line, i, args.action.parameters.get(i), args.value(i));
+        enqueue(line);
+    }
+
+    /**
+     * Logs a batch of calls of the Action if the batch was slow. Their arguments are not logged.
+     * @param count  calls in the batch
+     */
+    void logBatch(Action action, int count, long startNanos, long rows, CallableStatement cs) {
+        long elapsed = System.nanoTime() - startNanos;
+        if (elapsed < thresholdNanos) return;
+        enqueue(start(action, elapsed, rows, cs).append(" batch=").append(count));
+    }
+
+    private static StringBuilder start(Action action, long elapsedNanos, long rows, CallableStatement cs) {
+        var line = new StringBuilder(256)
+                .append(now())
+                .append(" action=").append(action.name())
+                .append(String.format(Locale.ROOT, " elapsed_ms=%.3f", elapsedNanos / 1e6))
+                .append(" rows=").append((rows < 0) ? "?" : Long.toString(rows))
+                .append(" connection=");
+        appendQuoted(line, String.valueOf(connection(cs)));
+        return line;
+    }
+
+    /** @return  the statement's connection, or null if it is closed */
+    private static Connection connection(CallableStatement cs) {
+        try {
+            return cs.getConnection();
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private void appendArgument(StringBuilder line, int position, Parameter parameter, Object value) {
+        line.append(position == 0 ? " args=" : ",").append(parameter.argName).append(':');
+        if (redact) line.append('?');
+        else if (value == null) line.append("null");
+        else if (parameter.type == Parameter.PType.STRING) appendQuoted(line, value.toString());
+        else line.append(value);
+    }
+
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    /** Appends the value in double quotes, escaping what would break the line */
+    private static void appendQuoted(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': line.append("\\\""); break;
+                case '\\': line.append("\\\\"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                default: line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private void enqueue(StringBuilder line) {
+        if (!queue.offer(line.toString())) dropped.incrementAndGet();
+    }
+
+    /** Run by the writer thread until {@link #STOP} is taken */
+    private void write() {
+        List<String> lines = new ArrayList<>();
+        while (true) {
+            try {
+                lines.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(lines);
+            boolean stop = writeLines(lines);
+            lines.clear();
+            if (stop) {
+                closeQuietly();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the lines up to {@link #STOP}, then the number of lines dropped since the last call.
+     * @return  whether {@link #STOP} was among the lines
+     */
+    private boolean writeLines(List<String> lines) {
+        boolean stop = false;
+        try {
+            for (String line : lines) {
+                if (line == STOP) {
+                    stop = true;
+                    break;
+                }
+                writeLine(line);
+            }
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) writeLine(now() + " dropped=" + lost);
+            if (out != null) out.flush();
+        } catch (IOException e) {
+            System.err.println("Could not write the slow query log " + file + ": " + e);
+            closeQuietly();
+        }
+        return stop;
+    }
+
+    /** Writes what is queued on the calling thread, then closes the file. For tests, as their logs have no writer thread */
+    void writeQueued() {
+        List<String> lines = new ArrayList<>();
+        queue.drainTo(lines);
+        writeLines(lines);
+        closeQuietly();
+    }
+
+    private void writeLine(String line) throws IOException {
+        if (out == null) {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            bytes = Files.size(file);
+        }
+        out.write(line);
+        out.write('\n');
+        // counts chars, which is exact for ASCII and close enough otherwise
+        bytes += line.length() + 1;
+        if (bytes >= maxBytes) roll();
+    }
+
+    private void roll() throws IOException {
+        out.close();
+        out = null;
+        for (int i = ROLLED_FILES - 1; i >= 1; i--) {
+            Path older = rolled(i);
+            if (Files.exists(older)) Files.move(older, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rolled(int generation) {
+        return file.resolveSibling(file.getFileName() + "." + generation);
+    }
+
+    private void closeQuietly() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+
+    /** Lets the writer finish what is queued, waiting a little for it */
+    private void stop(Thread writer) {
+        try {
+            queue.offer(STOP, SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+            writer.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_SECONDS));
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
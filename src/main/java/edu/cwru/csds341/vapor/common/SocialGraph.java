@@ -0,0 +1,485 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Who follows whom, and every user's name, kept in memory so that profile pages need no DB call for them.
+ * <li>The follows are held twice, by follower and by followed, each as compressed rows:
+ *     an int array of every user's targets, sorted within each user, and an array of where each user's start.
+ *     That is 8 bytes per follow and 8 per user, with no object per follow, so tens of millions fit predictably.</li>
+ * <li>Loaded page by page with {@link Action#LIST_USERS_PAGE} and {@link Action#LIST_FOLLOWS_PAGE},
+ *     and reloaded by {@link #refreshIfStale(Connection)} once the refresh interval has passed, for other clients' changes.</li>
+ * <li>As an {@link Updates.Listener}, records the changes made by this process with {@link #follow}, {@link #unfollow},
+ *     {@link #deleteUser} and {@link #setName} once the DB has accepted them.
+ *     They are kept aside from the arrays, which are rebuilt once there are many.
+ *     Batches of such changes are not kept, and make the graph stale instead.</li>
+ * <li>Deleted users lose their name at once, and their follows when the arrays are rebuilt.</li>
+ * Answers are only meaningful once {@link #isLoaded()}. Refreshed as often as its {@link CacheConfig} says.
+ */
+public final class SocialGraph implements Updates.Listener {
+    /** Rows requested per page when loading */
+    private static final int DEFAULT_PAGE_SIZE = 10_000;
+    /** Fewest changes kept aside before the arrays are rebuilt; more are kept for larger graphs */
+    private static final int MIN_COMPACTION_CHANGES = 4096;
+    private static final int[] NONE = new int[0];
+    private static final int FOLLOW = 0, UNFOLLOW = 1, DELETE = 2;
+
+    /** Each user's targets are targets[offsets[user]] to targets[offsets[user + 1]] - 1, ascending */
+    private static final class Rows {
+        static final Rows EMPTY = new Rows(new int[1], NONE);
+
+        final int[] offsets;
+        final int[] targets;
+
+        Rows(int[] offsets, int[] targets) {
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+
+        int start(int user) {
+            return (user >= 0 && user + 1 < offsets.length) ? offsets[user] : 0;
+        }
+
+        int end(int user) {
+            return (user >= 0 && user + 1 < offsets.length) ? offsets[user + 1] : 0;
+        }
+
+        boolean contains(int user, int target) {
+            return Arrays.binarySearch(targets, start(user), end(user), target) >= 0;
+        }
+
+        /** Groups the pairs by source, with each source's targets sorted */
+        static Rows of(int users, int[] sources, int[] targets, int count) {
+            int[] offsets = new int[users + 1];
+            for (int i = 0; i < count; i++)
+                offsets[sources[i] + 1]++;
+            for (int user = 0; user < users; user++)
+                offsets[user + 1] += offsets[user];
+            int[] next = Arrays.copyOf(offsets, users);
+            int[] grouped = new int[count];
+            for (int i = 0; i < count; i++)
+                grouped[next[sources[i]]++] = targets[i];
+            for (int user = 0; user < users; user++)
+                Arrays.sort(grouped, offsets[user], offsets[user + 1]);
+            return new Rows(offsets, grouped);
+        }
+
+        /** The same pairs grouped by target. Rows come out sorted, as sources are visited in order */
+        Rows transpose(int users) {
+            int[] reversedOffsets = new int[users + 1];
+            for (int target : targets)
+                reversedOffsets[target + 1]++;
+            for (int user = 0; user < users; user++)
+                reversedOffsets[user + 1] += reversedOffsets[user];
+            int[] next = Arrays.copyOf(reversedOffsets, users);
+            int[] sources = new int[targets.length];
+            for (int user = 0; user + 1 < offsets.length; user++)
+                for (int i = offsets[user]; i < offsets[user + 1]; i++)
+                    sources[next[targets[i]]++] = user;
+            return new Rows(reversedOffsets, sources);
+        }
+    }
+
+    /** Pairs read while loading, grown as needed */
+    private static final class Pairs {
+        int[] sources = new int[1024];
+        int[] targets = new int[1024];
+        int count = 0;
+        int maxId = 0;
+
+        void add(int source, int target) {
+            if (count == sources.length) {
+                sources = Arrays.copyOf(sources, count * 2);
+                targets = Arrays.copyOf(targets, count * 2);
+            }
+            sources[count] = source;
+            targets[count++] = target;
+            maxId = Math.max(maxId, Math.max(source, target));
+        }
+    }
+
+    private final long refreshIntervalNanos;
+    private final int pageSize;
+
+    // all guarded by this
+    private Rows followed = Rows.EMPTY;
+    private Rows followers = Rows.EMPTY;
+    /** Indexed by user id. null for unknown ids */
+    private String[] names = new String[0];
+    /** Follows made since the arrays were built, that they lack. By follower, then by followed */
+    private final Map<Integer, IntHashSet> addedFollowed = new HashMap<>(), addedFollowers = new HashMap<>();
+    /** Follows undone since the arrays were built, that they still hold. By follower, then by followed */
+    private final Map<Integer, IntHashSet> removedFollowed = new HashMap<>(), removedFollowers = new HashMap<>();
+    /** Users deleted since the arrays were built, whose follows they still hold */
+    private final IntHashSet deleted = new IntHashSet();
+    /** Size of the above */
+    private int changes = 0;
+    /** Changes made during a refresh, as (kind, a, b) triples, applied again to its result. null if not refreshing */
+    private int[] changeLog = null;
+    private int changeLogSize = 0;
+    /** Names set during a refresh, applied again to its result. Only used while {@link #changeLog} is */
+    private final Map<Integer, String> changedNames = new HashMap<>();
+    private long refreshedAt = 0;
+    private boolean loaded = false;
+    /** Set when the graph is known to lack changes, until the next refresh starts */
+    private boolean invalidated = false;
+
+    /** @param refreshIntervalSeconds  age at which the graph is reloaded. 0 to never reload once loaded */
+    public SocialGraph(int refreshIntervalSeconds) {
+        this(refreshIntervalSeconds, DEFAULT_PAGE_SIZE);
+    }
+
+    SocialGraph(int refreshIntervalSeconds, int pageSize) {
+        this.refreshIntervalNanos = TimeUnit.SECONDS.toNanos(refreshIntervalSeconds);
+        this.pageSize = pageSize;
+    }
+
+    /** Whether the graph was loaded at least once */
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Whether the graph was never loaded, not within the refresh interval, or was invalidated since */
+    public synchronized boolean isStale() {
+        return !loaded || invalidated || (refreshIntervalNanos > 0 && System.nanoTime() - refreshedAt > refreshIntervalNanos);
+    }
+
+    /** Makes the graph stale, so the next {@link #refreshIfStale(Connection)} reloads it */
+    public synchronized void invalidate() {
+        invalidated = true;
+    }
+
+    /**
+     * Reloads the graph if {@link #isStale()} and no other thread is already loading it.
+     * @param connection  used for the queries. Nothing is done if null (debug connections)
+     * @return  whether the graph was reloaded
+     * @throws SQLException  if a database access error occurs
+     */
+    public boolean refreshIfStale(Connection connection) throws SQLException {
+        if (!isStale()) return false;
+        return refresh(connection);
+    }
+
+    /**
+     * Reloads the graph, unless another thread is already loading it.
+     * Readers keep seeing the current graph until the new one is read.
+     * @param connection  used for the queries. Nothing is done if null (debug connections)
+     * @return  whether the graph was reloaded
+     * @throws SQLException  if a database access error occurs
+     */
+    public boolean refresh(Connection connection) throws SQLException {
+        if (connection == null) return false;
+        synchronized (this) {
+            if (changeLog != null) return false;
+            changeLog = new int[48];
+            changeLogSize = 0;
+            changedNames.clear();
+            invalidated = false;
+        }
+        try {
+            String[] freshNames = loadNames(connection);
+            Pairs pairs = loadFollows(connection);
+            int users = Math.max(freshNames.length, pairs.maxId + 1);
+            Rows freshFollowed = Rows.of(users, pairs.sources, pairs.targets, pairs.count);
+            pairs = null;
+            Rows freshFollowers = freshFollowed.transpose(users);
+            synchronized (this) {
+                followed = freshFollowed;
+                followers = freshFollowers;
+                names = freshNames;
+                clearChanges();
+                int[] log = changeLog;
+                changeLog = null;
+                // names set and follows changed by this process while loading are kept
+                for (var name : changedNames.entrySet())
+                    putName(name.getKey(), name.getValue());
+                changedNames.clear();
+                for (int i = 0; i < changeLogSize; i += 3)
+                    apply(log[i], log[i + 1], log[i + 2]);
+                refreshedAt = System.nanoTime();
+                loaded = true;
+            }
+            return true;
+        } finally {
+            synchronized (this) {
+                changeLog = null;
+                changedNames.clear();
+            }
+        }
+    }
+
+    private String[] loadNames(Connection connection) throws SQLException {
+        Action action = Action.LIST_USERS_PAGE;
+        var cs = action.getCallableStatement(connection);
+        String[] names = new String[1024];
+        int afterId = 0;
+        while (true) {
+            var args = action.arguments()
+                    .setInt(Action.Parameter.LUP_AFTER_ID, afterId)
+                    .setInt(Action.Parameter.LUP_LIMIT, pageSize);
+            int count = 0;
+            try (var result = args.executeQuery(cs)) {
+                var rows = result.rows();
+                for (; rows.next(); count++) {
+                    int id = rows.getInt(Action.Column.USER_ID);
+                    if (id >= names.length) names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+                    names[id] = rows.getString(Action.Column.USERNAME);
+                    afterId = Math.max(afterId, id);
+                }
+            }
+            if (count < pageSize) return Arrays.copyOf(names, afterId + 1);
+        }
+    }
+
+    private Pairs loadFollows(Connection connection) throws SQLException {
+        Action action = Action.LIST_FOLLOWS_PAGE;
+        var cs = action.getCallableStatement(connection);
+        Pairs pairs = new Pairs();
+        int afterFollower = 0, afterFollowed = 0;
+        while (true) {
+            var args = action.arguments()
+                    .setInt(Action.Parameter.LFP_AFTER_FOLLOWER_ID, afterFollower)
+                    .setInt(Action.Parameter.LFP_AFTER_FOLLOWED_ID, afterFollowed)
+                    .setInt(Action.Parameter.LFP_LIMIT, pageSize);
+            int count = 0;
+            try (var result = args.executeQuery(cs)) {
+                var rows = result.rows();
+                for (; rows.next(); count++) {
+                    afterFollower = rows.getInt(Action.Column.FOLLOWER_ID);
+                    afterFollowed = rows.getInt(Action.Column.FOLLOWED_ID);
+                    pairs.add(afterFollower, afterFollowed);
+                }
+            }
+            if (count < pageSize) return pairs;
+        }
+    }
+
+    @Override
+    public void updated(Arguments args, int count, int createdId) {
+        if (count == 0) return;
+        switch (args.action) {
+            case FOLLOW_USER:
+                follow(args.getInt(Action.Parameter.FU_FOLLOWER_ID), args.getInt(Action.Parameter.FU_FOLLOWED_ID));
+                return;
+            case UNFOLLOW_USER:
+                unfollow(args.getInt(Action.Parameter.UFU_FOLLOWER_ID), args.getInt(Action.Parameter.UFU_FOLLOWED_ID));
+                return;
+            case DELETE_USER:
+                deleteUser(args.getInt(Action.Parameter.DU_USER_ID));
+                return;
+            case UPDATE_USERNAME:
+                setName(args.getInt(Action.Parameter.UU_USER_ID), args.getString(Action.Parameter.UU_NEW_NAME));
+                return;
+            case CREATE_ACCOUNT:
+                if (createdId > 0) setName(createdId, args.getString(Action.Parameter.CA_USERNAME));
+                return;
+            default:
+        }
+    }
+
+    @Override
+    public void updatedBatch(Action action) {
+        switch (action) {
+            case FOLLOW_USER:
+            case UNFOLLOW_USER:
+            case DELETE_USER:
+            case UPDATE_USERNAME:
+            case CREATE_ACCOUNT:
+                invalidate();
+                return;
+            default:
+        }
+    }
+
+    /** Records that the follower followed the user */
+    public synchronized void follow(int followerId, int followedId) {
+        record(FOLLOW, followerId, followedId);
+    }
+
+    /** Records that the follower unfollowed the user */
+    public synchronized void unfollow(int followerId, int followedId) {
+        record(UNFOLLOW, followerId, followedId);
+    }
+
+    /** Records that the user was deleted, along with its follows */
+    public synchronized void deleteUser(int userId) {
+        record(DELETE, userId, 0);
+    }
+
+    /** Records the user's name, after it was created or renamed */
+    public synchronized void setName(int userId, String name) {
+        if (userId < 0 || deleted.contains(userId)) return;
+        if (changeLog != null) changedNames.put(userId, name);
+        putName(userId, name);
+    }
+
+    private void putName(int userId, String name) {
+        if (userId >= names.length) names = Arrays.copyOf(names, Math.max(userId + 1, names.length * 2));
+        names[userId] = name;
+    }
+
+    private void record(int kind, int a, int b) {
+        if (changeLog != null) {
+            if (changeLogSize + 3 > changeLog.length) changeLog = Arrays.copyOf(changeLog, changeLog.length * 2);
+            changeLog[changeLogSize++] = kind;
+            changeLog[changeLogSize++] = a;
+            changeLog[changeLogSize++] = b;
+        }
+        apply(kind, a, b);
+        if (changes > Math.max(MIN_COMPACTION_CHANGES, followed.targets.length / 8)) compact();
+    }
+
+    private void apply(int kind, int a, int b) {
+        switch (kind) {
+            case FOLLOW:
+                if (deleted.contains(a) || deleted.contains(b)) return;
+                if (followed.contains(a, b)) unmark(removedFollowed, removedFollowers, a, b);
+                else mark(addedFollowed, addedFollowers, a, b);
+                break;
+            case UNFOLLOW:
+                if (followed.contains(a, b)) mark(removedFollowed, removedFollowers, a, b);
+                else unmark(addedFollowed, addedFollowers, a, b);
+                break;
+            case DELETE:
+                for (int target : row(addedFollowed, a)) unmark(addedFollowed, addedFollowers, a, target);
+                for (int source : row(addedFollowers, a)) unmark(addedFollowed, addedFollowers, source, a);
+                if (a >= 0 && a < names.length) names[a] = null;
+                if (deleted.add(a)) changes++;
+                break;
+        }
+    }
+
+    private void mark(Map<Integer, IntHashSet> bySource, Map<Integer, IntHashSet> byTarget, int source, int target) {
+        if (bySource.computeIfAbsent(source, id -> new IntHashSet()).add(target)) changes++;
+        byTarget.computeIfAbsent(target, id -> new IntHashSet()).add(source);
+    }
+
+    private void unmark(Map<Integer, IntHashSet> bySource, Map<Integer, IntHashSet> byTarget, int source, int target) {
+        if (remove(bySource, source, target)) changes--;
+        remove(byTarget, target, source);
+    }
+
+    private static boolean remove(Map<Integer, IntHashSet> sets, int key, int value) {
+        var set = sets.get(key);
+        if (set == null || !set.remove(value)) return false;
+        if (set.isEmpty()) sets.remove(key);
+        return true;
+    }
+
+    private static int[] row(Map<Integer, IntHashSet> sets, int key) {
+        var set = sets.get(key);
+        return (set == null) ? NONE : set.toArray();
+    }
+
+    private void clearChanges() {
+        addedFollowed.clear();
+        addedFollowers.clear();
+        removedFollowed.clear();
+        removedFollowers.clear();
+        deleted.clear();
+        changes = 0;
+    }
+
+    /** Rebuilds the arrays with the changes kept aside */
+    private void compact() {
+        Pairs pairs = new Pairs();
+        int users = followed.offsets.length - 1;
+        for (int user = 0; user < users; user++)
+            for (int target : followed(user))
+                pairs.add(user, target);
+        // followers beyond the arrays only have added follows
+        for (var row : addedFollowed.entrySet())
+            if (row.getKey() >= users)
+                for (int target : row.getValue().toArray())
+                    pairs.add(row.getKey(), target);
+        users = Math.max(users, pairs.maxId + 1);
+        followed = Rows.of(users, pairs.sources, pairs.targets, pairs.count);
+        followers = followed.transpose(users);
+        clearChanges();
+    }
+
+    /** Whether the follower follows the user */
+    public synchronized boolean isFollowing(int followerId, int followedId) {
+        if (deleted.contains(followerId) || deleted.contains(followedId)) return false;
+        var added = addedFollowed.get(followerId);
+        if (added != null && added.contains(followedId)) return true;
+        var removed = removedFollowed.get(followerId);
+        if (removed != null && removed.contains(followedId)) return false;
+        return followed.contains(followerId, followedId);
+    }
+
+    /** Ids of the users the user follows, ascending */
+    public synchronized int[] followed(int userId) {
+        return row(followed, addedFollowed, removedFollowed, userId);
+    }
+
+    /** Ids of the users following the user, ascending */
+    public synchronized int[] followers(int userId) {
+        return row(followers, addedFollowers, removedFollowers, userId);
+    }
+
+    /** Number of users the user follows */
+    public synchronized int followedCount(int userId) {
+        return count(followed, addedFollowed, removedFollowed, userId);
+    }
+
+    /** Number of users following the user */
+    public synchronized int followerCount(int userId) {
+        return count(followers, addedFollowers, removedFollowers, userId);
+    }
+
+    /** Ids of the users that the user follows and that follow the user, ascending */
+    public synchronized int[] mutuals(int userId) {
+        int[] a = followed(userId), b = followers(userId);
+        int[] both = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                both[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+
+    /** The user's name, or null if the user is unknown or was deleted */
+    public synchronized String name(int userId) {
+        if (userId < 0 || userId >= names.length || deleted.contains(userId)) return null;
+        return names[userId];
+    }
+
+    private int[] row(Rows rows, Map<Integer, IntHashSet> addedRows, Map<Integer, IntHashSet> removedRows, int user) {
+        if (deleted.contains(user)) return NONE;
+        var added = addedRows.get(user);
+        var removed = removedRows.get(user);
+        int start = rows.start(user), end = rows.end(user);
+        if (added == null && removed == null && deleted.isEmpty()) return Arrays.copyOfRange(rows.targets, start, end);
+        int[] result = new int[end - start + (added == null ? 0 : added.size())];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            int target = rows.targets[i];
+            if ((removed == null || !removed.contains(target)) && !deleted.contains(target)) result[count++] = target;
+        }
+        if (added != null) {
+            for (int target : added.toArray())
+                result[count++] = target;
+            Arrays.sort(result, 0, count);
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private int count(Rows rows, Map<Integer, IntHashSet> addedRows, Map<Integer, IntHashSet> removedRows, int user) {
+        if (!deleted.isEmpty()) return row(rows, addedRows, removedRows, user).length;
+        var added = addedRows.get(user);
+        var removed = removedRows.get(user);
+        return rows.end(user) - rows.start(user) + (added == null ? 0 : added.size()) - (removed == null ? 0 : removed.size());
+    }
+}
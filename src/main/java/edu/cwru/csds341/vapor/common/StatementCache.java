@@ -0,0 +1,121 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Reuses the {@link CallableStatement} of each {@link Action} on a single {@link Connection},
+ * so the same stored procedure is only prepared once per connection.
+ * Holds at most {@code capacity} statements; the least recently used one is closed to make room.
+ * <p>
+ * A statement handed out by {@link #get(Action)} is shared with later calls for the same Action,
+ * so any ResultSet obtained from it is closed the next time that Action is executed on this connection.
+ */
+public final class StatementCache implements AutoCloseable {
+    /** Enough to hold the statements of a typical CLI session or GUI page */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final Connection connection;
+    private final int capacity;
+
+    /** Indexed by {@link Action#ordinal()} */
+    private final CallableStatement[] statements = new CallableStatement[Action.VALUES.size()];
+    /** Value of {@link #clock} when each statement was last handed out. Indexed by {@link Action#ordinal()} */
+    private final long[] lastUsed = new long[Action.VALUES.size()];
+    private long clock = 0;
+    private int size = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param connection  the connection to prepare statements on. Not closed by this cache
+     * @param capacity  most statements to hold open at once, at least 1
+     */
+    public StatementCache(Connection connection, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1, was " + capacity);
+        this.connection = connection;
+        this.capacity = capacity;
+    }
+
+    public StatementCache(Connection connection) {
+        this(connection, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Returns the statement for the given Action, preparing it if it isn't cached.
+     * Parameters set by the previous user of the statement are cleared.
+     * The caller should not close the statement; if it does, it is prepared again on the next call.
+     * @throws SQLException  if a database access error occurs or the connection is closed
+     */
+    public synchronized CallableStatement get(Action action) throws SQLException {
+        int index = action.ordinal();
+        CallableStatement statement = statements[index];
+        if (statement != null && !statement.isClosed()) {
+            statement.clearParameters();
+            hits++;
+        } else {
+            if (statement != null) {
+                statements[index] = null;
+                size--;
+            }
+            if (size >= capacity) evictLeastRecentlyUsed();
+            statement = connection.prepareCall(action.storedProcedureString);
+            statements[index] = statement;
+            size++;
+            misses++;
+        }
+        lastUsed[index] = ++clock;
+        return statement;
+    }
+
+    /** Number of {@link #get(Action)} calls that reused a statement */
+    public synchronized long hits() { return hits; }
+
+    /** Number of {@link #get(Action)} calls that had to prepare a statement */
+    public synchronized long misses() { return misses; }
+
+    /** Number of statements closed to make room for another */
+    public synchronized long evictions() { return evictions; }
+
+    /** Number of statements currently held */
+    public synchronized int size() { return size; }
+
+    /** Closes all cached statements. The cache may still be used afterwards. */
+    @Override
+    public synchronized void close() {
+        for (int i = 0; i < statements.length; i++) {
+            closeQuietly(statements[i]);
+            statements[i] = null;
+        }
+        size = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("StatementCache[size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                size, capacity, hits, misses, evictions);
+    }
+
+    private void evictLeastRecentlyUsed() {
+        int victim = -1;
+        for (int i = 0; i < statements.length; i++)
+            if (statements[i] != null && (victim == -1 || lastUsed[i] < lastUsed[victim]))
+                victim = i;
+        if (victim == -1) return;
+        closeQuietly(statements[victim]);
+        statements[victim] = null;
+        size--;
+        evictions++;
+    }
+
+    private static void closeQuietly(CallableStatement statement) {
+        if (statement == null) return;
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Case-insensitive substring search over a fixed list of titles.
+ * <li>Titles are normalized once, when the index is built.</li>
+ * <li>Queries of 3+ characters only test titles that contain every trigram of the query.
+ *     The trigrams are indexed by the second such query that is not a refinement; the first scans the titles,
+ *     so an index that is only searched once, then refined, costs no more than a scan.</li>
+ * <li>A query that extends the previous one (as when the user keeps typing) only re-tests the previous matches.</li>
+ * <li>Results are ranked: exact match, then prefix, then start of a word, then anywhere; earlier and shorter first.</li>
+ * Titles are identified by their position in the list given to the constructor.
+ */
+public final class TitleSearchIndex {
+    private static final int GRAM = 3;
+    private static final int[] NONE = new int[0];
+
+    private final String[] titles;
+    private final String[] normalized;
+    /** Sorted ids of the titles containing each trigram, keyed by {@link #gram(String, int)}. null until needed */
+    private Map<Long, int[]> postings;
+    /** Whether a query has scanned every title, so the next one indexes them instead */
+    private boolean scanned = false;
+
+    public TitleSearchIndex(List<String> titles) {
+        int n = titles.size();
+        this.titles = titles.toArray(new String[0]);
+        this.normalized = new String[n];
+        for (int id = 0; id < n; id++)
+            normalized[id] = normalize(this.titles[id]);
+    }
+
+    /** The trigram index, built on first use */
+    private synchronized Map<Long, int[]> postings() {
+        if (postings != null) return postings;
+        Map<Long, Postings> building = new HashMap<>();
+        for (int id = 0; id < normalized.length; id++) {
+            String title = normalized[id];
+            for (int i = 0; i + GRAM <= title.length(); i++)
+                building.computeIfAbsent(gram(title, i), k -> new Postings()).add(id);
+        }
+        Map<Long, int[]> built = new HashMap<>(building.size() * 4 / 3 + 1);
+        building.forEach((gram, list) -> built.put(gram, list.toArray()));
+        postings = built;
+        return built;
+    }
+
+    /** Whether a query should use the trigram index rather than scan every title */
+    private synchronized boolean indexed() {
+        if (postings != null || scanned) return true;
+        scanned = true;
+        return false;
+    }
+
+    /** Number of titles in the index */
+    public int size() {
+        return titles.length;
+    }
+
+    /** The title with the given id, as given to the constructor */
+    public String title(int id) {
+        return titles[id];
+    }
+
+    /** The form titles and queries are compared in */
+    public static String normalize(String str) {
+        return str.strip().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds all titles containing the query.
+     * @param previous  the result of an earlier search, or null.
+     *                  If the new query contains the previous query, only the previous matches are tested.
+     */
+    public Matches search(String query, Matches previous) {
+        String q = normalize(query);
+        int[] candidates;
+        if (previous != null && previous.index() == this && q.contains(previous.query)) {
+            if (q.equals(previous.query)) return previous;
+            candidates = previous.ids;
+        } else if (q.length() >= GRAM && indexed()) {
+            candidates = candidates(q);
+        } else {
+            candidates = null; // every title
+        }
+
+        int count = (candidates == null) ? titles.length : candidates.length;
+        int[] matches = new int[count];
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            int id = (candidates == null) ? i : candidates[i];
+            if (normalized[id].contains(q)) matches[found++] = id;
+        }
+        return new Matches(q, (found == count) ? matches : Arrays.copyOf(matches, found));
+    }
+
+    /** Ids of titles containing every trigram of the query, in ascending order */
+    private int[] candidates(String q) {
+        var postings = postings();
+        List<int[]> lists = new ArrayList<>(q.length() - GRAM + 1);
+        for (int i = 0; i + GRAM <= q.length(); i++) {
+            int[] list = postings.get(gram(q, i));
+            if (list == null) return NONE;
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.length));
+        int[] smallest = lists.get(0);
+        int[] result = new int[smallest.length];
+        int found = 0;
+        outer:
+        for (int id : smallest) {
+            for (int j = 1; j < lists.size(); j++)
+                if (Arrays.binarySearch(lists.get(j), id) < 0) continue outer;
+            result[found++] = id;
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    /** Packs the 3 chars starting at i */
+    private static long gram(String str, int i) {
+        return ((long) str.charAt(i) << 32) | ((long) str.charAt(i + 1) << 16) | str.charAt(i + 2);
+    }
+
+    /**
+     * Ranking key of a match; lower is better. From most to least significant:
+     * match kind (2 bits), match position (10 bits), title length (16 bits), id (32 bits)
+     */
+    private long rankKey(int id, String q) {
+        String title = normalized[id];
+        int pos = title.indexOf(q);
+        int kind;
+        if (title.length() == q.length()) kind = 0;
+        else if (pos == 0) kind = 1;
+        else if (!Character.isLetterOrDigit(title.charAt(pos - 1))) kind = 2;
+        else kind = 3;
+        return ((long) kind << 58)
+                | ((long) Math.min(pos, 0x3FF) << 48)
+                | ((long) Math.min(title.length(), 0xFFFF) << 32)
+                | id;
+    }
+
+    /** The titles matching a query */
+    public final class Matches {
+        private final String query;
+        /** Ascending */
+        private final int[] ids;
+
+        private Matches(String query, int[] ids) {
+            this.query = query;
+            this.ids = ids;
+        }
+
+        private TitleSearchIndex index() {
+            return TitleSearchIndex.this;
+        }
+
+        /** Number of matching titles */
+        public int count() {
+            return ids.length;
+        }
+
+        /**
+         * Some matching titles in the order of the list given to the constructor, without ranking them.
+         * @param from  number of matches to skip
+         * @param limit  most titles to return
+         */
+        public List<String> inOrder(int from, int limit) {
+            int to = (int) Math.min(ids.length, (long) from + limit);
+            List<String> result = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++)
+                result.add(titles[ids[i]]);
+            return result;
+        }
+
+        /** The best k matching titles, best first. Only the kept matches are sorted */
+        public List<String> top(int k) {
+            k = Math.min(k, ids.length);
+            // max-heap of the best k keys seen so far
+            long[] heap = new long[k];
+            int size = 0;
+            for (int id : ids) {
+                long key = rankKey(id, query);
+                if (size < k) {
+                    heap[size] = key;
+                    siftUp(heap, size++);
+                } else if (k > 0 && key < heap[0]) {
+                    heap[0] = key;
+                    siftDown(heap, k);
+                }
+            }
+            Arrays.sort(heap, 0, size);
+            List<String> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                result.add(titles[(int) heap[i]]);
+            return result;
+        }
+
+        /**
+         * A page of the matching titles, ranked as by {@link #top(int)}, for showing the matches a page at a time.
+         * @param from  number of best matches to skip
+         * @param limit  most titles to return
+         */
+        public List<String> top(int from, int limit) {
+            List<String> best = top((int) Math.min(ids.length, (long) from + limit));
+            return new ArrayList<>(best.subList(Math.min(from, best.size()), best.size()));
+        }
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent] >= heap[i]) return;
+            swap(heap, parent, i);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1, right = left + 1;
+            if (left < size && heap[left] > heap[largest]) largest = left;
+            if (right < size && heap[right] > heap[largest]) largest = right;
+            if (largest == i) return;
+            swap(heap, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(long[] heap, int a, int b) {
+        long tmp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = tmp;
+    }
+
+    /** Growable list of ascending ids, without duplicates */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) return;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
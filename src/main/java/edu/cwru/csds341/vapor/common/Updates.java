@@ -0,0 +1,59 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.sql.CallableStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tells the in-memory copies of the DB, such as {@link BestSellers}, of every change this process makes to it,
+ * whichever of the GUI, the CLI or the server made it.
+ * <li>Every INSERT, UPDATE or DELETE executed through {@link Arguments#executeUpdate} or {@link Action#executeBatch}
+ *     is told once the DB has accepted it.</li>
+ * <li>The update count is that of the driver, so is -1 if a procedure doesn't report it.</li>
+ * <li>Changes made in a transaction that is later rolled back are told too;
+ *     listeners are corrected by their next refresh.</li>
+ */
+public final class Updates {
+    /** Told of the changes made by this process. Called on the thread that made them, so should be quick */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param args  the executed call. Not to be changed
+         * @param count  its update count
+         * @param createdId  the id returned by an {@link Action.AType#INSERT_ID}, 0 for other Actions
+         */
+        void updated(Arguments args, int count, int createdId);
+
+        /** A batch of calls of the Action was executed. The calls' arguments are not kept, so by default nothing is done */
+        default void updatedBatch(Action action) {
+        }
+    }
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private Updates() {
+    }
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** @param cs  the executed statement, to read the created id from */
+    static void executed(Arguments args, int count, CallableStatement cs) throws SQLException {
+        if (listeners.isEmpty()) return;
+        Action action = args.action;
+        int createdId = (action.type == Action.AType.INSERT_ID) ? cs.getInt(action.outParameterIndex) : 0;
+        for (Listener listener : listeners)
+            listener.updated(args, count, createdId);
+    }
+
+    static void executedBatch(Action action) {
+        for (Listener listener : listeners)
+            listener.updatedBatch(action);
+    }
+}
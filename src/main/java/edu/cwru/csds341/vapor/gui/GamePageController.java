@@ -1,18 +1,22 @@
 package edu.cwru.csds341.vapor.gui;
 
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.net.URL;
-import java.sql.CallableStatement;
-import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
 
 import edu.cwru.csds341.vapor.common.Action;
-import edu.cwru.csds341.vapor.common.Connections;
+import edu.cwru.csds341.vapor.common.Arguments;
+import edu.cwru.csds341.vapor.common.AsyncActions;
+import edu.cwru.csds341.vapor.common.ReferenceData;
+import edu.cwru.csds341.vapor.common.ResultRows;
+import edu.cwru.csds341.vapor.common.SocialGraph;
+import edu.cwru.csds341.vapor.common.Action.Column;
 import edu.cwru.csds341.vapor.common.Action.Parameter;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -27,10 +31,33 @@ import javafx.scene.control.ListView;
 import javafx.stage.Stage;
 
 public class GamePageController implements Initializable{
+    /** How long each of the page's queries may take before it is abandoned */
+    private static final Duration QUERY_TIMEOUT = Duration.ofSeconds(10);
+
+    /** A VIEW_GAME_DETAILS row */
+    private static final class Details {
+        final String name;
+        final int reviewAvg;
+        final int esrbRatingId;
+        final LocalDate releaseDate;
+        final BigDecimal price;
+
+        Details(ResultRows row) throws SQLException {
+            name = row.getString(Column.GAME_NAME);
+            reviewAvg = row.getInt(Column.REVIEW_AVG);
+            esrbRatingId = row.getInt(Column.ESRB_RATING_ID);
+            releaseDate = row.getDate(Column.RELEASE_DATE);
+            price = row.getMoney(Column.PRICE);
+        }
+    }
+
     private Integer gameid;
 
     private Integer userid;
 
+    /** Work for the page currently shown. Cancelled when leaving the page */
+    private AsyncActions.Session session;
+
     @FXML
     Button purchasebutton;
     @FXML
@@ -56,88 +83,102 @@ public class GamePageController implements Initializable{
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        if (session != null) session.cancel();
         friends.clear();
         friendslist.setItems(friends);
-        try (Connection connection = Connections.fromFile(Connections.CREDENTIALS_DIR.resolve("gui.credentials"));) {
-            Action action = Action.LIST_ESRB_RATINGS;
-            CallableStatement cs = action.getCallableStatement(connection);
-            ResultSet resultset = cs.executeQuery();
-            Map<String, String> esrbmap = new HashMap<String, String>();
-            while(resultset.next()) {
-                esrbmap.put(resultset.getString("rating_id"), resultset.getString("name").replace("_", " "));
-            }
-            action = Action.VIEW_GAME_DETAILS;
-            cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.VGD_GAMEID, String.valueOf(this.gameid)));
-            resultset = cs.executeQuery();
-            resultset.next();
-            gamename.setText(resultset.getString(2));
-            reviewrating.setText("Average Review Rating: " + resultset.getString(3));
-            esrbrating.setText("ESRB Rating: " + esrbmap.get(resultset.getString(4)));
-            releasedate.setText("Release Date: " + resultset.getString(5));
-            price.setText("Price: " + resultset.getString(6));
-            action = Action.LIST_GAME_GENRES;
-            cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.LGG_GAMEID, String.valueOf(this.gameid)));
-            resultset = cs.executeQuery();
-            ArrayList<String> genres = new ArrayList<String>();
-            while(resultset.next()) {
-                genres.add(resultset.getString(1));
-            }
-            genre.setText((genres.size() == 1 ? "Genre: " : "Genres: ") + String.join(", ", genres));
-            action = Action.LIST_FOLLOWED_THAT_OWN_GAME;
-            cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.VFUOG_USERID, String.valueOf(this.userid), Parameter.VFUOG_GAMEID, String.valueOf(this.gameid)));
-            resultset = cs.executeQuery();
-            while(resultset.next()) {
-                friends.add(resultset.getString("username"));
-            }
-            action = Action.LIST_GAMES_OWNED;
-            cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.VGU_USERID, this.userid.toString()));
-            resultset = cs.executeQuery();
-            while(resultset.next()) {
-                if (this.gameid == resultset.getInt("game_id")) {
-                    purchasebutton.setVisible(false);
-                }
-            }
-        } catch (SQLException e) {
+        friendslist.setPlaceholder(new Label("Loading..."));
+        gamename.setText("Loading...");
+        try {
+            session = MainApp.database().newSession();
+        } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+        // independent queries, run concurrently on separate connections. Each renders as soon as it returns
+        ReferenceData references;
+        SocialGraph follows;
+        // the ratings are usually already loaded; otherwise wait for MainApp's load alongside the other queries
+        CompletableFuture<Boolean> ratings;
+        try {
+            references = MainApp.referenceData();
+            follows = MainApp.socialGraph();
+            ratings = references.isLoaded() ? CompletableFuture.completedFuture(false) : MainApp.referenceDataLoad();
         } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+        var details = session.query(Action.VIEW_GAME_DETAILS.arguments().setInt(Parameter.VGD_GAMEID, this.gameid),
+            resultset -> Action.VIEW_GAME_DETAILS.rows(resultset).first(Details::new), QUERY_TIMEOUT);
+        details.thenAccept(row -> {
+            gamename.setText(row.name);
+            reviewrating.setText("Average Review Rating: " + row.reviewAvg);
+            releasedate.setText("Release Date: " + row.releaseDate);
+            price.setText("Price: " + row.price.toPlainString());
+        }).exceptionally(MainApp::reportError);
+        details.thenCombine(ratings, (row, refreshed) -> references.esrbRatingName(row.esrbRatingId))
+            .thenAccept(rating -> esrbrating.setText("ESRB Rating: " + (rating == null ? "" : rating.replace("_", " "))))
+            .exceptionally(MainApp::reportError);
+        session.list(Action.LIST_GAME_GENRES.arguments().setInt(Parameter.LGG_GAMEID, this.gameid),
+            row -> row.getString(Column.NAME), QUERY_TIMEOUT).thenAccept(genres -> {
+            genre.setText((genres.size() == 1 ? "Genre: " : "Genres: ") + String.join(", ", genres));
+        }).exceptionally(MainApp::reportError);
+        // other users' games aren't kept in memory, so the DB answers, unless the user follows no one
+        if (follows.isLoaded() && follows.followedCount(this.userid) == 0) {
+            friendslist.setPlaceholder(new Label("None"));
+        } else {
+            session.list(Action.LIST_FOLLOWED_THAT_OWN_GAME.arguments()
+                    .setInt(Parameter.VFUOG_USERID, this.userid).setInt(Parameter.VFUOG_GAMEID, this.gameid),
+                row -> row.getString(Column.USERNAME), QUERY_TIMEOUT).thenAccept(usernames -> {
+                friends.setAll(usernames);
+                friendslist.setPlaceholder(new Label("None"));
+            }).exceptionally(MainApp::reportError);
+        }
+        var owned = MainApp.ownedGames(this.userid);
+        if (owned.isLoaded()) {
+            if (owned.contains(this.gameid)) purchasebutton.setVisible(false);
+        } else {
+            session.query(isGameOwned(),
+                ResultSet::next, QUERY_TIMEOUT).thenAccept(isowned -> {
+                if (isowned) purchasebutton.setVisible(false);
+            }).exceptionally(MainApp::reportError);
         }
-        
     }
 
     public void onButtonPress() {
-        try (Connection connection = Connections.fromFile(Connections.CREDENTIALS_DIR.resolve("gui.credentials"));) {
-            Action action = Action.LIST_GAMES_OWNED;
-            CallableStatement cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.VGU_USERID, String.valueOf(this.userid)));
-            ResultSet resultset = cs.executeQuery();
-            ArrayList<String> gamesowned = new ArrayList<String>();
-            while(resultset.next()) {
-                gamesowned.add(resultset.getString("game_id"));
-            }
-            if (!gamesowned.contains(String.valueOf(this.gameid))) {
-                action = Action.GRANT_GAME;
-                cs = action.getCallableStatement(connection);
-                Action.applyAll(cs, Map.of(Parameter.GG_USERID, String.valueOf(this.userid), 
-                Parameter.GG_GAMEID, String.valueOf(this.gameid),
-                Parameter.GG_DATE, java.time.LocalDate.now().toString()));
-                cs.executeUpdate();
-                initialize(null, null);
-            }
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (session == null) return;
+        var owned = MainApp.ownedGames(this.userid);
+        if (owned.isLoaded() && owned.contains(this.gameid)) {
+            purchasebutton.setVisible(false);
+            return;
         }
+        purchasebutton.setDisable(true);
+        var check = owned.isLoaded()
+            ? CompletableFuture.completedFuture(false)
+            : session.query(isGameOwned(), ResultSet::next);
+        check.thenCompose(isowned -> isowned
+            ? CompletableFuture.completedFuture(false)
+            : session.update(Action.GRANT_GAME.arguments()
+                .setInt(Parameter.GG_USERID, this.userid)
+                .setInt(Parameter.GG_GAMEID, this.gameid)
+                .setDate(Parameter.GG_DATE, LocalDate.now())).thenApply(count -> true)
+        ).thenAccept(granted -> {
+            owned.add(this.gameid);
+            // already owned, ex. bought in another window: hidden, as initialize does for owned games
+            if (granted) initialize(null, null);
+            else purchasebutton.setVisible(false);
+        }).exceptionally(MainApp::reportError)
+        .thenRun(() -> purchasebutton.setDisable(false));
+    }
+
+    private Arguments isGameOwned() {
+        return Action.IS_GAME_OWNED.arguments()
+            .setInt(Parameter.IGO_USERID, this.userid)
+            .setInt(Parameter.IGO_GAMEID, this.gameid);
     }
 
     
     public void libraryClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/library.fxml"));
         LibraryController controller = new LibraryController(userid);
         loader.setController(controller);
@@ -153,6 +194,7 @@ public class GamePageController implements Initializable{
 
     
     public void profileClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ProfilePage.fxml"));
         ProfilePageController controller = new ProfilePageController(userid);
         loader.setController(controller);
@@ -168,6 +210,7 @@ public class GamePageController implements Initializable{
 
     
     public void storeClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/store.fxml"));
         StoreController controller = new StoreController(userid);
         loader.setController(controller);
@@ -2,16 +2,14 @@ package edu.cwru.csds341.vapor.gui;
 
 import java.io.IOException;
 import java.net.URL;
-import java.sql.CallableStatement;
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.ResourceBundle;
 
 import edu.cwru.csds341.vapor.common.Action;
-import edu.cwru.csds341.vapor.common.Connections;
+import edu.cwru.csds341.vapor.common.AsyncActions;
+import edu.cwru.csds341.vapor.common.Action.Column;
 import edu.cwru.csds341.vapor.common.Action.Parameter;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -22,6 +20,7 @@ import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.stage.Stage;
 
@@ -31,6 +30,9 @@ public class LibraryController implements Initializable {
     private ListView<String> gamelist;
     private ObservableList<String> games = FXCollections.observableArrayList();
     private Map<String, Integer> gamemap= new HashMap<String, Integer>();
+
+    /** Work for the page currently shown. Cancelled when leaving the page */
+    private AsyncActions.Session session;
     
     LibraryController(Integer userid) {
         this.userid = userid;
@@ -39,23 +41,28 @@ public class LibraryController implements Initializable {
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         gamelist.setItems(games);
-        try (Connection connection = Connections.fromFile(Connections.CREDENTIALS_DIR.resolve("gui.credentials"));) {
-            Action action = Action.LIST_GAMES_OWNED;
-            CallableStatement cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.VGU_USERID, String.valueOf(this.userid)));
-            ResultSet resultSet = cs.executeQuery();
-            while (resultSet.next()) {
-                gamemap.put(resultSet.getString("game_name"), resultSet.getInt("game_id"));
-                games.add(resultSet.getString("game_name"));
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        gamelist.setPlaceholder(new Label("Loading..."));
+        try {
+            session = MainApp.database().newSession();
+            session.query(Action.LIST_GAMES_OWNED.arguments().setInt(Parameter.VGU_USERID, this.userid), resultSet -> {
+                var rows = Action.LIST_GAMES_OWNED.rows(resultSet);
+                Map<String, Integer> owned = new LinkedHashMap<String, Integer>();
+                while (rows.next()) {
+                    owned.put(rows.getString(Column.GAME_NAME), rows.getInt(Column.GAME_ID));
+                }
+                return owned;
+            }).thenAccept(owned -> {
+                gamemap.putAll(owned);
+                games.setAll(owned.keySet());
+                gamelist.setPlaceholder(new Label("No games owned"));
+            }).exceptionally(MainApp::reportError);
         } catch (IOException e) {
             e.printStackTrace();
         }
         gamelist.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<String>() {
             @Override
             public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+                if (session != null) session.cancel();
                 FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/GamePage.fxml"));
                 GamePageController gamePageController = new GamePageController(gamemap.get(newValue), userid);
                 loader.setController(gamePageController);
@@ -73,6 +80,7 @@ public class LibraryController implements Initializable {
     }
     
     public void libraryClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/library.fxml"));
         LibraryController controller = new LibraryController(userid);
         loader.setController(controller);
@@ -87,6 +95,7 @@ public class LibraryController implements Initializable {
     }
     
     public void profileClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ProfilePage.fxml"));
         ProfilePageController controller = new ProfilePageController(userid);
         loader.setController(controller);
@@ -101,6 +110,7 @@ public class LibraryController implements Initializable {
     }
     
     public void storeClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/store.fxml"));
         StoreController controller = new StoreController(userid);
         loader.setController(controller);
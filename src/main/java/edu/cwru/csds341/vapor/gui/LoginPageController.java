@@ -1,14 +1,9 @@
 package edu.cwru.csds341.vapor.gui;
 
 import java.io.IOException;
-import java.sql.CallableStatement;
-import java.sql.Connection;
 import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.Map;
 
 import edu.cwru.csds341.vapor.common.Action;
-import edu.cwru.csds341.vapor.common.Connections;
 import edu.cwru.csds341.vapor.common.Action.Parameter;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -57,32 +52,33 @@ public class LoginPageController {
                 return;
             }
         }
-        try (Connection connection = Connections
-                .fromFile(Connections.CREDENTIALS_DIR.resolve("gui.credentials"));) {
-            CallableStatement cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.VU_USER_ID, userNameField.getText()));
-            ResultSet resultset = cs.executeQuery();
-            if (resultset.next()) {
-                FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ProfilePage.fxml"));
-                ProfilePageController profilepagecontroller = new ProfilePageController(
-                        Integer.valueOf(userNameField.getText()));
-                loader.setController(profilepagecontroller);
-                try {
-                    Parent root = loader.load();
-                    Stage window = (Stage) userNameField.getScene().getWindow();
-                    window.setScene(new Scene(root));
-                } catch (IOException e) {
-                    e.printStackTrace();
+        int userid = Integer.parseInt(userNameField.getText());
+        submitBtn.setDisable(true);
+        try {
+            MainApp.database().query(action.arguments().setInt(Parameter.VU_USER_ID, userid), ResultSet::next)
+            .thenAccept(found -> {
+                if (found) {
+                    FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ProfilePage.fxml"));
+                    ProfilePageController profilepagecontroller = new ProfilePageController(
+                            userid);
+                    loader.setController(profilepagecontroller);
+                    try {
+                        Parent root = loader.load();
+                        Stage window = (Stage) userNameField.getScene().getWindow();
+                        window.setScene(new Scene(root));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                } else {
+                    Alert alert = new Alert(AlertType.INFORMATION);
+                    alert.setHeaderText("userid not found");
+                    alert.showAndWait();
                 }
-            } else {
-                Alert alert = new Alert(AlertType.INFORMATION);
-                alert.setHeaderText("userid not found");
-                alert.showAndWait();
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            }).exceptionally(MainApp::reportError)
+            .thenRun(() -> submitBtn.setDisable(false));
         } catch (IOException e) {
             e.printStackTrace();
+            submitBtn.setDisable(false);
         }
     }
 
@@ -1,14 +1,34 @@
 package edu.cwru.csds341.vapor.gui;
 
+import edu.cwru.csds341.vapor.common.AsyncActions;
+import edu.cwru.csds341.vapor.common.BestSellers;
+import edu.cwru.csds341.vapor.common.Connections;
+import edu.cwru.csds341.vapor.common.OwnedGames;
+import edu.cwru.csds341.vapor.common.ReferenceData;
+import edu.cwru.csds341.vapor.common.SocialGraph;
+import edu.cwru.csds341.vapor.common.Updates;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalUnit;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * GUI main class.
@@ -16,6 +36,24 @@ import java.time.temporal.TemporalUnit;
 public class MainApp extends Application {
     private static Stage stage;
 
+    static final Path CREDENTIALS_FILE = Connections.CREDENTIALS_DIR.resolve("gui.credentials");
+
+    private static AsyncActions database;
+    /** Shared by all pages, made with {@link #database} */
+    private static ReferenceData referenceData;
+    /** The latest reload of {@link #referenceData}, so that only one runs at a time */
+    private static CompletableFuture<Boolean> referenceDataLoad;
+    /** Reloads {@link #referenceData} every refresh interval, so that pages only ever read it */
+    private static ScheduledExecutorService referenceDataRefresher;
+    private static BestSellers bestSellers;
+    private static SocialGraph socialGraph;
+    /** The graph's latest reload, so that only one is queued at a time */
+    private static CompletableFuture<Boolean> socialGraphLoad;
+
+    private static final Map<Integer, OwnedGames> ownedGames = new HashMap<>();
+    /** Users whose {@link OwnedGames} are being loaded. A failed load is removed, so the next access retries it */
+    private static final Set<Integer> ownedGamesLoading = new HashSet<>();
+
 
     @Override
     public void start(@SuppressWarnings("exports") Stage s) throws IOException {
@@ -44,8 +82,131 @@ public class MainApp extends Application {
         System.out.println(getDateTime());
         launch(args);
     }
+    /**
+     * Runs Actions off the JavaFX Application Thread, using the connection pool for {@link #CREDENTIALS_FILE}.
+     * Results are delivered on the JavaFX Application Thread.
+     * @throws IOException  if the credentials file cannot be read
+     */
+    static synchronized AsyncActions database() throws IOException {
+        if (database == null) {
+            var pool = Connections.pooled(CREDENTIALS_FILE);
+            var caches = Connections.cacheConfig(CREDENTIALS_FILE);
+            referenceData = new ReferenceData(caches.referenceRefreshSeconds);
+            bestSellers = new BestSellers(caches.bestSellersRefreshSeconds);
+            socialGraph = new SocialGraph(caches.socialGraphRefreshSeconds);
+            Updates.addListener(bestSellers);
+            Updates.addListener(socialGraph);
+            database = new AsyncActions(pool, Math.max(1, pool.maxSize()), Platform::runLater);
+            // loaded up front, so pages rarely have to wait for it
+            reloadReferenceData();
+            if (caches.referenceRefreshSeconds > 0) {
+                referenceDataRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "vapor-reference-data");
+                    t.setDaemon(true);
+                    return t;
+                });
+                referenceDataRefresher.scheduleWithFixedDelay(MainApp::reloadReferenceData,
+                        caches.referenceRefreshSeconds, caches.referenceRefreshSeconds, TimeUnit.SECONDS);
+            }
+            reloadSocialGraphIfStale();
+        }
+        return database;
+    }
+
+    /**
+     * Lookup tables shared by all pages, reloaded in the background every refresh interval. Pages only read them.
+     * May not be loaded yet; use {@link #referenceDataLoad()} to wait for it.
+     * @throws IOException  if the credentials file cannot be read
+     */
+    static synchronized ReferenceData referenceData() throws IOException {
+        database();
+        return referenceData;
+    }
+
+    /**
+     * Completes once the latest reload of {@link #referenceData()} has finished, with whether it ran.
+     * Not cancelled with any page's session.
+     * @throws IOException  if the credentials file cannot be read
+     */
+    static synchronized CompletableFuture<Boolean> referenceDataLoad() throws IOException {
+        database();
+        return referenceDataLoad;
+    }
+
+    private static synchronized void reloadReferenceData() {
+        if (referenceDataLoad != null && !referenceDataLoad.isDone()) return;
+        referenceDataLoad = database.run(connection -> {
+            referenceData.refresh(connection);
+            return true;
+        });
+        referenceDataLoad.exceptionally(MainApp::reportError);
+    }
+
+    /**
+     * Sales counts shared by all pages. May not be loaded yet;
+     * use {@link BestSellers#refreshIfStale(java.sql.Connection)} from a worker to wait for it.
+     * @throws IOException  if the credentials file cannot be read
+     */
+    static synchronized BestSellers bestSellers() throws IOException {
+        database();
+        return bestSellers;
+    }
+
+    /**
+     * Follows and user names shared by all pages. May not be loaded yet, until then ask the DB.
+     * Reloaded in the background, outside any page's session, once stale.
+     * @throws IOException  if the credentials file cannot be read
+     */
+    static synchronized SocialGraph socialGraph() throws IOException {
+        database();
+        reloadSocialGraphIfStale();
+        return socialGraph;
+    }
+
+    private static void reloadSocialGraphIfStale() {
+        if (!socialGraph.isStale() || (socialGraphLoad != null && !socialGraphLoad.isDone())) return;
+        socialGraphLoad = database.run(socialGraph::refreshIfStale);
+        socialGraphLoad.exceptionally(MainApp::reportError);
+    }
+
+    /**
+     * The games owned by the user, shared by all pages. Starts loading in the background on first use,
+     * and again on the next use after a load failed.
+     * Until {@link OwnedGames#isLoaded()}, ask the DB with {@link edu.cwru.csds341.vapor.common.Action#IS_GAME_OWNED}.
+     */
+    static synchronized OwnedGames ownedGames(int userid) {
+        var owned = ownedGames.computeIfAbsent(userid, OwnedGames::new);
+        if (owned.isLoaded() || !ownedGamesLoading.add(userid)) return owned;
+        try {
+            database().run(connection -> {
+                owned.load(connection);
+                return null;
+            }).whenComplete((loaded, e) -> {
+                synchronized (MainApp.class) {
+                    ownedGamesLoading.remove(userid);
+                }
+            }).exceptionally(MainApp::reportError);
+        } catch (IOException e) {
+            ownedGamesLoading.remove(userid);
+            e.printStackTrace();
+        }
+        return owned;
+    }
+
+    /** For use with {@link java.util.concurrent.CompletableFuture#exceptionally}. Cancellations are not reported */
+    static <T> T reportError(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) e = e.getCause();
+        if (!(e instanceof CancellationException)) e.printStackTrace();
+        return null;
+    }
+
     public static String getDateTime() {
-        return java.time.LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).toString().replace("T"," ");
+        return currentDateTime().toString().replace("T"," ");
+    }
+
+    /** The current time, to the second, as stored with comments and follows */
+    static LocalDateTime currentDateTime() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
     }
 
 }
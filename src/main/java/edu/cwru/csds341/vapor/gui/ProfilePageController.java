@@ -2,16 +2,26 @@ package edu.cwru.csds341.vapor.gui;
 
 import java.io.IOException;
 import java.net.URL;
-import java.sql.CallableStatement;
-import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
 
 import edu.cwru.csds341.vapor.common.Action;
-import edu.cwru.csds341.vapor.common.Connections;
+import edu.cwru.csds341.vapor.common.AsyncActions;
+import edu.cwru.csds341.vapor.common.ResultRows;
+import edu.cwru.csds341.vapor.common.SocialGraph;
+import edu.cwru.csds341.vapor.common.Action.Column;
 import edu.cwru.csds341.vapor.common.Action.Parameter;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -25,12 +35,43 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.skin.VirtualFlow;
 import javafx.stage.Stage;
 
 public class ProfilePageController implements Initializable{
+    /** A VIEW_PROFILE_HEADER row */
+    private static final class Header {
+        final String username;
+        final LocalDate joinDate;
+        final boolean following;
+        final int followers;
+        final int followed;
+
+        Header(ResultRows row) throws SQLException {
+            username = row.getString(Column.USERNAME);
+            joinDate = row.getDate(Column.JOIN_DATE);
+            following = row.getInt(Column.FOLLOWING) != 0;
+            followers = row.getInt(Column.FOLLOWER_COUNT);
+            followed = row.getInt(Column.FOLLOWED_COUNT);
+        }
+    }
+
+    /** A LIST_PROFILE_COMMENTS_PAGE row */
+    private static final class CommentRow {
+        final int id;
+        final LocalDateTime datetime;
+        final String text;
+
+        CommentRow(ResultRows row) throws SQLException {
+            id = row.getInt(Column.COMMENT_ID);
+            datetime = row.getDateTime(Column.COMMENT_DATETIME);
+            text = row.getString(Column.MESSAGE) + "\n" + row.getString(Column.USERNAME) + "\t\t" + formatDateTime(datetime);
+        }
+    }
 
     @FXML
     private TextField commentbar;
@@ -39,18 +80,51 @@ public class ProfilePageController implements Initializable{
     @FXML
     private Label joindatelabel;
     @FXML
-    private ListView<String> commentlist;
+    private ListView<CommentRow> commentlist;
+    @FXML
+    private Label followcountlabel;
     @FXML
     private Button followbutton;
     @FXML
     private ListView<String> friendslist;
     private ObservableList<String> friends = FXCollections.observableArrayList();
-    private ObservableList<String> comments = FXCollections.observableArrayList();
+    private ObservableList<CommentRow> comments = FXCollections.observableArrayList();
 
     private Integer userid;
     private Integer profileuserid;
     private Map<String, Integer> friendsmap= new HashMap<>();
 
+    /** Work for the page currently shown. Cancelled when leaving the page */
+    private AsyncActions.Session session;
+    /** Follows shared by all pages, answering without the DB once loaded */
+    private SocialGraph graph;
+    /** Whether the friends list listener was added by an earlier call to initialize */
+    private boolean listening = false;
+
+    /** Comments requested from the server at a time */
+    private static final int COMMENT_PAGE_SIZE = 50;
+    /** Pages of comments kept in the list; loading one more drops the one at the other end */
+    private static final int MAX_COMMENT_PAGES = 6;
+    /** A page is requested once a row this close to either end of the list is shown */
+    private static final int COMMENT_PREFETCH_DISTANCE = 10;
+    /** Keyset cursor of the first page: after every comment */
+    private static final LocalDateTime NEWEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    /** Row just before each page of comments requested so far, null for the first page */
+    private final List<CommentRow> pagestarts = new ArrayList<CommentRow>();
+    /** Rows of each page in the list, starting with page {@link #firstpage} */
+    private final Deque<Integer> pagesizes = new ArrayDeque<Integer>();
+    /** Index in {@link #pagestarts} of the first page in the list */
+    private int firstpage = 0;
+    /** Whether the server has no comments older than the list's last */
+    private boolean olderexhausted = false;
+    private boolean commentsloading = false;
+    /** Incremented whenever the list restarts, so pages requested for an earlier list are dropped */
+    private int commentgeneration = 0;
+
+    /** Same form as comments are entered in */
+    private static final DateTimeFormatter COMMENT_DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     ProfilePageController(Integer userid, Integer profileuserid) {
         this.userid = userid;
         this.profileuserid = profileuserid;
@@ -63,65 +137,197 @@ public class ProfilePageController implements Initializable{
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        if (session != null) session.cancel();
         friends.clear();
         comments.clear();
+        pagestarts.clear();
+        pagesizes.clear();
+        firstpage = 0;
+        olderexhausted = false;
+        commentsloading = false;
+        commentgeneration++;
         commentlist.setItems(comments);
+        commentlist.setCellFactory(list -> new ListCell<CommentRow>() {
+            @Override
+            protected void updateItem(CommentRow item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty ? null : item.text);
+            }
+        });
+        ScrollPaging.install(commentlist, COMMENT_PREFETCH_DISTANCE, this::loadOlderComments, this::loadNewerComments);
         friendslist.setItems(friends);
+        commentlist.setPlaceholder(new Label("Loading..."));
+        friendslist.setPlaceholder(new Label("Loading..."));
         followbutton.setText("Follow user");
-        try (Connection connection = Connections.fromFile(Connections.CREDENTIALS_DIR.resolve("gui.credentials"));) {
-            Action action = Action.VIEW_USER_INFO;
-            CallableStatement cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.VU_USER_ID, String.valueOf(this.profileuserid)));
-            ResultSet resultset = cs.executeQuery();
-            resultset.next();
-            joindatelabel.setText("Join Date: " + resultset.getString("join_date"));
-            usernamelabel.setText(resultset.getString("username"));
-            action = Action.LIST_PROFILE_COMMENTS;
-            cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.GPC_USERID, String.valueOf(this.profileuserid)));
-            resultset = cs.executeQuery();
-            while(resultset.next()) {
-                comments.add(resultset.getString("message") + "\n" + resultset.getString(2) + "\t\t" + resultset.getString("datetime"));
-            }
-            action = Action.LIST_FOLLOWED;
-            cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.LFD_USER_ID, this.userid.toString()));
-            resultset = cs.executeQuery();
-            while(resultset.next()) {
-                if (this.profileuserid == resultset.getInt("followed_id")) {
-                    followbutton.setText("Unfollow user");
-                } 
-            }
-            action = Action.LIST_FOLLOWED;
-            cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.LFD_USER_ID, String.valueOf(this.profileuserid)));
-            ResultSet resultSet = cs.executeQuery();
-            while (resultSet.next()) {
-                friendsmap.put(resultSet.getString("username"), resultSet.getInt("followed_id"));
-                friends.add(resultSet.getString("username"));
-            }
-            friendslist.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<String>() {
-            
-                @Override
-                public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
-                    FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ProfilePage.fxml"));
-                    ProfilePageController profilepagecontroller= new ProfilePageController(userid, friendsmap.get(newValue));
-                    loader.setController(profilepagecontroller);
-                    try {
-                        Parent root = loader.load();
-                        Stage window = (Stage) friendslist.getScene().getWindow();
-                        window.setScene(new Scene(root));
-                    } catch (IOException e) {
-            
-                        e.printStackTrace();
-                    }
-                }
-            });
-        } catch (SQLException e) {
+        try {
+            session = MainApp.database().newSession();
+        } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+        try {
+            graph = MainApp.socialGraph();
         } catch (IOException e) {
             e.printStackTrace();
-        }   
+            return;
+        }
+        // loaded in the background by MainApp; until then the DB answers
+        // name, join date, follow state and counts in one call, whatever the size of the follow lists
+        var header = session.query(Action.VIEW_PROFILE_HEADER.arguments()
+                .setInt(Parameter.VPH_VIEWER_ID, this.userid)
+                .setInt(Parameter.VPH_USER_ID, this.profileuserid),
+            resultset -> Action.VIEW_PROFILE_HEADER.rows(resultset).first(Header::new)
+        ).thenAccept(info -> {
+            if (info == null) {
+                showUserNotFound();
+                return;
+            }
+            joindatelabel.setText("Join Date: " + info.joinDate);
+            usernamelabel.setText(info.username);
+            followcountlabel.setText(info.followers + " followers, " + info.followed + " followed");
+            if (info.following) followbutton.setText("Unfollow user");
+        });
+        loadOlderComments();
+        var followed = graph.isLoaded() ? followedFromGraph(this.profileuserid) : null;
+        if (followed != null) {
+            showFollowed(followed);
+            header.exceptionally(MainApp::reportError);
+        } else {
+            header.thenCompose(ignored -> session.query(Action.LIST_FOLLOWED.arguments().setInt(Parameter.LFD_USER_ID, this.profileuserid), resultSet -> {
+                var rows = Action.LIST_FOLLOWED.rows(resultSet);
+                Map<String, Integer> fromdb = new LinkedHashMap<String, Integer>();
+                while (rows.next()) {
+                    fromdb.put(rows.getString(Column.USERNAME), rows.getInt(Column.FOLLOWED_ID));
+                }
+                return fromdb;
+            })).thenAccept(this::showFollowed).exceptionally(MainApp::reportError);
+        }
+        if (listening) return;
+        listening = true;
+        friendslist.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<String>() {
+        
+            @Override
+            public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+                if (newValue == null) return;
+                if (session != null) session.cancel();
+                FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ProfilePage.fxml"));
+                ProfilePageController profilepagecontroller= new ProfilePageController(userid, friendsmap.get(newValue));
+                loader.setController(profilepagecontroller);
+                try {
+                    Parent root = loader.load();
+                    Stage window = (Stage) friendslist.getScene().getWindow();
+                    window.setScene(new Scene(root));
+                } catch (IOException e) {
+        
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /** The profile's user does not exist, ex. the account was deleted since the link to it was shown */
+    private void showUserNotFound() {
+        usernamelabel.setText("User not found");
+        joindatelabel.setText("");
+        followcountlabel.setText("");
+        followbutton.setDisable(true);
+        commentbar.setDisable(true);
+        commentlist.setPlaceholder(new Label("No comments"));
+        friendslist.setPlaceholder(new Label("Not following anyone"));
+    }
+
+    /** Requests the page of comments older than the list's last, unless one is already on the way */
+    private void loadOlderComments() {
+        if (commentsloading || olderexhausted || session == null) return;
+        commentsloading = true;
+        int requested = commentgeneration;
+        CommentRow start = comments.isEmpty() ? null : comments.get(comments.size() - 1);
+        if (firstpage + pagesizes.size() == pagestarts.size()) pagestarts.add(start);
+        commentsPage(start).thenAccept(rows -> {
+            if (requested != commentgeneration) return;
+            commentsloading = false;
+            int top = firstVisibleComment();
+            comments.addAll(rows);
+            pagesizes.addLast(rows.size());
+            olderexhausted = rows.size() < COMMENT_PAGE_SIZE;
+            if (pagesizes.size() > MAX_COMMENT_PAGES) {
+                int dropped = pagesizes.removeFirst();
+                comments.remove(0, dropped);
+                firstpage++;
+                commentlist.scrollTo(Math.max(0, top - dropped));
+            }
+            commentlist.setPlaceholder(new Label("No comments"));
+        }).exceptionally(e -> {
+            if (requested == commentgeneration) commentsloading = false;
+            return MainApp.reportError(e);
+        });
+    }
+
+    /** Requests again the page of comments before the list's first, if it was dropped */
+    private void loadNewerComments() {
+        if (commentsloading || firstpage == 0 || session == null) return;
+        commentsloading = true;
+        int requested = commentgeneration;
+        CommentRow next = pagestarts.get(firstpage);
+        commentsPage(pagestarts.get(firstpage - 1)).thenAccept(rows -> {
+            if (requested != commentgeneration) return;
+            commentsloading = false;
+            if (rows.isEmpty() || rows.get(rows.size() - 1).id != next.id) {
+                // comments were added or deleted since the page was dropped, so it no longer joins the list
+                initialize(null, null);
+                return;
+            }
+            int top = firstVisibleComment();
+            comments.addAll(0, rows);
+            pagesizes.addFirst(rows.size());
+            firstpage--;
+            if (pagesizes.size() > MAX_COMMENT_PAGES) {
+                int dropped = pagesizes.removeLast();
+                comments.remove(comments.size() - dropped, comments.size());
+                olderexhausted = false;
+            }
+            commentlist.scrollTo(top + rows.size());
+        }).exceptionally(e -> {
+            if (requested == commentgeneration) commentsloading = false;
+            return MainApp.reportError(e);
+        });
+    }
+
+    /** The comments just older than the row, or the newest if it is null */
+    private CompletableFuture<List<CommentRow>> commentsPage(CommentRow start) {
+        return session.list(Action.LIST_PROFILE_COMMENTS_PAGE.arguments()
+            .setInt(Parameter.GPCP_USERID, this.profileuserid)
+            .setDateTime(Parameter.GPCP_BEFORE_DATETIME, (start == null) ? NEWEST : start.datetime)
+            .setInt(Parameter.GPCP_BEFORE_ID, (start == null) ? Integer.MAX_VALUE : start.id)
+            .setInt(Parameter.GPCP_LIMIT, COMMENT_PAGE_SIZE), CommentRow::new, null);
+    }
+
+    /** Index of the first comment shown, so the list can be kept in place when rows are added or dropped above it */
+    private int firstVisibleComment() {
+        var flow = (VirtualFlow<?>) commentlist.lookup(".virtual-flow");
+        var cell = (flow == null) ? null : flow.getFirstVisibleCell();
+        return (cell == null) ? 0 : cell.getIndex();
+    }
+
+    /** Name to id of the users the user follows, or null if the graph lacks a name */
+    private Map<String, Integer> followedFromGraph(int user) {
+        Map<String, Integer> followed = new LinkedHashMap<String, Integer>();
+        for (int id : graph.followed(user)) {
+            String name = graph.name(id);
+            if (name == null) return null;
+            followed.put(name, id);
+        }
+        return followed;
+    }
+
+    private void showFollowed(Map<String, Integer> followed) {
+        friendsmap.putAll(followed);
+        friends.setAll(followed.keySet());
+        friendslist.setPlaceholder(new Label("Not following anyone"));
+    }
+
+    private static String formatDateTime(LocalDateTime datetime) {
+        return (datetime == null) ? "" : COMMENT_DATETIME_FORMAT.format(datetime);
     }
 
     public void submitComment() {
@@ -133,21 +339,16 @@ public class ProfilePageController implements Initializable{
                 return;
             }     
         }
-        try (Connection connection = Connections.fromFile(Connections.CREDENTIALS_DIR.resolve("gui.credentials"))) {
-            Action action = Action.MAKE_COMMENT;
-            CallableStatement cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.MC_PROFILE_ID, this.profileuserid.toString()
-            , Parameter.MC_COMMENTER_ID, String.valueOf(this.userid)
-            , Parameter.MC_MESSAGE, commentbar.getText()
-            , Parameter.MC_DATETIME, MainApp.getDateTime()));
-            cs.executeUpdate();
+        if (session == null) return;
+        session.update(Action.MAKE_COMMENT.arguments()
+        .setInt(Parameter.MC_PROFILE_ID, this.profileuserid)
+        .setInt(Parameter.MC_COMMENTER_ID, this.userid)
+        .setString(Parameter.MC_MESSAGE, commentbar.getText())
+        .setDateTime(Parameter.MC_DATETIME, MainApp.currentDateTime()))
+        .thenAccept(count -> {
             commentbar.setText("");
             initialize(null, null);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }     
+        }).exceptionally(MainApp::reportError);
     }
 
     public void followUser() {
@@ -157,37 +358,31 @@ public class ProfilePageController implements Initializable{
             alert.showAndWait();
             return;
         }
-        try (Connection connection = Connections.fromFile(Connections.CREDENTIALS_DIR.resolve("gui.credentials"))) {
-            Action action = Action.LIST_FOLLOWED;
-            CallableStatement cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.LFD_USER_ID, this.userid.toString()));
-            ResultSet resultset = cs.executeQuery();
-            while(resultset.next()) {
-                if (this.profileuserid == resultset.getInt("followed_id")) {
-                    action = Action.UNFOLLOW_USER;
-                    cs = action.getCallableStatement(connection);
-                    Action.applyAll(cs, Map.of(Parameter.UFU_FOLLOWED_ID, this.profileuserid.toString(), Parameter.UFU_FOLLOWER_ID, this.userid.toString()));
-                    cs.executeUpdate();
-                    return;
-                } 
-            }
-            action = Action.FOLLOW_USER;
-            cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.FU_FOLLOWER_ID, this.userid.toString()
-            , Parameter.FU_FOLLOWED_ID, String.valueOf(this.profileuserid)
-            , Parameter.FU_DATE, MainApp.getDateTime()));
-            cs.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
+        if (session == null) return;
+        followbutton.setDisable(true);
+        var check = graph.isLoaded()
+            ? CompletableFuture.completedFuture(graph.isFollowing(this.userid, this.profileuserid))
+            : session.query(Action.IS_FOLLOWING.arguments()
+                .setInt(Parameter.IF_FOLLOWER_ID, this.userid)
+                .setInt(Parameter.IF_FOLLOWED_ID, this.profileuserid), ResultSet::next);
+        check.thenCompose(following -> (following
+            ? session.update(Action.UNFOLLOW_USER.arguments()
+                .setInt(Parameter.UFU_FOLLOWED_ID, this.profileuserid)
+                .setInt(Parameter.UFU_FOLLOWER_ID, this.userid))
+            : session.update(Action.FOLLOW_USER.arguments()
+                .setInt(Parameter.FU_FOLLOWER_ID, this.userid)
+                .setInt(Parameter.FU_FOLLOWED_ID, this.profileuserid)
+                .setDateTime(Parameter.FU_DATE, MainApp.currentDateTime()))
+        )).exceptionally(MainApp::reportError)
+        .thenRun(() -> {
+            followbutton.setDisable(false);
             initialize(null, null);
-        }
+        });
     }
 
     
     public void libraryClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/library.fxml"));
         LibraryController controller = new LibraryController(userid);
         loader.setController(controller);
@@ -203,6 +398,7 @@ public class ProfilePageController implements Initializable{
 
     
     public void profileClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ProfilePage.fxml"));
         ProfilePageController controller = new ProfilePageController(userid);
         loader.setController(controller);
@@ -218,6 +414,7 @@ public class ProfilePageController implements Initializable{
 
     
     public void storeClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/store.fxml"));
         StoreController controller = new StoreController(userid);
         loader.setController(controller);
@@ -0,0 +1,78 @@
+package edu.cwru.csds341.vapor.gui;
+
+import javafx.application.Platform;
+import javafx.scene.control.ListView;
+import javafx.scene.control.skin.VirtualFlow;
+
+/**
+ * Loads more of a ListView's items as it is scrolled near either end.
+ * <li>The shown rows are checked after each layout of the list and each scroll, once the layout is over,
+ *     so the callbacks are free to change the items or scroll the list.</li>
+ * <li>The callbacks are called whenever a check finds the rows near an end, so they must ignore calls
+ *     while a page is already on the way, or when there is nothing more to load.</li>
+ */
+final class ScrollPaging {
+    /** Key in the list's properties, so paging is only set up once per list */
+    private static final Object KEY = ScrollPaging.class;
+
+    private final ListView<?> list;
+    private final int distance;
+    private final Runnable nearEnd;
+    private final Runnable nearStart;
+    private boolean scheduled = false;
+
+    private ScrollPaging(ListView<?> list, int distance, Runnable nearEnd, Runnable nearStart) {
+        this.list = list;
+        this.distance = distance;
+        this.nearEnd = nearEnd;
+        this.nearStart = nearStart;
+    }
+
+    /**
+     * Sets up paging for the list, unless it already was.
+     * @param distance  an end is near once a row this close to it is shown
+     * @param nearEnd  loads rows after the last, also called while the rows do not fill the list
+     * @param nearStart  loads rows before the first, or null if there are none to load
+     */
+    static void install(ListView<?> list, int distance, Runnable nearEnd, Runnable nearStart) {
+        if (list.getProperties().putIfAbsent(KEY, Boolean.TRUE) != null) return;
+        var paging = new ScrollPaging(list, distance, nearEnd, nearStart);
+        list.skinProperty().addListener((observable, oldSkin, newSkin) -> paging.listen());
+        paging.listen();
+    }
+
+    /** Listens to the list's flow, once its skin has made one */
+    private void listen() {
+        var flow = flow();
+        if (flow == null) return;
+        flow.needsLayoutProperty().addListener((observable, wasNeeded, needed) -> {
+            if (!needed) schedule();
+        });
+        flow.positionProperty().addListener((observable, oldPosition, newPosition) -> schedule());
+        schedule();
+    }
+
+    private VirtualFlow<?> flow() {
+        return (VirtualFlow<?>) list.lookup(".virtual-flow");
+    }
+
+    /** Checks the shown rows after the current pulse, once however many times it is asked */
+    private void schedule() {
+        if (scheduled) return;
+        scheduled = true;
+        Platform.runLater(() -> {
+            scheduled = false;
+            check();
+        });
+    }
+
+    private void check() {
+        var flow = flow();
+        if (flow == null) return;
+        var first = flow.getFirstVisibleCell();
+        var last = flow.getLastVisibleCell();
+        int size = list.getItems().size();
+        if (last == null || last.getIndex() >= size - distance) nearEnd.run();
+        else if (nearStart != null && first != null && first.getIndex() < distance) nearStart.run();
+    }
+}
@@ -2,19 +2,20 @@ package edu.cwru.csds341.vapor.gui;
 
 import java.io.IOException;
 import java.net.URL;
-import java.sql.CallableStatement;
-import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.stream.Collectors;
 
 import edu.cwru.csds341.vapor.common.Action;
-import edu.cwru.csds341.vapor.common.Connections;
+import edu.cwru.csds341.vapor.common.AsyncActions;
+import edu.cwru.csds341.vapor.common.BestSellers;
+import edu.cwru.csds341.vapor.common.ResultRows;
+import edu.cwru.csds341.vapor.common.TitleSearchIndex;
+import javafx.animation.PauseTransition;
+import edu.cwru.csds341.vapor.common.Action.Column;
 import edu.cwru.csds341.vapor.common.Action.Parameter;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -25,9 +26,11 @@ import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 public class StoreController implements Initializable {
     @FXML
@@ -43,11 +46,42 @@ public class StoreController implements Initializable {
     private ObservableList<String> observablelist = FXCollections.observableArrayList();
 
     private ObservableList<String> obslist = FXCollections.observableArrayList();
-    private ArrayList<String> allgames = new ArrayList<String>();
 
     @FXML
     private TextField searchbar;
 
+    /** Best selling games shown */
+    private static final int TOP_SOLD = 10;
+    /** Games requested from the server at a time */
+    private static final int PAGE_SIZE = 100;
+    /** The next page is requested once a row this close to the end of the list is shown */
+    private static final int PREFETCH_DISTANCE = 20;
+    /** Typing pause after which the search runs */
+    private static final Duration SEARCH_DEBOUNCE = Duration.millis(150);
+
+    private final PauseTransition searchdelay = new PauseTransition(SEARCH_DEBOUNCE);
+    /** Normalized search text the list is showing results for. Blank when browsing the whole catalog */
+    private String currentquery = "";
+    /** Keyset cursor: id of the last game received for the current query */
+    private int lastgameid = 0;
+    /** Whether the server has no more games for the current query */
+    private boolean exhausted = false;
+    private boolean loading = false;
+    /** Incremented whenever the list restarts, so pages requested for an earlier query are dropped */
+    private int generation = 0;
+    /**
+     * Index over games received for an earlier query, which the current query refines. null if there is none.
+     * As pages come in id order, it holds every match of the current query up to {@link #lastgameid}.
+     */
+    private TitleSearchIndex searchindex;
+    /** Matches of the current query in {@link #searchindex}, shown before {@link #received} */
+    private TitleSearchIndex.Matches lastmatches;
+    /** Games received for the current query since {@link #searchindex} was built, in id order */
+    private final List<String> received = new ArrayList<String>();
+
+    /** Work for the page currently shown. Cancelled when leaving the page */
+    private AsyncActions.Session session;
+
     StoreController(Integer userid) {
         this.userid = userid;
     }
@@ -57,35 +91,29 @@ public class StoreController implements Initializable {
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        searchdelay.setOnFinished(event -> search());
         searchbar.textProperty().addListener(new ChangeListener<String>() {
             @Override
                 public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
-                    gamelist.setItems(FXCollections.observableArrayList(allgames.stream()
-                    .filter(str -> str.toLowerCase().contains(searchbar.getText().toLowerCase()))
-                    .collect(Collectors.toList())));
+                    searchdelay.playFromStart();
                 }
         });
         topsoldlist.setItems(observablelist);
         gamelist.setItems(obslist);
-        try (Connection connection = Connections.fromFile(Connections.CREDENTIALS_DIR.resolve("gui.credentials"));) {
-            Action action = Action.LIST_N_BEST_SELLING;
-            CallableStatement cs = action.getCallableStatement(connection);
-            Action.applyAll(cs, Map.of(Parameter.VTSG_LIMIT, "10"));
-            ResultSet resultSet = cs.executeQuery();
-            while (resultSet.next()) {
-                gamemap.put(resultSet.getString(2), resultSet.getInt(1));
-                observablelist.add(resultSet.getString(2));
-            }
-            Statement statement = connection.createStatement();
-            String select = "SELECT game_id, game_name from dbo.game";
-            ResultSet resultset2 = statement.executeQuery(select);
-            while (resultset2.next()) {
-                gamemap.put(resultset2.getString(2), resultset2.getInt(1));
-                obslist.add(resultset2.getString(2));
-                allgames.add(resultset2.getString(2));
+        ScrollPaging.install(gamelist, PREFETCH_DISTANCE, this::loadNextPage, null);
+        topsoldlist.setPlaceholder(new Label("Loading..."));
+        gamelist.setPlaceholder(new Label("Loading..."));
+        try {
+            session = MainApp.database().newSession();
+            var bestsellers = MainApp.bestSellers();
+            // counted in memory, so usually shown at once; reconciled with the DB now and then
+            if (bestsellers.isLoaded()) showTopSold(bestsellers.top(TOP_SOLD));
+            if (bestsellers.isStale()) {
+                session.run(bestsellers::refreshIfStale)
+                    .thenAccept(refreshed -> showTopSold(bestsellers.top(TOP_SOLD)))
+                    .exceptionally(MainApp::reportError);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            loadNextPage();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -104,7 +132,109 @@ public class StoreController implements Initializable {
         });
     }
 
+    private void showTopSold(List<BestSellers.Seller> sellers) {
+        List<String> names = new ArrayList<String>(sellers.size());
+        for (var seller : sellers) {
+            if (seller.name == null) continue;
+            gamemap.put(seller.name, seller.gameId);
+            names.add(seller.name);
+        }
+        observablelist.setAll(names);
+        topsoldlist.setPlaceholder(new Label("No recent sales"));
+    }
+
+    /**
+     * Restarts the list with the games matching the search bar's text, or the whole catalog if it is blank.
+     * If the new query extends the previous one, the games received so far are filtered locally and shown first,
+     * best match first, and the server is only asked for games after them, which follow in id order as it pages them.
+     */
+    private void search() {
+        String query = TitleSearchIndex.normalize(searchbar.getText());
+        if (query.equals(currentquery)) return;
+        boolean refinable = query.contains(currentquery);
+        currentquery = query;
+        generation++;
+        loading = false;
+        obslist.clear();
+        for (var req : Parameter.SG_NAME.requirements) {
+            if (!query.isEmpty() && !req.accepts(query)) {
+                // no game name could match
+                exhausted = true;
+                searchindex = null;
+                lastmatches = null;
+                received.clear();
+                gamelist.setPlaceholder(new Label("No games found"));
+                return;
+            }
+        }
+        if (refinable) {
+            if (!received.isEmpty()) {
+                List<String> previous = (lastmatches == null) ? new ArrayList<String>() : lastmatches.inOrder(0, lastmatches.count());
+                previous.addAll(received);
+                received.clear();
+                searchindex = new TitleSearchIndex(previous);
+                lastmatches = null;
+            }
+            if (searchindex != null) lastmatches = searchindex.search(query, lastmatches);
+        } else {
+            lastgameid = 0;
+            exhausted = false;
+            searchindex = null;
+            lastmatches = null;
+            received.clear();
+        }
+        gamelist.setPlaceholder(new Label(exhausted ? "No games found" : "Loading..."));
+        loadNextPage();
+    }
+
+    /**
+     * Shows the next page of games: from the local matches, best first, while any are left,
+     * else requested from the server after the last one received, unless one is already on the way.
+     */
+    private void loadNextPage() {
+        int local = (lastmatches == null) ? 0 : lastmatches.count();
+        if (obslist.size() < local) {
+            obslist.addAll(lastmatches.top(obslist.size(), PAGE_SIZE));
+            return;
+        }
+        if (loading || exhausted || session == null) return;
+        loading = true;
+        int requested = generation;
+        String query = currentquery;
+        var page = query.isEmpty()
+            ? session.list(Action.LIST_GAMES_PAGE.arguments()
+                .setInt(Parameter.LGP_AFTER_ID, lastgameid)
+                .setInt(Parameter.LGP_LIMIT, PAGE_SIZE), StoreController::readGame, null)
+            : session.list(Action.SEARCH_GAMES.arguments()
+                .setString(Parameter.SG_NAME, query)
+                .setInt(Parameter.SG_AFTER_ID, lastgameid)
+                .setInt(Parameter.SG_LIMIT, PAGE_SIZE), StoreController::readGame, null);
+        page.thenAccept(games -> {
+            if (requested != generation) return;
+            loading = false;
+            List<String> names = new ArrayList<String>(games.size());
+            for (var game : games) {
+                gamemap.put(game.getKey(), game.getValue());
+                names.add(game.getKey());
+                lastgameid = Math.max(lastgameid, game.getValue());
+            }
+            received.addAll(names);
+            obslist.addAll(names);
+            exhausted = games.size() < PAGE_SIZE;
+            gamelist.setPlaceholder(new Label("No games found"));
+        }).exceptionally(e -> {
+            if (requested == generation) loading = false;
+            return MainApp.reportError(e);
+        });
+    }
+
+    /** Reads a game as a name to id entry */
+    private static Map.Entry<String, Integer> readGame(ResultRows row) throws SQLException {
+        return Map.entry(row.getString(Column.GAME_NAME), row.getInt(Column.GAME_ID));
+    }
+
     private void switchToGamePage(String game_name) {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/GamePage.fxml"));
         GamePageController gamePageController = new GamePageController(gamemap.get(game_name), this.userid);
         loader.setController(gamePageController);
@@ -121,6 +251,7 @@ public class StoreController implements Initializable {
 
     
     public void libraryClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/library.fxml"));
         LibraryController controller = new LibraryController(userid);
         loader.setController(controller);
@@ -136,6 +267,7 @@ public class StoreController implements Initializable {
 
     
     public void profileClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ProfilePage.fxml"));
         ProfilePageController controller = new ProfilePageController(userid);
         loader.setController(controller);
@@ -151,6 +283,7 @@ public class StoreController implements Initializable {
 
     
     public void storeClick() {
+        if (session != null) session.cancel();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/store.fxml"));
         StoreController controller = new StoreController(userid);
         loader.setController(controller);
@@ -0,0 +1,290 @@
+package edu.cwru.csds341.vapor.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import edu.cwru.csds341.vapor.common.Action;
+import edu.cwru.csds341.vapor.common.Action.Column;
+import edu.cwru.csds341.vapor.common.Action.Parameter;
+import edu.cwru.csds341.vapor.common.Arguments;
+import edu.cwru.csds341.vapor.common.ConnectionPool;
+import edu.cwru.csds341.vapor.common.Requirement;
+import edu.cwru.csds341.vapor.common.ResultRows;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serves every {@link Action} over HTTP, under {@value #PREFIX}.
+ * <li>GET {@value #PREFIX} lists the Actions, with their parameters and the columns they return.</li>
+ * <li>POST {@value #PREFIX}{name} performs the Action with that name in lower case, ex. list_games_page.
+ *     The body is a JSON object of its parameters, keyed by {@link Parameter#argName},
+ *     which are validated by their {@link Requirement}s like typed input.</li>
+ * Responses are JSON. A QUERY's rows are streamed as an array of objects keyed by column label,
+ * an INSERT_ID Action returns {"id": n}, and other Actions {"updated": n}. Errors are {"error": message}.
+ * A QUERY that fails after its rows started being sent ends the response early, leaving the array unterminated.
+ */
+final class ActionHandler implements HttpHandler {
+    static final String PREFIX = "/actions/";
+    /** Largest request body accepted, in bytes */
+    private static final int MAX_BODY = 1 << 16;
+    /** Rows fetched from the DB per round trip */
+    private static final int FETCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    private final ConnectionPool pool;
+    private final int queryTimeoutSeconds;
+    /** By the name in their path */
+    private final Map<String, Action> actions = new HashMap<>();
+    /** The '"label":' written before each column of a row, by Action */
+    private final Map<Action, String[]> columnKeys = new EnumMap<>(Action.class);
+    /** Response to GET {@value #PREFIX} */
+    private final byte[] catalog;
+
+    /** @param queryTimeoutSeconds  applied to every statement, 0 for none */
+    ActionHandler(ConnectionPool pool, int queryTimeoutSeconds) throws IOException {
+        this.pool = pool;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+        var catalog = new StringWriter();
+        catalog.write('[');
+        for (Action action : Action.VALUES) {
+            actions.put(pathName(action), action);
+            String[] keys = new String[action.columns.size()];
+            for (int i = 0; i < keys.length; i++) {
+                var key = new StringWriter();
+                Json.writeString(key, action.columns.get(i).label);
+                keys[i] = key.append(':').toString();
+            }
+            columnKeys.put(action, keys);
+            writeCatalogEntry(catalog, action);
+        }
+        catalog.write(']');
+        this.catalog = catalog.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String pathName(Action action) {
+        return action.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static void writeCatalogEntry(Writer out, Action action) throws IOException {
+        if (action.ordinal() > 0) out.write(',');
+        out.write("{\"name\":");
+        Json.writeString(out, pathName(action));
+        out.write(",\"type\":");
+        Json.writeString(out, action.type.name());
+        out.write(",\"description\":");
+        Json.writeString(out, action.description);
+        out.write(",\"parameters\":[");
+        for (int i = 0; i < action.parameters.size(); i++) {
+            Parameter parameter = action.parameters.get(i);
+            out.write((i == 0) ? "{\"name\":" : ",{\"name\":");
+            Json.writeString(out, parameter.argName);
+            out.write(",\"type\":");
+            Json.writeString(out, parameter.type.name());
+            out.write(",\"description\":");
+            Json.writeString(out, parameter.displayName);
+            out.write('}');
+        }
+        out.write("],\"columns\":[");
+        for (int i = 0; i < action.columns.size(); i++) {
+            Column column = action.columns.get(i);
+            out.write((i == 0) ? "{\"name\":" : ",{\"name\":");
+            Json.writeString(out, column.label);
+            out.write(",\"type\":");
+            Json.writeString(out, column.type.name());
+            out.write('}');
+        }
+        out.write("]}");
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals(PREFIX) || path.equals(PREFIX.substring(0, PREFIX.length() - 1))) {
+                if (!method.equals("GET")) {
+                    methodNotAllowed(exchange, "GET");
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(200, catalog.length);
+                exchange.getResponseBody().write(catalog);
+                return;
+            }
+            Action action = path.startsWith(PREFIX) ? actions.get(path.substring(PREFIX.length())) : null;
+            if (action == null) {
+                sendError(exchange, 404, "no action at " + path);
+                return;
+            }
+            if (!method.equals("POST")) {
+                methodNotAllowed(exchange, "POST");
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY + 1);
+            if (body.length > MAX_BODY) {
+                sendError(exchange, 413, "request body exceeds " + MAX_BODY + " bytes");
+                return;
+            }
+
+            Arguments args;
+            try {
+                String text = new String(body, StandardCharsets.UTF_8);
+                args = arguments(action, text.isBlank() ? Map.of() : Json.parseFlatObject(text));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+
+            Connection connection;
+            try {
+                connection = pool.getConnection();
+            } catch (SQLException e) {
+                sendError(exchange, 503, e.getMessage());
+                return;
+            }
+            try (connection) {
+                perform(exchange, connection, action, args);
+            } catch (SQLException e) {
+                // too late to report it if the rows have started
+                if (exchange.getResponseCode() != -1) return;
+                // SQLSTATE class 23 is an integrity constraint violation, such as a duplicate or missing key
+                boolean conflict = e.getSQLState() != null && e.getSQLState().startsWith("23");
+                sendError(exchange, conflict ? 409 : 500, e.getMessage());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Validates the request's members as the Action's arguments.
+     * @throws IllegalArgumentException  if one is missing, unknown or invalid
+     */
+    private static Arguments arguments(Action action, Map<String, String> members) {
+        var args = action.arguments();
+        for (Parameter parameter : action.parameters) {
+            String value = members.get(parameter.argName);
+            if (value == null)
+                throw new IllegalArgumentException("missing " + parameter.argName);
+            for (Requirement requirement : parameter.requirements)
+                if (!requirement.accepts(value))
+                    throw new IllegalArgumentException(parameter.argName + ": " + requirement.getMessage());
+            args.set(parameter, value);
+        }
+        if (members.size() > action.parameters.size()) {
+            for (String key : members.keySet())
+                if (action.parameters.stream().noneMatch(p -> p.argName.equals(key)))
+                    throw new IllegalArgumentException("unknown parameter " + key);
+        }
+        return args;
+    }
+
+    private void perform(HttpExchange exchange, Connection connection, Action action, Arguments args) throws SQLException, IOException {
+        CallableStatement cs = action.getCallableStatement(connection);
+        cs.setQueryTimeout(queryTimeoutSeconds);
+        switch (action.type) {
+            case INSERT_ID:
+                cs.registerOutParameter(action.outParameterIndex, Types.INTEGER);
+                args.executeUpdate(cs);
+                sendJson(exchange, 200, "{\"id\":" + cs.getInt(action.outParameterIndex) + "}");
+                break;
+            case UPDATE:
+            case INSERT:
+            case DELETE:
+                sendJson(exchange, 200, "{\"updated\":" + args.executeUpdate(cs) + "}");
+                break;
+            case QUERY:
+                cs.setFetchSize(FETCH_SIZE);
+                try (var result = args.executeQuery(cs)) {
+                    var results = result.rows();
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                    // 0 streams the body in chunks, as its length is unknown
+                    exchange.sendResponseHeaders(200, 0);
+                    Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), BUFFER_SIZE);
+                    out.write('[');
+                    String[] keys = columnKeys.get(action);
+                    for (long rows = 0; results.next(); rows++) {
+                        if (rows > 0) out.write(',');
+                        writeRow(out, action, keys, results);
+                    }
+                    out.write(']');
+                    out.flush();
+                }
+                break;
+        }
+    }
+
+    private static void writeRow(Writer out, Action action, String[] keys, ResultRows rows) throws SQLException, IOException {
+        out.write('{');
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) out.write(',');
+            out.write(keys[i]);
+            Column column = action.columns.get(i);
+            switch (column.type) {
+                case INT: {
+                    int value = rows.getInt(column);
+                    out.write(rows.wasNull() ? "null" : Integer.toString(value));
+                    break;
+                }
+                case MONEY: {
+                    BigDecimal value = rows.getMoney(column);
+                    out.write((value == null) ? "null" : value.toPlainString());
+                    break;
+                }
+                case DATE: {
+                    LocalDate value = rows.getDate(column);
+                    writeNullableString(out, (value == null) ? null : value.toString());
+                    break;
+                }
+                case DATETIME: {
+                    LocalDateTime value = rows.getDateTime(column);
+                    writeNullableString(out, (value == null) ? null : value.toString());
+                    break;
+                }
+                default:
+                    writeNullableString(out, rows.getString(column));
+            }
+        }
+        out.write('}');
+    }
+
+    private static void writeNullableString(Writer out, String text) throws IOException {
+        if (text == null) out.write("null");
+        else Json.writeString(out, text);
+    }
+
+    private static void methodNotAllowed(HttpExchange exchange, String allowed) throws IOException {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        sendError(exchange, 405, "use " + allowed);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        var json = new StringWriter();
+        json.write("{\"error\":");
+        Json.writeString(json, String.valueOf(message));
+        json.write('}');
+        sendJson(exchange, status, json.toString());
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
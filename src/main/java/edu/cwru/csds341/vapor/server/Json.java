@@ -0,0 +1,145 @@
+package edu.cwru.csds341.vapor.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The little JSON the server needs: reading a flat request object, and writing strings, which the CLI's export shares.
+ * Request values must be strings or numbers. Numbers are kept as they were written,
+ * so that they are validated by the same {@link edu.cwru.csds341.vapor.common.Requirement}s as typed input.
+ */
+public final class Json {
+    private Json() {
+    }
+
+    /**
+     * Parses a JSON object whose values are all strings or numbers.
+     * @return  the object's members in order, with each value's text
+     * @throws IllegalArgumentException  if the text is not such an object, or repeats a key
+     */
+    static Map<String, String> parseFlatObject(String text) {
+        var parser = new Parser(text);
+        Map<String, String> members = new LinkedHashMap<>();
+        parser.expect('{');
+        if (!parser.consume('}')) {
+            do {
+                String key = parser.string();
+                parser.expect(':');
+                String value = parser.value(key);
+                if (members.put(key, value) != null)
+                    throw new IllegalArgumentException("duplicate member " + key);
+            } while (parser.consume(','));
+            parser.expect('}');
+        }
+        parser.skipWhitespace();
+        if (parser.position < text.length())
+            throw new IllegalArgumentException("unexpected text after the object at " + parser.position);
+        return members;
+    }
+
+    /** Writes the text as a quoted JSON string */
+    public static void writeString(Writer out, String text) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String escape;
+            switch (c) {
+                case '"': escape = "\\\""; break;
+                case '\\': escape = "\\\\"; break;
+                case '\n': escape = "\\n"; break;
+                case '\r': escape = "\\r"; break;
+                case '\t': escape = "\\t"; break;
+                default:
+                    if (c >= 0x20) continue;
+                    escape = String.format("\\u%04x", (int) c);
+            }
+            out.write(text, start, i - start);
+            out.write(escape);
+            start = i + 1;
+        }
+        out.write(text, start, text.length() - start);
+        out.write('"');
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int position = 0;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        void skipWhitespace() {
+            while (position < text.length() && " \t\r\n".indexOf(text.charAt(position)) >= 0)
+                position++;
+        }
+
+        /** Skips the character if it is next, ignoring whitespace */
+        boolean consume(char c) {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!consume(c))
+                throw new IllegalArgumentException("expected '" + c + "' at " + position);
+        }
+
+        /** A string or number */
+        String value(String key) {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == '"') return string();
+            int start = position;
+            while (position < text.length() && "+-.0123456789eE".indexOf(text.charAt(position)) >= 0)
+                position++;
+            if (start == position)
+                throw new IllegalArgumentException("value of " + key + " must be a string or a number");
+            return text.substring(start, position);
+        }
+
+        String string() {
+            expect('"');
+            var value = new StringBuilder();
+            while (true) {
+                if (position >= text.length())
+                    throw new IllegalArgumentException("unterminated string");
+                char c = text.charAt(position++);
+                if (c == '"') return value.toString();
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length())
+                    throw new IllegalArgumentException("unterminated string");
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case '"': case '\\': case '/': value.append(escaped); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'u':
+                        if (position + 4 > text.length())
+                            throw new IllegalArgumentException("truncated escape at " + position);
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("invalid escape at " + position);
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("invalid escape at " + position);
+                }
+            }
+        }
+    }
+}
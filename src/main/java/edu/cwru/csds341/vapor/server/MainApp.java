@@ -0,0 +1,141 @@
+package edu.cwru.csds341.vapor.server;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.cwru.csds341.vapor.common.Action;
+import edu.cwru.csds341.vapor.common.ConnectionPool;
+import edu.cwru.csds341.vapor.common.Connections;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server main class. Serves every {@link Action} as an HTTP/JSON endpoint, see {@link ActionHandler}.
+ * Each request runs on its own thread, borrowing a connection from the credentials file's {@link ConnectionPool};
+ * requests beyond the pool's maximum size wait for a connection, up to its borrow timeout.
+ */
+public final class MainApp {
+    static final int DEFAULT_PORT = 8080;
+    static final String DEFAULT_BIND_ADDRESS = "127.0.0.1";
+    static final int DEFAULT_QUERY_TIMEOUT = 30;
+    /** Incoming connections queued by the OS before being accepted */
+    private static final int BACKLOG = 1024;
+    /** Stack size of request threads, kept small as there is one per concurrent request */
+    private static final long REQUEST_STACK_SIZE = 256 * 1024;
+
+    private MainApp() {
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: [path/to/credentials/file] [--port PORT] [--bind ADDRESS] [--query-timeout SECONDS]");
+        System.out.printf ("   --port           port to listen on (default %d)%n", DEFAULT_PORT);
+        System.out.printf ("   --bind           address to listen on (default %s)%n", DEFAULT_BIND_ADDRESS);
+        System.out.printf ("   --query-timeout  seconds a statement may run, 0 for no limit (default %d)%n", DEFAULT_QUERY_TIMEOUT);
+    }
+
+    /** Prints the problem and the usage, then exits */
+    private static void exitWithUsage(String problem) {
+        System.out.println(problem);
+        printUsage();
+        System.exit(2);
+    }
+
+    /** Parses a non-negative int option, exiting with the usage if it isn't one */
+    private static int intOption(String name, String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= 0) return parsed;
+        } catch (NumberFormatException ignored) {
+        }
+        exitWithUsage("Value of " + name + " must be a non-negative integer, was '" + value + "'");
+        return -1;
+    }
+
+    public static void main(String[] args) {
+        Path credentialsFile = Connections.CREDENTIALS_DIR.resolve("server.credentials");
+        int port = DEFAULT_PORT;
+        String bindAddress = DEFAULT_BIND_ADDRESS;
+        int queryTimeout = DEFAULT_QUERY_TIMEOUT;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--") && i + 1 >= args.length) exitWithUsage("Missing value for " + arg);
+            switch (arg) {
+                case "--port": port = intOption(arg, args[++i]); break;
+                case "--bind": bindAddress = args[++i]; break;
+                case "--query-timeout": queryTimeout = intOption(arg, args[++i]); break;
+                default:
+                    if (arg.startsWith("--")) exitWithUsage("Unknown option " + arg);
+                    credentialsFile = Path.of(arg);
+            }
+        }
+
+        ConnectionPool pool;
+        try {
+            pool = Connections.pooled(credentialsFile);
+            // fails fast on bad credentials
+            try (Connection connection = pool.getConnection()) {
+                if (connection == null) {
+                    System.out.println("The server cannot run in debug mode, as there is no database connection");
+                    System.exit(1);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Could not connect to the database.");
+            System.out.println(e.getMessage());
+            System.exit(1);
+            return;
+        } catch (NoSuchFileException e) {
+            System.out.println("Credentials file '" + e.getFile() + "' does not exist");
+            System.exit(1);
+            return;
+        } catch (AccessDeniedException e) {
+            System.out.println("Could not obtain read permissions for " + e.getFile());
+            System.exit(1);
+            return;
+        } catch (IOException e) {
+            System.out.println("Failed while trying to open credentials file.");
+            System.out.println(e);
+            System.exit(1);
+            return;
+        } catch (Connections.DBIllegalConfigException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        var count = new AtomicInteger();
+        ExecutorService requests = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(null, r, "vapor-http-" + count.incrementAndGet(), REQUEST_STACK_SIZE);
+            t.setDaemon(true);
+            return t;
+        });
+        HttpServer server;
+        try {
+            server = HttpServer.create(new InetSocketAddress(bindAddress, port), BACKLOG);
+            server.createContext(ActionHandler.PREFIX.substring(0, ActionHandler.PREFIX.length() - 1),
+                    new ActionHandler(pool, queryTimeout));
+        } catch (IOException e) {
+            System.out.println("Could not listen on " + bindAddress + ":" + port);
+            System.out.println(e);
+            pool.close();
+            System.exit(1);
+            return;
+        }
+        server.setExecutor(requests);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            requests.shutdownNow();
+            pool.close();
+        }));
+        System.out.printf("Serving %d actions at http://%s:%d%s%n",
+                Action.VALUES.size(), bindAddress, server.getAddress().getPort(), ActionHandler.PREFIX);
+    }
+}
@@ -3,8 +3,14 @@ module edu.cwru.csds341.vapor {
     requires javafx.fxml;
     requires javafx.media;
     requires java.sql;
+    requires com.microsoft.sqlserver.jdbc;
+    requires jdk.httpserver;
+    requires java.management;
     
     opens edu.cwru.csds341.vapor.gui to javafx.fxml;
     exports edu.cwru.csds341.vapor.gui;
     exports edu.cwru.csds341.vapor.cli;
+    exports edu.cwru.csds341.vapor.server;
+    // for the MXBeans of ActionMetrics
+    exports edu.cwru.csds341.vapor.common to java.management;
 }
@@ -0,0 +1,112 @@
+package edu.cwru.csds341.vapor.cli;
+
+import edu.cwru.csds341.vapor.common.Action;
+import edu.cwru.csds341.vapor.common.MemoryDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkImporterTest {
+    @TempDir
+    Path directory;
+
+    private final MemoryDatabase database = new MemoryDatabase();
+
+    @Test
+    public void importsValidRowsAndCountsInvalidOnes() throws IOException, SQLException {
+        Path csv = write("users.csv", "date,username\n2020-1-1,ann\n2020-1-2," + "x".repeat(26) + "\n2020-1-3,bob\n");
+        try (var connection = database.connect()) {
+            assertEquals(1, new BulkImporter(connection, BulkImporter.Kind.USERS, 2, null).run(csv, checkpoint(csv)));
+            assertEquals(List.of("ann", "bob"), usernames(connection));
+            assertTrue(connection.getAutoCommit(), "restored");
+        }
+        assertFalse(Files.exists(checkpoint(csv)), "deleted once the import completes");
+    }
+
+    @Test
+    public void retriesAFailedChunkRowByRow() throws IOException, SQLException {
+        Path users = write("users.csv", "username,date\nann,2020-1-1\nbob,2020-1-1\n");
+        Path follows = write("follows.csv", "follower_id,followed_id,date\n"
+                + "1,2,2021-1-1 12:00:00\n1,99,2021-1-1 12:00:00\n2,1,2021-1-1 12:00:00\n");
+        try (var connection = database.connect()) {
+            new BulkImporter(connection, BulkImporter.Kind.USERS, 10, null).run(users, checkpoint(users));
+            assertEquals(1, new BulkImporter(connection, BulkImporter.Kind.FOLLOWS, 10, null).run(follows, checkpoint(follows)),
+                    "only the follow of a missing user fails");
+            assertEquals(List.of(2), followed(connection, 1));
+            assertEquals(List.of(1), followed(connection, 2));
+        }
+    }
+
+    @Test
+    public void resumesAfterTheCheckpoint() throws IOException, SQLException {
+        Path csv = write("users.csv", "username,date\nann,2020-1-1\nbob,2020-1-1\ncat,2020-1-1\n");
+        Files.write(checkpoint(csv), List.of(
+                "file=" + csv.toAbsolutePath().normalize(),
+                "kind=users",
+                "records=2"), StandardCharsets.UTF_8);
+        try (var connection = database.connect()) {
+            assertEquals(0, new BulkImporter(connection, BulkImporter.Kind.USERS, 10, null).run(csv, checkpoint(csv)));
+            assertEquals(List.of("cat"), usernames(connection));
+        }
+    }
+
+    @Test
+    public void refusesTheCheckpointOfAnotherImport() throws IOException, SQLException {
+        Path csv = write("users.csv", "username,date\nann,2020-1-1\n");
+        Files.write(checkpoint(csv), List.of(
+                "file=" + csv.toAbsolutePath().normalize(),
+                "kind=games",
+                "records=1"), StandardCharsets.UTF_8);
+        try (var connection = database.connect()) {
+            var importer = new BulkImporter(connection, BulkImporter.Kind.USERS, 10, null);
+            assertThrows(IOException.class, () -> importer.run(csv, checkpoint(csv)));
+            assertEquals(List.of(), usernames(connection));
+        }
+    }
+
+    @Test
+    public void needsAColumnForEachParameter() throws IOException, SQLException {
+        Path csv = write("users.csv", "username\nann\n");
+        try (var connection = database.connect()) {
+            var importer = new BulkImporter(connection, BulkImporter.Kind.USERS, 10, null);
+            var e = assertThrows(IOException.class, () -> importer.run(csv, checkpoint(csv)));
+            assertTrue(e.getMessage().contains("[date]"), e.getMessage());
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(directory.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static Path checkpoint(Path csv) {
+        return BulkImporter.defaultCheckpoint(csv);
+    }
+
+    private static List<String> usernames(Connection connection) throws SQLException {
+        var action = Action.LIST_USERS_PAGE;
+        try (var result = action.arguments()
+                .setInt(Action.Parameter.LUP_AFTER_ID, 0)
+                .setInt(Action.Parameter.LUP_LIMIT, 100)
+                .executeQuery(action.getCallableStatement(connection))) {
+            return result.rows().toList(row -> row.getString(Action.Column.USERNAME));
+        }
+    }
+
+    private static List<Integer> followed(Connection connection, int userId) throws SQLException {
+        var action = Action.LIST_FOLLOWED;
+        try (var result = action.arguments().setInt(Action.Parameter.LFD_USER_ID, userId)
+                .executeQuery(action.getCallableStatement(connection))) {
+            return new ArrayList<>(result.rows().toList(row -> row.getInt(Action.Column.FOLLOWED_ID)));
+        }
+    }
+}
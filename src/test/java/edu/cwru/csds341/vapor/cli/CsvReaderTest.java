@@ -0,0 +1,69 @@
+package edu.cwru.csds341.vapor.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvReaderTest {
+
+    @Test
+    public void splitsRecordsAndFields() throws IOException {
+        assertEquals(List.of(List.of("a", "b", "c"), List.of("1", "", "3")), records("a,b,c\n1,,3\n"));
+        assertEquals(List.of(List.of("last", "without newline")), records("last,without newline"));
+        assertEquals(List.of(List.of("")), records("\"\"\n"), "an empty quoted field");
+    }
+
+    @Test
+    public void readsQuotedFields() throws IOException {
+        assertEquals(List.of(List.of("a,b", "say \"hi\"", "two\nlines"), List.of("x")),
+                records("\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\"\nx\n"));
+        assertEquals(List.of(List.of("quoted then plain")), records("\"quoted\" then plain"));
+    }
+
+    @Test
+    public void endsRecordsWithAnyLineBreakAndSkipsBlankLines() throws IOException {
+        assertEquals(List.of(List.of("1"), List.of("2"), List.of("3"), List.of("4")), records("1\r\n2\r3\n\n\r\n4"));
+    }
+
+    @Test
+    public void ignoresALeadingByteOrderMark() throws IOException {
+        assertEquals(List.of(List.of("id", "name")), records("\uFEFFid,name\n"));
+    }
+
+    @Test
+    public void tellsTheLineEachRecordStartsOn() throws IOException {
+        try (var reader = new CsvReader(new StringReader("a\n\n\"b\nb\"\r\nc\rd"))) {
+            List<Long> lines = new ArrayList<>();
+            while (reader.next() != null)
+                lines.add(reader.line());
+            assertEquals(List.of(1L, 3L, 5L, 6L), lines);
+        }
+    }
+
+    @Test
+    public void rejectsAnUnclosedQuote() {
+        var e = assertThrows(IOException.class, () -> records("ok\n\"never closed,\n"));
+        assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+    }
+
+    @Test
+    public void readsRecordsLongerThanItsBuffer() throws IOException {
+        String longField = "x".repeat(200_000);
+        assertEquals(List.of(List.of(longField, "end")), records(longField + ",end\n"));
+    }
+
+    private static List<List<String>> records(String csv) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (var reader = new CsvReader(new StringReader(csv))) {
+            String[] fields;
+            while ((fields = reader.next()) != null)
+                records.add(List.of(fields));
+        }
+        return records;
+    }
+}
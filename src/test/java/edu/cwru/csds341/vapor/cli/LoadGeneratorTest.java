@@ -0,0 +1,54 @@
+package edu.cwru.csds341.vapor.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import static edu.cwru.csds341.vapor.cli.LoadGenerator.Flow.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    @Test
+    public void defaultMixWeighsEveryFlow() {
+        var mix = LoadGenerator.Flow.defaultMix();
+        assertEquals(LoadGenerator.Flow.values().length, mix.size());
+        assertEquals(100, mix.values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(BROWSE.defaultWeight, mix.get(BROWSE));
+    }
+
+    @Test
+    public void parsesAMix() {
+        var mix = LoadGenerator.Flow.parseMix(" Browse = 50,game=25,buy=0");
+        assertEquals(50, mix.get(BROWSE));
+        assertEquals(25, mix.get(GAME));
+        assertEquals(0, mix.get(BUY));
+        assertEquals(0, mix.get(PROFILE), "flows that are not named");
+        assertEquals(LoadGenerator.Flow.values().length, mix.size());
+    }
+
+    @Test
+    public void rejectsMalformedMixes() {
+        for (String text : new String[] {"", "shop=10", "browse", "browse=-1", "browse=x", "browse=0,game=0"})
+            assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Flow.parseMix(text), text);
+    }
+
+    @Test
+    public void acceptsUserIdRanges() {
+        for (String userIds : new String[] {LoadGenerator.DEFAULT_USER_IDS, "5", " 2 - 2 "})
+            assertDoesNotThrow(() -> generator(userIds), userIds);
+    }
+
+    @Test
+    public void rejectsMalformedUserIdRanges() {
+        for (String userIds : new String[] {"", "a-b", "1-", "10-1", "-1-5", "1-2-3"})
+            assertThrows(IllegalArgumentException.class, () -> generator(userIds), userIds);
+    }
+
+    private static LoadGenerator generator(String userIds) {
+        return new LoadGenerator(Path.of("unused.credentials"), 1, Duration.ofSeconds(1), 0, Duration.ZERO,
+                LoadGenerator.Flow.defaultMix(), userIds);
+    }
+}
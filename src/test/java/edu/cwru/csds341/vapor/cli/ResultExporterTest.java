@@ -0,0 +1,140 @@
+package edu.cwru.csds341.vapor.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultExporterTest {
+    private static final String[] LABELS = {"id", "name", "price", "released", "added", "score", "active"};
+    private static final int[] TYPES = {Types.INTEGER, Types.NVARCHAR, Types.DECIMAL, Types.DATE, Types.TIMESTAMP, Types.DOUBLE, Types.BIT};
+    private static final Object[][] ROWS = {
+            {1, "plain", new BigDecimal("9.99"), LocalDate.of(2020, 1, 2), LocalDateTime.of(2021, 3, 4, 5, 6, 7), 0.5, true},
+            {2, "a, \"b\"\r\nc\t\\", null, null, null, null, null},
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void choosesTheFormatByExtension() {
+        assertEquals(ResultExporter.Format.CSV, ResultExporter.Format.forFile(Path.of("out.csv")));
+        assertEquals(ResultExporter.Format.CSV, ResultExporter.Format.forFile(Path.of("dir", "OUT.CSV.GZ")));
+        assertEquals(ResultExporter.Format.JSON_LINES, ResultExporter.Format.forFile(Path.of("out.jsonl")));
+        assertEquals(ResultExporter.Format.JSON_LINES, ResultExporter.Format.forFile(Path.of("out.jsonl.gz")));
+        assertNull(ResultExporter.Format.forFile(Path.of("out.json")));
+        assertNull(ResultExporter.Format.forFile(Path.of("out.gz")));
+        assertThrows(IllegalArgumentException.class, () -> new ResultExporter(Path.of("out.txt")));
+    }
+
+    @Test
+    public void writesCsvWithQuotesOnlyWhereNeeded() throws SQLException, IOException {
+        Path file = dir.resolve("out.csv");
+        assertEquals(2, new ResultExporter(file).export(resultSet(), file));
+        assertEquals("id,name,price,released,added,score,active\r\n"
+                + "1,plain,9.99,2020-01-02,2021-03-04T05:06:07,0.5,true\r\n"
+                + "2,\"a, \"\"b\"\"\r\nc\t\\\",,,,,\r\n", Files.readString(file, StandardCharsets.UTF_8),
+                "NULL is an empty field");
+    }
+
+    @Test
+    public void writesJsonLinesWithTypedValues() throws SQLException, IOException {
+        Path file = dir.resolve("out.jsonl");
+        assertEquals(2, new ResultExporter(file).export(resultSet(), file));
+        assertEquals("{\"id\":1,\"name\":\"plain\",\"price\":9.99,\"released\":\"2020-01-02\","
+                + "\"added\":\"2021-03-04T05:06:07\",\"score\":0.5,\"active\":true}\n"
+                + "{\"id\":2,\"name\":\"a, \\\"b\\\"\\r\\nc\\t\\\\\",\"price\":null,\"released\":null,"
+                + "\"added\":null,\"score\":null,\"active\":null}\n", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void compressesGzFiles() throws SQLException, IOException {
+        Path plain = dir.resolve("out.csv");
+        Path compressed = dir.resolve("out.csv.gz");
+        new ResultExporter(plain).export(resultSet(), plain);
+        assertEquals(2, new ResultExporter(compressed).export(resultSet(), compressed));
+        try (var in = new GZIPInputStream(Files.newInputStream(compressed))) {
+            assertEquals(Files.readString(plain, StandardCharsets.UTF_8), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void replacesAnExistingFile() throws SQLException, IOException {
+        Path file = dir.resolve("out.csv");
+        Files.writeString(file, "x".repeat(10_000));
+        new ResultExporter(file).export(resultSet(), file);
+        assertTrue(Files.readString(file).startsWith("id,"));
+        assertTrue(Files.size(file) < 10_000);
+    }
+
+    /** A ResultSet over {@link #ROWS}, with just what the exporter reads */
+    private static ResultSet resultSet() {
+        var metadata = (ResultSetMetaData) Proxy.newProxyInstance(ResultExporterTest.class.getClassLoader(),
+                new Class<?>[] {ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount": return LABELS.length;
+                        case "getColumnLabel": return LABELS[(Integer) args[0] - 1];
+                        case "getColumnType": return TYPES[(Integer) args[0] - 1];
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        var state = new Object() {
+            int row = -1;
+            boolean wasNull = false;
+
+            Object get(Object column) {
+                Object value = ROWS[row][(Integer) column - 1];
+                wasNull = value == null;
+                return value;
+            }
+        };
+        return (ResultSet) Proxy.newProxyInstance(ResultExporterTest.class.getClassLoader(),
+                new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMetaData": return metadata;
+                        case "next": return ++state.row < ROWS.length;
+                        case "wasNull": return state.wasNull;
+                        case "getInt": {
+                            Object value = state.get(args[0]);
+                            return (value == null) ? 0 : value;
+                        }
+                        case "getDouble": {
+                            Object value = state.get(args[0]);
+                            return (value == null) ? 0.0 : value;
+                        }
+                        case "getBoolean": {
+                            Object value = state.get(args[0]);
+                            return value != null && (Boolean) value;
+                        }
+                        case "getString":
+                        case "getBigDecimal":
+                            return state.get(args[0]);
+                        case "getDate": {
+                            Object value = state.get(args[0]);
+                            return (value == null) ? null : Date.valueOf((LocalDate) value);
+                        }
+                        case "getTimestamp": {
+                            Object value = state.get(args[0]);
+                            return (value == null) ? null : Timestamp.valueOf((LocalDateTime) value);
+                        }
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,169 @@
+package edu.cwru.csds341.vapor.cli;
+
+import edu.cwru.csds341.vapor.common.Action;
+import edu.cwru.csds341.vapor.common.MemoryDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptRunnerTest {
+    /** Creates users ann, bob and cat, with ids 1 to 3, on lines 1 to 9 */
+    private static final String USERS = "ca\nann\n2020-1-1\nca\nbob\n2020-1-1\nca\ncat\n2020-1-1\n";
+
+    @TempDir
+    Path directory;
+
+    private final MemoryDatabase database = new MemoryDatabase();
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger batches = new AtomicInteger();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private PrintStream stdout;
+
+    @BeforeEach
+    public void captureOutput() {
+        stdout = System.out;
+        System.setOut(new PrintStream(output, true));
+    }
+
+    @AfterEach
+    public void restoreOutput() {
+        System.setOut(stdout);
+    }
+
+    @Test
+    public void batchesConsecutiveUpdatesOfTheSameAction() throws IOException, SQLException {
+        try (var connection = counting(database.connect())) {
+            assertEquals(0, run(connection, 2, 1000, USERS
+                    + follow(1, 2) + follow(1, 3) + follow(2, 1)
+                    + "ufu\n1\n2\n"
+                    + follow(3, 1)));
+            assertEquals(4, batches.get(), "[1>2, 1>3], [2>1], then each Action on its own");
+            assertEquals(List.of(3), followed(connection, 1));
+            assertEquals(List.of(1), followed(connection, 2));
+            assertEquals(List.of(1), followed(connection, 3));
+            assertTrue(connection.getAutoCommit(), "restored");
+        }
+        assertTrue(output.toString().contains("8 succeeded, 0 failed"), output.toString());
+    }
+
+    @Test
+    public void reportsEachFailedCommandOfABatchByLine() throws IOException, SQLException {
+        try (var connection = counting(database.connect())) {
+            // the follows start on lines 10, 14 and 18
+            assertEquals(2, run(connection, 10, 1000, USERS + follow(1, 2) + follow(1, 99) + follow(2, 1)));
+            assertEquals(1, batches.get());
+            assertEquals(List.of(2), followed(connection, 1));
+        }
+        String out = output.toString();
+        assertFalse(out.contains("Error on line 10"), out);
+        assertTrue(out.contains("Error on line 14: "), out);
+        assertTrue(out.contains("Error on line 18: not executed, an earlier command in its batch failed"), out);
+    }
+
+    @Test
+    public void commitsEveryIntervalCommands() throws IOException, SQLException {
+        try (var connection = counting(database.connect())) {
+            assertEquals(0, run(connection, 10, 2, USERS + follow(1, 2) + follow(2, 1)));
+        }
+        // after 2 and 4 commands, then at the end
+        assertEquals(3, commits.get());
+    }
+
+    @Test
+    public void reportsInvalidCommandsWithTheirLineAndCarriesOn() throws IOException, SQLException {
+        String script = "# users\n\nnope\nca\n" + "x".repeat(26) + "\n2020-1-1\nca\nann\n2020-1-1\nexit\nca\nbob\n2020-1-1\n";
+        try (var connection = counting(database.connect())) {
+            assertEquals(2, run(connection, 10, 1000, script));
+            assertEquals(List.of("ann"), usernames(connection), "stops at exit");
+        }
+        String out = output.toString();
+        assertTrue(out.contains("Error on line 3: invalid action 'nope'"), out);
+        assertTrue(out.contains("Error on line 4: line 5, 'username': "), out);
+    }
+
+    @Test
+    public void exportsListCommandsToTheFile() throws IOException, SQLException {
+        Path csv = directory.resolve("users.csv");
+        String script = USERS
+                + "export\nlup\n1\n10\n" + csv + "\n"
+                + "export\nca\ndan\n2020-1-1\n" + csv + "\n"
+                + "export\nlup\n0\n10\n" + directory.resolve("users.txt") + "\n";
+        try (var connection = counting(database.connect())) {
+            assertEquals(2, run(connection, 10, 1000, script));
+            assertEquals(List.of("ann", "bob", "cat"), usernames(connection));
+        }
+        assertEquals("user_id,username\r\n2,bob\r\n3,cat\r\n", Files.readString(csv));
+        String out = output.toString();
+        assertTrue(out.contains("Error on line 15: line 16: only list commands can be exported"), out);
+        assertTrue(out.contains("Error on line 20: line 24: the file must end in"), out);
+    }
+
+    private static String follow(int followerId, int followedId) {
+        return "fu\n" + followerId + "\n" + followedId + "\n2021-1-1 12:00:00\n";
+    }
+
+    private static int run(Connection connection, int batchSize, int commitInterval, String script) throws IOException, SQLException {
+        var runner = new ScriptRunner(connection, batchSize, commitInterval, ResultExporter.DEFAULT_FETCH_SIZE);
+        return runner.run(new BufferedReader(new StringReader(script)));
+    }
+
+    /** Wraps the connection so that commits and batches sent through it are counted */
+    private Connection counting(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("commit")) commits.incrementAndGet();
+                    Object result = invoke(connection, method, args);
+                    if (!(result instanceof CallableStatement)) return result;
+                    var cs = (CallableStatement) result;
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {CallableStatement.class},
+                            (statement, call, callArgs) -> {
+                                if (call.getName().equals("executeBatch")) batches.incrementAndGet();
+                                return invoke(cs, call, callArgs);
+                            });
+                });
+    }
+
+    private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static List<Integer> followed(Connection connection, int userId) throws SQLException {
+        var action = Action.LIST_FOLLOWED;
+        try (var result = action.arguments().setInt(Action.Parameter.LFD_USER_ID, userId)
+                .executeQuery(action.getCallableStatement(connection))) {
+            return result.rows().toList(row -> row.getInt(Action.Column.FOLLOWED_ID));
+        }
+    }
+
+    private static List<String> usernames(Connection connection) throws SQLException {
+        var action = Action.LIST_USERS_PAGE;
+        try (var result = action.arguments()
+                .setInt(Action.Parameter.LUP_AFTER_ID, 0)
+                .setInt(Action.Parameter.LUP_LIMIT, 1000)
+                .executeQuery(action.getCallableStatement(connection))) {
+            return result.rows().toList(row -> row.getString(Action.Column.USERNAME));
+        }
+    }
+}
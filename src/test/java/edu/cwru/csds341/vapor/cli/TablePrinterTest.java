@@ -0,0 +1,94 @@
+package edu.cwru.csds341.vapor.cli;
+
+import edu.cwru.csds341.vapor.common.Action;
+import edu.cwru.csds341.vapor.common.MemoryDatabase;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TablePrinterTest {
+    private final MemoryDatabase database = new MemoryDatabase();
+
+    @Test
+    public void padsEachColumnToItsWidestValue() throws SQLException, IOException {
+        try (var connection = database.connect()) {
+            createUser(connection, "ann");
+            createUser(connection, "bobby");
+            var out = new StringWriter();
+            assertEquals(2, printUsers(connection, out));
+            // each value is padded to one more than its column's width, then followed by two spaces
+            assertEquals("user_id   username   \n"
+                    + "1         ann        \n"
+                    + "2         bobby      \n", out.toString());
+        }
+    }
+
+    @Test
+    public void printsLaterWiderValuesInFull() throws SQLException, IOException {
+        try (var connection = database.connect()) {
+            for (int i = 0; i < TablePrinter.SAMPLE_ROWS; i++)
+                createUser(connection, "u");
+            createUser(connection, "a much longer name");
+            var out = new StringWriter();
+            assertEquals(TablePrinter.SAMPLE_ROWS + 1, printUsers(connection, out));
+            String[] lines = out.toString().split("\n");
+            assertEquals("user_id   username   ", lines[0], "sized by the sample rows only");
+            assertEquals("101       a much longer name  ", lines[lines.length - 1]);
+        }
+    }
+
+    @Test
+    public void saysSoWhenThereAreNoRows() throws SQLException, IOException {
+        try (var connection = database.connect()) {
+            var out = new StringWriter();
+            assertEquals(0, printUsers(connection, out));
+            assertEquals("No results\n", out.toString());
+        }
+    }
+
+    @Test
+    public void printsToTheCurrentStandardOutput() throws SQLException {
+        PrintStream stdout = System.out;
+        var captured = new ByteArrayOutputStream();
+        try (var connection = database.connect()) {
+            System.setOut(new PrintStream(captured, true));
+            try (var result = Action.LIST_USERS_PAGE.arguments()
+                    .setInt(Action.Parameter.LUP_AFTER_ID, 0)
+                    .setInt(Action.Parameter.LUP_LIMIT, 1000)
+                    .executeQuery(Action.LIST_USERS_PAGE.getCallableStatement(connection))) {
+                assertEquals(0, TablePrinter.print(result.resultSet()));
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals("No results\n", captured.toString());
+    }
+
+    private static long printUsers(Connection connection, StringWriter out) throws SQLException, IOException {
+        var action = Action.LIST_USERS_PAGE;
+        try (var result = action.arguments()
+                .setInt(Action.Parameter.LUP_AFTER_ID, 0)
+                .setInt(Action.Parameter.LUP_LIMIT, 1000)
+                .executeQuery(action.getCallableStatement(connection))) {
+            return TablePrinter.print(result.resultSet(), out);
+        }
+    }
+
+    private static void createUser(Connection connection, String name) throws SQLException {
+        var cs = Action.CREATE_ACCOUNT.getCallableStatement(connection);
+        cs.registerOutParameter(Action.CREATE_ACCOUNT.outParameterIndex, Types.INTEGER);
+        Action.CREATE_ACCOUNT.arguments()
+                .setString(Action.Parameter.CA_USERNAME, name)
+                .setDate(Action.Parameter.CA_JOIN_DATE, LocalDate.of(2020, 1, 1))
+                .executeUpdate(cs);
+    }
+}
@@ -2,6 +2,7 @@ package edu.cwru.csds341.vapor.common;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.HashSet;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -26,5 +27,51 @@ class ActionTest {
         }
     }
 
+    @Test
+    public void parameterIndicesMatchProcedureArity() {
+        for (Action action : Action.values()) {
+            long arity = action.storedProcedureString.chars().filter(c -> c == '?').count();
+            int expected = action.parameters.size() + (action.type == Action.AType.INSERT_ID ? 1 : 0);
+            assertEquals(expected, arity, action + " binds a different number of parameters than its procedure takes");
+
+            for (int i = 0; i < action.parameters.size(); i++)
+                assertEquals(i + 1, action.parameters.get(i).index(), action + " has a misplaced " + action.parameters.get(i));
+
+            if (action.type == Action.AType.INSERT_ID)
+                assertEquals(arity, action.outParameterIndex, action + " out parameter should be last");
+            else
+                assertEquals(0, action.outParameterIndex, action + " should not have an out parameter");
+        }
+    }
+
+    @Test
+    public void onlyQueriesDeclareDistinctColumns() {
+        for (Action action : Action.values()) {
+            if (action.type != Action.AType.QUERY)
+                assertTrue(action.columns.isEmpty(), action + " is not a query, so returns no columns");
+            assertEquals(action.columns.size(), new HashSet<>(action.columns).size(), action + " declares a column twice");
+        }
+    }
+
+    @Test
+    public void argumentsOnlyAcceptTheActionsParametersWithTheirType() {
+        var args = Action.FOLLOW_USER.arguments();
+        args.setInt(Action.Parameter.FU_FOLLOWER_ID, 1);
+        assertThrows(IllegalArgumentException.class, () -> args.setInt(Action.Parameter.UFU_FOLLOWER_ID, 1));
+        assertThrows(IllegalArgumentException.class, () -> args.setString(Action.Parameter.FU_FOLLOWED_ID, "2"));
+        assertThrows(IllegalStateException.class, () -> args.bind(null), "unset parameters should not be bound");
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void metricsCountEachCallOfABatchButNotTheLatencyOfFailures() {
+        var metrics = new ActionMetrics();
+        metrics.record(Action.MAKE_COMMENT, System.nanoTime(), 10, false);
+        metrics.record(Action.MAKE_COMMENT, System.nanoTime(), true);
+        var stats = metrics.stats(Action.MAKE_COMMENT);
+        assertEquals(11, stats.getCalls());
+        assertEquals(1, stats.getErrors());
+        assertEquals(0, metrics.stats(Action.FOLLOW_USER).getCalls());
+        metrics.reset();
+        assertEquals(0, stats.getCalls());
+    }
+}
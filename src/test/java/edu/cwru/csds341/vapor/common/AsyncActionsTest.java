@@ -0,0 +1,169 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static edu.cwru.csds341.vapor.common.MemoryFixture.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncActionsTest {
+    /** Whether the current thread is running something handed to the result executor */
+    private static final ThreadLocal<Boolean> DELIVERING = ThreadLocal.withInitial(() -> false);
+
+    private ConnectionPool pool;
+    private AsyncActions actions;
+    /** Tasks handed to the result executor */
+    private final AtomicInteger delivered = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        var database = database();
+        var config = new ConnectionPool.Config();
+        config.minSize = 0;
+        config.maxSize = 2;
+        config.idleTimeoutSeconds = 300;
+        config.borrowTimeoutSeconds = 0;
+        pool = new ConnectionPool(database::connect, config);
+        // one worker, so that later work queues behind earlier work
+        actions = new AsyncActions(pool, 1, task -> {
+            delivered.incrementAndGet();
+            DELIVERING.set(true);
+            try {
+                task.run();
+            } finally {
+                DELIVERING.set(false);
+            }
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        actions.close();
+        pool.close();
+    }
+
+    @Test
+    public void completesThroughTheResultExecutor() throws Exception {
+        var delivering = new CompletableFuture<Boolean>();
+        var release = new CountDownLatch(1);
+        var future = actions.run(connection -> {
+            await(release);
+            return "done";
+        });
+        // added before completion, so it runs where the future is completed
+        future.thenRun(() -> delivering.complete(DELIVERING.get()));
+        release.countDown();
+        // waiting on the future itself could run the stage on this thread, as get() helps complete dependents
+        assertTrue(get(delivering));
+        assertEquals("done", future.getNow(null));
+        assertEquals(1, delivered.get());
+    }
+
+    @Test
+    public void failsThroughTheResultExecutor() {
+        var failure = new SQLException("nope");
+        var future = actions.run(connection -> {
+            throw failure;
+        });
+        var e = assertThrows(ExecutionException.class, () -> get(future));
+        assertSame(failure, e.getCause());
+        assertEquals(1, delivered.get());
+    }
+
+    @Test
+    public void runsActionsOnPooledConnections() throws Exception {
+        var follow = Action.FOLLOW_USER.arguments()
+                .setInt(Action.Parameter.FU_FOLLOWER_ID, EVE)
+                .setInt(Action.Parameter.FU_FOLLOWED_ID, ANN)
+                .setDateTime(Action.Parameter.FU_DATE, LocalDateTime.of(2021, 1, 1, 12, 0));
+        assertEquals(1, get(actions.update(follow)));
+        var followed = Action.LIST_FOLLOWED.arguments().setInt(Action.Parameter.LFD_USER_ID, EVE);
+        assertEquals(List.of(ANN, DAN), get(actions.list(followed, row -> row.getInt(Action.Column.FOLLOWED_ID), null)));
+    }
+
+    @Test
+    public void timesOutAndInterruptsTheWork() throws Exception {
+        var interrupted = new CountDownLatch(1);
+        var future = actions.run(connection -> {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        }, Duration.ofMillis(50));
+        var e = assertThrows(ExecutionException.class, () -> get(future));
+        assertTrue(e.getCause() instanceof TimeoutException, e.getCause().toString());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancellingASessionCancelsItsPendingWork() throws Exception {
+        var session = actions.newSession();
+        var started = new CountDownLatch(1);
+        var interrupted = new CountDownLatch(1);
+        var ran = new AtomicInteger();
+        var running = session.run(connection -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        var queued = session.run(connection -> ran.incrementAndGet());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        session.cancel();
+        assertTrue(running.isCancelled());
+        assertTrue(queued.isCancelled());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "running work is interrupted");
+
+        var later = session.run(connection -> ran.incrementAndGet());
+        assertTrue(later.isCancelled(), "work submitted after cancelling is cancelled too");
+        assertThrows(CancellationException.class, () -> get(later));
+
+        // the worker runs in order, so once this is done the cancelled work had its turn
+        assertEquals("after", get(actions.run(connection -> "after")));
+        assertEquals(0, ran.get(), "queued work is skipped");
+    }
+
+    @Test
+    public void sessionsAreCancelledIndependently() throws Exception {
+        var cancelled = actions.newSession();
+        var kept = actions.newSession();
+        var release = new CountDownLatch(1);
+        var blocked = cancelled.run(connection -> await(release));
+        var future = kept.run(connection -> "kept");
+        cancelled.cancel();
+        release.countDown();
+        assertTrue(blocked.isCancelled());
+        assertEquals("kept", get(future));
+    }
+
+    private static <T> T get(CompletableFuture<T> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    private static boolean await(CountDownLatch latch) throws SQLException {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new SQLException(e);
+        }
+    }
+}
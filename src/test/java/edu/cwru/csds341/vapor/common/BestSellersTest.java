@@ -0,0 +1,112 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static edu.cwru.csds341.vapor.common.MemoryFixture.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BestSellersTest {
+    private static final LocalDate TODAY = LocalDate.of(2022, 3, 10);
+
+    /** A clock that only moves when told to */
+    private static final class TestClock extends Clock {
+        Instant now = TODAY.atStartOfDay(ZoneOffset.UTC).plusHours(12).toInstant();
+
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { return this; }
+        @Override public Instant instant() { return now; }
+    }
+
+    @Test
+    public void countsTheLastSevenDaysMostSoldFirst() {
+        var bestSellers = new BestSellers(0, new TestClock());
+        bestSellers.recordSale(2, "two", TODAY);
+        bestSellers.recordSale(2, "two", TODAY.minusDays(6));
+        bestSellers.recordSale(1, "one", TODAY.minusDays(1));
+        bestSellers.recordSale(3, "three", TODAY.minusDays(7));
+        bestSellers.recordSale(4, "four", TODAY.plusDays(1));
+
+        assertEquals(List.of("two:2", "one:1"), sellers(bestSellers.top(10)), "days outside the window are not counted");
+        assertEquals(List.of("two:2"), sellers(bestSellers.top(1)));
+    }
+
+    @Test
+    public void expiresDaysAsTheClockMoves() {
+        var clock = new TestClock();
+        var bestSellers = new BestSellers(0, clock);
+        bestSellers.recordSale(2, "two", TODAY);
+        bestSellers.recordSale(2, "two", TODAY.minusDays(6));
+        bestSellers.recordSale(1, "one", TODAY.minusDays(1));
+
+        clock.now = clock.now.plus(1, ChronoUnit.DAYS);
+        assertEquals(List.of("one:1", "two:1"), sellers(bestSellers.top(10)), "ties are ordered by id");
+        clock.now = clock.now.plus(6, ChronoUnit.DAYS);
+        assertEquals(List.of(), sellers(bestSellers.top(10)));
+    }
+
+    @Test
+    public void refreshReplacesTheCountsWithTheDatabases() throws SQLException {
+        var bestSellers = new BestSellers(0);
+        bestSellers.recordSale(GAMMA, "gamma", LocalDate.now());
+        bestSellers.recordSale(GAMMA, "gamma", LocalDate.now());
+        assertFalse(bestSellers.isLoaded());
+        try (var connection = connect()) {
+            bestSellers.refresh(connection);
+        }
+        assertTrue(bestSellers.isLoaded());
+        assertEquals(List.of("alpha:3", "beta:2", "gamma:1"), sellers(bestSellers.top(10)));
+    }
+
+    @Test
+    public void staysFreshForTheRefreshIntervalOfItsClock() throws SQLException {
+        var clock = new TestClock();
+        var bestSellers = new BestSellers(60, clock);
+        assertTrue(bestSellers.isStale(), "never refreshed");
+        try (var connection = connect()) {
+            bestSellers.refresh(connection);
+        }
+        assertFalse(bestSellers.isStale());
+        clock.now = clock.now.plusSeconds(60);
+        assertFalse(bestSellers.isStale());
+        clock.now = clock.now.plusSeconds(1);
+        assertTrue(bestSellers.isStale());
+    }
+
+    @Test
+    public void countsGrantsExecutedWhileListening() throws SQLException {
+        var bestSellers = new BestSellers(0);
+        var db = database();
+        try (var connection = db.connect()) {
+            bestSellers.refresh(connection);
+            Updates.addListener(bestSellers);
+            try {
+                grant(connection, CAT, GAMMA, LocalDate.now());
+                grant(connection, DAN, GAMMA, LocalDate.now());
+                assertFalse(bestSellers.isStale());
+                assertEquals(List.of("alpha:3", "gamma:3", "beta:2"), sellers(bestSellers.top(10)));
+
+                update(connection, Action.DELETE_GAME.arguments().setInt(Action.Parameter.DG_GAMEID, ALPHA));
+                assertTrue(bestSellers.isStale(), "deletions are not counted, only noticed");
+                assertTrue(bestSellers.refreshIfStale(connection));
+                assertEquals(List.of("gamma:3", "beta:2"), sellers(bestSellers.top(10)));
+            } finally {
+                Updates.removeListener(bestSellers);
+            }
+        }
+    }
+
+    /** Each seller as name:sales */
+    private static List<String> sellers(List<BestSellers.Seller> top) {
+        return top.stream().map(seller -> seller.name + ":" + seller.sales).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,173 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+    private final MemoryDatabase database = new MemoryDatabase();
+    /** Physical connections opened so far */
+    private final AtomicInteger opened = new AtomicInteger();
+
+    private ConnectionPool pool(int minSize, int maxSize, int idleTimeoutSeconds) {
+        var config = new ConnectionPool.Config();
+        config.minSize = minSize;
+        config.maxSize = maxSize;
+        config.idleTimeoutSeconds = idleTimeoutSeconds;
+        config.borrowTimeoutSeconds = 0;
+        return new ConnectionPool(() -> {
+            opened.incrementAndGet();
+            return database.connect();
+        }, config);
+    }
+
+    @Test
+    public void reusesReturnedConnections() throws SQLException {
+        try (var pool = pool(0, 2, 300)) {
+            StatementCache first;
+            try (var connection = pool.getConnection()) {
+                first = connection.unwrap(StatementCache.class);
+            }
+            assertEquals(1, pool.idleCount());
+            try (var connection = pool.getConnection()) {
+                assertSame(first, connection.unwrap(StatementCache.class), "the same physical connection");
+                assertEquals(0, pool.idleCount());
+            }
+            assertEquals(1, opened.get());
+            assertEquals(1, pool.size());
+        }
+    }
+
+    @Test
+    public void returnedConnectionsCannotBeUsed() throws SQLException {
+        try (var pool = pool(0, 1, 300)) {
+            var connection = pool.getConnection();
+            var statement = Action.LIST_GENRES.getCallableStatement(connection);
+            connection.close();
+            assertTrue(connection.isClosed());
+            assertThrows(SQLException.class, connection::getAutoCommit);
+            assertFalse(statement.isClosed(), "cached statements outlive the borrower");
+        }
+    }
+
+    @Test
+    public void rollsBackWhatABorrowerLeftUncommitted() throws SQLException {
+        try (var pool = pool(0, 1, 300)) {
+            try (var connection = pool.getConnection()) {
+                connection.setAutoCommit(false);
+                Action.CREATE_ACCOUNT.arguments()
+                        .setString(Action.Parameter.CA_USERNAME, "ann")
+                        .setDate(Action.Parameter.CA_JOIN_DATE, LocalDate.of(2020, 1, 1))
+                        .executeUpdate(registered(connection));
+            }
+            try (var connection = pool.getConnection()) {
+                assertTrue(connection.getAutoCommit());
+                try (var result = Action.VIEW_USER_INFO.arguments().setInt(Action.Parameter.VU_USER_ID, 1)
+                        .executeQuery(Action.VIEW_USER_INFO.getCallableStatement(connection))) {
+                    assertFalse(result.resultSet().next());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void neverLendsMoreThanItsMaximum() throws SQLException {
+        try (var pool = pool(0, 2, 300)) {
+            var first = pool.getConnection();
+            var second = pool.getConnection();
+            assertThrows(SQLTimeoutException.class, pool::getConnection);
+            assertEquals(2, pool.size());
+            second.close();
+            try (var third = pool.getConnection()) {
+                assertNotNull(third);
+            }
+            first.close();
+            assertEquals(2, opened.get());
+        }
+    }
+
+    @Test
+    public void warmsUpToItsMinimumWithoutPassingItsMaximum() throws Exception {
+        try (var pool = pool(2, 2, 300)) {
+            Connection borrowed = pool.getConnection();
+            waitFor(() -> pool.size() == 2);
+            Thread.sleep(100);
+            assertEquals(2, pool.size(), "borrowed and warmed up together");
+            assertTrue(opened.get() <= 2);
+            borrowed.close();
+        }
+    }
+
+    @Test
+    public void closesConnectionsIdleForTooLong() throws Exception {
+        try (var pool = pool(0, 2, 0)) {
+            var first = pool.getConnection();
+            var second = pool.getConnection();
+            first.close();
+            second.close();
+            assertEquals(2, pool.idleCount());
+            waitFor(() -> pool.size() == 0);
+            assertEquals(0, pool.idleCount());
+        }
+    }
+
+    @Test
+    public void closesAConnectionOpenedWhileClosing() throws Exception {
+        var created = new CountDownLatch(1);
+        var pool = new AtomicReference<ConnectionPool>();
+        var opening = new AtomicReference<Connection>();
+        var config = new ConnectionPool.Config();
+        config.minSize = 1;
+        config.maxSize = 1;
+        pool.set(new ConnectionPool(() -> {
+            try {
+                created.await();
+            } catch (InterruptedException e) {
+                throw new SQLException(e);
+            }
+            pool.get().close();
+            opening.set(database.connect());
+            return opening.get();
+        }, config));
+        created.countDown();
+        waitFor(() -> opening.get() != null);
+        waitFor(() -> pool.get().size() == 0);
+        assertTrue(opening.get().isClosed());
+        assertEquals(0, pool.get().idleCount());
+    }
+
+    @Test
+    public void debugPoolsLendNullConnections() throws SQLException {
+        var config = new ConnectionPool.Config();
+        config.minSize = config.maxSize = 0;
+        try (var pool = new ConnectionPool(null, config)) {
+            assertNull(pool.getConnection());
+        }
+    }
+
+    private static CallableStatement registered(Connection connection) throws SQLException {
+        var cs = Action.CREATE_ACCOUNT.getCallableStatement(connection);
+        cs.registerOutParameter(Action.CREATE_ACCOUNT.outParameterIndex, Types.INTEGER);
+        return cs;
+    }
+
+    /** Polls the condition for up to 5 seconds, as maintenance runs on its own thread */
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+}
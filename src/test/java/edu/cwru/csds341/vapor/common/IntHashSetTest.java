@@ -0,0 +1,75 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntHashSetTest {
+
+    @Test
+    public void addsEachValueOnce() {
+        var set = new IntHashSet();
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(7));
+        assertFalse(set.add(7));
+        assertTrue(set.add(-7));
+        assertTrue(set.add(0));
+        assertEquals(3, set.size());
+        assertTrue(set.contains(-7));
+        assertFalse(set.contains(8));
+        int[] values = set.toArray();
+        Arrays.sort(values);
+        assertArrayEquals(new int[] {-7, 0, 7}, values);
+    }
+
+    @Test
+    public void growsPastItsExpectedSize() {
+        var set = new IntHashSet(2);
+        for (int id = 1; id <= 1000; id++)
+            set.add(id);
+        assertEquals(1000, set.size());
+        for (int id = 1; id <= 1000; id++)
+            assertTrue(set.contains(id), "lost " + id);
+        assertFalse(set.contains(1001));
+    }
+
+    @Test
+    public void findsValuesPastRemovedOnes() {
+        // checked against a HashSet, with enough values in a small range that clusters form
+        var random = new Random(341);
+        var set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextInt(200);
+            if (random.nextBoolean()) assertEquals(expected.add(value), set.add(value));
+            else assertEquals(expected.remove(value), set.remove(value));
+        }
+        assertEquals(expected.size(), set.size());
+        for (int value = 0; value < 200; value++)
+            assertEquals(expected.contains(value), set.contains(value), "value " + value);
+    }
+
+    @Test
+    public void clears() {
+        var set = new IntHashSet();
+        set.add(1);
+        set.add(2);
+        set.clear();
+        assertEquals(0, set.size());
+        assertFalse(set.contains(1));
+        assertArrayEquals(new int[0], set.toArray());
+    }
+
+    @Test
+    public void cannotHoldTheEmptyMarker() {
+        var set = new IntHashSet();
+        assertThrows(IllegalArgumentException.class, () -> set.add(Integer.MIN_VALUE));
+        assertFalse(set.contains(Integer.MIN_VALUE));
+        assertFalse(set.remove(Integer.MIN_VALUE));
+    }
+}
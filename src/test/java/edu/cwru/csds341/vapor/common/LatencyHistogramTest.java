@@ -0,0 +1,78 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void countsSmallValuesExactly() {
+        var histogram = new LatencyHistogram();
+        for (int nanos = 0; nanos < 64; nanos++)
+            histogram.record(nanos);
+        assertEquals(64, histogram.count());
+        assertEquals(63, histogram.max());
+        assertEquals(31.5, histogram.mean());
+        assertEquals(31, histogram.percentile(50));
+        assertEquals(0, histogram.percentile(0));
+        assertEquals(63, histogram.percentile(100));
+    }
+
+    @Test
+    public void splitsEachPowerOfTwoInto32Buckets() {
+        // 1000 is in [512, 1024), whose buckets are 16 wide: [992, 1008), with middle 1000
+        assertEquals(1000, only(1000));
+        assertEquals(1000, only(992));
+        assertEquals(1000, only(1007));
+        assertEquals(1016, only(1008));
+        // 64 starts the first split power of two, whose buckets are 2 wide
+        assertEquals(65, only(64));
+        // a second is in [2^29, 2^30), whose buckets are 2^24 wide
+        long second = 1_000_000_000L;
+        long width = 1L << 24;
+        assertEquals((second / width) * width + width / 2, only(second));
+    }
+
+    @Test
+    public void staysWithinOneThirtySecondOfEachValue() {
+        for (long nanos = 64; nanos < (1L << 40); nanos = nanos * 3 + 1) {
+            long reported = only(nanos);
+            assertTrue(Math.abs(reported - nanos) <= nanos / 32, nanos + " reported as " + reported);
+        }
+    }
+
+    @Test
+    public void reportsPercentilesByRank() {
+        var histogram = new LatencyHistogram();
+        histogram.record(10, 90);
+        histogram.record(50, 9);
+        histogram.record(5000);
+        assertEquals(100, histogram.count());
+        assertEquals(10, histogram.percentile(90));
+        assertEquals(50, histogram.percentile(99));
+        assertEquals(5000, histogram.percentile(100), "capped at the max rather than the bucket's middle");
+        assertEquals((10 * 90 + 50 * 9 + 5000) / 100.0, histogram.mean());
+    }
+
+    @Test
+    public void countsNegativeValuesAsZeroAndResets() {
+        var histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(50));
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.mean());
+        assertEquals(0, histogram.percentile(99));
+    }
+
+    /** What a histogram of the single value reports as its median */
+    private static long only(long nanos) {
+        var histogram = new LatencyHistogram();
+        histogram.record(nanos);
+        // the max would cap the bucket's middle, so another value above it is recorded
+        histogram.record(Long.MAX_VALUE / 2);
+        return histogram.percentile(50);
+    }
+}
@@ -0,0 +1,213 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static edu.cwru.csds341.vapor.common.MemoryFixture.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryDatabaseTest {
+
+    @Test
+    public void implementsEveryAction() throws SQLException {
+        Map<Action.Parameter.PType, String> samples = Map.of(
+                Action.Parameter.PType.INT, "1",
+                Action.Parameter.PType.MONEY, "9.99",
+                Action.Parameter.PType.STRING, "a",
+                Action.Parameter.PType.DATE, "2022-1-2",
+                Action.Parameter.PType.DATETIME, "2022-1-2 03:04:05");
+        try (var connection = connect()) {
+            for (Action action : Action.VALUES) {
+                var cs = action.getCallableStatement(connection);
+                var args = action.arguments();
+                for (var parameter : action.parameters)
+                    args.set(parameter, samples.get(parameter.type));
+                try {
+                    if (action.type == Action.AType.QUERY) {
+                        try (var result = args.executeQuery(cs)) {
+                            result.rows().toList(row -> row);
+                        }
+                    } else {
+                        if (action.outParameterIndex > 0) cs.registerOutParameter(action.outParameterIndex, Types.INTEGER);
+                        args.executeUpdate(cs);
+                        if (action.outParameterIndex > 0) assertTrue(cs.getInt(action.outParameterIndex) > 0, action + " should return its ID");
+                    }
+                } catch (SQLIntegrityConstraintViolationException e) {
+                    // implemented, the sample values just break a constraint
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rollsBackUncommittedChanges() throws SQLException {
+        try (var connection = connect()) {
+            connection.setAutoCommit(false);
+            assertEquals(1, update(connection, Action.DELETE_USER.arguments().setInt(Action.Parameter.DU_USER_ID, ANN)));
+            assertArrayEquals(new int[] {}, followers(connection, BOB));
+            connection.rollback();
+
+            try (var result = Action.VIEW_USER_INFO.arguments().setInt(Action.Parameter.VU_USER_ID, ANN)
+                    .executeQuery(Action.VIEW_USER_INFO.getCallableStatement(connection))) {
+                assertEquals("ann", result.rows().first(row -> row.getString(Action.Column.USERNAME)));
+            }
+            assertArrayEquals(new int[] {BOB, CAT}, followed(connection, ANN));
+            assertArrayEquals(new int[] {BOB, CAT, DAN}, followers(connection, ANN));
+            assertArrayEquals(new int[] {ALPHA, BETA}, owned(connection, ANN));
+        }
+    }
+
+    @Test
+    public void rollsBackAroundRowsDeletedByAnotherConnection() throws SQLException {
+        var db = database();
+        try (var first = db.connect(); var second = db.connect()) {
+            first.setAutoCommit(false);
+            grant(first, CAT, GAMMA, LocalDate.now());
+            update(first, Action.DELETE_USER.arguments().setInt(Action.Parameter.DU_USER_ID, ANN));
+            update(second, Action.DELETE_GAME.arguments().setInt(Action.Parameter.DG_GAMEID, GAMMA));
+            update(second, Action.DELETE_GAME.arguments().setInt(Action.Parameter.DG_GAMEID, ALPHA));
+            update(second, Action.DELETE_USER.arguments().setInt(Action.Parameter.DU_USER_ID, BOB));
+            first.rollback();
+
+            assertArrayEquals(new int[] {CAT}, followed(first, ANN), "follows of users deleted since should not come back");
+            assertArrayEquals(new int[] {CAT, DAN}, followers(first, ANN));
+            assertArrayEquals(new int[] {BETA}, owned(first, ANN), "ownership of games deleted since should not come back");
+            assertArrayEquals(new int[] {}, owned(first, CAT));
+        }
+    }
+
+    @Test
+    public void countsTheBestSellersOfTheLastSevenDays() throws SQLException {
+        try (var connection = connect()) {
+            try (var result = Action.LIST_N_BEST_SELLING.arguments().setInt(Action.Parameter.VTSG_LIMIT, 10)
+                    .executeQuery(Action.LIST_N_BEST_SELLING.getCallableStatement(connection))) {
+                assertEquals(List.of(ALPHA, BETA, GAMMA), result.rows().toList(row -> row.getInt(Action.Column.GAME_ID)));
+            }
+            int[] sales = new int[GAMMA + 1];
+            try (var result = Action.LIST_SALES_PAST_SEVEN_DAYS.arguments()
+                    .executeQuery(Action.LIST_SALES_PAST_SEVEN_DAYS.getCallableStatement(connection))) {
+                var rows = result.rows();
+                while (rows.next())
+                    sales[rows.getInt(Action.Column.GAME_ID)] += rows.getInt(Action.Column.SALES);
+            }
+            assertArrayEquals(new int[] {0, 3, 2, 1}, sales, "the sale 7 days ago is outside the window");
+        }
+    }
+
+    @Test
+    public void profileHeaderCountsFollowsAndWhetherTheViewerFollows() throws SQLException {
+        try (var connection = connect()) {
+            assertEquals(List.of("bob", 1, 1, 1), header(connection, ANN, BOB));
+            assertEquals(List.of("ann", 0, 3, 2), header(connection, EVE, ANN));
+            assertNull(header(connection, ANN, 99), "a missing user has no header");
+            assertTrue(isFollowing(connection, EVE, DAN));
+            assertFalse(isFollowing(connection, DAN, EVE));
+        }
+    }
+
+    @Test
+    public void commentPagesListEveryCommentOnceNewestFirst() throws SQLException {
+        try (var connection = connect()) {
+            comment(connection, BOB, "old", LocalDateTime.of(2022, 1, 1, 10, 0));
+            for (int i = 0; i < 3; i++)
+                comment(connection, CAT, "tie " + i, LocalDateTime.of(2022, 1, 2, 3, 4, 5));
+            comment(connection, DAN, "new", LocalDateTime.of(2022, 1, 3, 10, 0));
+            List<String> expected = List.of("new", "tie 2", "tie 1", "tie 0", "old");
+
+            try (var result = Action.LIST_PROFILE_COMMENTS.arguments().setInt(Action.Parameter.GPC_USERID, ANN)
+                    .executeQuery(Action.LIST_PROFILE_COMMENTS.getCallableStatement(connection))) {
+                assertEquals(expected, result.rows().toList(row -> row.getString(Action.Column.MESSAGE)));
+            }
+
+            List<List<String>> pages = new ArrayList<>();
+            LocalDateTime beforeDateTime = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+            int beforeId = Integer.MAX_VALUE;
+            while (true) {
+                List<String> page = new ArrayList<>();
+                try (var result = Action.LIST_PROFILE_COMMENTS_PAGE.arguments()
+                        .setInt(Action.Parameter.GPCP_USERID, ANN)
+                        .setDateTime(Action.Parameter.GPCP_BEFORE_DATETIME, beforeDateTime)
+                        .setInt(Action.Parameter.GPCP_BEFORE_ID, beforeId)
+                        .setInt(Action.Parameter.GPCP_LIMIT, 2)
+                        .executeQuery(Action.LIST_PROFILE_COMMENTS_PAGE.getCallableStatement(connection))) {
+                    var rows = result.rows();
+                    while (rows.next()) {
+                        page.add(rows.getString(Action.Column.MESSAGE));
+                        beforeDateTime = rows.getDateTime(Action.Column.COMMENT_DATETIME);
+                        beforeId = rows.getInt(Action.Column.COMMENT_ID);
+                    }
+                }
+                pages.add(page);
+                if (page.size() < 2) break;
+            }
+            assertEquals(List.of(List.of("new", "tie 2"), List.of("tie 1", "tie 0"), List.of("old")), pages);
+        }
+    }
+
+    @Test
+    public void pagesGamesAndSearchesByKeyset() throws SQLException {
+        try (var connection = connect()) {
+            assertEquals(List.of(ALPHA, BETA), gamesPage(connection, Action.LIST_GAMES_PAGE.arguments()
+                    .setInt(Action.Parameter.LGP_AFTER_ID, 0)
+                    .setInt(Action.Parameter.LGP_LIMIT, 2)));
+            assertEquals(List.of(GAMMA), gamesPage(connection, Action.LIST_GAMES_PAGE.arguments()
+                    .setInt(Action.Parameter.LGP_AFTER_ID, BETA)
+                    .setInt(Action.Parameter.LGP_LIMIT, 2)));
+            assertEquals(List.of(ALPHA, BETA, GAMMA), gamesPage(connection, Action.SEARCH_GAMES.arguments()
+                    .setString(Action.Parameter.SG_NAME, "A")
+                    .setInt(Action.Parameter.SG_AFTER_ID, 0)
+                    .setInt(Action.Parameter.SG_LIMIT, 10)), "names containing 'a', ignoring case");
+            assertEquals(List.of(ALPHA), gamesPage(connection, Action.SEARCH_GAMES.arguments()
+                    .setString(Action.Parameter.SG_NAME, "ph")
+                    .setInt(Action.Parameter.SG_AFTER_ID, 0)
+                    .setInt(Action.Parameter.SG_LIMIT, 10)));
+            assertEquals(List.of(GAMMA), gamesPage(connection, Action.SEARCH_GAMES.arguments()
+                    .setString(Action.Parameter.SG_NAME, "mm")
+                    .setInt(Action.Parameter.SG_AFTER_ID, ALPHA)
+                    .setInt(Action.Parameter.SG_LIMIT, 10)));
+        }
+    }
+
+    /** @return  (username, following, follower count, followed count), or null if there is no row */
+    private static List<Object> header(Connection connection, int viewerId, int userId) throws SQLException {
+        try (var result = Action.VIEW_PROFILE_HEADER.arguments()
+                .setInt(Action.Parameter.VPH_VIEWER_ID, viewerId)
+                .setInt(Action.Parameter.VPH_USER_ID, userId)
+                .executeQuery(Action.VIEW_PROFILE_HEADER.getCallableStatement(connection))) {
+            return result.rows().first(row -> List.of(row.getString(Action.Column.USERNAME), row.getInt(Action.Column.FOLLOWING),
+                    row.getInt(Action.Column.FOLLOWER_COUNT), row.getInt(Action.Column.FOLLOWED_COUNT)));
+        }
+    }
+
+    private static List<Integer> gamesPage(Connection connection, Arguments args) throws SQLException {
+        try (var result = args.executeQuery(args.action.getCallableStatement(connection))) {
+            return result.rows().toList(row -> row.getInt(Action.Column.GAME_ID));
+        }
+    }
+
+    private static boolean isFollowing(Connection connection, int followerId, int followedId) throws SQLException {
+        try (var result = Action.IS_FOLLOWING.arguments()
+                .setInt(Action.Parameter.IF_FOLLOWER_ID, followerId)
+                .setInt(Action.Parameter.IF_FOLLOWED_ID, followedId)
+                .executeQuery(Action.IS_FOLLOWING.getCallableStatement(connection))) {
+            return result.resultSet().next();
+        }
+    }
+
+    private static void comment(Connection connection, int commenterId, String message, LocalDateTime datetime) throws SQLException {
+        update(connection, Action.MAKE_COMMENT.arguments()
+                .setInt(Action.Parameter.MC_COMMENTER_ID, commenterId)
+                .setInt(Action.Parameter.MC_PROFILE_ID, ANN)
+                .setDateTime(Action.Parameter.MC_DATETIME, datetime)
+                .setString(Action.Parameter.MC_MESSAGE, message));
+    }
+}
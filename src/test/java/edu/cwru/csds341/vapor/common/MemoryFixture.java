@@ -0,0 +1,100 @@
+package edu.cwru.csds341.vapor.common;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A small {@link MemoryDatabase} made through Actions, so that tests can check against values worked out by hand.
+ * <li>Users 1 to 5: ann, bob, cat, dan, eve.</li>
+ * <li>Games 1 to 3: alpha, beta, gamma.</li>
+ * <li>Follows: ann follows bob and cat; bob, cat and dan follow ann; eve follows dan.</li>
+ * <li>Ownership, by days before today: alpha by ann (0), bob (0) and cat (3); beta by ann (0) and dan (6);
+ *     gamma by bob (0) and eve (7). So over the last 7 days alpha sold 3, beta 2 and gamma 1.</li>
+ * <li>No comments.</li>
+ */
+final class MemoryFixture {
+    static final int ANN = 1, BOB = 2, CAT = 3, DAN = 4, EVE = 5;
+    static final int ALPHA = 1, BETA = 2, GAMMA = 3;
+
+    private MemoryFixture() {
+    }
+
+    static MemoryDatabase database() throws SQLException {
+        var db = new MemoryDatabase();
+        LocalDate today = LocalDate.now();
+        try (var connection = db.connect()) {
+            for (String name : new String[] {"ann", "bob", "cat", "dan", "eve"})
+                insert(connection, Action.CREATE_ACCOUNT.arguments()
+                        .setString(Action.Parameter.CA_USERNAME, name)
+                        .setDate(Action.Parameter.CA_JOIN_DATE, LocalDate.of(2020, 1, 1)));
+            for (String name : new String[] {"alpha", "beta", "gamma"})
+                insert(connection, Action.ADD_GAME.arguments()
+                        .setString(Action.Parameter.AG_GAME_NAME, name)
+                        .setInt(Action.Parameter.AG_REVIEW_AVG, 50)
+                        .setInt(Action.Parameter.AG_ESRB_RATING_ID, 1)
+                        .setDate(Action.Parameter.AG_RELEASE_DATE, LocalDate.of(2020, 1, 1))
+                        .setMoney(Action.Parameter.AG_PRICE, new BigDecimal("9.99")));
+            int[][] follows = {{ANN, BOB}, {ANN, CAT}, {BOB, ANN}, {CAT, ANN}, {DAN, ANN}, {EVE, DAN}};
+            for (int[] follow : follows)
+                follow(connection, follow[0], follow[1]);
+            int[][] grants = {{ANN, ALPHA, 0}, {BOB, ALPHA, 0}, {CAT, ALPHA, 3}, {ANN, BETA, 0}, {DAN, BETA, 6}, {BOB, GAMMA, 0}, {EVE, GAMMA, 7}};
+            for (int[] grant : grants)
+                grant(connection, grant[0], grant[1], today.minusDays(grant[2]));
+        }
+        return db;
+    }
+
+    /** A connection to a new {@link #database()} */
+    static Connection connect() throws SQLException {
+        return database().connect();
+    }
+
+    /** @return  the created id */
+    static int insert(Connection connection, Arguments args) throws SQLException {
+        var cs = args.action.getCallableStatement(connection);
+        cs.registerOutParameter(args.action.outParameterIndex, Types.INTEGER);
+        args.executeUpdate(cs);
+        return cs.getInt(args.action.outParameterIndex);
+    }
+
+    static int update(Connection connection, Arguments args) throws SQLException {
+        return args.executeUpdate(args.action.getCallableStatement(connection));
+    }
+
+    static void follow(Connection connection, int followerId, int followedId) throws SQLException {
+        update(connection, Action.FOLLOW_USER.arguments()
+                .setInt(Action.Parameter.FU_FOLLOWER_ID, followerId)
+                .setInt(Action.Parameter.FU_FOLLOWED_ID, followedId)
+                .setDateTime(Action.Parameter.FU_DATE, LocalDateTime.of(2021, 1, 1, 12, 0)));
+    }
+
+    static void grant(Connection connection, int userId, int gameId, LocalDate date) throws SQLException {
+        update(connection, Action.GRANT_GAME.arguments()
+                .setInt(Action.Parameter.GG_USERID, userId)
+                .setInt(Action.Parameter.GG_GAMEID, gameId)
+                .setDate(Action.Parameter.GG_DATE, date));
+    }
+
+    /** The ids in a column of a QUERY taking one INT Parameter, sorted */
+    static int[] listIds(Connection connection, Action action, Action.Parameter parameter, Action.Column column, int id) throws SQLException {
+        try (var result = action.arguments().setInt(parameter, id).executeQuery(action.getCallableStatement(connection))) {
+            return result.rows().toList(row -> row.getInt(column)).stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+    }
+
+    static int[] followed(Connection connection, int userId) throws SQLException {
+        return listIds(connection, Action.LIST_FOLLOWED, Action.Parameter.LFD_USER_ID, Action.Column.FOLLOWED_ID, userId);
+    }
+
+    static int[] followers(Connection connection, int userId) throws SQLException {
+        return listIds(connection, Action.LIST_FOLLOWERS, Action.Parameter.LFR_USER_ID, Action.Column.FOLLOWER_ID, userId);
+    }
+
+    static int[] owned(Connection connection, int userId) throws SQLException {
+        return listIds(connection, Action.LIST_GAMES_OWNED, Action.Parameter.VGU_USERID, Action.Column.GAME_ID, userId);
+    }
+}
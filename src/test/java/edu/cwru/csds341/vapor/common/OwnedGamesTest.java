@@ -0,0 +1,37 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static edu.cwru.csds341.vapor.common.MemoryFixture.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OwnedGamesTest {
+
+    @Test
+    public void loadsTheUsersGames() throws SQLException {
+        var owned = new OwnedGames(ANN);
+        assertFalse(owned.isLoaded());
+        try (var connection = connect()) {
+            owned.load(connection);
+        }
+        assertTrue(owned.isLoaded());
+        assertEquals(2, owned.size());
+        assertTrue(owned.contains(ALPHA));
+        assertTrue(owned.contains(BETA));
+        assertFalse(owned.contains(GAMMA));
+    }
+
+    @Test
+    public void keepsGamesAddedBeforeTheLoad() throws SQLException {
+        var owned = new OwnedGames(EVE);
+        owned.add(ALPHA);
+        try (var connection = connect()) {
+            owned.load(connection);
+        }
+        assertTrue(owned.contains(ALPHA), "granted while loading, so maybe missing from the result");
+        assertTrue(owned.contains(GAMMA));
+        assertEquals(2, owned.size());
+    }
+}
@@ -0,0 +1,67 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceDataTest {
+
+    @Test
+    public void isEmptyUntilLoaded() throws SQLException {
+        var data = new ReferenceData(0);
+        assertFalse(data.isLoaded());
+        assertTrue(data.isStale());
+        assertNull(data.esrbRatingName(1));
+        assertNull(data.genreName(1));
+        assertEquals(Map.of(), data.esrbRatings());
+        assertEquals(Map.of(), data.genres());
+
+        data.refresh(null);
+        assertFalse(data.refreshIfStale(null));
+        assertFalse(data.isLoaded(), "nothing is done without a connection");
+    }
+
+    @Test
+    public void loadsBothTables() throws SQLException {
+        var data = new ReferenceData(0);
+        try (var connection = new MemoryDatabase().connect()) {
+            data.refresh(connection);
+        }
+        assertTrue(data.isLoaded());
+        assertEquals("E", data.esrbRatingName(1));
+        assertEquals("RP", data.esrbRatingName(6));
+        assertEquals("Action", data.genreName(1));
+        assertEquals("RPG", data.genreName(7));
+        assertEquals(6, data.esrbRatings().size());
+        assertEquals(10, data.genres().size());
+        assertEquals(1, data.genres().keySet().iterator().next(), "ascending by id");
+    }
+
+    @Test
+    public void unknownIdsHaveNoName() throws SQLException {
+        var data = new ReferenceData(0);
+        try (var connection = new MemoryDatabase().connect()) {
+            data.refresh(connection);
+        }
+        for (int id : new int[] {-1, 0, 7, 1 << 20})
+            assertNull(data.esrbRatingName(id), Integer.toString(id));
+        assertNull(data.genreName(11));
+    }
+
+    @Test
+    public void refreshesOnlyWhenStale() throws SQLException {
+        var onDemand = new ReferenceData(0);
+        var hourly = new ReferenceData(3600);
+        try (var connection = new MemoryDatabase().connect()) {
+            assertTrue(onDemand.refreshIfStale(connection));
+            assertTrue(hourly.refreshIfStale(connection));
+            assertFalse(onDemand.refreshIfStale(connection), "never stale once loaded");
+            assertFalse(hourly.refreshIfStale(connection));
+        }
+        assertFalse(onDemand.isStale());
+        assertFalse(hourly.isStale());
+    }
+}
@@ -0,0 +1,121 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowQueryLogTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @TempDir
+    Path dir;
+    private Path file;
+    private Connection connection;
+    private CallableStatement cs;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        file = dir.resolve("slow.log");
+        connection = new MemoryDatabase().connect();
+        cs = Action.CREATE_ACCOUNT.getCallableStatement(connection);
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void logsOnlyCallsOverTheThreshold() throws IOException {
+        var log = new SlowQueryLog(file, SECOND, false, 1 << 20, 16);
+        log.log(account("fast"), System.nanoTime(), 1, cs);
+        log.log(account("slow"), System.nanoTime() - 2 * SECOND, 1, cs);
+        log.logBatch(Action.GRANT_GAME, 3, System.nanoTime() - 2 * SECOND, -1, cs);
+        log.writeQueued();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains(" action=CREATE_ACCOUNT elapsed_ms=2"), lines.get(0));
+        assertTrue(lines.get(0).contains(" rows=1 "), lines.get(0));
+        assertTrue(lines.get(0).endsWith(" args=username:\"slow\",date:2020-01-01"), lines.get(0));
+        assertTrue(lines.get(1).contains(" action=GRANT_GAME "), lines.get(1));
+        assertTrue(lines.get(1).endsWith(" rows=? connection=\"" + connection + "\" batch=3"), lines.get(1));
+    }
+
+    @Test
+    public void escapesWhatWouldBreakTheLine() throws IOException {
+        var log = new SlowQueryLog(file, 0, false, 1 << 20, 16);
+        log.log(account("a \"b\"\nc\\"), System.nanoTime(), 1, cs);
+        log.writeQueued();
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("username:\"a \\\"b\\\"\\nc\\\\\""), lines.get(0));
+    }
+
+    @Test
+    public void redactsArgumentValues() throws IOException {
+        var log = new SlowQueryLog(file, 0, true, 1 << 20, 16);
+        log.log(account("secret"), System.nanoTime(), 1, cs);
+        log.writeQueued();
+        String line = Files.readAllLines(file).get(0);
+        assertTrue(line.endsWith(" args=username:?,date:?"), line);
+    }
+
+    @Test
+    public void rollsTheFileOnceItExceedsItsSize() throws IOException {
+        var log = new SlowQueryLog(file, 0, false, 1, 16);
+        for (int i = 0; i < SlowQueryLog.ROLLED_FILES + 2; i++) {
+            log.log(account("user" + i), System.nanoTime(), 1, cs);
+            log.writeQueued();
+        }
+        // every line fills the file, so each is rolled right away and the oldest two are gone
+        assertFalse(Files.exists(file));
+        for (int generation = 1; generation <= SlowQueryLog.ROLLED_FILES; generation++) {
+            List<String> lines = Files.readAllLines(rolled(generation));
+            assertEquals(1, lines.size());
+            int user = SlowQueryLog.ROLLED_FILES + 2 - generation;
+            assertTrue(lines.get(0).contains("username:\"user" + user + "\""), lines.get(0));
+        }
+        assertFalse(Files.exists(rolled(SlowQueryLog.ROLLED_FILES + 1)));
+    }
+
+    @Test
+    public void countsTheLinesDroppedWhileTheQueueWasFull() throws IOException {
+        var log = new SlowQueryLog(file, 0, false, 1 << 20, 2);
+        for (int i = 0; i < 5; i++)
+            log.log(account("user" + i), System.nanoTime(), 1, cs);
+        log.writeQueued();
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(1).contains("username:\"user1\""), lines.get(1));
+        assertTrue(lines.get(2).endsWith(" dropped=3"), lines.get(2));
+
+        log.log(account("later"), System.nanoTime(), 1, cs);
+        log.writeQueued();
+        lines = Files.readAllLines(file);
+        assertEquals(4, lines.size(), "appended, and the count starts over");
+    }
+
+    private Path rolled(int generation) {
+        return file.resolveSibling(file.getFileName() + "." + generation);
+    }
+
+    private static Arguments account(String name) {
+        return Action.CREATE_ACCOUNT.arguments()
+                .setString(Action.Parameter.CA_USERNAME, name)
+                .setDate(Action.Parameter.CA_JOIN_DATE, LocalDate.of(2020, 1, 1));
+    }
+}
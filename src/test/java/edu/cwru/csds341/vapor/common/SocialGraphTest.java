@@ -0,0 +1,98 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+import static edu.cwru.csds341.vapor.common.MemoryFixture.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocialGraphTest {
+
+    /** A graph of the fixture, read 2 rows per page so that every load takes several */
+    private static SocialGraph loaded() throws SQLException {
+        var graph = new SocialGraph(0, 2);
+        try (var connection = connect()) {
+            assertTrue(graph.refresh(connection));
+        }
+        return graph;
+    }
+
+    @Test
+    public void loadsEveryFollowAndName() throws SQLException {
+        var graph = loaded();
+        assertArrayEquals(new int[] {BOB, CAT}, graph.followed(ANN));
+        assertArrayEquals(new int[] {BOB, CAT, DAN}, graph.followers(ANN));
+        assertArrayEquals(new int[] {EVE}, graph.followers(DAN));
+        assertArrayEquals(new int[] {}, graph.followers(EVE));
+        assertEquals(3, graph.followerCount(ANN));
+        assertEquals(2, graph.followedCount(ANN));
+        assertArrayEquals(new int[] {BOB, CAT}, graph.mutuals(ANN));
+        assertTrue(graph.isFollowing(EVE, DAN));
+        assertFalse(graph.isFollowing(DAN, EVE));
+        assertEquals("cat", graph.name(CAT));
+        assertNull(graph.name(99));
+    }
+
+    @Test
+    public void followsChangesMadeSinceTheLoad() throws SQLException {
+        var graph = loaded();
+        graph.follow(ANN, EVE);
+        graph.follow(EVE, ANN);
+        graph.unfollow(ANN, BOB);
+        assertArrayEquals(new int[] {CAT, EVE}, graph.followed(ANN));
+        assertArrayEquals(new int[] {CAT, EVE}, graph.mutuals(ANN));
+        assertEquals(4, graph.followerCount(ANN));
+
+        graph.deleteUser(CAT);
+        graph.setName(DAN, "danny");
+        assertArrayEquals(new int[] {EVE}, graph.followed(ANN));
+        assertArrayEquals(new int[] {BOB, DAN, EVE}, graph.followers(ANN));
+        assertFalse(graph.isFollowing(CAT, ANN));
+        assertNull(graph.name(CAT));
+        assertEquals("danny", graph.name(DAN));
+    }
+
+    @Test
+    public void followsUpdatesExecutedWhileListening() throws SQLException {
+        var graph = loaded();
+        try (var connection = connect()) {
+            Updates.addListener(graph);
+            try {
+                follow(connection, EVE, ANN);
+                update(connection, Action.UNFOLLOW_USER.arguments()
+                        .setInt(Action.Parameter.UFU_FOLLOWER_ID, ANN)
+                        .setInt(Action.Parameter.UFU_FOLLOWED_ID, BOB));
+                update(connection, Action.UPDATE_USERNAME.arguments()
+                        .setInt(Action.Parameter.UU_USER_ID, DAN)
+                        .setString(Action.Parameter.UU_NEW_NAME, "danny"));
+                update(connection, Action.DELETE_USER.arguments().setInt(Action.Parameter.DU_USER_ID, CAT));
+                int fay = insert(connection, Action.CREATE_ACCOUNT.arguments()
+                        .setString(Action.Parameter.CA_USERNAME, "fay")
+                        .setDate(Action.Parameter.CA_JOIN_DATE, LocalDate.of(2022, 1, 1)));
+                assertFalse(graph.isStale());
+                assertArrayEquals(new int[] {BOB, DAN, EVE}, graph.followers(ANN));
+                assertArrayEquals(new int[] {}, graph.followed(ANN));
+                assertEquals("danny", graph.name(DAN));
+                assertNull(graph.name(CAT));
+                assertEquals("fay", graph.name(fay));
+            } finally {
+                Updates.removeListener(graph);
+            }
+        }
+    }
+
+    @Test
+    public void keepsDeletedUsersOutOnceCompacted() throws SQLException {
+        var graph = loaded();
+        graph.deleteUser(CAT);
+        // enough new follows to rebuild the arrays
+        for (int id = 100; id < 5000; id++)
+            graph.follow(id, ANN);
+        assertEquals(4900 + 2, graph.followerCount(ANN), "bob, dan and the new followers");
+        assertNull(graph.name(CAT));
+        assertArrayEquals(new int[] {BOB}, graph.followed(ANN));
+        assertFalse(graph.isFollowing(CAT, ANN));
+    }
+}
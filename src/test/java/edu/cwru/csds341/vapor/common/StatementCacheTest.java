@@ -0,0 +1,68 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementCacheTest {
+
+    @Test
+    public void reusesTheStatementOfEachAction() throws SQLException {
+        try (var connection = new MemoryDatabase().connect(); var cache = new StatementCache(connection, 4)) {
+            var statement = cache.get(Action.LIST_GENRES);
+            assertSame(statement, cache.get(Action.LIST_GENRES));
+            assertNotSame(statement, cache.get(Action.LIST_ESRB_RATINGS));
+            assertEquals(1, cache.hits());
+            assertEquals(2, cache.misses());
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() throws SQLException {
+        try (var connection = new MemoryDatabase().connect(); var cache = new StatementCache(connection, 2)) {
+            var genres = cache.get(Action.LIST_GENRES);
+            var ratings = cache.get(Action.LIST_ESRB_RATINGS);
+            cache.get(Action.LIST_GENRES);
+            cache.get(Action.LIST_GAMES_PAGE);
+
+            assertEquals(1, cache.evictions());
+            assertTrue(ratings.isClosed(), "used longest ago");
+            assertFalse(genres.isClosed());
+            assertEquals(2, cache.size());
+            assertSame(genres, cache.get(Action.LIST_GENRES));
+        }
+    }
+
+    @Test
+    public void preparesAgainAStatementClosedByItsUser() throws SQLException {
+        try (var connection = new MemoryDatabase().connect(); var cache = new StatementCache(connection, 2)) {
+            var statement = cache.get(Action.LIST_GENRES);
+            statement.close();
+            var again = cache.get(Action.LIST_GENRES);
+            assertNotSame(statement, again);
+            assertFalse(again.isClosed());
+            assertEquals(0, cache.hits());
+            assertEquals(1, cache.size());
+        }
+    }
+
+    @Test
+    public void closesEveryStatementButStaysUsable() throws SQLException {
+        try (var connection = new MemoryDatabase().connect(); var cache = new StatementCache(connection, 2)) {
+            var statement = cache.get(Action.LIST_GENRES);
+            cache.close();
+            assertTrue(statement.isClosed());
+            assertEquals(0, cache.size());
+            assertFalse(cache.get(Action.LIST_GENRES).isClosed());
+            assertFalse(connection.isClosed(), "the connection is not the cache's");
+        }
+    }
+
+    @Test
+    public void needsRoomForOneStatement() {
+        assertThrows(IllegalArgumentException.class, () -> new StatementCache(null, 0));
+    }
+}
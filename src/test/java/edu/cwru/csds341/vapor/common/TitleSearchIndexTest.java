@@ -0,0 +1,69 @@
+package edu.cwru.csds341.vapor.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TitleSearchIndexTest {
+    private static final List<String> TITLES = List.of(
+            "Portal 2", "Portal", "The Portal Gun", "Teleportal", "Half-Life", "Stardew Valley", "PORTAL Pinball");
+    private final TitleSearchIndex index = new TitleSearchIndex(TITLES);
+
+    @Test
+    public void findsEveryTitleContainingTheQueryIgnoringCase() {
+        var matches = index.search("portal", null);
+        assertEquals(5, matches.count());
+        assertEquals(List.of("Portal 2", "Portal", "The Portal Gun", "Teleportal", "PORTAL Pinball"),
+                matches.inOrder(0, 10), "in the order of the list");
+        assertEquals(0, index.search("portals", null).count());
+    }
+
+    @Test
+    public void findsTheSameTitlesScannedAndIndexed() {
+        var scanned = index.search("portal", null);
+        var indexed = index.search("portal", null);
+        assertNotSame(scanned, indexed);
+        assertEquals(scanned.inOrder(0, 10), indexed.inOrder(0, 10), "the second query uses the trigram index");
+        assertEquals(List.of("Teleportal"), index.search("lepo", null).inOrder(0, 10));
+        assertEquals(0, index.search("xyz", null).count());
+    }
+
+    @Test
+    public void ranksExactThenPrefixThenWordThenAnywhere() {
+        var matches = index.search("Portal", null);
+        // prefix matches are ranked by length: "Portal 2" (8) before "PORTAL Pinball" (14)
+        assertEquals(List.of("Portal", "Portal 2", "PORTAL Pinball", "The Portal Gun", "Teleportal"), matches.top(10));
+        assertEquals(List.of("Portal", "Portal 2"), matches.top(2));
+        assertEquals(List.of("PORTAL Pinball", "The Portal Gun"), matches.top(2, 2), "the second page of the ranking");
+        assertEquals(List.of("Teleportal"), matches.top(4, 2));
+        assertEquals(List.of(), matches.top(5, 2));
+    }
+
+    @Test
+    public void searchesShortQueriesWithoutTrigrams() {
+        assertEquals(List.of("Stardew Valley"), index.search("ey", null).inOrder(0, 10));
+        assertEquals(TITLES.size(), index.search("l", null).count());
+        assertEquals(TITLES.size(), index.search(" ", null).count(), "blank matches everything");
+    }
+
+    @Test
+    public void refinesThePreviousMatches() {
+        var portal = index.search("portal", null);
+        var refined = index.search("portal 2", portal);
+        assertEquals(List.of("Portal 2"), refined.inOrder(0, 10));
+        assertSame(refined, index.search("Portal 2 ", refined), "the same normalized query");
+        // a query that does not extend the previous one is searched from scratch
+        assertEquals(List.of("Half-Life"), index.search("half", refined).inOrder(0, 10));
+    }
+
+    @Test
+    public void pagesTheMatchesInOrder() {
+        var matches = index.search("portal", null);
+        assertEquals(List.of("Portal 2", "Portal"), matches.inOrder(0, 2));
+        assertEquals(List.of("The Portal Gun", "Teleportal"), matches.inOrder(2, 2));
+        assertEquals(List.of("PORTAL Pinball"), matches.inOrder(4, 2));
+        assertEquals(List.of(), matches.inOrder(5, 2));
+    }
+}
@@ -0,0 +1,113 @@
+package edu.cwru.csds341.vapor.server;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.cwru.csds341.vapor.common.Connections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActionHandlerTest {
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+
+    /** Serves a {@link edu.cwru.csds341.vapor.common.MemoryDatabase} with no games, like server.MainApp does */
+    @BeforeEach
+    public void start() throws IOException {
+        Path credentials = Files.writeString(directory.resolve("test.credentials"), "backend=memory\nmemory_users=0\nmemory_games=0\n");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(ActionHandler.PREFIX.substring(0, ActionHandler.PREFIX.length() - 1),
+                new ActionHandler(Connections.pooled(credentials), 0));
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        server.stop(0);
+    }
+
+    /** The status and body of a response */
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    @Test
+    public void performsUpdatesAndStreamsQueries() throws IOException {
+        assertEquals("{\"id\":1}", post("create_account", "{\"username\":\"ann\",\"date\":\"2020-1-2\"}").body);
+        assertEquals("{\"id\":2}", post("create_account", "{\"date\":\"2020-1-3\",\"username\":\"b\\\"ob\"}").body);
+        assertEquals("{\"updated\":1}", post("follow_user",
+                "{\"follower_id\":1,\"followed_id\":2,\"date\":\"2021-1-1 12:00:00\"}").body);
+
+        var users = post("list_users_page", "{\"after_id\":0,\"limit\":10}");
+        assertEquals(200, users.status);
+        assertEquals("[{\"user_id\":1,\"username\":\"ann\"},{\"user_id\":2,\"username\":\"b\\\"ob\"}]", users.body);
+        assertEquals("[]", post("list_users_page", "{\"after_id\":2,\"limit\":10}").body);
+        assertEquals("[{\"followed_id\":2,\"username\":\"b\\\"ob\"}]", post("list_followed", "{\"user_id\":1}").body);
+    }
+
+    @Test
+    public void listsTheActions() throws IOException {
+        var catalog = request("GET", ActionHandler.PREFIX, null);
+        assertEquals(200, catalog.status);
+        assertTrue(catalog.body.startsWith("[{\"name\":\"create_account\",\"type\":\"INSERT_ID\""), catalog.body);
+    }
+
+    @Test
+    public void rejectsBadRequests() throws IOException {
+        assertEquals(404, post("no_such_action", "{}").status);
+        assertEquals(405, request("GET", ActionHandler.PREFIX + "list_genres", null).status);
+        assertEquals(400, post("create_account", "{\"username\":\"ann\"}").status, "missing parameter");
+        assertEquals(400, post("list_genres", "{\"extra\":1}").status, "unknown parameter");
+        assertEquals(400, post("create_account", "{\"username\":\"\",\"date\":\"2020-1-2\"}").status, "fails a requirement");
+        var malformed = post("create_account", "{\"username\":");
+        assertEquals(400, malformed.status);
+        assertTrue(malformed.body.startsWith("{\"error\":"), malformed.body);
+    }
+
+    @Test
+    public void reportsConstraintViolationsAsConflicts() throws IOException {
+        post("create_account", "{\"username\":\"ann\",\"date\":\"2020-1-2\"}");
+        var response = post("follow_user", "{\"follower_id\":1,\"followed_id\":99,\"date\":\"2021-1-1 12:00:00\"}");
+        assertEquals(409, response.status, response.body);
+    }
+
+    private Response post(String action, String body) throws IOException {
+        return request("POST", ActionHandler.PREFIX + action, body);
+    }
+
+    private Response request(String method, String path, String body) throws IOException {
+        var url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), path);
+        var connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = (status < 400) ? connection.getInputStream() : connection.getErrorStream()) {
+            return new Response(status, (in == null) ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
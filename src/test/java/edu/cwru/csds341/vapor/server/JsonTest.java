@@ -0,0 +1,49 @@
+package edu.cwru.csds341.vapor.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonTest {
+
+    @Test
+    public void parsesMembersInOrder() {
+        var members = Json.parseFlatObject(" { \"b\" : \"two\", \"a\":1 ,\"c\":-2.5e3 } ");
+        assertEquals(List.of("b", "a", "c"), List.copyOf(members.keySet()));
+        assertEquals("two", members.get("b"));
+        assertEquals("1", members.get("a"));
+        assertEquals("-2.5e3", members.get("c"), "numbers are kept as they were written");
+        assertEquals(Map.of(), Json.parseFlatObject("{}"));
+    }
+
+    @Test
+    public void unescapesStrings() {
+        var members = Json.parseFlatObject("{\"s\":\"q\\\" b\\\\ s\\/ n\\n t\\t u\\u00e9\"}");
+        assertEquals("q\" b\\ s/ n\n t\t u\u00e9", members.get("s"));
+    }
+
+    @Test
+    public void rejectsWhatIsNotAFlatObject() {
+        for (String text : new String[] {
+                "", "[]", "{\"a\":1", "{\"a\":1}x", "{\"a\":true}", "{\"a\":{}}", "{a:1}",
+                "{\"a\":1,\"a\":2}", "{\"a\":\"unterminated}", "{\"a\":\"\\x\"}", "{\"a\":\"\\u12\"}"})
+            assertThrows(IllegalArgumentException.class, () -> Json.parseFlatObject(text), text);
+    }
+
+    @Test
+    public void escapesStringsWhenWriting() throws IOException {
+        var out = new StringWriter();
+        Json.writeString(out, "say \"hi\"\\\n\r\t\u0001é");
+        assertEquals("\"say \\\"hi\\\"\\\\\\n\\r\\t\\u0001é\"", out.toString());
+        // what is written reads back the same
+        String text = "a\"b\\c\nd\u0002";
+        out = new StringWriter();
+        Json.writeString(out, text);
+        assertEquals(text, Json.parseFlatObject("{\"k\":" + out + "}").get("k"));
+    }
+}